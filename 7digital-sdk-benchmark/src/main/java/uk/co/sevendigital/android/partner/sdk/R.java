@@ -0,0 +1,13 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+/**
+ * Stand-in for the R class aapt generates for the SDK's resources (see res/values/ids.xml), as the benchmarks are
+ * compiled without aapt. The id only has to be an application resource id, as View.setTag(int, Object) checks.
+ */
+public final class R {
+
+	public static final class id {
+		public static final int sdi_buy_button_item = 0x7f050000;
+	}
+
+}
@@ -0,0 +1,143 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Runs the SDK benchmarks with the GC profiler and compares throughput and allocation per operation against the
+ * checked-in baseline. Exits with status 1 if any benchmark regressed.
+ *
+ * Usage: <code>java -jar benchmarks.jar [regex]</code>, with the following optional system properties:
+ * <ul>
+ * <li><code>sdi.baseline</code> - the baseline file, defaults to <code>baseline/benchmarks.properties</code>.</li>
+ * <li><code>sdi.baseline.update</code> - <code>true</code> to write the results to the baseline instead of comparing.</li>
+ * <li><code>sdi.tolerance</code> - the allowed throughput drop as fraction, defaults to <code>0.25</code>.</li>
+ * </ul>
+ */
+public class SDIBenchmarkMain {
+
+	private static final String DEFAULT_INCLUDE = "uk\\.co\\.sevendigital\\..*Benchmark";
+	private static final String DEFAULT_BASELINE = "baseline/benchmarks.properties";
+	private static final String ALLOC_NORM = "gc.alloc.rate.norm";
+	/* allocation is deterministic, so only allow for a little JIT noise */
+	private static final double ALLOC_TOLERANCE = 0.10;
+	private static final double ALLOC_SLACK_BYTES = 8;
+
+	public static void main(String[] args) throws RunnerException, IOException {
+		Options options = new OptionsBuilder()
+			.include(args.length > 0 ? args[0] : DEFAULT_INCLUDE)
+			.addProfiler(GCProfiler.class)
+			.forks(1)
+			.warmupIterations(3)
+			.warmupTime(TimeValue.seconds(1))
+			.measurementIterations(5)
+			.measurementTime(TimeValue.seconds(1))
+			.timeUnit(TimeUnit.MILLISECONDS)
+			.build();
+		Collection<RunResult> results = new Runner(options).run();
+
+		File baselineFile = new File(System.getProperty("sdi.baseline", DEFAULT_BASELINE));
+		if (Boolean.getBoolean("sdi.baseline.update")) {
+			writeBaseline(baselineFile, results);
+			System.out.println("Baseline written to " + baselineFile.getAbsolutePath());
+			return;
+		}
+		double tolerance = Double.parseDouble(System.getProperty("sdi.tolerance", "0.25"));
+		List<String> regressions = compare(loadBaseline(baselineFile), results, tolerance);
+		if (regressions.isEmpty()) {
+			System.out.println("No regressions against " + baselineFile.getAbsolutePath());
+			return;
+		}
+		System.err.println("Regressions against " + baselineFile.getAbsolutePath() + ":");
+		for (String regression : regressions) System.err.println("  " + regression);
+		System.exit(1);
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * internal
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private static List<String> compare(Properties baseline, Collection<RunResult> results, double tolerance) {
+		List<String> regressions = new ArrayList<String>();
+		for (RunResult result : results) {
+			String name = shortName(result);
+			String score = baseline.getProperty(name + ".score");
+			if (score == null) {
+				System.out.println("No baseline for " + name + ", skipped.");
+				continue;
+			}
+			double expected = Double.parseDouble(score);
+			double actual = result.getPrimaryResult().getScore();
+			if (actual < expected * (1 - tolerance)) regressions.add(String.format(Locale.US, "%s: throughput %.1f ops/ms, baseline %.1f ops/ms", name, actual, expected));
+
+			String alloc = baseline.getProperty(name + ".alloc");
+			double actualAlloc = allocation(result);
+			if (alloc != null && !Double.isNaN(actualAlloc)) {
+				double expectedAlloc = Double.parseDouble(alloc);
+				if (actualAlloc > expectedAlloc * (1 + ALLOC_TOLERANCE) + ALLOC_SLACK_BYTES) regressions.add(String.format(Locale.US, "%s: allocates %.1f B/op, baseline %.1f B/op", name, actualAlloc, expectedAlloc));
+			}
+		}
+		return regressions;
+	}
+
+	private static double allocation(RunResult result) {
+		Result<?> alloc = result.getSecondaryResults().get(ALLOC_NORM);
+		return alloc != null ? alloc.getScore() : Double.NaN;
+	}
+
+	private static String shortName(RunResult result) {
+		String benchmark = result.getParams().getBenchmark();
+		return benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1);
+	}
+
+	private static Properties loadBaseline(File file) throws IOException {
+		Properties properties = new Properties();
+		if (!file.exists()) {
+			System.out.println("No baseline found at " + file.getAbsolutePath() + ", run with -Dsdi.baseline.update=true to create one.");
+			return properties;
+		}
+		InputStream in = new FileInputStream(file);
+		try { properties.load(in); }
+		finally { in.close(); }
+		return properties;
+	}
+
+	private static void writeBaseline(File file, Collection<RunResult> results) throws IOException {
+		Properties properties = loadBaseline(file);
+		for (RunResult result : results) {
+			String name = shortName(result);
+			properties.setProperty(name + ".score", String.format(Locale.US, "%.1f", result.getPrimaryResult().getScore()));
+			double alloc = allocation(result);
+			if (!Double.isNaN(alloc)) properties.setProperty(name + ".alloc", String.format(Locale.US, "%.1f", alloc));
+		}
+		if (file.getParentFile() != null) file.getParentFile().mkdirs();
+		/* written sorted and without a timestamp, so that baseline updates diff cleanly */
+		PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "ISO-8859-1"));
+		try {
+			out.println("# Baseline for SDIBenchmarkMain: throughput (ops/ms) and allocation (bytes/op) per benchmark");
+			for (String name : new TreeSet<String>(properties.stringPropertyNames())) out.println(name + "=" + properties.getProperty(name));
+		} finally { out.close(); }
+	}
+
+}
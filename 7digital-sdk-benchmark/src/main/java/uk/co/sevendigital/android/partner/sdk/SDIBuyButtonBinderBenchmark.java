@@ -0,0 +1,72 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import android.view.View;
+
+/**
+ * Benchmarks the cost of binding a row of a recycled catalogue list: {@link SDIBuyButtonBinder} against the common
+ * pattern of a new click listener per row that captures the IDs. The rows cycle through a screenful of recycled
+ * buttons. A View can't be constructed on the JVM without a device, so the buttons are allocated without running their
+ * constructor; setTag() and setOnClickListener() only touch fields.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SDIBuyButtonBinderBenchmark {
+
+	private static final int VISIBLE_ROWS = 16;
+
+	private View[] mButtons;
+	private SDIBuyButtonBinder mBinder;
+	private int mRow;
+
+	@Setup public void setUp() throws Exception {
+		Field field = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+		field.setAccessible(true);
+		Object unsafe = field.get(null);
+		// buttons are clickable already, setClickable() would otherwise reach for the accessibility service
+		Field viewFlags = View.class.getDeclaredField("mViewFlags");
+		viewFlags.setAccessible(true);
+		Field clickableFlag = View.class.getDeclaredField("CLICKABLE");
+		clickableFlag.setAccessible(true);
+		int clickable = clickableFlag.getInt(null);
+		mButtons = new View[VISIBLE_ROWS];
+		for (int i = 0; i < VISIBLE_ROWS; i++) {
+			mButtons[i] = (View) unsafe.getClass().getMethod("allocateInstance", Class.class).invoke(unsafe, View.class);
+			viewFlags.setInt(mButtons[i], clickable);
+		}
+		mBinder = new SDIBuyButtonBinder("partner-id");
+		// the first bind of a button creates its holder, which is not what a scrolling list does
+		for (View button : mButtons) mBinder.bind(button, 1, -1);
+	}
+
+	@Benchmark public View bindBinder() {
+		int row = mRow++;
+		View button = mButtons[row & (VISIBLE_ROWS - 1)];
+		mBinder.bind(button, 1347415L + row, "Elvis Is Back!", 14892292L + row, "Fever", null, null, 2200L, "Elvis Presley");
+		return button;
+	}
+
+	@Benchmark public View bindListenerPerRow() {
+		int row = mRow++;
+		View button = mButtons[row & (VISIBLE_ROWS - 1)];
+		final long releaseId = 1347415L + row, trackId = 14892292L + row;
+		button.setOnClickListener(new View.OnClickListener() {
+			@Override public void onClick(View view) {
+				SDIPartnerUtil.view7digitalItem(view.getContext(), releaseId, "Elvis Is Back!", trackId, "Fever", null, null, 2200L, "Elvis Presley", "partner-id");
+			}
+		});
+		return button;
+	}
+
+}
@@ -0,0 +1,51 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks generating and parsing {@link SDIDeepLink} URIs, for a bare track link as found in notifications and for
+ * a fully populated release link.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SDIDeepLinkBenchmark {
+
+	private final SDIDeepLink mDeepLink = new SDIDeepLink();
+	private SDIRequest mTrackRequest;
+	private SDIRequest mFullRequest;
+	private String mTrackLink;
+	private String mFullLink;
+
+	@Setup public void setUp() {
+		mTrackRequest = new SDIRequest.PlayTrack(1347415L, 14892292L, "partner-id");
+		mFullRequest = new SDIRequest.ViewRelease(1347415L, "Elvis Is Back!", 14892292L, "Fever", "Remastered", "http://cdn.7static.com/static/img/sleeveart/00/013/474/0001347415_200.jpg", 2200L, "Elvis Presley", "partner-id");
+		mTrackLink = mDeepLink.buildString(mTrackRequest);
+		mFullLink = mDeepLink.buildString(mFullRequest);
+	}
+
+	@Benchmark public CharSequence buildTrack() {
+		return mDeepLink.build(mTrackRequest);
+	}
+
+	@Benchmark public CharSequence buildFull() {
+		return mDeepLink.build(mFullRequest);
+	}
+
+	@Benchmark public SDIRequest parseTrack() {
+		return SDIDeepLink.parse(mTrackLink);
+	}
+
+	@Benchmark public SDIRequest parseFull() {
+		return SDIDeepLink.parse(mFullLink);
+	}
+
+}
@@ -0,0 +1,149 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import android.content.Intent;
+
+/**
+ * Benchmarks every method of {@link SDIIntent.Builder}, next to its {@link SDIReusableIntent} counterpart and to the
+ * construction the Builder did before it used templates, kept in {@link SDILegacyIntentBuilder}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SDIIntentBuilderBenchmark {
+
+	private static final long RELEASE_ID = 1347415L;
+	private static final long TRACK_ID = 14892292L;
+	private static final long ARTIST_ID = 2200L;
+
+	private final SDIReusableIntent mReusable = new SDIReusableIntent("2221", 0);
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * SDILegacyIntentBuilder
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	@Benchmark public Intent legacySearch() {
+		return SDILegacyIntentBuilder.buildSearchIntent("Elvis Presley");
+	}
+
+	@Benchmark public Intent legacyViewShop() {
+		return SDILegacyIntentBuilder.buildViewShopIntent();
+	}
+
+	@Benchmark public Intent legacyViewYourMusic() {
+		return SDILegacyIntentBuilder.buildViewYourMusicIntent();
+	}
+
+	@Benchmark public Intent legacyViewDownloads() {
+		return SDILegacyIntentBuilder.buildViewDownloadsIntent();
+	}
+
+	@Benchmark public Intent legacyViewRelease() {
+		return SDILegacyIntentBuilder.buildView7digitalRelease(RELEASE_ID);
+	}
+
+	@Benchmark public Intent legacyViewTrack() {
+		return SDILegacyIntentBuilder.buildView7digitalTrack(RELEASE_ID, TRACK_ID);
+	}
+
+	@Benchmark public Intent legacyViewItem() {
+		return SDILegacyIntentBuilder.buildView7digitalItem(RELEASE_ID, "Elvis Is Back!", TRACK_ID, "Fever", "Remastered", "http://cdn.7static.com/static/img/sleeveart/00/013/474/0001347415_200.jpg", ARTIST_ID, "Elvis Presley");
+	}
+
+	@Benchmark public Intent legacyViewArtist() {
+		return SDILegacyIntentBuilder.buildView7digitalArtist(ARTIST_ID, "Elvis Presley");
+	}
+
+	@Benchmark public Intent legacyPlayRelease() {
+		return SDILegacyIntentBuilder.buildPlay7digitalRelease(RELEASE_ID);
+	}
+
+	@Benchmark public Intent legacyPlayTrack() {
+		return SDILegacyIntentBuilder.buildPlay7digitalTrack(RELEASE_ID, TRACK_ID);
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * SDIIntent.Builder
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	@Benchmark public Intent builderSearch() {
+		return SDIIntent.Builder.buildSearchIntent("Elvis Presley");
+	}
+
+	@Benchmark public Intent builderViewShop() {
+		return SDIIntent.Builder.buildViewShopIntent();
+	}
+
+	@Benchmark public Intent builderViewYourMusic() {
+		return SDIIntent.Builder.buildViewYourMusicIntent();
+	}
+
+	@Benchmark public Intent builderViewDownloads() {
+		return SDIIntent.Builder.buildViewDownloadsIntent();
+	}
+
+	@Benchmark public Intent builderViewRelease() {
+		return SDIIntent.Builder.buildView7digitalRelease(RELEASE_ID);
+	}
+
+	@Benchmark public Intent builderViewTrack() {
+		return SDIIntent.Builder.buildView7digitalTrack(RELEASE_ID, TRACK_ID);
+	}
+
+	@Benchmark public Intent builderViewItem() {
+		return SDIIntent.Builder.buildView7digitalItem(RELEASE_ID, "Elvis Is Back!", TRACK_ID, "Fever", "Remastered", "http://cdn.7static.com/static/img/sleeveart/00/013/474/0001347415_200.jpg", ARTIST_ID, "Elvis Presley");
+	}
+
+	@Benchmark public Intent builderViewArtist() {
+		return SDIIntent.Builder.buildView7digitalArtist(ARTIST_ID, "Elvis Presley");
+	}
+
+	@Benchmark public Intent builderPlayRelease() {
+		return SDIIntent.Builder.buildPlay7digitalRelease(RELEASE_ID);
+	}
+
+	@Benchmark public Intent builderPlayTrack() {
+		return SDIIntent.Builder.buildPlay7digitalTrack(RELEASE_ID, TRACK_ID);
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * SDIReusableIntent
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	@Benchmark public Intent reusableSearch() {
+		return mReusable.search("Elvis Presley");
+	}
+
+	@Benchmark public Intent reusableViewShop() {
+		return mReusable.viewShop();
+	}
+
+	@Benchmark public Intent reusableViewRelease() {
+		return mReusable.view7digitalRelease(RELEASE_ID);
+	}
+
+	@Benchmark public Intent reusableViewTrack() {
+		return mReusable.view7digitalTrack(RELEASE_ID, TRACK_ID);
+	}
+
+	@Benchmark public Intent reusableViewItem() {
+		return mReusable.view7digitalItem(RELEASE_ID, "Elvis Is Back!", TRACK_ID, "Fever", "Remastered", "http://cdn.7static.com/static/img/sleeveart/00/013/474/0001347415_200.jpg", ARTIST_ID, "Elvis Presley");
+	}
+
+	@Benchmark public Intent reusableViewArtist() {
+		return mReusable.view7digitalArtist(ARTIST_ID, "Elvis Presley");
+	}
+
+	@Benchmark public Intent reusablePlayTrack() {
+		return mReusable.play7digitalTrack(RELEASE_ID, TRACK_ID);
+	}
+
+}
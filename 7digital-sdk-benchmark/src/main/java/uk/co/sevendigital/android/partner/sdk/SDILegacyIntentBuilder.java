@@ -0,0 +1,84 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import android.app.SearchManager;
+import android.content.Intent;
+import android.text.TextUtils;
+
+/**
+ * A frozen copy of how {@link SDIIntent.Builder} built its Intents before it was moved onto {@link SDIIntentTemplate}:
+ * a new Intent per call, with the class name and action set every time. It is the baseline the template based
+ * builders are measured against, and must not follow later changes to the SDK.
+ */
+final class SDILegacyIntentBuilder {
+
+	private SDILegacyIntentBuilder() { /* prevent instantiating */ }
+
+	static Intent buildSearchIntent(String query) {
+		if (TextUtils.isEmpty(query)) throw new IllegalArgumentException("Parameter query should not be null or empty.");
+		Intent intent = new Intent(SDIIntent.Action.SEARCH);
+		intent.putExtra(SearchManager.QUERY, query);
+		return intent;
+	}
+
+	static Intent buildViewShopIntent() {
+		return new Intent().setClassName(SDIIntent.SDI_ANDROID_PACKAGE_NAME, SDIIntent.SDI_ANDROID_EXTERNAL_ENTRY_POINT).setAction(SDIIntent.Action.VIEW_SHOP);
+	}
+
+	static Intent buildViewYourMusicIntent() {
+		return new Intent().setClassName(SDIIntent.SDI_ANDROID_PACKAGE_NAME, SDIIntent.SDI_ANDROID_EXTERNAL_ENTRY_POINT).setAction(SDIIntent.Action.VIEW_YOUR_MUSIC);
+	}
+
+	static Intent buildViewDownloadsIntent() {
+		return new Intent().setClassName(SDIIntent.SDI_ANDROID_PACKAGE_NAME, SDIIntent.SDI_ANDROID_EXTERNAL_ENTRY_POINT).setAction(SDIIntent.Action.VIEW_DOWNLOADS);
+	}
+
+	static Intent buildView7digitalRelease(long releaseId) {
+		if (releaseId == -1) throw new IllegalArgumentException("Parameter releaseId should not be -1.");
+		return buildView7digitalItem(releaseId, null, -1, null, null, null, -1, null);
+	}
+
+	static Intent buildView7digitalTrack(long releaseId, long trackId) {
+		if (releaseId == -1) throw new IllegalArgumentException("Parameter releaseId should not be -1.");
+		return buildView7digitalItem(releaseId, null, trackId, null, null, null, -1, null);
+	}
+
+	static Intent buildView7digitalItem(long releaseId, String releaseTitle, long trackId, String trackTitle, String trackVersion, String coverUrl, long artistId, String artistName) {
+		if (releaseId == -1) throw new IllegalArgumentException("Parameter releaseId should not be -1.");
+		Intent intent = new Intent().setClassName(SDIIntent.SDI_ANDROID_PACKAGE_NAME, SDIIntent.SDI_ANDROID_EXTERNAL_ENTRY_POINT).setAction(SDIIntent.Action.VIEW_RELEASE);
+		intent.putExtra(SDIIntent.Extra.RELEASEID, releaseId);
+		if (releaseTitle != null) intent.putExtra(SDIIntent.Extra.RELEASETITLE, releaseTitle);
+		if (trackId != -1) intent.putExtra(SDIIntent.Extra.TRACKID, trackId);
+		if (trackTitle != null) intent.putExtra(SDIIntent.Extra.TRACKTITLE, trackTitle);
+		if (trackVersion != null) intent.putExtra(SDIIntent.Extra.TRACKVERSION, trackVersion);
+		if (coverUrl != null) intent.putExtra(SDIIntent.Extra.COVERURL, coverUrl);
+		if (artistId != -1) intent.putExtra(SDIIntent.Extra.ARTISTID, artistId);
+		if (artistName != null) intent.putExtra(SDIIntent.Extra.ARTISTNAME, artistName);
+		return intent;
+	}
+
+	static Intent buildView7digitalArtist(long artistId, String artistName) {
+		if (artistId == -1) throw new IllegalArgumentException("Parameter artistId should not be -1.");
+		Intent intent = new Intent().setClassName(SDIIntent.SDI_ANDROID_PACKAGE_NAME, SDIIntent.SDI_ANDROID_EXTERNAL_ENTRY_POINT).setAction(SDIIntent.Action.VIEW_ARTIST);
+		intent.putExtra(SDIIntent.Extra.ARTISTID, artistId);
+		// the original tested isEmpty() the wrong way round; measured as intended, so that the name is put
+		if (!TextUtils.isEmpty(artistName)) intent.putExtra(SDIIntent.Extra.ARTISTNAME, artistName);
+		return intent;
+	}
+
+	static Intent buildPlay7digitalRelease(long releaseId) {
+		if (releaseId == -1) throw new IllegalArgumentException("Parameter releaseId should not be -1.");
+		Intent intent = new Intent().setClassName(SDIIntent.SDI_ANDROID_PACKAGE_NAME, SDIIntent.SDI_ANDROID_EXTERNAL_ENTRY_POINT).setAction(SDIIntent.Action.PLAY_RELEASE);
+		intent.putExtra(SDIIntent.Extra.RELEASEID, releaseId);
+		return intent;
+	}
+
+	static Intent buildPlay7digitalTrack(long releaseId, long trackId) {
+		if (releaseId == -1) throw new IllegalArgumentException("Parameter releaseId should not be -1.");
+		if (trackId == -1) throw new IllegalArgumentException("Parameter trackId should not be -1.");
+		Intent intent = new Intent().setClassName(SDIIntent.SDI_ANDROID_PACKAGE_NAME, SDIIntent.SDI_ANDROID_EXTERNAL_ENTRY_POINT).setAction(SDIIntent.Action.PLAY_TRACK);
+		intent.putExtra(SDIIntent.Extra.RELEASEID, releaseId);
+		intent.putExtra(SDIIntent.Extra.TRACKID, trackId);
+		return intent;
+	}
+
+}
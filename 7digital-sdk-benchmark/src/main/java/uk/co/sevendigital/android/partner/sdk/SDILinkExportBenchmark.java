@@ -0,0 +1,68 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks {@link SDILinkExport} over an in-memory catalogue of release, track and artist rows, writing to a channel
+ * that discards the output. Scores are rows per millisecond with two workers, including starting and stopping the
+ * threads, and allocating the chunk buffers, once per run.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SDILinkExportBenchmark {
+
+	private static final int ROWS = 200000;
+	/* fixed rather than a parameter, as the baseline is kept per benchmark method */
+	private static final int THREADS = 2;
+
+	private byte[] mCsv;
+	private byte[] mJsonLines;
+	private final WritableByteChannel mDiscard = new WritableByteChannel() {
+		@Override public int write(ByteBuffer buffer) {
+			int count = buffer.remaining();
+			buffer.position(buffer.limit());
+			return count;
+		}
+		@Override public boolean isOpen() { return true; }
+		@Override public void close() { }
+	};
+
+	@Setup public void setUp() {
+		StringBuilder csv = new StringBuilder("releaseId,trackId,artistId\n");
+		StringBuilder jsonLines = new StringBuilder();
+		for (int i = 0; i < ROWS; i++) {
+			// a third each of release, track and artist rows
+			long releaseId = i % 3 == 2 ? -1 : 1347415L + i;
+			long trackId = i % 3 == 1 ? 14892292L + i : -1;
+			long artistId = 2200L + i % 977;
+			csv.append(releaseId).append(',').append(trackId).append(',').append(artistId).append('\n');
+			jsonLines.append("{\"releaseId\":").append(releaseId).append(",\"trackId\":").append(trackId).append(",\"artistId\":").append(artistId).append("}\n");
+		}
+		mCsv = csv.toString().getBytes();
+		mJsonLines = jsonLines.toString().getBytes();
+	}
+
+	@Benchmark @OperationsPerInvocation(ROWS) public long exportCsv() throws IOException, InterruptedException {
+		return new SDILinkExport("partner-id", SDILinkExport.FORMAT_CSV, THREADS).run(Channels.newChannel(new ByteArrayInputStream(mCsv)), mDiscard);
+	}
+
+	@Benchmark @OperationsPerInvocation(ROWS) public long exportJsonLines() throws IOException, InterruptedException {
+		return new SDILinkExport("partner-id", SDILinkExport.FORMAT_JSON_LINES, THREADS).run(Channels.newChannel(new ByteArrayInputStream(mJsonLines)), mDiscard);
+	}
+
+}
@@ -0,0 +1,58 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import android.content.Intent;
+
+/**
+ * Benchmarks the parts of the {@link SDIPartnerUtil} dispatch path that don't need a device: the action validation
+ * done by {@link SDIPartnerUtil#start7digitalOrMarket(android.content.Context, Intent)} and the extra population in
+ * {@link SDIIntent.Builder#buildView7digitalItem(long, String, long, String, String, String, long, String)}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SDIPartnerUtilBenchmark {
+
+	private Intent mExternalIntent;
+	private Intent mSearchIntent;
+	private Intent mAndroidSearchIntent;
+
+	@Setup public void setUp() {
+		mExternalIntent = SDIIntent.Builder.buildView7digitalTrack(1347415L, 14892292L);
+		mSearchIntent = SDIIntent.Builder.buildSearchIntent("Elvis Presley");
+		mAndroidSearchIntent = new Intent(Intent.ACTION_SEARCH);
+	}
+
+	@Benchmark public Intent validateExternalAction() {
+		SDILaunch.validate(mExternalIntent);
+		return mExternalIntent;
+	}
+
+	@Benchmark public Intent validateSearchAction() {
+		SDILaunch.validate(mSearchIntent);
+		return mSearchIntent;
+	}
+
+	@Benchmark public Intent validateAndroidSearchAction() {
+		SDILaunch.validate(mAndroidSearchIntent);
+		return mAndroidSearchIntent;
+	}
+
+	@Benchmark public Intent viewItemReleaseOnly() {
+		return SDIIntent.Builder.buildView7digitalItem(1347415L, null, -1, null, null, null, -1, null);
+	}
+
+	@Benchmark public Intent viewItemAllExtras() {
+		return SDIIntent.Builder.buildView7digitalItem(1347415L, "Elvis Is Back!", 14892292L, "Fever", "Remastered", "http://cdn.7static.com/static/img/sleeveart/00/013/474/0001347415_200.jpg", 2200L, "Elvis Presley");
+	}
+
+}
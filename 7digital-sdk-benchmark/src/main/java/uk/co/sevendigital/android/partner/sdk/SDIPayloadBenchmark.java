@@ -0,0 +1,76 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import android.content.Intent;
+
+/**
+ * Benchmarks the compact {@link SDIPayload} encoding against the regular extras, for a fully populated view item
+ * request, and decoding both through {@link SDIIntentParser}. {@link android.os.Parcel} is native and not available on
+ * the JVM, so Binder marshalling itself is not measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SDIPayloadBenchmark {
+
+	private SDIRequest mRequest;
+	private List<SDIRequest> mBatch;
+	private byte[] mPayload;
+	private byte[] mBatchPayload;
+	private Intent mRegularIntent;
+	private Intent mCompactIntent;
+
+	@Setup public void setUp() {
+		mRequest = new SDIRequest.ViewRelease(1347415L, "Elvis Is Back!", 14892292L, "Fever", "Remastered", "http://cdn.7static.com/static/img/sleeveart/00/013/474/0001347415_200.jpg", 2200L, "Elvis Presley", "partner-id");
+		mBatch = new ArrayList<SDIRequest>();
+		for (int i = 0; i < 100; i++) mBatch.add(new SDIRequest.ViewRelease(1347415L, "Elvis Is Back!", 14892292L + i, "Track " + i, null, null, 2200L, "Elvis Presley", "partner-id"));
+		mPayload = SDIPayload.encode(mRequest);
+		mBatchPayload = SDIPayload.encode(mBatch);
+		mRegularIntent = SDIIntent.Builder.build(mRequest);
+		mCompactIntent = SDIPayload.newIntent(mRequest);
+	}
+
+	@Benchmark public Intent buildRegularIntent() {
+		return SDIIntent.Builder.build(mRequest);
+	}
+
+	@Benchmark public Intent buildCompactIntent() {
+		return SDIPayload.newIntent(mRequest);
+	}
+
+	@Benchmark public byte[] encode() {
+		return SDIPayload.encode(mRequest);
+	}
+
+	@Benchmark public SDIRequest decode() {
+		return SDIPayload.decodeSingle(mPayload);
+	}
+
+	@Benchmark public byte[] encodeBatch() {
+		return SDIPayload.encode(mBatch);
+	}
+
+	@Benchmark public List<SDIRequest> decodeBatch() {
+		return SDIPayload.decode(mBatchPayload);
+	}
+
+	@Benchmark public SDIRequest parseRegularIntent() {
+		return SDIIntentParser.parse(mRegularIntent);
+	}
+
+	@Benchmark public SDIRequest parseCompactIntent() {
+		return SDIIntentParser.parse(mCompactIntent);
+	}
+
+}
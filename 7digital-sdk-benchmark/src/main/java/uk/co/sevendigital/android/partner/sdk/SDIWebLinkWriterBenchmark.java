@@ -0,0 +1,43 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks generating website links from typed requests with the platform-free {@link SDIWebLinkWriter}, as a
+ * backend service would, for a track link and for a search query that needs percent-encoding.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SDIWebLinkWriterBenchmark {
+
+	private final SDIWebLinkWriter mWriter = new SDIWebLinkWriter();
+	private SDIRequest mTrackRequest;
+	private SDIRequest mSearchRequest;
+
+	@Setup public void setUp() {
+		mTrackRequest = new SDIRequest.PlayTrack(1347415L, 14892292L, "partner-id");
+		mSearchRequest = new SDIRequest.Search("Björk – Homogenic", "partner-id");
+	}
+
+	@Benchmark public CharSequence buildTrack() {
+		return mWriter.build(mTrackRequest);
+	}
+
+	@Benchmark public CharSequence buildSearch() {
+		return mWriter.build(mSearchRequest);
+	}
+
+	@Benchmark public boolean validateAction() {
+		return SDIContract.isValidAction(mTrackRequest.getAction());
+	}
+
+}
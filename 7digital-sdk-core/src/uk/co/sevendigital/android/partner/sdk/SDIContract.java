@@ -0,0 +1,101 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+/**
+ * The contract between partner apps and the 7digital Android app, free of any Android dependency so that it can be
+ * shared with plain Java code, e.g. a backend generating links for partners: the actions the app understands, the keys
+ * of the extras it reads and the website used as fallback. The Android layer exposes the same values as
+ * <code>SDIIntent</code>, <code>SDIIntent.Action</code> and <code>SDIIntent.Extra</code>, which are the ones to use in
+ * apps.
+ *
+ * All methods are thread-safe and allocate nothing.
+ */
+public class SDIContract {
+
+	private SDIContract() { /* prevent instantiating */ }
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * constants
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/** The 7digital website, which links are generated for when the app is not installed. */
+	public static final String WEBSITE_URL = "http://www.7digital.com";
+	/** The package name of the 7digital Android app. */
+	public static final String PACKAGE_NAME = "uk.co.sevendigital.android";
+	/** The entry point in the 7digital Android app that 3rd party apps send their actions to. */
+	public static final String EXTERNAL_ENTRY_POINT = "uk.co.sevendigital.android.library.shop.SDIExternalActionActivity";
+
+	/** Action performing a shop search. */
+	public static final String ACTION_SEARCH = "uk.co.sevendigital.android.intent.action.SEARCH";
+	/** Action displaying the details of an artist. */
+	public static final String ACTION_VIEW_ARTIST = "uk.co.sevendigital.android.intent.action.VIEW_ARTIST";
+	/** Action displaying the details of a release, optionally highlighting one of its tracks. */
+	public static final String ACTION_VIEW_RELEASE = "uk.co.sevendigital.android.intent.action.VIEW_RELEASE";
+	/** Action launching the shop. */
+	public static final String ACTION_VIEW_SHOP = "uk.co.sevendigital.android.intent.action.VIEW_SHOP";
+	/** Action launching the Your Music section. */
+	public static final String ACTION_VIEW_YOUR_MUSIC = "uk.co.sevendigital.android.intent.action.VIEW_YOUR_MUSIC";
+	/** Action launching the Downloads section. */
+	public static final String ACTION_VIEW_DOWNLOADS = "uk.co.sevendigital.android.intent.action.VIEW_DOWNLOADS";
+	/** Action playing a single track of a release. */
+	public static final String ACTION_PLAY_TRACK = "uk.co.sevendigital.android.intent.action.PLAY_TRACK";
+	/** Action playing all tracks of a release. */
+	public static final String ACTION_PLAY_RELEASE = "uk.co.sevendigital.android.intent.action.PLAY_RELEASE";
+	/** The platform's search action, which the app handles like {@link #ACTION_SEARCH}. */
+	public static final String ACTION_ANDROID_SEARCH = "android.intent.action.SEARCH";
+
+	/** Key of the 7digital artist ID, a long. */
+	public static final String EXTRA_ARTISTID = "ARTISTID";
+	/** Key of the 7digital release ID, a long. */
+	public static final String EXTRA_RELEASEID = "RELEASEID";
+	/** Key of the 7digital track ID, a long. */
+	public static final String EXTRA_TRACKID = "TRACKID";
+	/** Key of the artist name to display. */
+	public static final String EXTRA_ARTISTNAME = "ARTISTNAME";
+	/** Key of the release title to display. */
+	public static final String EXTRA_RELEASETITLE = "RELEASETITLE";
+	/** Key of the track title to display. */
+	public static final String EXTRA_TRACKTITLE = "TRACKTITLE";
+	/** Key of the track version to display. */
+	public static final String EXTRA_TRACKVERSION = "TRACKVERSION";
+	/** Key of the location of the cover to display. */
+	public static final String EXTRA_COVERURL = "COVERURL";
+	/** Key of the affiliate identifier. */
+	public static final String EXTRA_PARTNER = "uk.co.sevendigital.android.intent.extra.PARTNER";
+	/** Key of the search query, the same as the platform's <code>SearchManager.QUERY</code>. */
+	public static final String EXTRA_QUERY = "query";
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * util methods
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Returns whether the given action is one of the actions defined in this contract, excluding
+	 * {@link #ACTION_ANDROID_SEARCH}.
+	 * @param action The action to check, or <b>null</b>.
+	 */
+	public static boolean isKnownAction(String action) {
+		return action != null && (ACTION_SEARCH.equals(action) || ACTION_VIEW_ARTIST.equals(action) || ACTION_VIEW_RELEASE.equals(action)
+			|| ACTION_VIEW_SHOP.equals(action) || ACTION_VIEW_YOUR_MUSIC.equals(action) || ACTION_VIEW_DOWNLOADS.equals(action)
+			|| ACTION_PLAY_TRACK.equals(action) || ACTION_PLAY_RELEASE.equals(action));
+	}
+
+	/**
+	 * Returns whether the given action may be sent to the 7digital Android app: any action in the app's namespace, which
+	 * includes actions newer versions of the app may add, or {@link #ACTION_ANDROID_SEARCH}.
+	 * @param action The action to check, or <b>null</b>.
+	 */
+	public static boolean isValidAction(String action) {
+		return action != null && (action.startsWith(PACKAGE_NAME) || action.equals(ACTION_ANDROID_SEARCH));
+	}
+
+	/**
+	 * Checks the given action the way the SDK checks every Intent before starting it.
+	 * @param action The action to check.
+	 * @throws IllegalArgumentException If the action is empty or not valid according to {@link #isValidAction(String)}.
+	 */
+	public static void validateAction(String action) {
+		if (action == null || action.length() == 0) throw new IllegalArgumentException("Parameter action should not be null or empty.");
+		if (!isValidAction(action)) throw new IllegalArgumentException("Parameter action should be a valid 7digital (or Android search) action.");
+	}
+
+}
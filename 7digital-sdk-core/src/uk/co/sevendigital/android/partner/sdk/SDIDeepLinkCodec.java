@@ -0,0 +1,410 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Generates and parses the canonical deep link URIs for the actions in {@link SDIContract}, so that web pages,
+ * push notifications and QR codes can trigger them. The URIs take the following forms, all of which accept an
+ * optional {@link #PARAM_PARTNER} query parameter carrying the affiliate identifier:
+ * <ul>
+ * <li><code>sevendigital://search?q={query}</code></li>
+ * <li><code>sevendigital://shop</code>, <code>sevendigital://yourmusic</code>, <code>sevendigital://downloads</code></li>
+ * <li><code>sevendigital://release/{releaseId}[/track/{trackId}]</code>, optionally with the display parameters
+ * {@link #PARAM_RELEASE_TITLE}, {@link #PARAM_TRACK_TITLE}, {@link #PARAM_TRACK_VERSION}, {@link #PARAM_COVER_URL},
+ * {@link #PARAM_ARTIST_ID} and {@link #PARAM_ARTIST_NAME}</li>
+ * <li><code>sevendigital://artist/{artistId}</code>, optionally with {@link #PARAM_ARTIST_NAME}</li>
+ * <li><code>sevendigital://play/release/{releaseId}[/track/{trackId}]</code></li>
+ * </ul>
+ *
+ * Parsing works on character offsets of the given {@link CharSequence}: no substrings are created except for the
+ * string values that are actually returned, and identifiers are read in place. The codec doesn't depend on Android, so
+ * backend services can generate and parse the same links; on Android, <code>SDIDeepLink</code> adds the methods taking
+ * and returning Intents.
+ *
+ * Like {@link SDIWebLinkWriter}, an instance writes every link into the same buffer. The {@link CharSequence}
+ * returned by the build methods is only valid until the next call. Instances are not thread-safe; the static parse
+ * methods are.
+ */
+public class SDIDeepLinkCodec {
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * constants
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/** The URI scheme of the deep links. */
+	public static final String SCHEME = "sevendigital";
+
+	/** Host of search links. */
+	public static final String HOST_SEARCH = "search";
+	/** Host of shop links. */
+	public static final String HOST_SHOP = "shop";
+	/** Host of Your Music links. */
+	public static final String HOST_YOUR_MUSIC = "yourmusic";
+	/** Host of Downloads links. */
+	public static final String HOST_DOWNLOADS = "downloads";
+	/** Host of release (and track) links. */
+	public static final String HOST_RELEASE = "release";
+	/** Host of artist links. */
+	public static final String HOST_ARTIST = "artist";
+	/** Host of play links, followed by a release path. */
+	public static final String HOST_PLAY = "play";
+	/** Path segment of a track within a release, followed by the track ID. */
+	public static final String SEGMENT_TRACK = "track";
+
+	/** Query parameter carrying the search query. */
+	public static final String PARAM_QUERY = SDIWebLinkWriter.PARAM_QUERY;
+	/** Query parameter carrying the affiliate identifier. */
+	public static final String PARAM_PARTNER = SDIWebLinkWriter.PARAM_PARTNER;
+	/** Query parameter carrying the release title to display. */
+	public static final String PARAM_RELEASE_TITLE = "releaseTitle";
+	/** Query parameter carrying the track title to display. */
+	public static final String PARAM_TRACK_TITLE = "trackTitle";
+	/** Query parameter carrying the track version to display. */
+	public static final String PARAM_TRACK_VERSION = "trackVersion";
+	/** Query parameter carrying the location of the cover to display. */
+	public static final String PARAM_COVER_URL = "coverUrl";
+	/** Query parameter carrying the 7digital artist ID of a release or track. */
+	public static final String PARAM_ARTIST_ID = "artistId";
+	/** Query parameter carrying the artist name to display. */
+	public static final String PARAM_ARTIST_NAME = "artistName";
+
+	private static final String PREFIX = SCHEME + "://";
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * fields
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private final StringBuilder mBuffer = new StringBuilder(64);
+	private boolean mHasQuery;
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * generating
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Generates the deep link for the given request.
+	 * @param request The request to generate the link for.
+	 * @return The link, valid until the next call on this instance.
+	 */
+	public CharSequence build(SDIRequest request) {
+		if (request == null) throw new IllegalArgumentException("Parameter request should not be null.");
+		if (request instanceof SDIRequest.Search) {
+			begin(HOST_SEARCH);
+			appendParameter(PARAM_QUERY, ((SDIRequest.Search) request).getQuery());
+		} else if (request instanceof SDIRequest.ViewShop) {
+			begin(HOST_SHOP);
+		} else if (request instanceof SDIRequest.ViewYourMusic) {
+			begin(HOST_YOUR_MUSIC);
+		} else if (request instanceof SDIRequest.ViewDownloads) {
+			begin(HOST_DOWNLOADS);
+		} else if (request instanceof SDIRequest.ViewRelease) {
+			SDIRequest.ViewRelease view = (SDIRequest.ViewRelease) request;
+			appendRelease(begin(HOST_RELEASE), view.getReleaseId(), view.getTrackId());
+			appendParameter(PARAM_RELEASE_TITLE, view.getReleaseTitle());
+			appendParameter(PARAM_TRACK_TITLE, view.getTrackTitle());
+			appendParameter(PARAM_TRACK_VERSION, view.getTrackVersion());
+			appendParameter(PARAM_COVER_URL, view.getCoverUrl());
+			if (view.getArtistId() != -1) appendParameter(PARAM_ARTIST_ID, view.getArtistId());
+			appendParameter(PARAM_ARTIST_NAME, view.getArtistName());
+		} else if (request instanceof SDIRequest.ViewArtist) {
+			begin(HOST_ARTIST).append('/').append(((SDIRequest.ViewArtist) request).getArtistId());
+			appendParameter(PARAM_ARTIST_NAME, ((SDIRequest.ViewArtist) request).getArtistName());
+		} else if (request instanceof SDIRequest.PlayRelease) {
+			appendRelease(begin(HOST_PLAY).append('/').append(HOST_RELEASE), ((SDIRequest.PlayRelease) request).getReleaseId(), -1);
+		} else if (request instanceof SDIRequest.PlayTrack) {
+			appendRelease(begin(HOST_PLAY).append('/').append(HOST_RELEASE), ((SDIRequest.PlayTrack) request).getReleaseId(), ((SDIRequest.PlayTrack) request).getTrackId());
+		} else {
+			throw new IllegalArgumentException("Unsupported request type " + request.getClass().getName() + ".");
+		}
+		appendParameter(PARAM_PARTNER, request.getAffiliateId());
+		return mBuffer;
+	}
+
+	/**
+	 * Same as {@link #build(SDIRequest)}, but returns a String that is safe to keep.
+	 */
+	public String buildString(SDIRequest request) {
+		return build(request).toString();
+	}
+
+	/**
+	 * Generates the deep link to the given release, optionally pointing to one of its tracks, without any display
+	 * parameters. Same as building a {@link SDIRequest.ViewRelease} with just the identifiers, without creating one.
+	 * @param releaseId The 7digital identifier for the release.
+	 * @param trackId The 7digital identifier for the track, or <b>-1</b> to link to the release only.
+	 * @param affiliateId Identifier for the affiliate/partner, or <b>null</b>.
+	 * @return The link, valid until the next call on this instance.
+	 */
+	public CharSequence release(long releaseId, long trackId, String affiliateId) {
+		if (releaseId == -1) throw new IllegalArgumentException("Parameter releaseId should not be -1.");
+		appendRelease(begin(HOST_RELEASE), releaseId, trackId);
+		appendParameter(PARAM_PARTNER, affiliateId);
+		return mBuffer;
+	}
+
+	/**
+	 * Generates the deep link to the given artist, without the artist name.
+	 * @param artistId The 7digital identifier for the artist.
+	 * @param affiliateId Identifier for the affiliate/partner, or <b>null</b>.
+	 * @return The link, valid until the next call on this instance.
+	 */
+	public CharSequence artist(long artistId, String affiliateId) {
+		if (artistId == -1) throw new IllegalArgumentException("Parameter artistId should not be -1.");
+		begin(HOST_ARTIST).append('/').append(artistId);
+		appendParameter(PARAM_PARTNER, affiliateId);
+		return mBuffer;
+	}
+
+	/**
+	 * Returns the link last generated.
+	 */
+	@Override public String toString() {
+		return mBuffer.toString();
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * parsing
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Returns whether the given URI uses the deep link scheme. Does not check whether the rest of it is valid.
+	 * @param uri The URI to check, or <b>null</b>.
+	 */
+	public static boolean isDeepLink(CharSequence uri) {
+		return uri != null && regionMatches(uri, 0, uri.length(), PREFIX, true) >= 0;
+	}
+
+	/**
+	 * Parses the given deep link into a typed request. Deep links come from untrusted sources, so malformed input is
+	 * reported by returning <b>null</b> rather than by throwing. Unknown query parameters are ignored.
+	 * @param uri The deep link to parse, or <b>null</b>.
+	 * @return The request, or <b>null</b> if the URI is not a valid deep link.
+	 */
+	public static SDIRequest parse(CharSequence uri) {
+		if (uri == null) return null;
+		int length = uri.length();
+		int end = length;
+		for (int i = 0; i < length; i++) {
+			char c = uri.charAt(i);
+			if (c == '#') {
+				length = i;
+				end = Math.min(end, i);
+				break;
+			}
+			if (c == '?' && end == length) end = i;
+		}
+		int position = regionMatches(uri, 0, end, PREFIX, true);
+		if (position < 0) return null;
+		Query query = new Query(uri, end < length ? end + 1 : length, length);
+		// a trailing slash is tolerated
+		if (end > position && uri.charAt(end - 1) == '/') end--;
+
+		int next;
+		if ((next = segment(uri, position, end, HOST_RELEASE)) >= 0) {
+			Path path = new Path(uri, next, end);
+			if (!path.readRelease()) return null;
+			long artistId = query.getId(PARAM_ARTIST_ID);
+			if (artistId == Long.MIN_VALUE) return null;
+			return new SDIRequest.ViewRelease(path.releaseId, query.get(PARAM_RELEASE_TITLE), path.trackId, query.get(PARAM_TRACK_TITLE),
+				query.get(PARAM_TRACK_VERSION), query.get(PARAM_COVER_URL), artistId, query.get(PARAM_ARTIST_NAME), query.get(PARAM_PARTNER));
+		}
+		if ((next = segment(uri, position, end, HOST_PLAY)) >= 0 && (next = segment(uri, next + 1, end, HOST_RELEASE)) >= 0) {
+			Path path = new Path(uri, next, end);
+			if (!path.readRelease()) return null;
+			if (path.trackId == -1) return new SDIRequest.PlayRelease(path.releaseId, query.get(PARAM_PARTNER));
+			return new SDIRequest.PlayTrack(path.releaseId, path.trackId, query.get(PARAM_PARTNER));
+		}
+		if ((next = segment(uri, position, end, HOST_ARTIST)) >= 0) {
+			Path path = new Path(uri, next, end);
+			long artistId = path.readId();
+			if (artistId < 0 || !path.isAtEnd()) return null;
+			return new SDIRequest.ViewArtist(artistId, query.get(PARAM_ARTIST_NAME), query.get(PARAM_PARTNER));
+		}
+		if (segment(uri, position, end, HOST_SEARCH) == end) {
+			String q = query.get(PARAM_QUERY);
+			return q != null && q.length() > 0 ? new SDIRequest.Search(q, query.get(PARAM_PARTNER)) : null;
+		}
+		if (segment(uri, position, end, HOST_SHOP) == end) return new SDIRequest.ViewShop(query.get(PARAM_PARTNER));
+		if (segment(uri, position, end, HOST_YOUR_MUSIC) == end) return new SDIRequest.ViewYourMusic(query.get(PARAM_PARTNER));
+		if (segment(uri, position, end, HOST_DOWNLOADS) == end) return new SDIRequest.ViewDownloads(query.get(PARAM_PARTNER));
+		return null;
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * internal
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private StringBuilder begin(String host) {
+		mBuffer.setLength(0);
+		mHasQuery = false;
+		return mBuffer.append(PREFIX).append(host);
+	}
+
+	private void appendRelease(StringBuilder buffer, long releaseId, long trackId) {
+		buffer.append('/').append(releaseId);
+		if (trackId != -1) buffer.append('/').append(SEGMENT_TRACK).append('/').append(trackId);
+	}
+
+	private void appendParameter(String name, String value) {
+		if (value == null || value.length() == 0) return;
+		mBuffer.append(mHasQuery ? '&' : '?').append(name).append('=');
+		SDIWebLinkWriter.appendEncoded(mBuffer, value);
+		mHasQuery = true;
+	}
+
+	private void appendParameter(String name, long value) {
+		mBuffer.append(mHasQuery ? '&' : '?').append(name).append('=').append(value);
+		mHasQuery = true;
+	}
+
+	/* returns the offset after the given text if the region [start, end) starts with it, -1 otherwise */
+	private static int regionMatches(CharSequence s, int start, int end, String text, boolean ignoreCase) {
+		if (end - start < text.length()) return -1;
+		for (int i = 0; i < text.length(); i++) {
+			char c = s.charAt(start + i);
+			if (c != text.charAt(i) && !(ignoreCase && Character.toLowerCase(c) == text.charAt(i))) return -1;
+		}
+		return start + text.length();
+	}
+
+	/* matches a whole path segment: returns the offset after it if followed by '/' or the end, -1 otherwise */
+	private static int segment(CharSequence s, int start, int end, String name) {
+		int next = regionMatches(s, start, end, name, false);
+		return next >= 0 && (next == end || s.charAt(next) == '/') ? next : -1;
+	}
+
+	/* a cursor over the path after the host, positioned at a '/' or the end */
+	private static final class Path {
+
+		private final CharSequence mUri;
+		private final int mEnd;
+		private int mPosition;
+		long releaseId = -1;
+		long trackId = -1;
+
+		Path(CharSequence uri, int position, int end) {
+			mUri = uri;
+			mPosition = position;
+			mEnd = end;
+		}
+
+		boolean isAtEnd() {
+			return mPosition == mEnd;
+		}
+
+		/* reads "/{releaseId}[/track/{trackId}]" up to the end */
+		boolean readRelease() {
+			releaseId = readId();
+			if (releaseId < 0) return false;
+			if (isAtEnd()) return true;
+			int next = segment(mUri, mPosition + 1, mEnd, SEGMENT_TRACK);
+			if (next < 0) return false;
+			mPosition = next;
+			trackId = readId();
+			return trackId >= 0 && isAtEnd();
+		}
+
+		/* reads "/{digits}", returns -1 if malformed or out of range */
+		long readId() {
+			if (mPosition >= mEnd || mUri.charAt(mPosition) != '/') return -1;
+			long id = parseId(mUri, ++mPosition, mEnd);
+			while (mPosition < mEnd && mUri.charAt(mPosition) != '/') mPosition++;
+			return id;
+		}
+	}
+
+	/* parses the digits up to the next '/' or the end, -1 if there are none, anything else or the value overflows */
+	private static long parseId(CharSequence s, int start, int end) {
+		long value = 0;
+		int i = start;
+		for (; i < end; i++) {
+			char c = s.charAt(i);
+			if (c == '/') break;
+			if (c < '0' || c > '9' || value > (Long.MAX_VALUE - (c - '0')) / 10) return -1;
+			value = value * 10 + (c - '0');
+		}
+		return i > start ? value : -1;
+	}
+
+	/* the query part of a deep link; values are located and decoded on demand */
+	private static final class Query {
+
+		private final CharSequence mUri;
+		private final int mStart;
+		private final int mEnd;
+
+		Query(CharSequence uri, int start, int end) {
+			mUri = uri;
+			mStart = start;
+			mEnd = end;
+		}
+
+		/* the decoded value of the first parameter with the given name, null if absent, empty or malformed */
+		String get(String name) {
+			for (int i = mStart; i < mEnd; ) {
+				int separator = i;
+				while (separator < mEnd && mUri.charAt(separator) != '&') separator++;
+				int value = regionMatches(mUri, i, separator, name, false);
+				if (value >= 0 && value < separator && mUri.charAt(value) == '=') return value + 1 < separator ? decode(mUri, value + 1, separator) : null;
+				i = separator + 1;
+			}
+			return null;
+		}
+
+		/* the numeric value of the given parameter, -1 if absent, Long.MIN_VALUE if malformed */
+		long getId(String name) {
+			for (int i = mStart; i < mEnd; ) {
+				int separator = i;
+				while (separator < mEnd && mUri.charAt(separator) != '&') separator++;
+				int value = regionMatches(mUri, i, separator, name, false);
+				if (value >= 0 && value < separator && mUri.charAt(value) == '=') {
+					long id = parseId(mUri, value + 1, separator);
+					return id >= 0 ? id : Long.MIN_VALUE;
+				}
+				i = separator + 1;
+			}
+			return -1;
+		}
+	}
+
+	/* percent-decodes [start, end) as UTF-8, treating '+' as space; null if malformed */
+	private static String decode(CharSequence s, int start, int end) {
+		int escapes = 0;
+		for (int i = start; i < end; i++) {
+			char c = s.charAt(i);
+			if (c == '%' || c == '+') escapes++;
+		}
+		if (escapes == 0) return s.subSequence(start, end).toString();
+		byte[] bytes = new byte[(end - start) * 3];
+		int length = 0;
+		for (int i = start; i < end; i++) {
+			char c = s.charAt(i);
+			if (c == '+') {
+				bytes[length++] = ' ';
+			} else if (c == '%') {
+				if (i + 2 >= end) return null;
+				int high = Character.digit(s.charAt(i + 1), 16), low = Character.digit(s.charAt(i + 2), 16);
+				if (high < 0 || low < 0) return null;
+				bytes[length++] = (byte) ((high << 4) | low);
+				i += 2;
+			} else if (c < 0x80) {
+				bytes[length++] = (byte) c;
+			} else {
+				// raw non-ASCII characters, e.g. from an IRI; re-encode as UTF-8
+				int count = Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(s.charAt(i + 1)) ? 2 : 1;
+				byte[] encoded = utf8(s.subSequence(i, i + count).toString());
+				i += count - 1;
+				System.arraycopy(encoded, 0, bytes, length, encoded.length);
+				length += encoded.length;
+			}
+		}
+		try { return new String(bytes, 0, length, "UTF-8"); }
+		catch (UnsupportedEncodingException e) { throw new IllegalStateException(e); }
+	}
+
+	private static byte[] utf8(String value) {
+		try { return value.getBytes("UTF-8"); }
+		catch (UnsupportedEncodingException e) { throw new IllegalStateException(e); }
+	}
+
+}
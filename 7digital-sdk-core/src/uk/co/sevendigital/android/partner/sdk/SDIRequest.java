@@ -0,0 +1,288 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+/**
+ * An immutable, typed representation of a request to the 7digital Android app, as carried by the Intents built by
+ * <code>SDIIntent.Builder</code>. There is one subclass per action; use <code>instanceof</code> or {@link #getAction()} to
+ * tell them apart. Requests are usually obtained by decoding an Intent with <code>SDIIntentParser</code>, but can also be
+ * created directly, in which case the same checks apply as in the Builder: creating a request with missing required
+ * identifiers throws an {@link IllegalArgumentException}.
+ *
+ * Requests don't depend on Android and, being immutable, may be shared between threads; plain Java code can create
+ * them and turn them into links with {@link SDIWebLinkWriter} and {@link SDIDeepLinkCodec}.
+ */
+public abstract class SDIRequest {
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * fields
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private final String mAffiliateId;
+
+	SDIRequest(String affiliateId) {
+		mAffiliateId = affiliateId;
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * getters
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/** Returns the action of this request, one of the actions defined in {@link SDIContract}. */
+	public abstract String getAction();
+
+	/** Returns the affiliate identifier passed as {@link SDIContract#EXTRA_PARTNER}, or <b>null</b> if none was passed. */
+	public String getAffiliateId() {
+		return mAffiliateId;
+	}
+
+	@Override public boolean equals(Object o) {
+		return o != null && o.getClass() == getClass() && equal(mAffiliateId, ((SDIRequest) o).mAffiliateId);
+	}
+
+	@Override public int hashCode() {
+		return getAction().hashCode() * 31 + hash(mAffiliateId);
+	}
+
+	@Override public String toString() {
+		return getClass().getSimpleName() + "[affiliateId=" + mAffiliateId + "]";
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * internal
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	static boolean equal(Object a, Object b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	static int hash(Object o) {
+		return o != null ? o.hashCode() : 0;
+	}
+
+	static int hash(long value) {
+		return (int) (value ^ (value >>> 32));
+	}
+
+	static long requireId(long id, String name) {
+		if (id == -1) throw new IllegalArgumentException("Parameter " + name + " should not be -1.");
+		return id;
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * request types
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * A shop search, see <code>SDIIntent.Builder.buildSearchIntent(String)</code>. Also decoded from
+	 * {@link SDIContract#ACTION_ANDROID_SEARCH}.
+	 */
+	public static final class Search extends SDIRequest {
+
+		private final String mQuery;
+
+		/**
+		 * @param query The query string to perform the search with. <b>Required</b>.
+		 * @param affiliateId Identifier for the affiliate/partner, or <b>null</b>.
+		 */
+		public Search(String query, String affiliateId) {
+			super(affiliateId);
+			if (query == null || query.length() == 0) throw new IllegalArgumentException("Parameter query should not be null or empty.");
+			mQuery = query;
+		}
+
+		@Override public String getAction() { return SDIContract.ACTION_SEARCH; }
+
+		/** Returns the query string to perform the search with. */
+		public String getQuery() { return mQuery; }
+
+		@Override public boolean equals(Object o) { return super.equals(o) && mQuery.equals(((Search) o).mQuery); }
+		@Override public int hashCode() { return super.hashCode() * 31 + mQuery.hashCode(); }
+		@Override public String toString() { return "Search[query=" + mQuery + ", affiliateId=" + getAffiliateId() + "]"; }
+	}
+
+	/** Launching the shop, see <code>SDIIntent.Builder.buildViewShopIntent()</code>. */
+	public static final class ViewShop extends SDIRequest {
+
+		/** @param affiliateId Identifier for the affiliate/partner, or <b>null</b>. */
+		public ViewShop(String affiliateId) { super(affiliateId); }
+
+		@Override public String getAction() { return SDIContract.ACTION_VIEW_SHOP; }
+	}
+
+	/** Launching the Your Music section, see <code>SDIIntent.Builder.buildViewYourMusicIntent()</code>. */
+	public static final class ViewYourMusic extends SDIRequest {
+
+		/** @param affiliateId Identifier for the affiliate/partner, or <b>null</b>. */
+		public ViewYourMusic(String affiliateId) { super(affiliateId); }
+
+		@Override public String getAction() { return SDIContract.ACTION_VIEW_YOUR_MUSIC; }
+	}
+
+	/** Launching the Downloads section, see <code>SDIIntent.Builder.buildViewDownloadsIntent()</code>. */
+	public static final class ViewDownloads extends SDIRequest {
+
+		/** @param affiliateId Identifier for the affiliate/partner, or <b>null</b>. */
+		public ViewDownloads(String affiliateId) { super(affiliateId); }
+
+		@Override public String getAction() { return SDIContract.ACTION_VIEW_DOWNLOADS; }
+	}
+
+	/**
+	 * Displaying the details of a release, optionally highlighting one of its tracks, see
+	 * <code>SDIIntent.Builder.buildView7digitalItem(long, String, long, String, String, String, long, String)</code>.
+	 */
+	public static final class ViewRelease extends SDIRequest {
+
+		private final long mReleaseId;
+		private final String mReleaseTitle;
+		private final long mTrackId;
+		private final String mTrackTitle;
+		private final String mTrackVersion;
+		private final String mCoverUrl;
+		private final long mArtistId;
+		private final String mArtistName;
+
+		/**
+		 * Same parameters as <code>SDIIntent.Builder.buildView7digitalItem(long, String, long, String, String, String, long, String)</code>.
+		 * @param affiliateId Identifier for the affiliate/partner, or <b>null</b>.
+		 */
+		public ViewRelease(long releaseId, String releaseTitle, long trackId, String trackTitle, String trackVersion, String coverUrl, long artistId, String artistName, String affiliateId) {
+			super(affiliateId);
+			mReleaseId = requireId(releaseId, "releaseId");
+			mReleaseTitle = releaseTitle;
+			mTrackId = trackId;
+			mTrackTitle = trackTitle;
+			mTrackVersion = trackVersion;
+			mCoverUrl = coverUrl;
+			mArtistId = artistId;
+			mArtistName = artistName;
+		}
+
+		@Override public String getAction() { return SDIContract.ACTION_VIEW_RELEASE; }
+
+		/** Returns the 7digital identifier for the release to display. */
+		public long getReleaseId() { return mReleaseId; }
+		/** Returns the title to display for the release, or <b>null</b>. */
+		public String getReleaseTitle() { return mReleaseTitle; }
+		/** Returns the 7digital identifier for the track to highlight, or <b>-1</b> for no highlight. */
+		public long getTrackId() { return mTrackId; }
+		/** Returns the title to display for the highlighted track, or <b>null</b>. */
+		public String getTrackTitle() { return mTrackTitle; }
+		/** Returns the version to display for the highlighted track, or <b>null</b>. */
+		public String getTrackVersion() { return mTrackVersion; }
+		/** Returns the location of the cover for this release/track, or <b>null</b>. */
+		public String getCoverUrl() { return mCoverUrl; }
+		/** Returns the 7digital identifier for the artist of this release/track, or <b>-1</b>. */
+		public long getArtistId() { return mArtistId; }
+		/** Returns the name of the artist of this release/track, or <b>null</b>. */
+		public String getArtistName() { return mArtistName; }
+
+		@Override public boolean equals(Object o) {
+			if (!super.equals(o)) return false;
+			ViewRelease other = (ViewRelease) o;
+			return mReleaseId == other.mReleaseId && mTrackId == other.mTrackId && mArtistId == other.mArtistId
+				&& equal(mReleaseTitle, other.mReleaseTitle) && equal(mTrackTitle, other.mTrackTitle) && equal(mTrackVersion, other.mTrackVersion)
+				&& equal(mCoverUrl, other.mCoverUrl) && equal(mArtistName, other.mArtistName);
+		}
+
+		@Override public int hashCode() {
+			int hash = super.hashCode();
+			hash = hash * 31 + hash(mReleaseId);
+			hash = hash * 31 + hash(mTrackId);
+			hash = hash * 31 + hash(mArtistId);
+			hash = hash * 31 + hash(mReleaseTitle);
+			hash = hash * 31 + hash(mTrackTitle);
+			hash = hash * 31 + hash(mTrackVersion);
+			hash = hash * 31 + hash(mCoverUrl);
+			return hash * 31 + hash(mArtistName);
+		}
+
+		@Override public String toString() {
+			return "ViewRelease[releaseId=" + mReleaseId + ", releaseTitle=" + mReleaseTitle + ", trackId=" + mTrackId + ", trackTitle=" + mTrackTitle
+				+ ", trackVersion=" + mTrackVersion + ", coverUrl=" + mCoverUrl + ", artistId=" + mArtistId + ", artistName=" + mArtistName
+				+ ", affiliateId=" + getAffiliateId() + "]";
+		}
+	}
+
+	/** Displaying the details of an artist, see <code>SDIIntent.Builder.buildView7digitalArtist(long, String)</code>. */
+	public static final class ViewArtist extends SDIRequest {
+
+		private final long mArtistId;
+		private final String mArtistName;
+
+		/**
+		 * @param artistId The 7digital identifier for the artist to display. <b>Required</b>.
+		 * @param artistName The name of the artist, or <b>null</b>.
+		 * @param affiliateId Identifier for the affiliate/partner, or <b>null</b>.
+		 */
+		public ViewArtist(long artistId, String artistName, String affiliateId) {
+			super(affiliateId);
+			mArtistId = requireId(artistId, "artistId");
+			mArtistName = artistName;
+		}
+
+		@Override public String getAction() { return SDIContract.ACTION_VIEW_ARTIST; }
+
+		/** Returns the 7digital identifier for the artist to display. */
+		public long getArtistId() { return mArtistId; }
+		/** Returns the name of the artist, or <b>null</b>. */
+		public String getArtistName() { return mArtistName; }
+
+		@Override public boolean equals(Object o) { return super.equals(o) && mArtistId == ((ViewArtist) o).mArtistId && equal(mArtistName, ((ViewArtist) o).mArtistName); }
+		@Override public int hashCode() { return (super.hashCode() * 31 + hash(mArtistId)) * 31 + hash(mArtistName); }
+		@Override public String toString() { return "ViewArtist[artistId=" + mArtistId + ", artistName=" + mArtistName + ", affiliateId=" + getAffiliateId() + "]"; }
+	}
+
+	/** Playing all tracks of a release, see <code>SDIIntent.Builder.buildPlay7digitalRelease(long)</code>. */
+	public static final class PlayRelease extends SDIRequest {
+
+		private final long mReleaseId;
+
+		/**
+		 * @param releaseId The 7digital identifier for the release to play. <b>Required</b>.
+		 * @param affiliateId Identifier for the affiliate/partner, or <b>null</b>.
+		 */
+		public PlayRelease(long releaseId, String affiliateId) {
+			super(affiliateId);
+			mReleaseId = requireId(releaseId, "releaseId");
+		}
+
+		@Override public String getAction() { return SDIContract.ACTION_PLAY_RELEASE; }
+
+		/** Returns the 7digital identifier for the release to play. */
+		public long getReleaseId() { return mReleaseId; }
+
+		@Override public boolean equals(Object o) { return super.equals(o) && mReleaseId == ((PlayRelease) o).mReleaseId; }
+		@Override public int hashCode() { return super.hashCode() * 31 + hash(mReleaseId); }
+		@Override public String toString() { return "PlayRelease[releaseId=" + mReleaseId + ", affiliateId=" + getAffiliateId() + "]"; }
+	}
+
+	/** Playing a single track of a release, see <code>SDIIntent.Builder.buildPlay7digitalTrack(long, long)</code>. */
+	public static final class PlayTrack extends SDIRequest {
+
+		private final long mReleaseId;
+		private final long mTrackId;
+
+		/**
+		 * @param releaseId The 7digital identifier for the release to play. <b>Required</b>.
+		 * @param trackId The 7digital identifier for the track to play for this release. <b>Required</b>.
+		 * @param affiliateId Identifier for the affiliate/partner, or <b>null</b>.
+		 */
+		public PlayTrack(long releaseId, long trackId, String affiliateId) {
+			super(affiliateId);
+			mReleaseId = requireId(releaseId, "releaseId");
+			mTrackId = requireId(trackId, "trackId");
+		}
+
+		@Override public String getAction() { return SDIContract.ACTION_PLAY_TRACK; }
+
+		/** Returns the 7digital identifier for the release to play. */
+		public long getReleaseId() { return mReleaseId; }
+		/** Returns the 7digital identifier for the track to play. */
+		public long getTrackId() { return mTrackId; }
+
+		@Override public boolean equals(Object o) { return super.equals(o) && mReleaseId == ((PlayTrack) o).mReleaseId && mTrackId == ((PlayTrack) o).mTrackId; }
+		@Override public int hashCode() { return (super.hashCode() * 31 + hash(mReleaseId)) * 31 + hash(mTrackId); }
+		@Override public String toString() { return "PlayTrack[releaseId=" + mReleaseId + ", trackId=" + mTrackId + ", affiliateId=" + getAffiliateId() + "]"; }
+	}
+
+}
@@ -0,0 +1,194 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+/**
+ * Generates links to the 7digital website that match the actions in {@link SDIContract}, including the
+ * {@link SDIContract#EXTRA_PARTNER} affiliate identifier. This allows users that don't have the 7digital Android app
+ * installed to land on the release, track, artist or search results they were after, rather than on the homepage. The
+ * writer doesn't depend on Android, so backend services can generate the same links; on Android,
+ * <code>SDIWebLinkBuilder</code> adds the methods taking an Intent.
+ *
+ * A writer writes every link into the same buffer and percent-encodes values itself, which keeps the garbage down
+ * when generating links for a whole page of results. The {@link CharSequence} returned by the build methods is only
+ * valid until the next call; use {@link #toString()} or one of the <code>String</code> returning methods to keep it.
+ * Instances are not thread-safe, but cheap: use one per thread, e.g. through a {@link ThreadLocal}.
+ */
+public class SDIWebLinkWriter {
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * constants
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/** Path of the search page, which takes the query as {@link #PARAM_QUERY} parameter. */
+	public static final String PATH_SEARCH = "/search";
+	/** Path of a release page, followed by the release ID. */
+	public static final String PATH_RELEASE = "/release/";
+	/** Path segment of a track within a release page, followed by the track ID. */
+	public static final String PATH_TRACK = "/track/";
+	/** Path of an artist page, followed by the artist ID. */
+	public static final String PATH_ARTIST = "/artist/";
+	/** Path of the user's music locker, used for both the 'your music' and 'downloads' sections. */
+	public static final String PATH_YOUR_MUSIC = "/yourmusic";
+
+	/** Query parameter carrying the search query. */
+	public static final String PARAM_QUERY = "q";
+	/** Query parameter carrying the affiliate identifier. */
+	public static final String PARAM_PARTNER = "partner";
+
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * fields
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private final StringBuilder mBuffer = new StringBuilder(128);
+	private boolean mHasQuery;
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * util methods
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Generates the website link matching the given request.
+	 * @param request The request to generate the link for.
+	 * @return The link, valid until the next call on this writer.
+	 */
+	public CharSequence build(SDIRequest request) {
+		if (request == null) throw new IllegalArgumentException("Parameter request should not be null.");
+		String affiliateId = request.getAffiliateId();
+		if (request instanceof SDIRequest.Search) return search(((SDIRequest.Search) request).getQuery(), affiliateId);
+		if (request instanceof SDIRequest.ViewRelease) return release(((SDIRequest.ViewRelease) request).getReleaseId(), ((SDIRequest.ViewRelease) request).getTrackId(), affiliateId);
+		if (request instanceof SDIRequest.ViewArtist) return artist(((SDIRequest.ViewArtist) request).getArtistId(), affiliateId);
+		if (request instanceof SDIRequest.PlayRelease) return release(((SDIRequest.PlayRelease) request).getReleaseId(), -1, affiliateId);
+		if (request instanceof SDIRequest.PlayTrack) return release(((SDIRequest.PlayTrack) request).getReleaseId(), ((SDIRequest.PlayTrack) request).getTrackId(), affiliateId);
+		if (request instanceof SDIRequest.ViewYourMusic || request instanceof SDIRequest.ViewDownloads) return yourMusic(affiliateId);
+		return shop(affiliateId);
+	}
+
+	/**
+	 * Same as {@link #build(SDIRequest)}, but returns a String that is safe to keep.
+	 */
+	public String buildString(SDIRequest request) {
+		return build(request).toString();
+	}
+
+	/**
+	 * Generates a link to the search results for the given query.
+	 * @param query The query to search for.
+	 * @param affiliateId Identifier for the affiliate/partner, or <b>null</b>.
+	 */
+	public CharSequence search(CharSequence query, String affiliateId) {
+		if (query == null || query.length() == 0) throw new IllegalArgumentException("Parameter query should not be null or empty.");
+		begin().append(PATH_SEARCH);
+		appendParameter(PARAM_QUERY, query);
+		return end(affiliateId);
+	}
+
+	/**
+	 * Generates a link to the given release, optionally pointing to one of its tracks.
+	 * @param releaseId The 7digital identifier for the release.
+	 * @param trackId The 7digital identifier for the track, or <b>-1</b> to link to the release only.
+	 * @param affiliateId Identifier for the affiliate/partner, or <b>null</b>.
+	 */
+	public CharSequence release(long releaseId, long trackId, String affiliateId) {
+		if (releaseId == -1) throw new IllegalArgumentException("Parameter releaseId should not be -1.");
+		begin().append(PATH_RELEASE).append(releaseId);
+		if (trackId != -1) mBuffer.append(PATH_TRACK).append(trackId);
+		return end(affiliateId);
+	}
+
+	/**
+	 * Generates a link to the given artist.
+	 * @param artistId The 7digital identifier for the artist.
+	 * @param affiliateId Identifier for the affiliate/partner, or <b>null</b>.
+	 */
+	public CharSequence artist(long artistId, String affiliateId) {
+		if (artistId == -1) throw new IllegalArgumentException("Parameter artistId should not be -1.");
+		begin().append(PATH_ARTIST).append(artistId);
+		return end(affiliateId);
+	}
+
+	/**
+	 * Generates a link to the user's music locker.
+	 * @param affiliateId Identifier for the affiliate/partner, or <b>null</b>.
+	 */
+	public CharSequence yourMusic(String affiliateId) {
+		begin().append(PATH_YOUR_MUSIC);
+		return end(affiliateId);
+	}
+
+	/**
+	 * Generates a link to the 7digital homepage.
+	 * @param affiliateId Identifier for the affiliate/partner, or <b>null</b>.
+	 */
+	public CharSequence shop(String affiliateId) {
+		begin();
+		return end(affiliateId);
+	}
+
+	/**
+	 * Returns the link last generated.
+	 */
+	@Override public String toString() {
+		return mBuffer.toString();
+	}
+
+	/**
+	 * Appends the given value to the buffer, percent-encoding every character that is not unreserved according to
+	 * RFC 3986. Characters outside of ASCII are encoded as UTF-8.
+	 * @param buffer The buffer to append to.
+	 * @param value The value to encode.
+	 * @return The given buffer, for chaining.
+	 */
+	public static StringBuilder appendEncoded(StringBuilder buffer, CharSequence value) {
+		for (int i = 0, length = value.length(); i < length; i++) {
+			char c = value.charAt(i);
+			if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '_' || c == '.' || c == '~') {
+				buffer.append(c);
+			} else if (c < 0x80) {
+				appendEscaped(buffer, c);
+			} else if (c < 0x800) {
+				appendEscaped(buffer, 0xc0 | (c >> 6));
+				appendEscaped(buffer, 0x80 | (c & 0x3f));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				appendEscaped(buffer, 0xf0 | (codePoint >> 18));
+				appendEscaped(buffer, 0x80 | ((codePoint >> 12) & 0x3f));
+				appendEscaped(buffer, 0x80 | ((codePoint >> 6) & 0x3f));
+				appendEscaped(buffer, 0x80 | (codePoint & 0x3f));
+			} else {
+				// lone surrogates can't be represented in UTF-8, encode them as replacement character
+				if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) c = '\ufffd';
+				appendEscaped(buffer, 0xe0 | (c >> 12));
+				appendEscaped(buffer, 0x80 | ((c >> 6) & 0x3f));
+				appendEscaped(buffer, 0x80 | (c & 0x3f));
+			}
+		}
+		return buffer;
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * internal
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private StringBuilder begin() {
+		mBuffer.setLength(0);
+		mHasQuery = false;
+		return mBuffer.append(SDIContract.WEBSITE_URL);
+	}
+
+	private CharSequence end(String affiliateId) {
+		if (affiliateId != null && affiliateId.length() > 0) appendParameter(PARAM_PARTNER, affiliateId);
+		return mBuffer;
+	}
+
+	private void appendParameter(String name, CharSequence value) {
+		mBuffer.append(mHasQuery ? '&' : '?').append(name).append('=');
+		appendEncoded(mBuffer, value);
+		mHasQuery = true;
+	}
+
+	private static void appendEscaped(StringBuilder buffer, int b) {
+		buffer.append('%').append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+	}
+
+}
@@ -0,0 +1,516 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A command-line tool that generates the affiliate links for a catalogue export: for every row of release, track and
+ * artist IDs it writes the matching website link ({@link SDIWebLinkWriter}) and app deep link ({@link SDIDeepLinkCodec}),
+ * both carrying the affiliate identifier, so that feeds follow the same conventions as the SDK.
+ * <pre>
+ * java -jar 7digital-sdk-core.jar [--partner id] [--format csv|jsonl] [--threads n] [input|- [output|-]]
+ * </pre>
+ *
+ * Input is read from the given file or standard input, one row per line:
+ * <ul>
+ * <li>CSV: <code>releaseId,trackId,artistId</code>, with empty or <code>-1</code> fields for absent IDs. A first line
+ * that isn't a row, e.g. a header, is ignored.</li>
+ * <li>JSON lines: objects with the numeric fields <code>releaseId</code>, <code>trackId</code> and
+ * <code>artistId</code>, each of which may be absent or <code>null</code>. Other fields are ignored.</li>
+ * </ul>
+ * A row with a release ID links to that release (and track, if given), a row with only an artist ID to that artist.
+ * Every row is written to the given file or standard output in the input's format, followed by the two links:
+ * <code>releaseId,trackId,artistId,webLink,deepLink</code> for CSV, and an object with the present IDs and the fields
+ * <code>webLink</code> and <code>deepLink</code> for JSON lines. Rows that can't be linked are skipped and counted.
+ *
+ * The input is read through NIO channels in chunks of whole lines, which worker threads turn into links in parallel;
+ * chunks are written in the order they were read, so the output follows the input. A fixed number of chunks is in
+ * flight at any time, which keeps memory use constant however large the export is.
+ */
+public class SDILinkExport {
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * constants
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/** Comma-separated values: <code>releaseId,trackId,artistId</code>. */
+	public static final int FORMAT_CSV = 0;
+	/** One JSON object per line. */
+	public static final int FORMAT_JSON_LINES = 1;
+
+	private static final String USAGE = "Usage: java -jar 7digital-sdk-core.jar [--partner id] [--format csv|jsonl] [--threads n] [input|- [output|-]]";
+
+	/* a chunk holds whole lines only, so this is also the maximum length of a line */
+	private static final int CHUNK_BYTES = 256 * 1024;
+	/* bounds the output of a chunk, as short rows produce much more output than input */
+	private static final int CHUNK_MAX_ROWS = 4096;
+	/* enough chunks to keep every worker busy while the reader fills and the writer drains one */
+	private static final int CHUNKS_PER_WORKER = 2;
+
+	private static final int RELEASE = 0;
+	private static final int TRACK = 1;
+	private static final int ARTIST = 2;
+	private static final byte[][] JSON_KEYS = { ascii("\"releaseId\""), ascii("\"trackId\""), ascii("\"artistId\"") };
+	private static final byte[] JSON_WEB_LINK = ascii("\"webLink\":\"");
+	private static final byte[] JSON_DEEP_LINK = ascii("\",\"deepLink\":\"");
+	/* the longest bytes written per row besides the links: three IDs with their JSON keys and the punctuation */
+	private static final int ROW_OVERHEAD = 3 * (20 + 14) + 32;
+
+	/* marks the end of the input in the queues */
+	private static final Chunk END = new Chunk(0);
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * fields
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private final String mAffiliateId;
+	private final int mFormat;
+	private final int mThreads;
+
+	private long mRows;
+	private long mSkippedRows;
+
+	/**
+	 * Creates an export.
+	 * @param affiliateId Identifier for the affiliate/partner added to every link, or <b>null</b>.
+	 * @param format The format of input and output, either {@link #FORMAT_CSV} or {@link #FORMAT_JSON_LINES}.
+	 * @param threads The number of worker threads generating links.
+	 */
+	public SDILinkExport(String affiliateId, int format, int threads) {
+		if (format != FORMAT_CSV && format != FORMAT_JSON_LINES) throw new IllegalArgumentException("Parameter format should be FORMAT_CSV or FORMAT_JSON_LINES.");
+		if (threads <= 0) throw new IllegalArgumentException("Parameter threads should be positive.");
+		mAffiliateId = affiliateId;
+		mFormat = format;
+		mThreads = threads;
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * methods
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Reads all rows from the given channel and writes their links to the other, on the calling thread and the worker
+	 * threads. Neither channel is closed.
+	 * @param in The channel to read rows from.
+	 * @param out The channel to write the rows and links to.
+	 * @return The number of rows written.
+	 */
+	public long run(ReadableByteChannel in, WritableByteChannel out) throws IOException, InterruptedException {
+		if (in == null) throw new IllegalArgumentException("Parameter in should not be null.");
+		if (out == null) throw new IllegalArgumentException("Parameter out should not be null.");
+		mRows = mSkippedRows = 0;
+		int chunks = mThreads * CHUNKS_PER_WORKER + 2;
+		BlockingQueue<Chunk> free = new ArrayBlockingQueue<Chunk>(chunks);
+		for (int i = 0; i < chunks; i++) free.add(new Chunk(CHUNK_BYTES));
+		// both hold every chunk plus the end markers, so that the reader never blocks on them
+		BlockingQueue<Chunk> work = new ArrayBlockingQueue<Chunk>(chunks + mThreads);
+		BlockingQueue<Chunk> ordered = new ArrayBlockingQueue<Chunk>(chunks + 1);
+
+		Reader reader = new Reader(in, free, work, ordered, mThreads);
+		Thread[] threads = new Thread[mThreads + 1];
+		threads[0] = new Thread(reader, "SDILinkExport-reader");
+		for (int i = 1; i < threads.length; i++) threads[i] = new Thread(new Worker(work), "SDILinkExport-worker-" + i);
+		for (Thread thread : threads) {
+			thread.setDaemon(true);
+			thread.start();
+		}
+		try {
+			// the reader queues chunks in input order, so writing them in queue order keeps the output in order
+			for (Chunk chunk; (chunk = ordered.take()) != END; ) {
+				chunk.await();
+				while (chunk.out.hasRemaining()) out.write(chunk.out);
+				mRows += chunk.rows;
+				mSkippedRows += chunk.skippedRows;
+				free.put(chunk);
+			}
+			if (reader.error != null) throw reader.error;
+			return mRows;
+		} finally {
+			// only stops anything if writing failed, as the threads are done otherwise
+			for (Thread thread : threads) thread.interrupt();
+		}
+	}
+
+	/**
+	 * Returns the number of rows skipped by the last run because they had no release or artist ID, or an ID that
+	 * isn't a number.
+	 */
+	public long getSkippedRows() {
+		return mSkippedRows;
+	}
+
+	/**
+	 * Runs the export from the command line, see the class documentation for the arguments.
+	 */
+	public static void main(String[] args) {
+		String affiliateId = null;
+		int format = FORMAT_CSV;
+		int threads = Runtime.getRuntime().availableProcessors();
+		String input = "-";
+		String output = "-";
+		int files = 0;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if ("--partner".equals(args[i]) && i + 1 < args.length) affiliateId = args[++i];
+				else if ("--format".equals(args[i]) && i + 1 < args.length) format = parseFormat(args[++i]);
+				else if ("--threads".equals(args[i]) && i + 1 < args.length) threads = Integer.parseInt(args[++i]);
+				else if (files == 0 && !args[i].startsWith("--")) { input = args[i]; files++; }
+				else if (files == 1 && !args[i].startsWith("--")) { output = args[i]; files++; }
+				else throw new IllegalArgumentException("Unknown argument " + args[i] + ".");
+			}
+			if (threads <= 0) throw new IllegalArgumentException("Parameter threads should be positive.");
+		} catch (IllegalArgumentException e) {
+			// also covers a NumberFormatException from --threads
+			System.err.println(USAGE);
+			System.exit(2);
+			return;
+		}
+
+		FileInputStream in = null;
+		FileOutputStream out = null;
+		try {
+			in = input.equals("-") ? new FileInputStream(FileDescriptor.in) : new FileInputStream(input);
+			out = output.equals("-") ? new FileOutputStream(FileDescriptor.out) : new FileOutputStream(output);
+			SDILinkExport export = new SDILinkExport(affiliateId, format, threads);
+			export.run(in.getChannel(), out.getChannel());
+			if (export.getSkippedRows() > 0) System.err.println("Skipped " + export.getSkippedRows() + " rows without a valid release or artist ID.");
+		} catch (IOException e) {
+			System.err.println("Export failed: " + e.getMessage());
+			System.exit(1);
+		} catch (InterruptedException e) {
+			System.exit(1);
+		} finally {
+			close(in);
+			close(out);
+		}
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * internal
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private static int parseFormat(String format) {
+		if ("csv".equals(format)) return FORMAT_CSV;
+		if ("jsonl".equals(format)) return FORMAT_JSON_LINES;
+		throw new IllegalArgumentException("Unknown format " + format + ".");
+	}
+
+	private static void close(FileInputStream in) {
+		try { if (in != null) in.close(); }
+		catch (IOException e) { /* nothing left to do */ }
+	}
+
+	private static void close(FileOutputStream out) {
+		try { if (out != null) out.close(); }
+		catch (IOException e) { /* nothing left to do */ }
+	}
+
+	private static byte[] ascii(String value) {
+		byte[] bytes = new byte[value.length()];
+		for (int i = 0; i < bytes.length; i++) bytes[i] = (byte) value.charAt(i);
+		return bytes;
+	}
+
+	/* a block of whole input lines and the output generated for them, reused for the whole run */
+	private static final class Chunk {
+
+		final ByteBuffer in;
+		ByteBuffer out;
+		/* whether this holds the first line of the input, which may be a header */
+		boolean first;
+		int rows;
+		int skippedRows;
+
+		private boolean mDone;
+		private RuntimeException mError;
+
+		Chunk(int capacity) {
+			in = ByteBuffer.allocate(capacity);
+			out = ByteBuffer.allocate(capacity * 4);
+		}
+
+		synchronized void finish(RuntimeException error) {
+			mError = error;
+			mDone = true;
+			notifyAll();
+		}
+
+		synchronized void await() throws InterruptedException {
+			while (!mDone) wait();
+			mDone = false;
+			if (mError != null) throw mError;
+		}
+	}
+
+	/* fills chunks with whole lines, and queues them for the workers and, in input order, for the writer */
+	private static final class Reader implements Runnable {
+
+		private final ReadableByteChannel mChannel;
+		private final BlockingQueue<Chunk> mFree;
+		private final BlockingQueue<Chunk> mWork;
+		private final BlockingQueue<Chunk> mOrdered;
+		private final int mWorkers;
+
+		volatile IOException error;
+
+		Reader(ReadableByteChannel channel, BlockingQueue<Chunk> free, BlockingQueue<Chunk> work, BlockingQueue<Chunk> ordered, int workers) {
+			mChannel = channel;
+			mFree = free;
+			mWork = work;
+			mOrdered = ordered;
+			mWorkers = workers;
+		}
+
+		@Override public void run() {
+			try {
+				read();
+			} catch (IOException e) {
+				error = e;
+			} catch (InterruptedException e) {
+				return;
+			}
+			// the writer checks for an error after the end marker, which is why it is queued in either case
+			mOrdered.add(END);
+			for (int i = 0; i < mWorkers; i++) mWork.add(END);
+		}
+
+		private void read() throws IOException, InterruptedException {
+			// the partial line at the end of a chunk, moved to the start of the next one
+			byte[] carry = new byte[CHUNK_BYTES];
+			int carryLength = 0;
+			boolean first = true;
+			boolean eof = false;
+			while (!eof || carryLength > 0) {
+				Chunk chunk = mFree.take();
+				ByteBuffer buffer = chunk.in;
+				buffer.clear();
+				buffer.put(carry, 0, carryLength);
+				while (!eof && buffer.hasRemaining()) eof = mChannel.read(buffer) < 0;
+				int length = buffer.position();
+				int cut = cut(buffer.array(), length, eof);
+				if (cut == 0 && length > 0) throw new IOException("Line longer than " + CHUNK_BYTES + " bytes.");
+				carryLength = length - cut;
+				System.arraycopy(buffer.array(), cut, carry, 0, carryLength);
+				buffer.flip().limit(cut);
+				chunk.first = first;
+				first = false;
+				mOrdered.put(chunk);
+				mWork.put(chunk);
+			}
+		}
+
+		/* the end of the last whole line, or of the line that reaches the row limit; everything at the end of input */
+		private static int cut(byte[] bytes, int length, boolean eof) {
+			int rows = 0;
+			int cut = 0;
+			for (int i = 0; i < length; i++) {
+				if (bytes[i] != '\n') continue;
+				cut = i + 1;
+				if (++rows == CHUNK_MAX_ROWS) return cut;
+			}
+			return eof ? length : cut;
+		}
+	}
+
+	/* turns the lines of a chunk into rows with links, with its own link builders */
+	private final class Worker implements Runnable {
+
+		private final BlockingQueue<Chunk> mWork;
+		private final SDIWebLinkWriter mWebLinks = new SDIWebLinkWriter();
+		private final SDIDeepLinkCodec mDeepLinks = new SDIDeepLinkCodec();
+		private final long[] mIds = new long[3];
+
+		Worker(BlockingQueue<Chunk> work) {
+			mWork = work;
+		}
+
+		@Override public void run() {
+			try {
+				for (Chunk chunk; (chunk = mWork.take()) != END; ) {
+					try {
+						process(chunk);
+						chunk.finish(null);
+					} catch (RuntimeException e) {
+						chunk.finish(e);
+					}
+				}
+			} catch (InterruptedException e) {
+				// the export failed
+			}
+		}
+
+		private void process(Chunk chunk) {
+			byte[] in = chunk.in.array();
+			int end = chunk.in.limit();
+			chunk.out.clear();
+			chunk.rows = chunk.skippedRows = 0;
+			for (int start = 0; start < end; ) {
+				int lineEnd = start;
+				while (lineEnd < end && in[lineEnd] != '\n') lineEnd++;
+				int next = lineEnd + 1;
+				if (lineEnd > start && in[lineEnd - 1] == '\r') lineEnd--;
+				if (!isBlank(in, start, lineEnd)) {
+					boolean parsed = mFormat == FORMAT_CSV ? parseCsv(in, start, lineEnd, mIds) : parseJson(in, start, lineEnd, mIds);
+					// a track can only be linked within its release
+					if (parsed && (mIds[RELEASE] != -1 || mIds[ARTIST] != -1) && (mIds[TRACK] == -1 || mIds[RELEASE] != -1)) {
+						writeRow(chunk);
+						chunk.rows++;
+					} else if (!(chunk.first && start == 0 && mFormat == FORMAT_CSV)) {
+						chunk.skippedRows++;
+					}
+				}
+				start = next;
+			}
+			chunk.out.flip();
+		}
+
+		private void writeRow(Chunk chunk) {
+			CharSequence webLink;
+			CharSequence deepLink;
+			if (mIds[RELEASE] != -1) {
+				webLink = mWebLinks.release(mIds[RELEASE], mIds[TRACK], mAffiliateId);
+				deepLink = mDeepLinks.release(mIds[RELEASE], mIds[TRACK], mAffiliateId);
+			} else {
+				webLink = mWebLinks.artist(mIds[ARTIST], mAffiliateId);
+				deepLink = mDeepLinks.artist(mIds[ARTIST], mAffiliateId);
+			}
+
+			ByteBuffer out = ensureCapacity(chunk, ROW_OVERHEAD + webLink.length() + deepLink.length());
+			byte[] bytes = out.array();
+			int position = out.position();
+			if (mFormat == FORMAT_CSV) {
+				for (int i = 0; i < 3; i++) {
+					if (mIds[i] != -1) position = putLong(bytes, position, mIds[i]);
+					bytes[position++] = ',';
+				}
+				position = putAscii(bytes, position, webLink);
+				bytes[position++] = ',';
+				position = putAscii(bytes, position, deepLink);
+			} else {
+				bytes[position++] = '{';
+				for (int i = 0; i < 3; i++) {
+					if (mIds[i] == -1) continue;
+					position = putBytes(bytes, position, JSON_KEYS[i]);
+					bytes[position++] = ':';
+					position = putLong(bytes, position, mIds[i]);
+					bytes[position++] = ',';
+				}
+				// links are percent-encoded, so they never need JSON escaping
+				position = putBytes(bytes, position, JSON_WEB_LINK);
+				position = putAscii(bytes, position, webLink);
+				position = putBytes(bytes, position, JSON_DEEP_LINK);
+				position = putAscii(bytes, position, deepLink);
+				bytes[position++] = '"';
+				bytes[position++] = '}';
+			}
+			bytes[position++] = '\n';
+			out.position(position);
+		}
+	}
+
+	/* grows the output of the chunk, which then keeps the larger buffer for the rest of the run */
+	private static ByteBuffer ensureCapacity(Chunk chunk, int needed) {
+		ByteBuffer out = chunk.out;
+		if (out.remaining() >= needed) return out;
+		ByteBuffer grown = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + needed));
+		out.flip();
+		grown.put(out);
+		chunk.out = grown;
+		return grown;
+	}
+
+	private static boolean isBlank(byte[] bytes, int start, int end) {
+		for (int i = start; i < end; i++) if (bytes[i] != ' ' && bytes[i] != '\t') return false;
+		return true;
+	}
+
+	/* releaseId,trackId,artistId; missing trailing fields are absent */
+	private static boolean parseCsv(byte[] bytes, int start, int end, long[] ids) {
+		int field = 0;
+		for (int i = start; field < 3; field++) {
+			int separator = i;
+			while (separator < end && bytes[separator] != ',') separator++;
+			ids[field] = i <= end ? parseId(bytes, i, separator) : -1;
+			if (ids[field] == Long.MIN_VALUE) return false;
+			i = separator + 1;
+		}
+		return true;
+	}
+
+	/* looks up each key as "key" followed by a colon; this doesn't validate the rest of the object */
+	private static boolean parseJson(byte[] bytes, int start, int end, long[] ids) {
+		for (int field = 0; field < 3; field++) {
+			ids[field] = -1;
+			byte[] key = JSON_KEYS[field];
+			for (int i = indexOf(bytes, start, end, key); i >= 0; i = indexOf(bytes, i + 1, end, key)) {
+				int value = i + key.length;
+				while (value < end && bytes[value] == ' ') value++;
+				if (value == end || bytes[value] != ':') continue;
+				int valueEnd = ++value;
+				while (valueEnd < end && bytes[valueEnd] != ',' && bytes[valueEnd] != '}') valueEnd++;
+				ids[field] = parseId(bytes, value, valueEnd);
+				if (ids[field] == Long.MIN_VALUE) return false;
+				break;
+			}
+		}
+		return true;
+	}
+
+	/* an optionally quoted number; -1 if empty, -1 or null, Long.MIN_VALUE if anything else */
+	private static long parseId(byte[] bytes, int start, int end) {
+		while (start < end && bytes[start] == ' ') start++;
+		while (end > start && bytes[end - 1] == ' ') end--;
+		if (end - start >= 2 && bytes[start] == '"' && bytes[end - 1] == '"') {
+			start++;
+			end--;
+		}
+		if (start == end) return -1;
+		if (end - start == 2 && bytes[start] == '-' && bytes[start + 1] == '1') return -1;
+		if (end - start == 4 && bytes[start] == 'n' && bytes[start + 1] == 'u' && bytes[start + 2] == 'l' && bytes[start + 3] == 'l') return -1;
+		long value = 0;
+		for (int i = start; i < end; i++) {
+			int digit = bytes[i] - '0';
+			if (digit < 0 || digit > 9 || value > (Long.MAX_VALUE - digit) / 10) return Long.MIN_VALUE;
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	private static int indexOf(byte[] bytes, int start, int end, byte[] text) {
+		outer:
+		for (int i = start; i <= end - text.length; i++) {
+			for (int j = 0; j < text.length; j++) if (bytes[i + j] != text[j]) continue outer;
+			return i;
+		}
+		return -1;
+	}
+
+	private static int putLong(byte[] bytes, int position, long value) {
+		int digits = 1;
+		for (long rest = value / 10; rest != 0; rest /= 10) digits++;
+		for (int i = position + digits - 1; i >= position; i--) {
+			bytes[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		return position + digits;
+	}
+
+	private static int putBytes(byte[] bytes, int position, byte[] value) {
+		System.arraycopy(value, 0, bytes, position, value.length);
+		return position + value.length;
+	}
+
+	/* the links are ASCII only, as both builders percent-encode everything else */
+	private static int putAscii(byte[] bytes, int position, CharSequence value) {
+		for (int i = 0, length = value.length(); i < length; i++) bytes[position++] = (byte) value.charAt(i);
+		return position;
+	}
+
+}
@@ -1,6 +1,10 @@
 package uk.co.sevendigital.android.partner.example;
 
+import uk.co.sevendigital.android.partner.sdk.SDIAppCapabilities;
+import uk.co.sevendigital.android.partner.sdk.SDIAppResolver;
+import uk.co.sevendigital.android.partner.sdk.SDIIntent;
 import uk.co.sevendigital.android.partner.sdk.SDIPartnerUtil;
+import uk.co.sevendigital.android.partner.sdk.SDIWarmUp;
 import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.Dialog;
@@ -48,6 +52,9 @@ public class SDIPartnerExample extends Activity implements View.OnClickListener
 		super.onCreate(savedInstanceState);
 		setContentView(R.layout.main);
 
+		// resolve the 7digital app in the background, so the first tap is as fast as any other
+		SDIWarmUp.warmUp(this);
+
 		// Bind views
 		mSearchButton = (Button) findViewById(R.id.search_button);
 		mSearchEditText = (EditText) findViewById(R.id.search_edittext);
@@ -83,6 +90,25 @@ public class SDIPartnerExample extends Activity implements View.OnClickListener
 		mPlayReleaseButton.setOnClickListener(this);
 	}
 
+	@Override protected void onResume() {
+		super.onResume();
+		// hide what the installed 7digital app can't do; without the app every button leads to Google Play
+		boolean installed = SDIAppResolver.isAppInstalled(this);
+		showIfSupported(mSearchButton, SDIIntent.Action.SEARCH, installed);
+		showIfSupported(mLaunchShopButton, SDIIntent.Action.VIEW_SHOP, installed);
+		showIfSupported(mLaunchMusicButton, SDIIntent.Action.VIEW_YOUR_MUSIC, installed);
+		showIfSupported(mLaunchDownloadsButton, SDIIntent.Action.VIEW_DOWNLOADS, installed);
+		showIfSupported(mViewReleaseButton, SDIIntent.Action.VIEW_RELEASE, installed);
+		showIfSupported(mViewArtistButton, SDIIntent.Action.VIEW_ARTIST, installed);
+		showIfSupported(mViewTrackButton, SDIIntent.Action.VIEW_RELEASE, installed);
+		showIfSupported(mPlayTrackButton, SDIIntent.Action.PLAY_TRACK, installed);
+		showIfSupported(mPlayReleaseButton, SDIIntent.Action.PLAY_RELEASE, installed);
+	}
+
+	private void showIfSupported(Button button, String action, boolean installed) {
+		button.setVisibility(!installed || SDIAppCapabilities.isSupported(this, action) ? View.VISIBLE : View.GONE);
+	}
+
 	@SuppressWarnings("deprecation") @Override protected Dialog onCreateDialog(int id, Bundle args) {
 		if (id != ERROR_DIALOG_ID) return super.onCreateDialog(id, args);
 		String message = args.getString(EXTRA_ERROR_MESSAGE);
@@ -0,0 +1,21 @@
+package uk.co.sevendigital.android.library.shop;
+
+import uk.co.sevendigital.android.standin.SDIHandoffRecorder;
+import android.app.Activity;
+import android.os.Bundle;
+
+/**
+ * Stands in for the external entry point of the 7digital Android app
+ * ({@link uk.co.sevendigital.android.partner.sdk.SDIIntent#SDI_ANDROID_EXTERNAL_ENTRY_POINT}). It shows nothing: it
+ * hands what it received to the {@link SDIHandoffRecorder}, stamped with the time it arrived, and finishes.
+ */
+public class SDIExternalActionActivity extends Activity {
+
+	@Override protected void onCreate(Bundle savedInstanceState) {
+		long arrivalNanos = System.nanoTime();
+		super.onCreate(savedInstanceState);
+		SDIHandoffRecorder.record(getIntent(), arrivalNanos);
+		finish();
+	}
+
+}
@@ -0,0 +1,368 @@
+package uk.co.sevendigital.android.standin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import uk.co.sevendigital.android.R;
+import uk.co.sevendigital.android.partner.sdk.SDIAppResolver;
+import uk.co.sevendigital.android.partner.sdk.SDIIntent;
+import uk.co.sevendigital.android.partner.sdk.SDILaunchGovernor;
+import uk.co.sevendigital.android.partner.sdk.SDIPartnerUtil;
+import android.app.Activity;
+import android.app.SearchManager;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Handler;
+import android.util.Log;
+import android.view.View;
+import android.widget.Button;
+import android.widget.TextView;
+
+/**
+ * Drives the stand-in 7digital app through the public {@link SDIPartnerUtil} calls, one handoff at a time, cycling
+ * through every call with fresh IDs. For each handoff it measures the time from the call until the stand-in entry point
+ * is created, and checks that the action and extras arrived as sent. The report (latency percentiles, lost handoffs and
+ * extras mismatches) is shown and logged under the tag <code>SDIHandoffHarness</code>.
+ *
+ * As the stand-in takes the package name of the real app, this needs an emulator (or a device) without the 7digital app;
+ * nothing goes over the network. Run it from the launcher, or with e.g.
+ * <pre>
+ * adb shell am start -n uk.co.sevendigital.android/.standin.SDIHandoffHarness --ei count 50000
+ * </pre>
+ */
+public class SDIHandoffHarness extends Activity implements SDIHandoffRecorder.Listener, View.OnClickListener {
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * constants
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/** Intent extra (int) holding the number of handoffs to run; starts a run right away. */
+	public static final String EXTRA_COUNT = "count";
+
+	private static final String TAG = "SDIHandoffHarness";
+	private static final int DEFAULT_COUNT = 20000;
+	private static final long TIMEOUT_MILLIS = 5000;
+	private static final int PROGRESS_INTERVAL = 1000;
+	private static final String PARTNER_CODE = "2221";
+	/* the IDs and query of a handoff are these plus its index */
+	private static final long RELEASE_ID_BASE = 1000000L;
+	private static final long TRACK_ID_BASE = 5000000L;
+	private static final long ARTIST_ID_BASE = 2000L;
+	private static final String QUERY_PREFIX = "query ";
+
+	private static final int CALL_SEARCH = 0;
+	private static final int CALL_SHOP = 1;
+	private static final int CALL_MUSIC = 2;
+	private static final int CALL_DOWNLOADS = 3;
+	private static final int CALL_RELEASE = 4;
+	private static final int CALL_TRACK = 5;
+	private static final int CALL_ITEM = 6;
+	private static final int CALL_ARTIST = 7;
+	private static final int CALL_PLAY_RELEASE = 8;
+	private static final int CALL_PLAY_TRACK = 9;
+	private static final int CALL_COUNT = 10;
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * fields
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private final Handler mHandler = new Handler();
+
+	private Button mRunButton;
+	private TextView mReportTextView;
+
+	private boolean mRunning;
+	private int mCount;
+	private int mIndex;
+	private long mSentNanos;
+	private long[] mLatencyNanos;
+	private int mReceived;
+	private int mLost;
+	private int mMismatches;
+	private int mFirstMismatch;
+	/* handoffs that timed out but may still arrive, so that they aren't taken for the pending one */
+	private final List<Integer> mTimedOut = new ArrayList<Integer>();
+	/* the dedupe window in effect before the run, restored after it */
+	private long mDedupeWindowMillis;
+
+	/* what the pending handoff should arrive with; -1 and null mean absent */
+	private String mExpectedAction;
+	private long mExpectedReleaseId;
+	private long mExpectedTrackId;
+	private long mExpectedArtistId;
+	private String mExpectedQuery;
+	private String mExpectedReleaseTitle;
+	private String mExpectedTrackTitle;
+	private String mExpectedArtistName;
+	private String mExpectedPartner;
+
+	private final Runnable mNext = new Runnable() {
+		@Override public void run() { next(); }
+	};
+
+	private final Runnable mTimeout = new Runnable() {
+		@Override public void run() {
+			Log.w(TAG, "Handoff " + mIndex + " (" + mExpectedAction + ") did not arrive");
+			mLost++;
+			mTimedOut.add(mIndex);
+			mIndex++;
+			next();
+		}
+	};
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * lifecycle
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	@Override protected void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+		setContentView(R.layout.harness);
+		mRunButton = (Button) findViewById(R.id.run_button);
+		mReportTextView = (TextView) findViewById(R.id.report_textview);
+		mRunButton.setOnClickListener(this);
+		if (savedInstanceState == null && getIntent().hasExtra(EXTRA_COUNT)) start(getIntent().getIntExtra(EXTRA_COUNT, DEFAULT_COUNT));
+	}
+
+	@Override protected void onDestroy() {
+		if (mRunning) stop();
+		super.onDestroy();
+	}
+
+	@Override public void onClick(View view) {
+		if (!mRunning) start(DEFAULT_COUNT);
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * run
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private void start(int count) {
+		if (count <= 0) throw new IllegalArgumentException("Parameter count should be positive.");
+		mRunning = true;
+		mCount = count;
+		mIndex = 0;
+		mLatencyNanos = new long[count];
+		mReceived = mLost = mMismatches = 0;
+		mFirstMismatch = -1;
+		mTimedOut.clear();
+		mRunButton.setEnabled(false);
+		mReportTextView.setText("Running " + count + " handoffs...");
+
+		// the harness repeats calls on purpose, and the stand-in was installed after the SDK may have looked
+		mDedupeWindowMillis = SDILaunchGovernor.getDedupeWindow();
+		SDILaunchGovernor.setDedupeWindow(0);
+		SDILaunchGovernor.reset();
+		SDIAppResolver.invalidate();
+		SDIHandoffRecorder.setListener(this);
+		mHandler.post(mNext);
+	}
+
+	private void stop() {
+		mRunning = false;
+		mHandler.removeCallbacks(mNext);
+		mHandler.removeCallbacks(mTimeout);
+		SDIHandoffRecorder.setListener(null);
+		SDILaunchGovernor.setDedupeWindow(mDedupeWindowMillis);
+		mRunButton.setEnabled(true);
+	}
+
+	private void next() {
+		if (!mRunning) return;
+		if (mIndex == mCount) {
+			stop();
+			report();
+			return;
+		}
+		if (mIndex > 0 && mIndex % PROGRESS_INTERVAL == 0) mReportTextView.setText("Running " + mCount + " handoffs... " + mIndex);
+		mHandler.postDelayed(mTimeout, TIMEOUT_MILLIS);
+		send(mIndex);
+	}
+
+	@Override public void onReceived(Intent intent, long arrivalNanos) {
+		if (!mRunning) return;
+		if (isLate(intent)) {
+			Log.w(TAG, "Handoff arrived after its timeout as " + intent + " with " + intent.getExtras());
+			return;
+		}
+		mHandler.removeCallbacks(mTimeout);
+		mLatencyNanos[mReceived++] = arrivalNanos - mSentNanos;
+		if (!matches(intent)) {
+			if (mMismatches++ == 0) mFirstMismatch = mIndex;
+			Log.w(TAG, "Handoff " + mIndex + " arrived as " + intent + " with " + intent.getExtras());
+		}
+		mIndex++;
+		// let the stand-in finish before the next handoff
+		mHandler.post(mNext);
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * calls
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/* every call gets IDs and strings of its own, so that a handoff can't pass with the extras of an earlier one */
+	private void send(int index) {
+		long releaseId = RELEASE_ID_BASE + index;
+		long trackId = TRACK_ID_BASE + index;
+		long artistId = ARTIST_ID_BASE + index;
+		String query = QUERY_PREFIX + index;
+		String releaseTitle = "release " + index;
+		String trackTitle = "track " + index;
+		String artistName = "artist " + index;
+
+		mExpectedReleaseId = mExpectedTrackId = mExpectedArtistId = -1;
+		mExpectedQuery = mExpectedReleaseTitle = mExpectedTrackTitle = mExpectedArtistName = null;
+		mExpectedPartner = PARTNER_CODE;
+		int call = index % CALL_COUNT;
+		mExpectedAction = actionOf(call);
+		switch (call) {
+			case CALL_SEARCH:
+				mExpectedQuery = query;
+				break;
+			case CALL_SHOP:
+			case CALL_MUSIC:
+			case CALL_DOWNLOADS:
+				mExpectedPartner = null;
+				break;
+			case CALL_RELEASE:
+				mExpectedReleaseId = releaseId;
+				break;
+			case CALL_TRACK:
+				mExpectedReleaseId = releaseId;
+				mExpectedTrackId = trackId;
+				break;
+			case CALL_ITEM:
+				mExpectedReleaseId = releaseId;
+				mExpectedReleaseTitle = releaseTitle;
+				mExpectedTrackId = trackId;
+				mExpectedTrackTitle = trackTitle;
+				mExpectedArtistId = artistId;
+				mExpectedArtistName = artistName;
+				break;
+			case CALL_ARTIST:
+				mExpectedArtistId = artistId;
+				mExpectedArtistName = artistName;
+				break;
+			case CALL_PLAY_RELEASE:
+				mExpectedReleaseId = releaseId;
+				break;
+			case CALL_PLAY_TRACK:
+				mExpectedReleaseId = releaseId;
+				mExpectedTrackId = trackId;
+				break;
+		}
+
+		mSentNanos = System.nanoTime();
+		switch (call) {
+			case CALL_SEARCH: SDIPartnerUtil.search7digital(this, query, PARTNER_CODE); break;
+			case CALL_SHOP: SDIPartnerUtil.launch7digitalShop(this); break;
+			case CALL_MUSIC: SDIPartnerUtil.launch7digitalMusic(this); break;
+			case CALL_DOWNLOADS: SDIPartnerUtil.launch7digitalDownloads(this); break;
+			case CALL_RELEASE: SDIPartnerUtil.view7digitalRelease(this, releaseId, PARTNER_CODE); break;
+			case CALL_TRACK: SDIPartnerUtil.view7digitalTrack(this, releaseId, trackId, PARTNER_CODE); break;
+			case CALL_ITEM: SDIPartnerUtil.view7digitalItem(this, releaseId, releaseTitle, trackId, trackTitle, null, null, artistId, artistName, PARTNER_CODE); break;
+			case CALL_ARTIST: SDIPartnerUtil.view7digitalArtist(this, artistId, artistName, PARTNER_CODE); break;
+			case CALL_PLAY_RELEASE: SDIPartnerUtil.play7digitalRelease(this, releaseId, PARTNER_CODE); break;
+			case CALL_PLAY_TRACK: SDIPartnerUtil.play7digitalTrack(this, releaseId, trackId, PARTNER_CODE); break;
+		}
+	}
+
+	private static String actionOf(int call) {
+		switch (call) {
+			case CALL_SEARCH: return SDIIntent.Action.SEARCH;
+			case CALL_SHOP: return SDIIntent.Action.VIEW_SHOP;
+			case CALL_MUSIC: return SDIIntent.Action.VIEW_YOUR_MUSIC;
+			case CALL_DOWNLOADS: return SDIIntent.Action.VIEW_DOWNLOADS;
+			case CALL_ARTIST: return SDIIntent.Action.VIEW_ARTIST;
+			case CALL_PLAY_RELEASE: return SDIIntent.Action.PLAY_RELEASE;
+			case CALL_PLAY_TRACK: return SDIIntent.Action.PLAY_TRACK;
+			default: return SDIIntent.Action.VIEW_RELEASE;
+		}
+	}
+
+	/* the index of the handoff the Intent was sent for, as far as its IDs or query tell, or -1 */
+	private static int indexOf(Intent intent) {
+		long releaseId = intent.getLongExtra(SDIIntent.Extra.RELEASEID, -1);
+		if (releaseId != -1) return (int) (releaseId - RELEASE_ID_BASE);
+		long artistId = intent.getLongExtra(SDIIntent.Extra.ARTISTID, -1);
+		if (artistId != -1) return (int) (artistId - ARTIST_ID_BASE);
+		String query = intent.getStringExtra(SearchManager.QUERY);
+		if (query != null && query.startsWith(QUERY_PREFIX)) {
+			try { return Integer.parseInt(query.substring(QUERY_PREFIX.length())); }
+			catch (NumberFormatException e) { return -1; }
+		}
+		return -1;
+	}
+
+	/*
+	 * whether the Intent belongs to a handoff that timed out rather than to the pending one, which it must not be counted
+	 * for; calls without IDs are told apart by their action
+	 */
+	private boolean isLate(Intent intent) {
+		int index = indexOf(intent);
+		if (index == mIndex || (index == -1 && equal(mExpectedAction, intent.getAction()))) return false;
+		for (int i = 0; i < mTimedOut.size(); i++) {
+			int timedOut = mTimedOut.get(i);
+			if (index != -1 ? timedOut == index : actionOf(timedOut % CALL_COUNT).equals(intent.getAction())) {
+				mTimedOut.remove(i);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean matches(Intent intent) {
+		return equal(mExpectedAction, intent.getAction())
+				&& matches(intent, SDIIntent.Extra.RELEASEID, mExpectedReleaseId)
+				&& matches(intent, SDIIntent.Extra.TRACKID, mExpectedTrackId)
+				&& matches(intent, SDIIntent.Extra.ARTISTID, mExpectedArtistId)
+				&& equal(mExpectedQuery, intent.getStringExtra(SearchManager.QUERY))
+				&& equal(mExpectedReleaseTitle, intent.getStringExtra(SDIIntent.Extra.RELEASETITLE))
+				&& equal(mExpectedTrackTitle, intent.getStringExtra(SDIIntent.Extra.TRACKTITLE))
+				&& equal(mExpectedArtistName, intent.getStringExtra(SDIIntent.Extra.ARTISTNAME))
+				&& equal(mExpectedPartner, intent.getStringExtra(SDIIntent.Extra.PARTNER));
+	}
+
+	private static boolean matches(Intent intent, String name, long expected) {
+		if (expected == -1) return !intent.hasExtra(name);
+		return intent.getLongExtra(name, -1) == expected;
+	}
+
+	private static boolean equal(String expected, String actual) {
+		return expected == null ? actual == null : expected.equals(actual);
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * report
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private void report() {
+		StringBuilder report = new StringBuilder();
+		report.append("handoffs   ").append(mCount).append('\n');
+		report.append("received   ").append(mReceived).append('\n');
+		report.append("lost       ").append(mLost).append('\n');
+		report.append("mismatches ").append(mMismatches);
+		if (mFirstMismatch != -1) report.append(" (first at ").append(mFirstMismatch).append(')');
+		report.append('\n');
+		if (mReceived > 0) {
+			long[] sorted = new long[mReceived];
+			System.arraycopy(mLatencyNanos, 0, sorted, 0, mReceived);
+			Arrays.sort(sorted);
+			report.append("latency (us)\n");
+			report.append("  p50      ").append(percentileMicros(sorted, 0.5)).append('\n');
+			report.append("  p90      ").append(percentileMicros(sorted, 0.9)).append('\n');
+			report.append("  p99      ").append(percentileMicros(sorted, 0.99)).append('\n');
+			report.append("  p99.9    ").append(percentileMicros(sorted, 0.999)).append('\n');
+			report.append("  max      ").append(sorted[sorted.length - 1] / 1000).append('\n');
+		}
+		mReportTextView.setText(report);
+		Log.i(TAG, report.toString());
+	}
+
+	/* nearest rank */
+	private static long percentileMicros(long[] sorted, double percentile) {
+		int rank = (int) Math.ceil(percentile * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, rank))] / 1000;
+	}
+
+}
@@ -0,0 +1,74 @@
+package uk.co.sevendigital.android.standin;
+
+import android.content.Intent;
+
+/**
+ * Records the Intents received by the stand-in entry point. Everything happens on the main thread, which is where
+ * Activities are created.
+ */
+public class SDIHandoffRecorder {
+
+	private SDIHandoffRecorder() { /* prevent instantiating */ }
+
+	/**
+	 * Receives every recorded Intent.
+	 */
+	public interface Listener {
+
+		/**
+		 * Called when the stand-in entry point was started.
+		 * @param intent The Intent it was started with.
+		 * @param arrivalNanos When it was created, in {@link System#nanoTime()}.
+		 */
+		void onReceived(Intent intent, long arrivalNanos);
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * fields
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private static Listener sListener;
+	private static int sReceivedCount;
+	private static Intent sLastIntent;
+	private static long sLastArrivalNanos;
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * util methods
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Sets the listener to hand received Intents to.
+	 * @param listener The listener, or <b>null</b> to only count them.
+	 */
+	public static void setListener(Listener listener) {
+		sListener = listener;
+	}
+
+	/**
+	 * Records a received Intent.
+	 * @param intent The Intent the entry point was started with.
+	 * @param arrivalNanos When it was created, in {@link System#nanoTime()}.
+	 */
+	public static void record(Intent intent, long arrivalNanos) {
+		sReceivedCount++;
+		sLastIntent = intent;
+		sLastArrivalNanos = arrivalNanos;
+		if (sListener != null) sListener.onReceived(intent, arrivalNanos);
+	}
+
+	/** Returns the number of Intents received since the process started. */
+	public static int getReceivedCount() {
+		return sReceivedCount;
+	}
+
+	/** Returns the last Intent received, or <b>null</b>. */
+	public static Intent getLastIntent() {
+		return sLastIntent;
+	}
+
+	/** Returns when the last Intent arrived, in {@link System#nanoTime()}. */
+	public static long getLastArrivalNanos() {
+		return sLastArrivalNanos;
+	}
+
+}
@@ -0,0 +1,71 @@
+package android.app;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Test stand-in for the framework PendingIntent, which is held by the system. Like the system, it hands out the same
+ * PendingIntent for the same request code and an Intent that is equal as per {@link Intent#filterEquals(Intent)},
+ * replacing its extras with {@link #FLAG_UPDATE_CURRENT}, until it is cancelled.
+ */
+public final class PendingIntent {
+
+	public static final int FLAG_ONE_SHOT = 1 << 30;
+	public static final int FLAG_NO_CREATE = 1 << 29;
+	public static final int FLAG_CANCEL_CURRENT = 1 << 28;
+	public static final int FLAG_UPDATE_CURRENT = 1 << 27;
+
+	/* guarded by itself */
+	private static final List<PendingIntent> sActive = new ArrayList<PendingIntent>();
+
+	private final int mRequestCode;
+	private final Intent mIntent;
+	private volatile boolean mCancelled;
+
+	private PendingIntent(int requestCode, Intent intent) {
+		mRequestCode = requestCode;
+		mIntent = intent;
+	}
+
+	public static PendingIntent getActivity(Context context, int requestCode, Intent intent, int flags) {
+		synchronized (sActive) {
+			for (PendingIntent pendingIntent : sActive) {
+				if (pendingIntent.mRequestCode != requestCode || !pendingIntent.mIntent.filterEquals(intent)) continue;
+				if ((flags & FLAG_UPDATE_CURRENT) != 0) pendingIntent.mIntent.replaceExtras(intent.getExtras());
+				return pendingIntent;
+			}
+			if ((flags & FLAG_NO_CREATE) != 0) return null;
+			PendingIntent pendingIntent = new PendingIntent(requestCode, new Intent(intent));
+			sActive.add(pendingIntent);
+			return pendingIntent;
+		}
+	}
+
+	public void cancel() {
+		synchronized (sActive) {
+			sActive.remove(this);
+			mCancelled = true;
+		}
+	}
+
+	/** Returns the request code the PendingIntent was created with. */
+	public int getRequestCode() {
+		return mRequestCode;
+	}
+
+	/** Returns the Intent the PendingIntent sends, with the extras of the latest update. */
+	public Intent getIntent() {
+		synchronized (sActive) {
+			return new Intent(mIntent);
+		}
+	}
+
+	/** Returns whether the PendingIntent was cancelled, after which it does nothing when sent. */
+	public boolean isCancelled() {
+		return mCancelled;
+	}
+
+}
@@ -0,0 +1,117 @@
+package android.content.pm;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.content.ComponentName;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.util.AndroidException;
+
+/**
+ * Test stand-in for the framework PackageManager, which is abstract and backed by the system. The packages and
+ * activities it knows of are added by the test; intents are matched against the added intent-filters, and explicit
+ * intents against the added components.
+ */
+public class PackageManager {
+
+	public static final int MATCH_DEFAULT_ONLY = 0x00010000;
+
+	public static class NameNotFoundException extends AndroidException {
+
+		public NameNotFoundException() { }
+
+		public NameNotFoundException(String name) {
+			super(name);
+		}
+	}
+
+	/* guarded by this */
+	private final Map<String, Integer> mPackages = new HashMap<String, Integer>();
+	private final List<ActivityInfo> mActivities = new ArrayList<ActivityInfo>();
+	private final Map<ActivityInfo, IntentFilter[]> mFilters = new HashMap<ActivityInfo, IntentFilter[]>();
+	private int mQueryCount;
+
+	/** Installs a package with the given versionCode, replacing an installed one. */
+	public synchronized PackageManager addPackage(String packageName, int versionCode) {
+		mPackages.put(packageName, versionCode);
+		return this;
+	}
+
+	/** Adds an activity of an installed package, which handles the intents matched by any of the given filters. */
+	public synchronized PackageManager addActivity(String packageName, String className, IntentFilter... filters) {
+		if (!mPackages.containsKey(packageName)) throw new IllegalStateException(packageName + " not installed");
+		ActivityInfo info = new ActivityInfo();
+		info.packageName = packageName;
+		info.name = className;
+		mActivities.add(info);
+		mFilters.put(info, filters);
+		return this;
+	}
+
+	/** Uninstalls a package and its activities. */
+	public synchronized PackageManager removePackage(String packageName) {
+		mPackages.remove(packageName);
+		for (int i = mActivities.size() - 1; i >= 0; i--) {
+			if (mActivities.get(i).packageName.equals(packageName)) mFilters.remove(mActivities.remove(i));
+		}
+		return this;
+	}
+
+	/** Returns the number of resolveActivity() and queryIntentActivities() calls so far. */
+	public synchronized int getQueryCount() {
+		return mQueryCount;
+	}
+
+	public synchronized PackageInfo getPackageInfo(String packageName, int flags) throws NameNotFoundException {
+		Integer versionCode = mPackages.get(packageName);
+		if (versionCode == null) throw new NameNotFoundException(packageName);
+		PackageInfo info = new PackageInfo();
+		info.packageName = packageName;
+		info.versionCode = versionCode;
+		return info;
+	}
+
+	public synchronized Intent getLaunchIntentForPackage(String packageName) {
+		if (!mPackages.containsKey(packageName)) return null;
+		for (ActivityInfo info : mActivities) {
+			if (info.packageName.equals(packageName)) return new Intent(Intent.ACTION_MAIN).setClassName(packageName, info.name);
+		}
+		return null;
+	}
+
+	public synchronized ResolveInfo resolveActivity(Intent intent, int flags) {
+		List<ResolveInfo> matches = queryIntentActivities(intent, flags);
+		return matches.isEmpty() ? null : matches.get(0);
+	}
+
+	public synchronized List<ResolveInfo> queryIntentActivities(Intent intent, int flags) {
+		mQueryCount++;
+		List<ResolveInfo> matches = new ArrayList<ResolveInfo>();
+		ComponentName component = intent.getComponent();
+		for (ActivityInfo info : mActivities) {
+			if (component != null) {
+				// explicit intents go to their component, whatever the action
+				if (!component.getPackageName().equals(info.packageName) || !component.getClassName().equals(info.name)) continue;
+			} else {
+				if (intent.getPackage() != null && !intent.getPackage().equals(info.packageName)) continue;
+				if (!matches(mFilters.get(info), intent, flags)) continue;
+			}
+			ResolveInfo resolveInfo = new ResolveInfo();
+			resolveInfo.activityInfo = info;
+			matches.add(resolveInfo);
+		}
+		return matches;
+	}
+
+	private static boolean matches(IntentFilter[] filters, Intent intent, int flags) {
+		for (IntentFilter filter : filters) {
+			if ((flags & MATCH_DEFAULT_ONLY) != 0 && !filter.hasCategory(Intent.CATEGORY_DEFAULT)) continue;
+			if (filter.match(intent.getAction(), intent.getType(), intent.getScheme(), intent.getData(), intent.getCategories(), null) >= 0) return true;
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,28 @@
+package android.graphics;
+
+/**
+ * Test stand-in for the framework Bitmap, whose pixels are native. Only the dimensions are kept, at four bytes per pixel.
+ */
+public final class Bitmap {
+
+	private final int mWidth;
+	private final int mHeight;
+
+	Bitmap(int width, int height) {
+		mWidth = width;
+		mHeight = height;
+	}
+
+	public int getWidth() {
+		return mWidth;
+	}
+
+	public int getHeight() {
+		return mHeight;
+	}
+
+	public int getRowBytes() {
+		return mWidth * 4;
+	}
+
+}
@@ -0,0 +1,42 @@
+package android.graphics;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Test stand-in for the framework BitmapFactory, whose decoders are native. Files are decoded with ImageIO, and the
+ * sample size is applied to the dimensions of the returned {@link Bitmap}.
+ */
+public class BitmapFactory {
+
+	public static class Options {
+		public boolean inJustDecodeBounds;
+		public int inSampleSize;
+		public int outWidth;
+		public int outHeight;
+	}
+
+	public static Bitmap decodeFile(String path) {
+		return decodeFile(path, null);
+	}
+
+	public static Bitmap decodeFile(String path, Options options) {
+		BufferedImage image;
+		try {
+			image = ImageIO.read(new File(path));
+		} catch (IOException e) {
+			image = null;
+		}
+		if (options != null) {
+			options.outWidth = image != null ? image.getWidth() : -1;
+			options.outHeight = image != null ? image.getHeight() : -1;
+		}
+		if (image == null || (options != null && options.inJustDecodeBounds)) return null;
+		int sampleSize = options != null ? Math.max(1, Integer.highestOneBit(Math.max(1, options.inSampleSize))) : 1;
+		return new Bitmap(image.getWidth() / sampleSize, image.getHeight() / sampleSize);
+	}
+
+}
@@ -0,0 +1,63 @@
+package android.os;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test stand-in for the framework Handler, posting to the thread of a stand-in {@link Looper}. Only posting and
+ * removing Runnables is supported.
+ */
+public class Handler {
+
+	private final Looper mLooper;
+	/* guarded by itself */
+	private final Map<Runnable, List<Future<?>>> mPosted = new HashMap<Runnable, List<Future<?>>>();
+
+	public Handler() {
+		this(Looper.getMainLooper());
+	}
+
+	public Handler(Looper looper) {
+		if (looper == null) throw new NullPointerException("looper");
+		mLooper = looper;
+	}
+
+	public final Looper getLooper() {
+		return mLooper;
+	}
+
+	public final boolean post(Runnable runnable) {
+		return postDelayed(runnable, 0);
+	}
+
+	public final boolean postDelayed(final Runnable runnable, long delayMillis) {
+		synchronized (mPosted) {
+			final Future<?>[] future = new Future<?>[1];
+			future[0] = mLooper.mExecutor.schedule(new Runnable() {
+				@Override public void run() {
+					synchronized (mPosted) {
+						List<Future<?>> futures = mPosted.get(runnable);
+						if (futures != null && futures.remove(future[0]) && futures.isEmpty()) mPosted.remove(runnable);
+					}
+					runnable.run();
+				}
+			}, Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+			List<Future<?>> futures = mPosted.get(runnable);
+			if (futures == null) mPosted.put(runnable, futures = new ArrayList<Future<?>>(1));
+			futures.add(future[0]);
+		}
+		return true;
+	}
+
+	public final void removeCallbacks(Runnable runnable) {
+		synchronized (mPosted) {
+			List<Future<?>> futures = mPosted.remove(runnable);
+			if (futures != null) for (Future<?> future : futures) future.cancel(false);
+		}
+	}
+
+}
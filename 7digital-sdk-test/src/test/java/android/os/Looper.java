@@ -0,0 +1,41 @@
+package android.os;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Test stand-in for the framework Looper, whose message queue is native. The main looper is a single daemon thread
+ * that runs whatever is posted to a {@link Handler} on it.
+ */
+public final class Looper {
+
+	private static final Looper MAIN = new Looper("main");
+
+	final ScheduledExecutorService mExecutor;
+	private volatile Thread mThread;
+
+	private Looper(final String name) {
+		mExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, name);
+				thread.setDaemon(true);
+				mThread = thread;
+				return thread;
+			}
+		});
+	}
+
+	public static Looper getMainLooper() {
+		return MAIN;
+	}
+
+	public static Looper myLooper() {
+		return Thread.currentThread() == MAIN.mThread ? MAIN : null;
+	}
+
+	public Thread getThread() {
+		return mThread;
+	}
+
+}
@@ -0,0 +1,17 @@
+package android.os;
+
+/**
+ * Test stand-in for the framework Process, whose thread priorities are native. Priorities are ignored.
+ */
+public class Process {
+
+	public static final int THREAD_PRIORITY_DEFAULT = 0;
+	public static final int THREAD_PRIORITY_BACKGROUND = 10;
+
+	public static void setThreadPriority(int priority) { }
+
+	public static int myPid() {
+		return 1;
+	}
+
+}
@@ -0,0 +1,52 @@
+package android.os;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Test stand-in for the framework SystemProperties, whose store is native. All properties are unset unless set by the
+ * test, so {@link Build} reports an SDK_INT of 0 and "unknown" for its strings. Note that Build reads them only once.
+ */
+public class SystemProperties {
+
+	public static final int PROP_NAME_MAX = 31;
+	public static final int PROP_VALUE_MAX = 91;
+
+	/* guarded by itself */
+	private static final Map<String, String> sProperties = new HashMap<String, String>();
+
+	public static String get(String key) {
+		return get(key, "");
+	}
+
+	public static String get(String key, String def) {
+		synchronized (sProperties) {
+			String value = sProperties.get(key);
+			return value != null ? value : def;
+		}
+	}
+
+	public static int getInt(String key, int def) {
+		try { return Integer.parseInt(get(key)); }
+		catch (NumberFormatException e) { return def; }
+	}
+
+	public static long getLong(String key, long def) {
+		try { return Long.parseLong(get(key)); }
+		catch (NumberFormatException e) { return def; }
+	}
+
+	public static boolean getBoolean(String key, boolean def) {
+		String value = get(key);
+		return value.length() == 0 ? def : value.equals("1") || value.equals("true") || value.equals("y") || value.equals("yes") || value.equals("on");
+	}
+
+	public static void set(String key, String value) {
+		synchronized (sProperties) {
+			sProperties.put(key, value);
+		}
+	}
+
+	public static void addChangeCallback(Runnable callback) { }
+
+}
@@ -0,0 +1,22 @@
+package android.util;
+
+/**
+ * Test stand-in for the framework Log, which writes through native code. Messages go to the standard error stream.
+ */
+public final class Log {
+
+	public static int v(String tag, String message) { return println("V", tag, message, null); }
+	public static int d(String tag, String message) { return println("D", tag, message, null); }
+	public static int i(String tag, String message) { return println("I", tag, message, null); }
+	public static int w(String tag, String message) { return println("W", tag, message, null); }
+	public static int w(String tag, String message, Throwable throwable) { return println("W", tag, message, throwable); }
+	public static int e(String tag, String message) { return println("E", tag, message, null); }
+	public static int e(String tag, String message, Throwable throwable) { return println("E", tag, message, throwable); }
+
+	private static int println(String level, String tag, String message, Throwable throwable) {
+		System.err.println(level + "/" + tag + ": " + message);
+		if (throwable != null) throwable.printStackTrace();
+		return message.length();
+	}
+
+}
@@ -0,0 +1,99 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+
+public class SDIAppCapabilitiesTest {
+
+	@Rule public TemporaryFolder mFolder = new TemporaryFolder();
+
+	private SDITestContext mContext;
+	private PackageManager mPackageManager;
+
+	@Before public void setUp() throws IOException {
+		mContext = new SDITestContext(mFolder.newFolder("cache"));
+		mPackageManager = mContext.getPackageManager();
+		SDIAppCapabilities.invalidate();
+	}
+
+	@After public void tearDown() {
+		SDIAppCapabilities.invalidate();
+	}
+
+	@Test public void everyDeclaredActionIsSupported() {
+		SDITestContext.installApp(mPackageManager, 42);
+		assertEquals(42, SDIAppCapabilities.getVersionCode(mContext));
+		for (int i = 0; i < SDIIntentTemplate.ACTION_COUNT; i++) assertTrue(SDIAppCapabilities.isSupported(mContext, SDIIntentTemplate.actionAt(i)));
+	}
+
+	@Test public void anUndeclaredActionIsNotSupported() {
+		// an older version without track playback, that searches in a separate activity
+		mPackageManager.addPackage(SDIIntent.SDI_ANDROID_PACKAGE_NAME, 7)
+			.addActivity(SDIIntent.SDI_ANDROID_PACKAGE_NAME, SDIIntent.SDI_ANDROID_EXTERNAL_ENTRY_POINT, filter(SDIIntent.Action.VIEW_SHOP,
+				SDIIntent.Action.VIEW_YOUR_MUSIC, SDIIntent.Action.VIEW_DOWNLOADS, SDIIntent.Action.VIEW_RELEASE, SDIIntent.Action.VIEW_ARTIST,
+				SDIIntent.Action.PLAY_RELEASE))
+			.addActivity(SDIIntent.SDI_ANDROID_PACKAGE_NAME, "uk.co.sevendigital.android.SearchActivity", filter(SDIIntent.Action.SEARCH));
+
+		assertFalse(SDIAppCapabilities.isSupported(mContext, SDIIntent.Action.PLAY_TRACK));
+		assertTrue(SDIAppCapabilities.isSupported(mContext, SDIIntent.Action.PLAY_RELEASE));
+		assertTrue(SDIAppCapabilities.isSupported(mContext, SDIIntent.Action.VIEW_ARTIST));
+		assertTrue(SDIAppCapabilities.isSupported(mContext, SDIIntent.Action.SEARCH));
+	}
+
+	@Test public void anActionDeclaredByAnotherActivityIsNotSupported() {
+		// the entry point is started explicitly, so another activity declaring the action doesn't help
+		mPackageManager.addPackage(SDIIntent.SDI_ANDROID_PACKAGE_NAME, 7)
+			.addActivity(SDIIntent.SDI_ANDROID_PACKAGE_NAME, SDIIntent.SDI_ANDROID_EXTERNAL_ENTRY_POINT, filter(SDIIntent.Action.VIEW_SHOP))
+			.addActivity(SDIIntent.SDI_ANDROID_PACKAGE_NAME, "uk.co.sevendigital.android.PlayerActivity", filter(SDIIntent.Action.PLAY_TRACK));
+
+		assertTrue(SDIAppCapabilities.isSupported(mContext, SDIIntent.Action.VIEW_SHOP));
+		assertFalse(SDIAppCapabilities.isSupported(mContext, SDIIntent.Action.PLAY_TRACK));
+		assertFalse(SDIAppCapabilities.isSupported(mContext, SDIIntent.Action.SEARCH));
+	}
+
+	@Test public void anEntryPointWithoutFiltersHandlesEveryAction() {
+		mPackageManager.addPackage(SDIIntent.SDI_ANDROID_PACKAGE_NAME, 3)
+			.addActivity(SDIIntent.SDI_ANDROID_PACKAGE_NAME, SDIIntent.SDI_ANDROID_EXTERNAL_ENTRY_POINT);
+
+		assertTrue(SDIAppCapabilities.isSupported(mContext, SDIIntent.Action.PLAY_TRACK));
+		assertTrue(SDIAppCapabilities.isSupported(mContext, SDIIntent.Action.VIEW_SHOP));
+		// search goes by the package's filters only
+		assertFalse(SDIAppCapabilities.isSupported(mContext, SDIIntent.Action.SEARCH));
+	}
+
+	@Test public void nothingIsSupportedWithoutTheApp() {
+		assertEquals(-1, SDIAppCapabilities.getVersionCode(mContext));
+		assertFalse(SDIAppCapabilities.isSupported(mContext, SDIIntent.Action.VIEW_SHOP));
+
+		// installing it is picked up once the package change is signalled
+		SDITestContext.installApp(mPackageManager, 1);
+		assertFalse(SDIAppCapabilities.isSupported(mContext, SDIIntent.Action.VIEW_SHOP));
+		SDIAppCapabilities.invalidate();
+		assertTrue(SDIAppCapabilities.isSupported(mContext, SDIIntent.Action.VIEW_SHOP));
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * helpers
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private static IntentFilter filter(String... actions) {
+		IntentFilter filter = new IntentFilter();
+		for (String action : actions) filter.addAction(action);
+		filter.addCategory(Intent.CATEGORY_DEFAULT);
+		return filter;
+	}
+
+}
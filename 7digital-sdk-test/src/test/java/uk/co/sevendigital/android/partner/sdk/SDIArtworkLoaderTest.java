@@ -0,0 +1,235 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.graphics.Bitmap;
+
+public class SDIArtworkLoaderTest {
+
+	private static final int WIDTH = 400;
+	private static final int HEIGHT = 300;
+
+	@Rule public TemporaryFolder mFolder = new TemporaryFolder();
+
+	private SDITestServer mServer;
+	private Context mContext;
+	private byte[] mCover;
+
+	@Before public void setUp() throws IOException {
+		mServer = new SDITestServer();
+		final File cacheDir = mFolder.newFolder("cache");
+		mContext = new ContextWrapper(null) {
+			@Override public File getCacheDir() { return cacheDir; }
+			@Override public Context getApplicationContext() { return this; }
+		};
+		// noise, so that the cover takes more than a single read to download
+		BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+		Random random = new Random(1347415);
+		for (int y = 0; y < HEIGHT; y++) for (int x = 0; x < WIDTH; x++) image.setRGB(x, y, random.nextInt());
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", out);
+		mCover = out.toByteArray();
+	}
+
+	@After public void tearDown() {
+		mServer.stop();
+	}
+
+	@Test public void concurrentLoadsShareOneDownload() throws Exception {
+		CountDownLatch gate = new CountDownLatch(1);
+		mServer.respond("/cover.png", 200, mCover, gate);
+		SDIArtworkLoader loader = new SDIArtworkLoader(mContext, 1 << 24, 1 << 24);
+		String url = mServer.url("/cover.png");
+		Await first = new Await(), second = new Await(), otherSize = new Await();
+		assertNull(loader.load(url, 100, 75, first));
+		assertNull(loader.load(url, 100, 75, second));
+		assertNull(loader.load(url, 200, 150, otherSize));
+		gate.countDown();
+
+		assertNotNull(first.await());
+		assertSame(first.await(), second.await());
+		assertEquals(200, otherSize.await().getWidth());
+		assertEquals(1, mServer.count("/cover.png"));
+		assertSame(first.await(), loader.load(url, 100, 75, null));
+	}
+
+	@Test public void decodesAtTheLargestSampleSizeCoveringTheTarget() throws Exception {
+		mServer.respond("/cover.png", 200, mCover);
+		SDIArtworkLoader loader = new SDIArtworkLoader(mContext, 1 << 24, 1 << 24);
+		String url = mServer.url("/cover.png");
+
+		assertSize(100, 75, load(loader, url, 100, 75));
+		assertSize(200, 150, load(loader, url, 150, 100));
+		assertSize(WIDTH, HEIGHT, load(loader, url, 0, 0));
+		assertEquals(1, mServer.count("/cover.png"));
+
+		assertEquals(1, SDIArtworkLoader.sampleSize(WIDTH, HEIGHT, WIDTH, HEIGHT));
+		assertEquals(2, SDIArtworkLoader.sampleSize(WIDTH, HEIGHT, 150, 150));
+		assertEquals(4, SDIArtworkLoader.sampleSize(WIDTH, HEIGHT, 100, 10));
+		assertEquals(1, SDIArtworkLoader.sampleSize(WIDTH, HEIGHT, 800, 600));
+	}
+
+	@Test public void diskCacheEvictsTheLeastRecentlyUsedCover() throws Exception {
+		for (String path : new String[] { "/a.png", "/b.png", "/c.png" }) mServer.respond(path, 200, mCover);
+		// room for two covers, not three
+		SDIArtworkLoader loader = new SDIArtworkLoader(mContext, 1 << 24, mCover.length * 5 / 2);
+		load(loader, mServer.url("/a.png"), 0, 0);
+		load(loader, mServer.url("/b.png"), 0, 0);
+		loader.clearMemory();
+		// touches a, leaving b the least recently used
+		load(loader, mServer.url("/a.png"), 0, 0);
+		load(loader, mServer.url("/c.png"), 0, 0);
+		assertEquals(2, cachedFiles());
+
+		loader.clearMemory();
+		load(loader, mServer.url("/a.png"), 0, 0);
+		load(loader, mServer.url("/c.png"), 0, 0);
+		assertEquals(1, mServer.count("/a.png"));
+		assertEquals(1, mServer.count("/c.png"));
+		load(loader, mServer.url("/b.png"), 0, 0);
+		assertEquals(2, mServer.count("/b.png"));
+	}
+
+	@Test public void memoryCacheEvictsTheLeastRecentlyUsedBitmap() throws Exception {
+		for (String path : new String[] { "/a.png", "/b.png", "/c.png" }) mServer.respond(path, 200, mCover);
+		// room for two full size bitmaps, not three
+		SDIArtworkLoader loader = new SDIArtworkLoader(mContext, WIDTH * HEIGHT * 4 * 5 / 2, 1 << 24);
+		String a = mServer.url("/a.png"), b = mServer.url("/b.png"), c = mServer.url("/c.png");
+		load(loader, a, 0, 0);
+		load(loader, b, 0, 0);
+		assertNotNull(loader.getCached(a, 0, 0));
+		load(loader, c, 0, 0);
+
+		assertNotNull(loader.getCached(a, 0, 0));
+		assertNull(loader.getCached(b, 0, 0));
+		assertNotNull(loader.getCached(c, 0, 0));
+	}
+
+	@Test public void failedDownloadLeavesNothingBehindAndIsRetried() throws Exception {
+		mServer.respond("/cover.png", 500, new byte[0]).respond("/cover.png", 200, mCover);
+		SDIArtworkLoader loader = new SDIArtworkLoader(mContext, 1 << 24, 1 << 24);
+		String url = mServer.url("/cover.png");
+
+		assertNull(load(loader, url, 0, 0));
+		assertEquals(0, cachedFiles());
+		assertSize(WIDTH, HEIGHT, load(loader, url, 0, 0));
+		assertEquals(1, cachedFiles());
+		assertEquals(2, mServer.count("/cover.png"));
+	}
+
+	@Test public void unexpectedFailureStillAnswersEveryCallback() throws Exception {
+		SDIArtworkLoader loader = new SDIArtworkLoader(mContext, 1 << 24, 1 << 24);
+		// the port is only checked on connecting, with an IllegalArgumentException
+		String url = "http://127.0.0.1:99999/cover.png";
+		Await first = new Await(), second = new Await();
+		loader.load(url, 0, 0, first);
+		loader.load(url, 0, 0, second);
+		assertNull(first.await());
+		assertNull(second.await());
+		// and nothing is left in flight
+		assertNull(load(loader, url, 0, 0));
+	}
+
+	@Test(expected = IllegalArgumentException.class) public void unsupportedSchemesAreRejected() {
+		new SDIArtworkLoader(mContext, 1 << 24, 1 << 24).load("jar:file:/covers.jar!/cover.png", 0, 0, null);
+	}
+
+	@Test public void retryAfterAFailureAndAFreshDownloadDoNotShareAFile() throws Exception {
+		CountDownLatch failure = new CountDownLatch(1), retries = new CountDownLatch(1);
+		mServer.respond("/cover.png", 500, new byte[0], failure).respond("/cover.png", 200, mCover, retries);
+		SDIArtworkLoader loader = new SDIArtworkLoader(mContext, 1 << 24, 1 << 24);
+		String url = mServer.url("/cover.png");
+		Await failed = new Await(), waiting = new Await(), fresh = new Await();
+		loader.load(url, 100, 75, failed);
+		mServer.awaitRequests(1);
+		// a second size waits for the download of the first, and retries it once that fails
+		loader.load(url, 200, 150, waiting);
+		awaitBlockedLoaderThread();
+		failure.countDown();
+		assertNull(failed.await());
+		mServer.awaitRequests(2);
+		// meanwhile a third size starts a download of its own
+		loader.load(url, 400, 300, fresh);
+		mServer.awaitRequests(3);
+		retries.countDown();
+
+		assertSize(200, 150, waiting.await());
+		assertSize(WIDTH, HEIGHT, fresh.await());
+		File[] files = new File(mContext.getCacheDir(), SDIArtworkLoader.CACHE_DIR_NAME).listFiles();
+		assertEquals(1, files.length);
+		assertEquals(mCover.length, files[0].length());
+		loader.clearMemory();
+		assertSize(100, 75, load(loader, url, 100, 75));
+		assertEquals(3, mServer.count("/cover.png"));
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * helpers
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private static Bitmap load(SDIArtworkLoader loader, String url, int width, int height) throws InterruptedException {
+		Await await = new Await();
+		Bitmap cached = loader.load(url, width, height, await);
+		return cached != null ? cached : await.await();
+	}
+
+	/* waits until a loader thread blocks on the download of another */
+	private static void awaitBlockedLoaderThread() throws InterruptedException {
+		for (long deadline = System.currentTimeMillis() + 5000; System.currentTimeMillis() < deadline; Thread.sleep(10)) {
+			for (Thread thread : Thread.getAllStackTraces().keySet()) {
+				if (thread.getName().equals("SDIArtworkLoader") && thread.getState() == Thread.State.BLOCKED) return;
+			}
+		}
+		throw new AssertionError("no loader thread blocked");
+	}
+
+	private int cachedFiles() {
+		File[] files = new File(mContext.getCacheDir(), SDIArtworkLoader.CACHE_DIR_NAME).listFiles();
+		return files != null ? files.length : 0;
+	}
+
+	private static void assertSize(int width, int height, Bitmap bitmap) {
+		assertNotNull(bitmap);
+		assertEquals(width, bitmap.getWidth());
+		assertEquals(height, bitmap.getHeight());
+	}
+
+	private static final class Await implements SDIArtworkLoader.Callback {
+
+		private final CountDownLatch mLatch = new CountDownLatch(1);
+		private volatile Bitmap mBitmap;
+
+		@Override public void onArtworkLoaded(String url, Bitmap bitmap) {
+			mBitmap = bitmap;
+			mLatch.countDown();
+		}
+
+		Bitmap await() throws InterruptedException {
+			assertTrue("callback not invoked", mLatch.await(5, TimeUnit.SECONDS));
+			return mBitmap;
+		}
+	}
+
+}
@@ -0,0 +1,194 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SDICatalogueIndexTest {
+
+	@Rule public TemporaryFolder mFolder = new TemporaryFolder();
+
+	private File mFile;
+
+	@Before public void setUp() {
+		mFile = new File(mFolder.getRoot(), SDICatalogueIndex.FILE_NAME);
+	}
+
+	@Test public void lookupsFindEveryCodeAfterEachMerge() throws IOException {
+		SDICatalogueIndex index = new SDICatalogueIndex(mFile);
+		Random random = new Random(7);
+		// the expected contents: release and track ID per ISRC, release ID per UPC
+		Map<String, long[]> isrcs = new HashMap<String, long[]>();
+		Map<String, Long> upcs = new HashMap<String, Long>();
+		List<String> knownIsrcs = new ArrayList<String>(), knownUpcs = new ArrayList<String>();
+
+		for (int round = 0; round < 6; round++) {
+			SDICatalogueIndex.Delta delta = new SDICatalogueIndex.Delta();
+			for (int i = 0; i < 500; i++) {
+				int change = random.nextInt(10);
+				if (change < 5 || knownIsrcs.isEmpty()) {
+					String isrc = isrc(random);
+					long[] ids = { random.nextInt(1000000), random.nextInt(1000000) };
+					delta.putIsrc(isrc, ids[0], ids[1]);
+					isrcs.put(isrc, ids);
+					if (!knownIsrcs.contains(isrc)) knownIsrcs.add(isrc);
+				} else if (change < 7) {
+					// a change, or a removal, of a code that is probably in the index already
+					String isrc = knownIsrcs.get(random.nextInt(knownIsrcs.size()));
+					if (random.nextBoolean()) {
+						delta.removeIsrc(isrc);
+						isrcs.remove(isrc);
+					} else {
+						delta.putIsrc(isrc, round, i);
+						isrcs.put(isrc, new long[] { round, i });
+					}
+				} else if (change < 9 || knownUpcs.isEmpty()) {
+					String upc = upc(random);
+					delta.putUpc(upc, i);
+					upcs.put(upc, (long) i);
+					if (!knownUpcs.contains(upc)) knownUpcs.add(upc);
+				} else {
+					String upc = knownUpcs.get(random.nextInt(knownUpcs.size()));
+					delta.removeUpc(upc);
+					upcs.remove(upc);
+				}
+			}
+			index.applyDelta(delta);
+			assertContents(index, isrcs, upcs, knownIsrcs, knownUpcs);
+		}
+
+		// a new instance maps the file written by the last merge
+		assertContents(new SDICatalogueIndex(mFile), isrcs, upcs, knownIsrcs, knownUpcs);
+		assertEquals(16 + 8 * (3 * isrcs.size() + 2 * upcs.size()), mFile.length());
+	}
+
+	@Test public void theLastChangeToACodeWins() throws IOException {
+		SDICatalogueIndex index = new SDICatalogueIndex(mFile);
+		index.applyDelta(new SDICatalogueIndex.Delta().putIsrc("GBAYE0000001", 1, 1).putUpc("5099902894225", 1));
+		index.applyDelta(new SDICatalogueIndex.Delta()
+			.putIsrc("GBAYE0000001", 2, 2).removeIsrc("GBAYE0000001").putIsrc("GBAYE0000001", 3, 3)
+			.removeUpc("5099902894225")
+			// removing what isn't there is fine
+			.removeIsrc("USRC17607839"));
+		assertEquals(3, index.findTrackId("GBAYE0000001"));
+		assertEquals(-1, index.findReleaseId("5099902894225"));
+		assertEquals(1, index.getIsrcCount());
+		assertEquals(0, index.getUpcCount());
+	}
+
+	@Test public void codesAreNormalised() throws IOException {
+		SDICatalogueIndex index = new SDICatalogueIndex(mFile);
+		index.applyDelta(new SDICatalogueIndex.Delta().putIsrc("GB-AYE-00-00001", 1, 2).putUpc("724384960650", 3));
+		assertEquals(2, index.findTrackId("gbaye0000001"));
+		assertEquals(1, index.findReleaseIdForIsrc("GB AYE 00 00001"));
+		// a UPC-A and the EAN-13 with a leading zero are the same code
+		assertEquals(3, index.findReleaseId("0724384960650"));
+		for (String malformed : new String[] { null, "", "GBAYE000000", "GBAYE00000011", "GBAYE00000_1" }) assertEquals(malformed, -1, SDICatalogueIndex.encodeIsrc(malformed));
+		for (String malformed : new String[] { null, "1234567", "123456789012345", "72438496065X" }) assertEquals(malformed, -1, SDICatalogueIndex.encodeUpc(malformed));
+		assertEquals(-1, index.findTrackId("not an isrc"));
+	}
+
+	@Test public void batchesAreResolvedInPlace() throws IOException {
+		SDICatalogueIndex index = new SDICatalogueIndex(mFile);
+		index.applyDelta(new SDICatalogueIndex.Delta().putIsrc("USRC17607839", 10, 11).putIsrc("GBAYE0000001", 20, 21).putUpc("724384960650", 30));
+		long[] releaseIds = new long[4], trackIds = new long[4];
+		assertEquals(2, index.resolveIsrcs(new String[] { "GBAYE0000001", "GBAYE0000002", "bad", "USRC17607839" }, releaseIds, trackIds));
+		assertArrayEquals(new long[] { 20, -1, -1, 10 }, releaseIds);
+		assertArrayEquals(new long[] { 21, -1, -1, 11 }, trackIds);
+		assertEquals(1, index.resolveUpcs(new String[] { "724384960651", "724384960650" }, releaseIds));
+		assertArrayEquals(new long[] { -1, 30, -1, 10 }, releaseIds);
+	}
+
+	@Test public void aMissingFileIsAnEmptyIndexAndABrokenOneIsReported() throws IOException {
+		SDICatalogueIndex index = new SDICatalogueIndex(mFile);
+		assertEquals(0, index.getIsrcCount());
+		assertEquals(-1, index.findReleaseId("724384960650"));
+
+		new SDICatalogueIndex(mFile).applyDelta(new SDICatalogueIndex.Delta().putUpc("724384960650", 1));
+		RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+		try {
+			file.setLength(file.length() - 1);
+		} finally {
+			file.close();
+		}
+		try {
+			new SDICatalogueIndex(mFile).findReleaseId("724384960650");
+			fail("truncated index read");
+		} catch (IOException expected) {
+			// as expected
+		}
+	}
+
+	@Test public void feedsAreRead() throws IOException {
+		SDICatalogueIndex.Delta delta = SDICatalogueIndex.Delta.read(new StringReader(
+			"# a comment\n\nisrc,GBAYE0000001,1,2\n upc, 724384960650 , 3 \n-isrc,USRC17607839\n-upc,5099902894225\n"));
+		assertEquals(4, delta.size());
+		SDICatalogueIndex index = new SDICatalogueIndex(mFile);
+		index.applyDelta(delta);
+		assertEquals(2, index.findTrackId("GBAYE0000001"));
+		assertEquals(3, index.findReleaseId("724384960650"));
+
+		for (String line : new String[] { "isrc,GBAYE0000001,1", "isrc,GBAYE0000001,1,x", "upc,123,1", "ean,724384960650,1", "isrc,GBAYE0000001,-1,2" }) {
+			try {
+				SDICatalogueIndex.Delta.read(new StringReader("upc,724384960650,3\n" + line));
+				fail(line);
+			} catch (IOException expected) {
+				// as expected
+			}
+		}
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * helpers
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private static void assertContents(SDICatalogueIndex index, Map<String, long[]> isrcs, Map<String, Long> upcs, List<String> knownIsrcs, List<String> knownUpcs) throws IOException {
+		assertEquals(isrcs.size(), index.getIsrcCount());
+		assertEquals(upcs.size(), index.getUpcCount());
+		// every code ever used, so that removed ones are looked up as well
+		String[] codes = knownIsrcs.toArray(new String[knownIsrcs.size()]);
+		long[] releaseIds = new long[codes.length], trackIds = new long[codes.length];
+		assertEquals(isrcs.size(), index.resolveIsrcs(codes, releaseIds, trackIds));
+		for (int i = 0; i < codes.length; i++) {
+			long[] expected = isrcs.get(codes[i]);
+			assertEquals(codes[i], expected != null ? expected[0] : -1, releaseIds[i]);
+			assertEquals(codes[i], expected != null ? expected[1] : -1, trackIds[i]);
+			assertEquals(codes[i], expected != null ? expected[0] : -1, index.findReleaseIdForIsrc(codes[i]));
+			assertEquals(codes[i], expected != null ? expected[1] : -1, index.findTrackId(codes[i]));
+		}
+		codes = knownUpcs.toArray(new String[knownUpcs.size()]);
+		releaseIds = new long[codes.length];
+		assertEquals(upcs.size(), index.resolveUpcs(codes, releaseIds));
+		for (int i = 0; i < codes.length; i++) {
+			Long expected = upcs.get(codes[i]);
+			assertEquals(codes[i], expected != null ? expected : -1, releaseIds[i]);
+			assertEquals(codes[i], expected != null ? expected : -1, index.findReleaseId(codes[i]));
+		}
+	}
+
+	/* a country, a registrant of few distinct values so that keys cluster like real ones, a year and a designation */
+	private static String isrc(Random random) {
+		String registrant = Integer.toString(36 * 36 + random.nextInt(20), 36).toUpperCase();
+		return (random.nextBoolean() ? "GB" : "US") + registrant + String.format("%02d%05d", random.nextInt(100), random.nextInt(100000));
+	}
+
+	private static String upc(Random random) {
+		return String.format("%06d%06d", random.nextInt(1000000), random.nextInt(1000000));
+	}
+
+}
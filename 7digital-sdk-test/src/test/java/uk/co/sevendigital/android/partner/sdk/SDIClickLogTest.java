@@ -0,0 +1,182 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import uk.co.sevendigital.android.partner.sdk.SDIClickLog.Entry;
+import android.content.Intent;
+
+public class SDIClickLogTest {
+
+	/* the smallest segment a log accepts */
+	private static final int SEGMENT_SIZE = 12 + 1024;
+
+	@Rule public TemporaryFolder mFolder = new TemporaryFolder();
+
+	private File mFile;
+
+	@Before public void setUp() {
+		mFile = new File(mFolder.getRoot(), SDIClickLog.SEGMENT_FILE_NAME);
+	}
+
+	@Test public void clicksAreDeliveredInOrderOnFlush() throws Exception {
+		RecordingTransport transport = new RecordingTransport();
+		SDIClickLog log = new SDIClickLog(mFile, SEGMENT_SIZE, SEGMENT_SIZE, transport);
+		log.record(SDIIntent.Action.VIEW_RELEASE, 1, -1, 2, "partner", SDIAppResolver.TARGET_APP);
+		log.record(SDIIntent.Action.PLAY_TRACK, 1, 3, -1, null, SDIAppResolver.TARGET_MARKET);
+		log.record(SDIIntent.Action.SEARCH, -1, -1, -1, "pärtner", SDIAppResolver.TARGET_WEBSITE);
+		log.record(Intent.ACTION_SEARCH, -1, -1, -1, null, SDIAppResolver.TARGET_APP);
+		log.record(null, -1, -1, -1, null, SDIAppResolver.TARGET_NONE);
+		log.flush();
+
+		List<Entry> entries = transport.awaitBatch();
+		assertEquals(5, entries.size());
+		assertEquals(SDIIntent.Action.VIEW_RELEASE, entries.get(0).action);
+		assertEquals(1, entries.get(0).releaseId);
+		assertEquals(2, entries.get(0).artistId);
+		assertEquals("partner", entries.get(0).partner);
+		assertEquals(SDIAppResolver.TARGET_APP, entries.get(0).target);
+		assertEquals(3, entries.get(1).trackId);
+		assertNull(entries.get(1).partner);
+		assertEquals(SDIAppResolver.TARGET_MARKET, entries.get(1).target);
+		assertEquals(SDIIntent.Action.SEARCH, entries.get(2).action);
+		assertEquals("pärtner", entries.get(2).partner);
+		// an action without a template is recorded as it was launched
+		assertEquals(Intent.ACTION_SEARCH, entries.get(3).action);
+		assertNull(entries.get(4).action);
+		assertEquals(SDIAppResolver.TARGET_NONE, entries.get(4).target);
+	}
+
+	@Test public void enoughClicksAreDeliveredWithoutAFlush() throws Exception {
+		RecordingTransport transport = new RecordingTransport();
+		// a record is about 50 bytes, so a few of them trigger a batch
+		SDIClickLog log = new SDIClickLog(mFile, SEGMENT_SIZE, 200, transport);
+		for (int i = 0; i < 10; i++) log.record(SDIIntent.Action.VIEW_RELEASE, i, -1, -1, null, SDIAppResolver.TARGET_APP);
+
+		List<Entry> entries = new ArrayList<Entry>(transport.awaitBatch());
+		log.flush();
+		while (entries.size() < 10) entries.addAll(transport.awaitBatch());
+		assertEquals(10, entries.size());
+		for (int i = 0; i < 10; i++) assertEquals(i, entries.get(i).releaseId);
+	}
+
+	@Test public void aFailedBatchIsRetriedWithTheNextFlush() throws Exception {
+		RecordingTransport transport = new RecordingTransport();
+		SDIClickLog log = new SDIClickLog(mFile, SEGMENT_SIZE, SEGMENT_SIZE, transport);
+		transport.fail(2);
+		log.record(SDIIntent.Action.VIEW_ARTIST, -1, -1, 1, null, SDIAppResolver.TARGET_APP);
+		log.flush();
+		assertEquals(1, transport.awaitBatch().size());
+		log.record(SDIIntent.Action.VIEW_ARTIST, -1, -1, 2, null, SDIAppResolver.TARGET_APP);
+		log.flush();
+		assertEquals(2, transport.awaitBatch().size());
+
+		log.flush();
+		List<Entry> entries = transport.awaitBatch();
+		assertEquals(2, entries.size());
+		assertEquals(1, entries.get(0).artistId);
+		assertEquals(2, entries.get(1).artistId);
+		assertEquals(3, transport.attempts());
+	}
+
+	@Test public void deliveredClicksAreTruncatedAndUndeliveredOnesSurviveARestart() throws Exception {
+		RecordingTransport transport = new RecordingTransport();
+		SDIClickLog log = new SDIClickLog(mFile, SEGMENT_SIZE, SEGMENT_SIZE, transport);
+		log.record(SDIIntent.Action.VIEW_RELEASE, 1, -1, -1, null, SDIAppResolver.TARGET_APP);
+		log.flush();
+		assertEquals(1, transport.awaitBatch().size());
+		// a failed delivery means the click has been written to the segment
+		transport.fail(1);
+		log.record(SDIIntent.Action.VIEW_RELEASE, 2, -1, -1, null, SDIAppResolver.TARGET_APP);
+		log.flush();
+		assertEquals(1, transport.awaitBatch().size());
+
+		// only the undelivered click is sent again by the restarted log
+		RecordingTransport restarted = new RecordingTransport();
+		SDIClickLog again = new SDIClickLog(mFile, SEGMENT_SIZE, SEGMENT_SIZE, restarted);
+		again.record(SDIIntent.Action.VIEW_RELEASE, 3, -1, -1, null, SDIAppResolver.TARGET_APP);
+		again.flush();
+		List<Entry> entries = restarted.awaitBatch();
+		assertEquals(2, entries.size());
+		assertEquals(2, entries.get(0).releaseId);
+		assertEquals(3, entries.get(1).releaseId);
+	}
+
+	@Test public void clicksAreDroppedWhenTheSegmentIsFullAndCannotBeDelivered() throws Exception {
+		RecordingTransport transport = new RecordingTransport();
+		SDIClickLog log = new SDIClickLog(mFile, SEGMENT_SIZE, SEGMENT_SIZE, transport);
+		transport.fail(Integer.MAX_VALUE);
+		for (int i = 0; i < 100; i++) log.record(SDIIntent.Action.VIEW_RELEASE, i, -1, -1, null, SDIAppResolver.TARGET_APP);
+		log.flush();
+		// the flush comes after all appends, so its failed attempt is the last one
+		List<Entry> kept = null;
+		for (List<Entry> batch; (batch = transport.pollBatch()) != null; ) kept = batch;
+		assertNotNull(kept);
+		assertTrue(kept.size() < 100);
+		assertEquals(100 - kept.size(), log.getDroppedCount());
+
+		// the clicks that were kept are the first ones
+		transport.fail(0);
+		log.flush();
+		List<Entry> entries = transport.awaitBatch();
+		assertEquals(kept.size(), entries.size());
+		for (int i = 0; i < entries.size(); i++) assertEquals(i, entries.get(i).releaseId);
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * helpers
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/* hands every batch it is sent to the test, and fails the given number of them after that */
+	private static final class RecordingTransport implements SDIClickLog.Transport {
+
+		private final LinkedBlockingQueue<List<Entry>> mBatches = new LinkedBlockingQueue<List<Entry>>();
+		private volatile int mFailures;
+		private volatile int mAttempts;
+
+		@Override public void send(byte[] batch, int count) throws IOException {
+			List<Entry> entries = SDIClickLog.decodeBatch(batch);
+			assertEquals(count, entries.size());
+			mAttempts++;
+			// decided before the test sees the batch, which may change the failures for the next one
+			boolean fail = mFailures > 0;
+			if (fail) mFailures--;
+			mBatches.add(entries);
+			if (fail) throw new IOException("failed on purpose");
+		}
+
+		void fail(int failures) {
+			mFailures = failures;
+		}
+
+		int attempts() {
+			return mAttempts;
+		}
+
+		List<Entry> awaitBatch() throws InterruptedException {
+			List<Entry> batch = mBatches.poll(5, TimeUnit.SECONDS);
+			assertNotNull("nothing sent", batch);
+			return batch;
+		}
+
+		/* the next batch, or null once nothing has been sent for a while */
+		List<Entry> pollBatch() throws InterruptedException {
+			return mBatches.poll(1, TimeUnit.SECONDS);
+		}
+	}
+
+}
@@ -0,0 +1,90 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SDIDeepLinkCodecTest {
+
+	/* values that have to be escaped, in every position that can carry text */
+	private static final String TEXT = "a&b=c d/é?#%+🎵";
+
+	private static final SDIRequest[] REQUESTS = {
+		new SDIRequest.Search("radiohead", null),
+		new SDIRequest.Search(TEXT, TEXT),
+		new SDIRequest.ViewShop(null),
+		new SDIRequest.ViewYourMusic("partner"),
+		new SDIRequest.ViewDownloads(null),
+		new SDIRequest.ViewRelease(1, null, -1, null, null, null, -1, null, null),
+		new SDIRequest.ViewRelease(Long.MAX_VALUE, TEXT, 0, TEXT, TEXT, "http://cdn.7digital.com/cover.jpg?size=350", 3, TEXT, "partner"),
+		new SDIRequest.ViewArtist(4, TEXT, null),
+		new SDIRequest.ViewArtist(5, null, "partner"),
+		new SDIRequest.PlayRelease(6, null),
+		new SDIRequest.PlayTrack(7, 8, TEXT)
+	};
+
+	@Test public void builtLinksParseBackToTheSameRequest() {
+		SDIDeepLinkCodec codec = new SDIDeepLinkCodec();
+		for (SDIRequest request : REQUESTS) {
+			CharSequence link = codec.build(request);
+			assertTrue(link.toString(), SDIDeepLinkCodec.isDeepLink(link));
+			assertEquals(link.toString(), request, SDIDeepLinkCodec.parse(link));
+			assertEquals(request, SDIDeepLinkCodec.parse(codec.buildString(request)));
+		}
+	}
+
+	@Test public void linksAreCanonical() {
+		SDIDeepLinkCodec codec = new SDIDeepLinkCodec();
+		assertEquals("sevendigital://search?q=a%20b", codec.buildString(new SDIRequest.Search("a b", null)));
+		assertEquals("sevendigital://release/1/track/2?artistId=3&partner=p", codec.buildString(new SDIRequest.ViewRelease(1, null, 2, null, null, null, 3, null, "p")));
+		assertEquals("sevendigital://play/release/1", codec.buildString(new SDIRequest.PlayRelease(1, null)));
+		// the shortcuts produce the same links, in the same buffer
+		CharSequence release = codec.release(1, 2, "p");
+		assertEquals("sevendigital://release/1/track/2?partner=p", release.toString());
+		assertSame(release, codec.artist(9, null));
+		assertEquals("sevendigital://artist/9", codec.toString());
+	}
+
+	@Test public void variationsOfALinkAreAccepted() {
+		SDIRequest release = new SDIRequest.ViewRelease(1, "Title", 2, null, null, null, -1, null, "p");
+		assertEquals(release, SDIDeepLinkCodec.parse("sevendigital://release/1/track/2?releaseTitle=Title&partner=p"));
+		assertEquals(release, SDIDeepLinkCodec.parse("SevenDigital://release/1/track/2/?partner=p&releaseTitle=Title#fragment"));
+		// unknown parameters are ignored and the first occurrence wins
+		assertEquals(release, SDIDeepLinkCodec.parse("sevendigital://release/1/track/2?utm=x&releaseTitle=Title&partner=p&partner=q"));
+		assertEquals(new SDIRequest.ViewShop(null), SDIDeepLinkCodec.parse("sevendigital://shop/#?partner=p"));
+		// '+' and %20 are both spaces, raw non-ASCII characters are taken as they are
+		assertEquals(new SDIRequest.Search("é è", null), SDIDeepLinkCodec.parse("sevendigital://search?q=%C3%A9+è"));
+		assertEquals(new SDIRequest.Search("a b", null), SDIDeepLinkCodec.parse("sevendigital://search?q=a%20b"));
+		// an empty display parameter is absent
+		assertEquals(new SDIRequest.ViewArtist(1, null, null), SDIDeepLinkCodec.parse("sevendigital://artist/1?artistName="));
+	}
+
+	@Test public void malformedLinksAreRejected() {
+		String[] links = {
+			null, "", "sevendigital", "sevendigital:/shop", "http://shop", "sevendigital://", "sevendigital://shops",
+			"sevendigital://shop/x", "sevendigital://search", "sevendigital://search?q=", "sevendigital://search?query=a",
+			"sevendigital://search?q=%zz", "sevendigital://search?q=%4", "sevendigital://search?q=a%",
+			"sevendigital://release", "sevendigital://release/", "sevendigital://release//1", "sevendigital://release/abc",
+			"sevendigital://release/-1", "sevendigital://release/1x", "sevendigital://release/99999999999999999999",
+			"sevendigital://release/1/2", "sevendigital://release/1/track", "sevendigital://release/1/track/",
+			"sevendigital://release/1/track/x", "sevendigital://release/1/track/2/3", "sevendigital://release/1?artistId=x",
+			"sevendigital://release/1?artistId=", "sevendigital://artist", "sevendigital://artist/1/2", "sevendigital://artist/a",
+			"sevendigital://play", "sevendigital://play/release", "sevendigital://play/track/1", "sevendigital://play/release/1/track/"
+		};
+		for (String link : links) assertNull(link, SDIDeepLinkCodec.parse(link));
+		assertFalse(SDIDeepLinkCodec.isDeepLink(null));
+		assertFalse(SDIDeepLinkCodec.isDeepLink("http://www.7digital.com/"));
+	}
+
+	@Test public void linksAreParsedFromAnyCharSequence() {
+		StringBuilder link = new StringBuilder("sevendigital://play/release/1/track/2?partner=p");
+		assertEquals(new SDIRequest.PlayTrack(1, 2, "p"), SDIDeepLinkCodec.parse(link));
+		link.setLength(link.indexOf("/track"));
+		assertEquals(new SDIRequest.PlayRelease(1, null), SDIDeepLinkCodec.parse(link));
+	}
+
+}
@@ -0,0 +1,205 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Build;
+
+public class SDIFallbackChainTest {
+
+	/* where the chain keeps its cache, keyed by the names of its steps */
+	private static final String PREFERENCES_NAME = "sdi_fallback_chain";
+	private static final String KEY = "first,second";
+	private static final long HOUR_MILLIS = 60 * 60 * 1000;
+
+	@Rule public TemporaryFolder mFolder = new TemporaryFolder();
+
+	private SDITestContext mContext;
+	private CountingStep mFirst;
+	private CountingStep mSecond;
+
+	@Before public void setUp() throws IOException {
+		mContext = new SDITestContext(mFolder.newFolder("cache"));
+		mFirst = new CountingStep("first", SDIAppResolver.TARGET_APP, false);
+		mSecond = new CountingStep("second", SDIAppResolver.TARGET_WEBSITE, true);
+		SDIAppResolver.invalidate();
+	}
+
+	@After public void tearDown() {
+		SDIAppResolver.invalidate();
+	}
+
+	@Test public void theFirstAvailableStepIsTaken() {
+		assertEquals(SDIAppResolver.TARGET_WEBSITE, newChain().resolveTarget(mContext));
+		mFirst.mAvailable = true;
+		assertEquals(SDIAppResolver.TARGET_APP, newChain(true).resolveTarget(mContext));
+		mFirst.mAvailable = mSecond.mAvailable = false;
+		assertEquals(SDIAppResolver.TARGET_NONE, newChain(true).resolveTarget(mContext));
+	}
+
+	@Test public void aNewProcessTrustsTheCache() {
+		SDIFallbackChain chain = newChain();
+		assertEquals(SDIAppResolver.TARGET_WEBSITE, chain.resolveTarget(mContext));
+		assertEquals(SDIAppResolver.TARGET_WEBSITE, chain.resolveTarget(mContext));
+		assertQueries(1);
+
+		// a new instance with the same steps stands in for a new process
+		mFirst.mAvailable = true;
+		assertEquals(SDIAppResolver.TARGET_WEBSITE, newChain().resolveTarget(mContext));
+		assertQueries(1);
+	}
+
+	@Test public void theCacheExpiresAfterADay() {
+		newChain().resolveTarget(mContext);
+		mFirst.mAvailable = true;
+
+		setCacheTime(System.currentTimeMillis() - 23 * HOUR_MILLIS);
+		assertEquals(SDIAppResolver.TARGET_WEBSITE, newChain().resolveTarget(mContext));
+		assertQueries(1);
+
+		setCacheTime(System.currentTimeMillis() - 25 * HOUR_MILLIS);
+		assertEquals(SDIAppResolver.TARGET_APP, newChain().resolveTarget(mContext));
+		assertQueries(2);
+		awaitBackground();
+		// the rebuilt cache is fresh again
+		assertEquals(SDIAppResolver.TARGET_APP, newChain().resolveTarget(mContext));
+		assertQueries(2);
+
+		// a clock that was set back doesn't keep a cache alive either
+		setCacheTime(System.currentTimeMillis() + HOUR_MILLIS);
+		newChain().resolveTarget(mContext);
+		assertQueries(3);
+	}
+
+	@Test public void aSystemUpdateDropsTheCache() {
+		newChain().resolveTarget(mContext);
+		mFirst.mAvailable = true;
+		awaitBackground();
+		preferences().edit().putString(KEY + ".fingerprint", Build.FINGERPRINT + "-update").commit();
+
+		assertEquals(SDIAppResolver.TARGET_APP, newChain().resolveTarget(mContext));
+		assertQueries(2);
+		awaitBackground();
+		assertEquals(Build.FINGERPRINT, preferences().getString(KEY + ".fingerprint", null));
+		newChain().resolveTarget(mContext);
+		assertQueries(2);
+	}
+
+	@Test public void installingTheAppDropsTheCache() {
+		newChain().resolveTarget(mContext);
+		awaitBackground();
+		SDITestContext.installApp(mContext.getPackageManager(), 1);
+		newChain().resolveTarget(mContext);
+		assertQueries(2);
+
+		awaitBackground();
+		mContext.getPackageManager().removePackage(SDIIntent.SDI_ANDROID_PACKAGE_NAME);
+		newChain().resolveTarget(mContext);
+		assertQueries(3);
+	}
+
+	@Test public void invalidatingQueriesTheDeviceAgain() {
+		SDIFallbackChain chain = newChain();
+		chain.resolveTarget(mContext);
+		mFirst.mAvailable = true;
+
+		// at once, even though the stored cache is only cleared in the background
+		chain.invalidate(mContext);
+		assertEquals(SDIAppResolver.TARGET_APP, chain.resolveTarget(mContext));
+		assertQueries(2);
+		// as does a package change seen by SDIAppResolver
+		mFirst.mAvailable = false;
+		SDIAppResolver.invalidate();
+		assertEquals(SDIAppResolver.TARGET_WEBSITE, chain.resolveTarget(mContext));
+		assertQueries(3);
+
+		// the invalidation reaches the next process too
+		chain.invalidate(mContext);
+		awaitBackground();
+		newChain().resolveTarget(mContext);
+		assertQueries(4);
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * helpers
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/* a chain over the test steps, once the cache written by earlier ones has been stored */
+	private SDIFallbackChain newChain() {
+		awaitBackground();
+		return new SDIFallbackChain(mFirst, mSecond);
+	}
+
+	/* same, starting without a cache */
+	private SDIFallbackChain newChain(boolean invalidated) {
+		SDIFallbackChain chain = newChain();
+		if (invalidated) chain.invalidate(mContext);
+		awaitBackground();
+		return chain;
+	}
+
+	private SharedPreferences preferences() {
+		return mContext.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+	}
+
+	private void setCacheTime(long time) {
+		awaitBackground();
+		preferences().edit().putLong(KEY + ".time", time).commit();
+	}
+
+	/* each step is asked once per time the availability is queried */
+	private void assertQueries(int queries) {
+		assertEquals(queries, mFirst.mQueries);
+		assertEquals(queries, mSecond.mQueries);
+	}
+
+	/* the cache is stored on the dispatcher's single thread, so anything submitted after it runs after it */
+	private static void awaitBackground() {
+		try {
+			SDIPartnerDispatcher.submit(new Callable<Void>() {
+				@Override public Void call() { return null; }
+			}).get();
+		} catch (Exception e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	private static final class CountingStep implements SDIFallbackChain.Step {
+
+		private final String mName;
+		private final int mTarget;
+		volatile boolean mAvailable;
+		volatile int mQueries;
+
+		CountingStep(String name, int target, boolean available) {
+			mName = name;
+			mTarget = target;
+			mAvailable = available;
+		}
+
+		@Override public String getName() { return mName; }
+
+		@Override public int getTarget() { return mTarget; }
+
+		@Override public boolean isAvailable(Context context) {
+			mQueries++;
+			return mAvailable;
+		}
+
+		@Override public boolean launch(Context context, Intent intent, boolean newTask) { return true; }
+
+		@Override public void preconnect(Context context, Intent intent) { /* nothing to prepare */ }
+	}
+
+}
@@ -0,0 +1,125 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import android.app.SearchManager;
+import android.content.Intent;
+import android.os.Bundle;
+
+public class SDIIntentParserTest {
+
+	private static final SDIRequest[] REQUESTS = {
+		new SDIRequest.Search("radiohead", null),
+		new SDIRequest.Search("ünïcode query", "partner"),
+		new SDIRequest.ViewShop(null),
+		new SDIRequest.ViewYourMusic("partner"),
+		new SDIRequest.ViewDownloads(null),
+		new SDIRequest.ViewRelease(1, null, -1, null, null, null, -1, null, null),
+		new SDIRequest.ViewRelease(Long.MAX_VALUE, "Title", 2, "Track", "Remix", "http://cdn/cover.jpg", 3, "Artist", "partner"),
+		new SDIRequest.ViewArtist(4, "Artist", null),
+		new SDIRequest.ViewArtist(5, null, "partner"),
+		new SDIRequest.PlayRelease(6, null),
+		new SDIRequest.PlayTrack(7, 8, "partner")
+	};
+
+	@Test public void builtIntentsParseBackToTheSameRequest() {
+		for (SDIRequest request : REQUESTS) {
+			Intent intent = SDIIntent.Builder.build(request);
+			assertTrue(request.toString(), SDIIntentParser.isSupported(intent.getAction()));
+			assertEquals(request, SDIIntentParser.parse(intent));
+			// compact Intents are decoded from their payload
+			assertEquals(request, SDIIntentParser.parse(SDIPayload.newIntent(request)));
+		}
+	}
+
+	@Test public void theAndroidSearchActionIsAccepted() {
+		Intent intent = new Intent(Intent.ACTION_SEARCH).putExtra(SearchManager.QUERY, "query").putExtra(SDIIntent.Extra.PARTNER, "partner");
+		assertEquals(new SDIRequest.Search("query", "partner"), SDIIntentParser.parse(intent));
+	}
+
+	@Test public void otherActionsAreNotParsed() {
+		assertFalse(SDIIntentParser.isSupported(null));
+		assertNull(SDIIntentParser.parse(new Intent()));
+		assertNull(SDIIntentParser.parse(new Intent(Intent.ACTION_VIEW)));
+		assertNull(SDIIntentParser.parse(SDIIntent.Action.VIEW_RELEASE + "X", null));
+		// a lookalike that lands in the same slot of the table
+		for (String action : new String[] { SDIIntent.Action.SEARCH, SDIIntent.Action.VIEW_ARTIST, Intent.ACTION_SEARCH }) {
+			String lookalike = sameHash(action);
+			assertEquals(action.hashCode(), lookalike.hashCode());
+			assertFalse(lookalike, SDIIntentParser.isSupported(lookalike));
+			// equal but not identical strings are still found
+			assertTrue(SDIIntentParser.isSupported(new String(action)));
+		}
+	}
+
+	@Test public void identifiersMayBeAnyNumberOrANumericString() {
+		Bundle extras = new Bundle();
+		extras.putInt(SDIIntent.Extra.RELEASEID, 12);
+		extras.putString(SDIIntent.Extra.TRACKID, " 34 ");
+		extras.putShort(SDIIntent.Extra.ARTISTID, (short) 56);
+		SDIRequest.ViewRelease release = (SDIRequest.ViewRelease) SDIIntentParser.parse(SDIIntent.Action.VIEW_RELEASE, extras);
+		assertEquals(12, release.getReleaseId());
+		assertEquals(34, release.getTrackId());
+		assertEquals(56, release.getArtistId());
+
+		// an optional identifier that is not a number is left out
+		extras.putString(SDIIntent.Extra.TRACKID, "thirty-four");
+		assertEquals(-1, ((SDIRequest.ViewRelease) SDIIntentParser.parse(SDIIntent.Action.VIEW_RELEASE, extras)).getTrackId());
+	}
+
+	@Test public void anEmptyArtistNameIsAbsent() {
+		Intent intent = new Intent(SDIIntent.Action.VIEW_ARTIST).putExtra(SDIIntent.Extra.ARTISTID, 1L).putExtra(SDIIntent.Extra.ARTISTNAME, "");
+		assertNull(((SDIRequest.ViewArtist) SDIIntentParser.parse(intent)).getArtistName());
+	}
+
+	@Test public void missingRequiredExtrasAreRejected() {
+		assertRejected(SDIIntent.Action.SEARCH, null);
+		assertRejected(SDIIntent.Action.VIEW_RELEASE, null);
+		assertRejected(SDIIntent.Action.VIEW_ARTIST, new Bundle());
+		assertRejected(SDIIntent.Action.PLAY_RELEASE, extras(SDIIntent.Extra.RELEASEID, "one"));
+		assertRejected(SDIIntent.Action.PLAY_TRACK, extras(SDIIntent.Extra.RELEASEID, "1"));
+		Bundle search = new Bundle();
+		search.putString(SearchManager.QUERY, "");
+		assertRejected(Intent.ACTION_SEARCH, search);
+		try {
+			SDIIntentParser.parse(null);
+			fail("null Intent accepted");
+		} catch (IllegalArgumentException expected) {
+			// as expected
+		}
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * helpers
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private static void assertRejected(String action, Bundle extras) {
+		try {
+			SDIRequest request = SDIIntentParser.parse(action, extras);
+			fail(action + " parsed to " + request);
+		} catch (IllegalArgumentException expected) {
+			// as expected
+		}
+	}
+
+	private static Bundle extras(String key, String value) {
+		Bundle extras = new Bundle();
+		extras.putString(key, value);
+		return extras;
+	}
+
+	/* a different string with the same hash code: raising one char by 1 and lowering the next by 31 cancels out */
+	private static String sameHash(String value) {
+		char[] chars = value.toCharArray();
+		chars[0] += 1;
+		chars[1] -= 31;
+		return new String(chars);
+	}
+
+}
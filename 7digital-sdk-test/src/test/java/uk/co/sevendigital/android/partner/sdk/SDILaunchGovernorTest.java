@@ -0,0 +1,102 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import android.content.Intent;
+
+public class SDILaunchGovernorTest {
+
+	/* the launch time is kept in 24 bits of milliseconds, about 4.66 hours */
+	private static final long WRAP_MILLIS = 1L << 24;
+	private static final long MILLIS = 1000000L;
+
+	@Before public void setUp() {
+		SDILaunchGovernor.reset();
+		SDILaunchGovernor.setDedupeWindow(SDILaunchGovernor.DEFAULT_DEDUPE_WINDOW_MILLIS);
+		SDILaunchGovernor.setFallbackInterval(SDILaunchGovernor.DEFAULT_FALLBACK_INTERVAL_MILLIS);
+	}
+
+	@After public void tearDown() {
+		setUp();
+	}
+
+	@Test public void duplicatesWithinTheWindowAreDropped() {
+		assertTrue(SDILaunchGovernor.tryLaunch(release(1), 10000));
+		assertFalse(SDILaunchGovernor.tryLaunch(release(1), 10001));
+		assertFalse(SDILaunchGovernor.tryLaunch(release(1), 10499));
+		// the window runs from the launch that went ahead, not from the dropped ones
+		assertTrue(SDILaunchGovernor.tryLaunch(release(1), 10500));
+		assertFalse(SDILaunchGovernor.tryLaunch(release(1), 10600));
+	}
+
+	@Test public void launchesOutsideTheWindowGoAhead() {
+		assertTrue(SDILaunchGovernor.tryLaunch(release(1), 10000));
+		assertTrue(SDILaunchGovernor.tryLaunch(release(1), 20000));
+		// hours later, but short of a wrap of the time field
+		assertTrue(SDILaunchGovernor.tryLaunch(release(1), 20000 + 3 * 60 * 60 * 1000));
+	}
+
+	@Test public void differentLaunchesAreNotDeduplicated() {
+		assertTrue(SDILaunchGovernor.tryLaunch(release(1), 10000));
+		assertTrue(SDILaunchGovernor.tryLaunch(release(2), 10000));
+		assertTrue(SDILaunchGovernor.tryLaunch(SDIIntent.Builder.buildView7digitalTrack(1, 5), 10000));
+		assertTrue(SDILaunchGovernor.tryLaunch(SDIIntent.Builder.buildPlay7digitalRelease(1), 10000));
+		assertTrue(SDILaunchGovernor.tryLaunch(SDIIntent.Builder.buildSearchIntent("one"), 10000));
+		assertTrue(SDILaunchGovernor.tryLaunch(SDIIntent.Builder.buildSearchIntent("two"), 10000));
+		assertFalse(SDILaunchGovernor.tryLaunch(SDIIntent.Builder.buildSearchIntent("one"), 10001));
+	}
+
+	@Test public void manyLaunchesDoNotDropNewOnes() {
+		// more distinct launches within the window than the table has slots
+		for (long releaseId = 1; releaseId <= 500; releaseId++) assertTrue(SDILaunchGovernor.tryLaunch(release(releaseId), 10000 + releaseId));
+	}
+
+	@Test public void theWindowSpansAWrapOfTheTimeField() {
+		assertTrue(SDILaunchGovernor.tryLaunch(release(1), WRAP_MILLIS - 100));
+		assertFalse(SDILaunchGovernor.tryLaunch(release(1), WRAP_MILLIS + 100));
+		assertTrue(SDILaunchGovernor.tryLaunch(release(1), WRAP_MILLIS + 400));
+		assertFalse(SDILaunchGovernor.tryLaunch(release(1), WRAP_MILLIS + 899));
+		// the second wrap likewise
+		assertTrue(SDILaunchGovernor.tryLaunch(release(2), 2 * WRAP_MILLIS - 1));
+		assertFalse(SDILaunchGovernor.tryLaunch(release(2), 2 * WRAP_MILLIS));
+		assertTrue(SDILaunchGovernor.tryLaunch(release(2), 2 * WRAP_MILLIS + 499));
+	}
+
+	@Test public void aZeroWindowDisablesDeduplication() {
+		SDILaunchGovernor.setDedupeWindow(0);
+		assertTrue(SDILaunchGovernor.tryLaunch(release(1), 10000));
+		assertTrue(SDILaunchGovernor.tryLaunch(release(1), 10000));
+	}
+
+	@Test public void resetForgetsRecentLaunches() {
+		assertTrue(SDILaunchGovernor.tryLaunch(release(1), 10000));
+		SDILaunchGovernor.reset();
+		assertTrue(SDILaunchGovernor.tryLaunch(release(1), 10001));
+	}
+
+	@Test public void fallbacksAreRateLimited() {
+		long start = 1000 * MILLIS;
+		assertTrue(SDILaunchGovernor.tryFallback(start));
+		assertFalse(SDILaunchGovernor.tryFallback(start + 1 * MILLIS));
+		assertFalse(SDILaunchGovernor.tryFallback(start + 1999 * MILLIS));
+		assertTrue(SDILaunchGovernor.tryFallback(start + 2000 * MILLIS));
+		assertFalse(SDILaunchGovernor.tryFallback(start + 2500 * MILLIS));
+
+		SDILaunchGovernor.setFallbackInterval(0);
+		assertTrue(SDILaunchGovernor.tryFallback(start + 2501 * MILLIS));
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * helpers
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private static Intent release(long releaseId) {
+		return SDIIntent.Builder.buildView7digitalRelease(releaseId);
+	}
+
+}
@@ -0,0 +1,155 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import android.os.Looper;
+
+public class SDIPartnerDispatcherTest {
+
+	@Rule public TemporaryFolder mFolder = new TemporaryFolder();
+
+	private SDITestContext mContext;
+	private RecordingCallback mCallback;
+
+	@Before public void setUp() throws IOException {
+		mContext = new SDITestContext(mFolder.newFolder("cache"));
+		SDITestContext.installApp(mContext.getPackageManager(), 1);
+		mCallback = new RecordingCallback();
+		SDIAppResolver.invalidate();
+		SDILaunchGovernor.reset();
+	}
+
+	@After public void tearDown() {
+		SDIAppResolver.invalidate();
+		SDILaunchGovernor.reset();
+	}
+
+	@Test public void aDispatchReportsTheTargetStarted() throws Exception {
+		Future<Integer> future = SDIPartnerDispatcher.view7digitalRelease(mContext, 1, "partner", mCallback);
+		assertEquals(SDIAppResolver.TARGET_APP, (int) future.get(5, TimeUnit.SECONDS));
+		assertTrue(future.isDone());
+		assertEquals(SDIAppResolver.TARGET_APP, mCallback.await());
+		assertEquals(1, mContext.getStartedActivities().size());
+		assertEquals("partner", mContext.getStartedActivities().get(0).getStringExtra(SDIIntent.Extra.PARTNER));
+
+		// too late to cancel
+		assertFalse(future.cancel(true));
+		assertFalse(future.isCancelled());
+		assertEquals(SDIAppResolver.TARGET_APP, (int) future.get());
+		mCallback.assertNoMore();
+	}
+
+	@Test public void invalidParametersFailTheFuture() throws Exception {
+		Future<Integer> future = SDIPartnerDispatcher.view7digitalRelease(mContext, -1, null, mCallback);
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			fail("invalid release accepted");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+		assertEquals(SDIAppResolver.TARGET_NONE, mCallback.await());
+		assertTrue(mContext.getStartedActivities().isEmpty());
+		mCallback.assertNoMore();
+	}
+
+	@Test public void cancellingPreventsTheLaunchAndReleasesWaiters() throws Exception {
+		CountDownLatch gate = blockDispatcher();
+		final Future<Integer> future = SDIPartnerDispatcher.view7digitalRelease(mContext, 2, null, mCallback);
+		try {
+			future.get(100, TimeUnit.MILLISECONDS);
+			fail("completed while the dispatcher is blocked");
+		} catch (TimeoutException expected) {
+			// as expected
+		}
+		// a caller waiting without a timeout is released by the cancellation
+		final LinkedBlockingQueue<Throwable> waiter = new LinkedBlockingQueue<Throwable>();
+		new Thread(new Runnable() {
+			@Override public void run() {
+				try { future.get(); waiter.add(new AssertionError("not cancelled")); }
+				catch (Throwable e) { waiter.add(e); }
+			}
+		}).start();
+
+		assertTrue(future.cancel(false));
+		assertTrue(future.isCancelled());
+		assertTrue(future.isDone());
+		assertFalse(future.cancel(false));
+		assertTrue(waiter.poll(5, TimeUnit.SECONDS) instanceof CancellationException);
+		assertEquals(SDIAppResolver.TARGET_NONE, mCallback.await());
+
+		gate.countDown();
+		awaitMainThread();
+		assertTrue(mContext.getStartedActivities().isEmpty());
+		mCallback.assertNoMore();
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * helpers
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/* holds up the dispatcher's single thread until the returned latch is released */
+	private static CountDownLatch blockDispatcher() {
+		final CountDownLatch gate = new CountDownLatch(1);
+		SDIPartnerDispatcher.submit(new Callable<Void>() {
+			@Override public Void call() throws InterruptedException {
+				gate.await();
+				return null;
+			}
+		});
+		return gate;
+	}
+
+	/* lets the dispatcher and then the main thread run everything posted so far */
+	private static void awaitMainThread() throws Exception {
+		SDIPartnerDispatcher.submit(new Callable<Void>() {
+			@Override public Void call() { return null; }
+		}).get();
+		final CountDownLatch posted = new CountDownLatch(1);
+		new android.os.Handler(Looper.getMainLooper()).post(new Runnable() {
+			@Override public void run() { posted.countDown(); }
+		});
+		assertTrue(posted.await(5, TimeUnit.SECONDS));
+	}
+
+	/* records the targets reported, checking that they are reported on the main thread */
+	private static final class RecordingCallback implements SDIPartnerDispatcher.Callback {
+
+		private final LinkedBlockingQueue<Integer> mTargets = new LinkedBlockingQueue<Integer>();
+
+		@Override public void onDispatched(int target) {
+			mTargets.add(Looper.myLooper() == Looper.getMainLooper() ? target : Integer.MIN_VALUE);
+		}
+
+		int await() throws InterruptedException {
+			Integer target = mTargets.poll(5, TimeUnit.SECONDS);
+			assertTrue("callback not invoked", target != null);
+			assertTrue("callback not invoked on the main thread", target != Integer.MIN_VALUE);
+			return target;
+		}
+
+		void assertNoMore() throws Exception {
+			awaitMainThread();
+			assertTrue("callback invoked again", mTargets.isEmpty());
+		}
+	}
+
+}
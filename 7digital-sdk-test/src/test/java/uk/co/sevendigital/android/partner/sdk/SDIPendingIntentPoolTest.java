@@ -0,0 +1,140 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import android.app.PendingIntent;
+import android.content.Intent;
+
+public class SDIPendingIntentPoolTest {
+
+	@Rule public TemporaryFolder mFolder = new TemporaryFolder();
+
+	private SDITestContext mContext;
+
+	@Before public void setUp() throws IOException {
+		mContext = new SDITestContext(mFolder.newFolder("cache"));
+		SDITestContext.installApp(mContext.getPackageManager(), 1);
+		SDIAppResolver.invalidate();
+	}
+
+	@After public void tearDown() {
+		SDIAppResolver.invalidate();
+	}
+
+	@Test public void sameLaunchGetsTheSamePendingIntent() {
+		SDIPendingIntentPool pool = new SDIPendingIntentPool(mContext, "partner");
+		PendingIntent first = pool.view7digitalRelease(1);
+		assertSame(first, pool.view7digitalRelease(1));
+		assertEquals(1, pool.size());
+		assertEquals(1, first.getIntent().getLongExtra(SDIIntent.Extra.RELEASEID, -1));
+		assertEquals("partner", first.getIntent().getStringExtra(SDIIntent.Extra.PARTNER));
+
+		// a new title updates the same PendingIntent in place
+		PendingIntent titled = pool.view7digitalItem(1, "Title", -1, null, null, null, -1, null);
+		assertEquals(first.getRequestCode(), titled.getRequestCode());
+		assertEquals("Title", first.getIntent().getStringExtra(SDIIntent.Extra.RELEASETITLE));
+		assertEquals(1, pool.size());
+	}
+
+	@Test public void distinctReleasesGetDistinctRequestCodes() {
+		SDIPendingIntentPool pool = new SDIPendingIntentPool(mContext, null, SDIAppResolver.TARGET_MARKET, 256);
+		Set<Integer> requestCodes = new HashSet<Integer>();
+		for (long releaseId = 1; releaseId <= 200; releaseId++) requestCodes.add(pool.view7digitalRelease(releaseId).getRequestCode());
+		assertEquals(200, requestCodes.size());
+		for (long releaseId = 1; releaseId <= 200; releaseId++) {
+			assertEquals(releaseId, pool.view7digitalRelease(releaseId).getIntent().getLongExtra(SDIIntent.Extra.RELEASEID, -1));
+		}
+	}
+
+	@Test public void collidingHashesGetDistinctRequestCodes() {
+		long[] colliding = findCollidingReleases();
+		SDIPendingIntentPool pool = new SDIPendingIntentPool(mContext, null);
+		PendingIntent first = pool.view7digitalRelease(colliding[0]);
+		PendingIntent second = pool.view7digitalRelease(colliding[1]);
+		assertNotEquals(first.getRequestCode(), second.getRequestCode());
+		assertEquals(colliding[0], first.getIntent().getLongExtra(SDIIntent.Extra.RELEASEID, -1));
+		assertEquals(colliding[1], second.getIntent().getLongExtra(SDIIntent.Extra.RELEASEID, -1));
+	}
+
+	@Test public void evictionCancelsOnlyTheEvictedPendingIntent() {
+		SDIPendingIntentPool pool = new SDIPendingIntentPool(mContext, null, SDIAppResolver.TARGET_MARKET, 2);
+		PendingIntent one = pool.view7digitalRelease(1);
+		PendingIntent two = pool.view7digitalRelease(2);
+		// touch 1, so that 2 is the least recently used
+		pool.view7digitalRelease(1);
+		PendingIntent three = pool.view7digitalRelease(3);
+
+		assertEquals(2, pool.size());
+		assertTrue(two.isCancelled());
+		assertFalse(one.isCancelled());
+		assertFalse(three.isCancelled());
+		assertSame(one, pool.view7digitalRelease(1));
+		// asking for 2 again creates a new PendingIntent
+		PendingIntent again = pool.view7digitalRelease(2);
+		assertFalse(again.isCancelled());
+		assertTrue(three.isCancelled());
+
+		pool.cancelAll();
+		assertEquals(0, pool.size());
+		assertTrue(one.isCancelled());
+		assertTrue(again.isCancelled());
+	}
+
+	@Test public void compactIntentsAreExpanded() {
+		SDIPendingIntentPool pool = new SDIPendingIntentPool(mContext, null);
+		PendingIntent one = pool.getActivity(SDIPayload.newIntent(new SDIRequest.ViewRelease(1, "One", -1, null, null, null, -1, null, null)));
+		PendingIntent two = pool.getActivity(SDIPayload.newIntent(new SDIRequest.ViewRelease(2, "Two", -1, null, null, null, -1, null, null)));
+
+		assertNotEquals(one.getRequestCode(), two.getRequestCode());
+		assertEquals(2, pool.size());
+		Intent intent = one.getIntent();
+		assertFalse(intent.hasExtra(SDIPayload.EXTRA_PAYLOAD));
+		assertEquals(1, intent.getLongExtra(SDIIntent.Extra.RELEASEID, -1));
+		assertEquals("One", intent.getStringExtra(SDIIntent.Extra.RELEASETITLE));
+		assertEquals("Two", two.getIntent().getStringExtra(SDIIntent.Extra.RELEASETITLE));
+		// the same launch built either way is the same PendingIntent
+		assertSame(one, pool.view7digitalItem(1, "One", -1, null, null, null, -1, null));
+	}
+
+	@Test public void fallsBackWhenTheAppIsNotInstalled() {
+		mContext.getPackageManager().removePackage(SDIIntent.SDI_ANDROID_PACKAGE_NAME);
+		SDIAppResolver.invalidate();
+		SDIPendingIntentPool pool = new SDIPendingIntentPool(mContext, null);
+		// no market either
+		assertNull(pool.view7digitalRelease(1));
+		assertEquals(0, pool.size());
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * helpers
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/* two releases whose launches hash to the same request code, as the pool derives it before probing */
+	private static long[] findCollidingReleases() {
+		Map<Integer, Long> releases = new HashMap<Integer, Long>();
+		for (long releaseId = 1; releaseId < 10000000; releaseId++) {
+			long key = SDILaunchGovernor.fingerprint(SDIIntent.Builder.buildView7digitalRelease(releaseId)) * 31 + SDIAppResolver.TARGET_APP;
+			Long previous = releases.put((int) (key ^ (key >>> 32)), releaseId);
+			if (previous != null) return new long[] { previous, releaseId };
+		}
+		throw new AssertionError("no colliding releases");
+	}
+
+}
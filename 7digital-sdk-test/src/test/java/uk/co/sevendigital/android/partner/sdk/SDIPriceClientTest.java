@@ -0,0 +1,180 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import uk.co.sevendigital.android.partner.sdk.SDIPriceClient.Price;
+import android.content.Context;
+import android.content.ContextWrapper;
+
+public class SDIPriceClientTest {
+
+	@Rule public TemporaryFolder mFolder = new TemporaryFolder();
+
+	private SDITestServer mServer;
+	private Context mContext;
+	private SDIPriceClient.HttpFetcher mFetcher;
+
+	@Before public void setUp() throws IOException {
+		mServer = new SDITestServer();
+		final File cacheDir = mFolder.newFolder("cache");
+		mContext = new ContextWrapper(null) {
+			@Override public File getCacheDir() { return cacheDir; }
+			@Override public Context getApplicationContext() { return this; }
+		};
+		mFetcher = new SDIPriceClient.HttpFetcher(mServer.url("/prices"));
+	}
+
+	@After public void tearDown() {
+		mServer.stop();
+	}
+
+	@Test public void lookupsOfAFrameShareOneRequestPerType() throws Exception {
+		mServer.respond("/prices", 200, prices(price(1, "available", "£7.99"), price(2, "owned", null), price(3, "available", "£0.99")));
+		SDIPriceClient client = new SDIPriceClient(mContext, mFetcher);
+		Await one = new Await(), two = new Await(), again = new Await(), track = new Await();
+		assertNull(client.get(SDIPriceClient.TYPE_RELEASE, 1, one));
+		assertNull(client.get(SDIPriceClient.TYPE_RELEASE, 2, two));
+		assertNull(client.get(SDIPriceClient.TYPE_RELEASE, 1, again));
+		assertNull(client.get(SDIPriceClient.TYPE_TRACK, 3, track));
+
+		assertEquals("£7.99", one.await().getFormattedPrice());
+		assertEquals(SDIPriceClient.STATE_OWNED, two.await().getState());
+		assertEquals("£7.99", again.await().getFormattedPrice());
+		assertEquals(SDIPriceClient.TYPE_TRACK, track.await().getType());
+		List<String> requests = mServer.requests();
+		assertEquals(2, requests.size());
+		assertTrue(requests.contains("/prices?type=release&ids=1,2"));
+		assertTrue(requests.contains("/prices?type=track&ids=3"));
+		// no price for 4 in the answer
+		Await missing = new Await();
+		client.get(SDIPriceClient.TYPE_RELEASE, 4, missing);
+		assertEquals(SDIPriceClient.STATE_UNAVAILABLE, missing.await().getState());
+	}
+
+	@Test public void coldStartIsServedFromDiskWithoutFetching() throws Exception {
+		mServer.respond("/prices", 200, prices(price(1, "available", "£7.99")));
+		SDIPriceClient warm = new SDIPriceClient(mContext, mFetcher);
+		Await fetched = new Await();
+		warm.get(SDIPriceClient.TYPE_RELEASE, 1, fetched);
+		assertNotNull(fetched.await());
+		awaitSaved();
+
+		SDIPriceClient cold = new SDIPriceClient(mContext, mFetcher);
+		Await loaded = new Await();
+		Price cached = cold.get(SDIPriceClient.TYPE_RELEASE, 1, loaded);
+		Price price = cached != null ? cached : loaded.await();
+		assertEquals("£7.99", price.getFormattedPrice());
+		assertEquals(1, mServer.count("/prices"));
+	}
+
+	@Test public void clearDuringAFetchFetchesAgain() throws Exception {
+		CountDownLatch gate = new CountDownLatch(1);
+		mServer.respond("/prices", 200, prices(price(1, "available", "£7.99")), gate).respond("/prices", 200, prices(price(1, "owned", null)));
+		SDIPriceClient client = new SDIPriceClient(mContext, mFetcher);
+		Await await = new Await();
+		client.get(SDIPriceClient.TYPE_RELEASE, 1, await);
+		mServer.awaitRequests(1);
+		// e.g. the user signs in while the price is being fetched
+		client.clear();
+		gate.countDown();
+
+		assertEquals(SDIPriceClient.STATE_OWNED, await.await().getState());
+		assertEquals(SDIPriceClient.STATE_OWNED, client.getCached(SDIPriceClient.TYPE_RELEASE, 1).getState());
+		assertEquals(2, mServer.count("/prices"));
+	}
+
+	@Test public void corruptCacheIsDeletedAndRefetched() throws Exception {
+		mServer.respond("/prices", 200, prices(price(1, "available", "£7.99")));
+		int round = 0;
+		for (int count : new int[] { -1, Integer.MAX_VALUE, SDIPriceClient.DEFAULT_MAX_ENTRIES + 1 }) {
+			// a directory of its own, as the previous client may still be saving
+			final File cacheDir = mFolder.newFolder("corrupt" + round);
+			Context context = new ContextWrapper(null) {
+				@Override public File getCacheDir() { return cacheDir; }
+				@Override public Context getApplicationContext() { return this; }
+			};
+			File file = new File(cacheDir, SDIPriceClient.CACHE_FILE_NAME);
+			DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+			try {
+				out.writeInt(0x53444950);
+				out.writeInt(1);
+				out.writeInt(count);
+			} finally {
+				out.close();
+			}
+			SDIPriceClient client = new SDIPriceClient(context, mFetcher);
+			Await await = new Await();
+			assertNull(client.get(SDIPriceClient.TYPE_RELEASE, 1, await));
+			assertEquals("£7.99", await.await().getFormattedPrice());
+			assertEquals(++round, mServer.count("/prices"));
+		}
+	}
+
+	@Test public void nullFieldsAreReadAsAbsent() throws Exception {
+		List<Price> prices = SDIPriceClient.HttpFetcher.parse(SDIPriceClient.TYPE_RELEASE,
+			"{ \"prices\": [ { \"id\": 1, \"state\": \"available\", \"currency\": null, \"formattedPrice\": null }, { \"id\": 2, \"state\": \"owned\" } ] }");
+		assertEquals(2, prices.size());
+		assertNull(prices.get(0).getCurrency());
+		assertNull(prices.get(0).getFormattedPrice());
+		assertEquals(-1, prices.get(0).getPriceMicros());
+		assertNull(prices.get(1).getCurrency());
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * helpers
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private static String price(long id, String state, String formattedPrice) {
+		return "{ \"id\": " + id + ", \"state\": \"" + state + "\", \"currency\": \"GBP\""
+			+ (formattedPrice != null ? ", \"formattedPrice\": \"" + formattedPrice + "\"" : "") + " }";
+	}
+
+	private static byte[] prices(String... prices) throws IOException {
+		StringBuilder json = new StringBuilder("{ \"prices\": [ ");
+		for (int i = 0; i < prices.length; i++) json.append(i == 0 ? "" : ", ").append(prices[i]);
+		return json.append(" ] }").toString().getBytes("UTF-8");
+	}
+
+	/* saves are written in the background, to a temporary file that is renamed into place */
+	private void awaitSaved() throws InterruptedException {
+		File file = new File(mContext.getCacheDir(), SDIPriceClient.CACHE_FILE_NAME);
+		for (long deadline = System.currentTimeMillis() + 5000; System.currentTimeMillis() < deadline; Thread.sleep(10)) {
+			if (file.exists()) return;
+		}
+		throw new AssertionError("cache not saved");
+	}
+
+	private static final class Await implements SDIPriceClient.Callback {
+
+		private final CountDownLatch mLatch = new CountDownLatch(1);
+		private volatile Price mPrice;
+
+		@Override public void onPriceLoaded(int type, long id, Price price) {
+			mPrice = price;
+			mLatch.countDown();
+		}
+
+		Price await() throws InterruptedException {
+			assertTrue("callback not invoked", mLatch.await(5, TimeUnit.SECONDS));
+			return mPrice;
+		}
+	}
+
+}
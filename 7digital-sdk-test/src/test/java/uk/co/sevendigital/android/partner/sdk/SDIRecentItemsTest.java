@@ -0,0 +1,177 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import android.content.Intent;
+
+public class SDIRecentItemsTest {
+
+	/* the layout of the file: a header of magic, version and capacity, then one record per slot */
+	private static final int HEADER_SIZE = 12;
+	private static final int RECORD_SIZE = 1 + 1 + 3 * 8 + 8 + 2 * 40 + 4;
+
+	@Rule public TemporaryFolder mFolder = new TemporaryFolder();
+
+	private SDITestContext mContext;
+	private File mFile;
+
+	@Before public void setUp() throws IOException {
+		mContext = new SDITestContext(mFolder.newFolder("cache"));
+		mFile = new File(mFolder.getRoot(), SDIRecentItems.FILE_NAME);
+	}
+
+	@Test public void itemsSurviveARestart() throws Exception {
+		SDIRecentItems items = newItems(8);
+		for (int i = 0; i < 3; i++) assertTrue(items.record(SDIIntent.Builder.buildView7digitalArtist(1, "Artist One")));
+		items.record(SDIIntent.Action.PLAY_TRACK, 10, 5, -1, "Track");
+		items.record(SDIIntent.Action.VIEW_RELEASE, 10, -1, 2, "Release");
+		items.record(SDIIntent.Action.VIEW_RELEASE, 10, -1, 2, null);
+		assertFalse(items.record(SDIIntent.Builder.buildSearchIntent("query")));
+		awaitBackground();
+
+		SDIRecentItems restarted = newItems(8);
+		assertEquals(3, restarted.size());
+		List<Intent> top = restarted.getTopIntents(8);
+		assertEquals(SDIIntent.Action.VIEW_ARTIST, top.get(0).getAction());
+		assertEquals("Artist One", top.get(0).getStringExtra(SDIIntent.Extra.ARTISTNAME));
+		assertEquals(SDIIntent.Action.VIEW_RELEASE, top.get(1).getAction());
+		assertEquals(2, top.get(1).getLongExtra(SDIIntent.Extra.ARTISTID, -1));
+		assertEquals(SDIIntent.Action.PLAY_TRACK, top.get(2).getAction());
+		assertEquals(5, top.get(2).getLongExtra(SDIIntent.Extra.TRACKID, -1));
+	}
+
+	@Test public void longLabelsAreCutOff() throws Exception {
+		StringBuilder name = new StringBuilder();
+		while (name.length() < 60) name.append("Name ");
+		SDIRecentItems items = newItems(8);
+		items.record(SDIIntent.Builder.buildView7digitalArtist(1, name.toString()));
+		awaitBackground();
+
+		String label = newItems(8).getTopIntents(1).get(0).getStringExtra(SDIIntent.Extra.ARTISTNAME);
+		assertEquals(name.substring(0, 40), label);
+	}
+
+	@Test public void aNewItemReplacesTheLowestRankedOne() throws Exception {
+		SDIRecentItems items = newItems(2);
+		items.record(SDIIntent.Builder.buildView7digitalArtist(1, "One"));
+		items.record(SDIIntent.Builder.buildView7digitalArtist(1, "One"));
+		items.record(SDIIntent.Builder.buildView7digitalArtist(2, "Two"));
+		items.record(SDIIntent.Builder.buildView7digitalArtist(3, "Three"));
+
+		assertEquals(2, items.size());
+		assertEquals(set(1, 3), artistIds(items.getTopIntents(2)));
+		awaitBackground();
+		assertEquals(set(1, 3), artistIds(newItems(2).getTopIntents(2)));
+	}
+
+	@Test public void theIndexFindsEveryItemAfterEvictions() {
+		// a few items visited over and over, which have to be found, among many more items than slots, so that removals
+		// from the index shift back colliding entries all the time
+		SDIRecentItems items = newItems(8);
+		for (int i = 0; i < 3000; i++) {
+			long artistId = i % 2 == 0 ? i % 5 + 1 : (i * 7919L) % 37 + 100;
+			items.record(SDIIntent.Action.VIEW_ARTIST, -1, -1, artistId, null);
+			List<Intent> top = items.getTopIntents(8);
+			assertEquals(items.size(), top.size());
+			// an item missed by the index would be stored twice
+			assertEquals(top.size(), artistIds(top).size());
+			assertTrue(artistIds(top).contains(artistId));
+		}
+		assertEquals(8, items.size());
+	}
+
+	@Test public void aCorruptRecordIsSkipped() throws Exception {
+		SDIRecentItems items = newItems(4);
+		// slots are handed out from the start of the file
+		items.record(SDIIntent.Builder.buildView7digitalArtist(1, "One"));
+		items.record(SDIIntent.Builder.buildView7digitalArtist(2, "Two"));
+		items.record(SDIIntent.Builder.buildView7digitalArtist(3, "Three"));
+		awaitBackground();
+
+		RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+		try {
+			// a bit flipped in the frecency of the second record
+			long offset = HEADER_SIZE + RECORD_SIZE + 30;
+			file.seek(offset);
+			int value = file.read();
+			file.seek(offset);
+			file.write(value ^ 0x10);
+		} finally {
+			file.close();
+		}
+
+		SDIRecentItems restarted = newItems(4);
+		assertEquals(2, restarted.size());
+		assertEquals(set(1, 3), artistIds(restarted.getTopIntents(4)));
+		// the skipped record is cleared from the file too
+		awaitBackground();
+		assertEquals(2, newItems(4).size());
+	}
+
+	@Test public void aForeignFileIsStartedOver() throws Exception {
+		RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+		try {
+			file.write(new byte[] { 1, 2, 3, 4, 5 });
+		} finally {
+			file.close();
+		}
+		SDIRecentItems items = newItems(4);
+		assertEquals(0, items.size());
+		items.record(SDIIntent.Builder.buildView7digitalArtist(1, "One"));
+		awaitBackground();
+		assertEquals(HEADER_SIZE + 4 * RECORD_SIZE, mFile.length());
+		assertEquals(1, newItems(4).size());
+		// a store of another capacity doesn't read it
+		assertEquals(0, newItems(8).size());
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * helpers
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/* a store on the test file, once it has loaded it */
+	private SDIRecentItems newItems(int capacity) {
+		SDIRecentItems items = new SDIRecentItems(mContext, mFile, capacity, 0, null);
+		awaitBackground();
+		return items;
+	}
+
+	/* loading and flushing run on the dispatcher's single thread, so anything submitted after them runs after them */
+	private static void awaitBackground() {
+		try {
+			SDIPartnerDispatcher.submit(new Callable<Void>() {
+				@Override public Void call() { return null; }
+			}).get();
+		} catch (Exception e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	private static Set<Long> artistIds(List<Intent> intents) {
+		Set<Long> ids = new HashSet<Long>();
+		for (Intent intent : intents) ids.add(intent.getLongExtra(SDIIntent.Extra.ARTISTID, -1));
+		return ids;
+	}
+
+	private static Set<Long> set(long... ids) {
+		Set<Long> set = new HashSet<Long>();
+		for (long id : ids) set.add(id);
+		return set;
+	}
+
+}
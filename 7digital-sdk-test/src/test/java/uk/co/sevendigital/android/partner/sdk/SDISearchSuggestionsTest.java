@@ -0,0 +1,163 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import uk.co.sevendigital.android.partner.sdk.SDISearchSuggestions.Suggestion;
+import android.app.SearchManager;
+import android.content.Intent;
+
+public class SDISearchSuggestionsTest {
+
+	@Rule public TemporaryFolder mFolder = new TemporaryFolder();
+
+	private File mFile;
+
+	@Before public void setUp() {
+		mFile = new File(mFolder.getRoot(), SDISearchSuggestions.FILE_NAME);
+	}
+
+	@Test public void completesPrefixesBestFirstIgnoringCase() {
+		SDISearchSuggestions suggestions = new SDISearchSuggestions(mFile);
+		suggestions.addName(SDISearchSuggestions.TYPE_ARTIST, "Beck");
+		suggestions.addName(SDISearchSuggestions.TYPE_ARTIST, "beck");
+		suggestions.addName(SDISearchSuggestions.TYPE_RELEASE, "Beck in Time");
+		suggestions.recordQuery("beethoven");
+		suggestions.recordQuery("Beethoven ");
+		suggestions.recordQuery("Bach");
+
+		// two searches outrank two uses of a name, which outrank one
+		assertEquals(texts("beethoven", "Beck", "Beck in Time"), texts(suggestions.suggest("BE", 5)));
+		assertEquals(texts("beethoven"), texts(suggestions.suggest("be", 1)));
+		assertEquals(texts("Beck", "Beck in Time"), texts(suggestions.suggest("beck", 5)));
+		assertEquals(texts(), texts(suggestions.suggest("beckx", 5)));
+		assertEquals(4, suggestions.size());
+
+		// a query typed for a known name takes its spelling and its type
+		suggestions.recordQuery("BECK");
+		Suggestion beck = suggestions.suggest("beck", 1).get(0);
+		assertEquals("BECK", beck.getText());
+		assertEquals(SDISearchSuggestions.TYPE_QUERY, beck.getType());
+	}
+
+	@Test public void prunedLookupsFindTheSameTopAsAFullScan() {
+		SDISearchSuggestions suggestions = new SDISearchSuggestions(mFile);
+		Random random = new Random(42);
+		for (int i = 0; i < 5000; i++) {
+			String text = word(random) + (random.nextBoolean() ? " " + word(random) : "");
+			int uses = 1 + random.nextInt(random.nextInt(8) + 1);
+			for (int use = 0; use < uses; use++) suggestions.recordQuery(text);
+		}
+		// with room for everything nothing is pruned, so this is the full ranking
+		List<Suggestion> all = suggestions.suggest("", suggestions.size());
+		assertEquals(suggestions.size(), all.size());
+
+		for (String prefix : new String[] { "", "a", "b", "ab", "ca", "d", "ed", "ac b", "bad", "e b" }) {
+			List<Suggestion> expected = new ArrayList<Suggestion>();
+			for (Suggestion suggestion : all) if (expected.size() < 5 && suggestion.getText().toLowerCase(Locale.ENGLISH).startsWith(prefix)) expected.add(suggestion);
+			List<Suggestion> actual = suggestions.suggest(prefix, 5);
+			assertEquals(prefix, expected.size(), actual.size());
+			for (int i = 0; i < expected.size(); i++) {
+				// suggestions with equal scores may come in either order
+				assertEquals(prefix, expected.get(i).score, actual.get(i).score, 0);
+				assertTrue(prefix, actual.get(i).getText().startsWith(prefix));
+			}
+		}
+	}
+
+	@Test public void suggestionsSurviveASave() throws IOException {
+		SDISearchSuggestions suggestions = new SDISearchSuggestions(mFile);
+		suggestions.addName(SDISearchSuggestions.TYPE_ARTIST, "Radiohead");
+		suggestions.addName(SDISearchSuggestions.TYPE_RELEASE, "Rainbows");
+		suggestions.recordQuery("rap");
+		suggestions.recordQuery("rap");
+		List<Suggestion> before = suggestions.suggest("ra", 5);
+		suggestions.save();
+
+		SDISearchSuggestions reloaded = new SDISearchSuggestions(mFile);
+		assertEquals(3, reloaded.size());
+		List<Suggestion> after = reloaded.suggest("ra", 5);
+		assertEquals(texts(before), texts(after));
+		for (int i = 0; i < before.size(); i++) {
+			assertEquals(before.get(i).getType(), after.get(i).getType());
+			assertEquals(before.get(i).score, after.get(i).score, 0);
+		}
+
+		reloaded.clear();
+		reloaded.save();
+		assertEquals(0, new SDISearchSuggestions(mFile).size());
+	}
+
+	@Test public void acceptingASuggestionRecordsItAsAQuery() {
+		SDISearchSuggestions suggestions = new SDISearchSuggestions(mFile);
+		suggestions.addName(SDISearchSuggestions.TYPE_ARTIST, "Nina Simone");
+		Suggestion name = suggestions.suggest("nina", 1).get(0);
+		double score = name.score;
+		Intent intent = suggestions.accept(name);
+		assertEquals(SDIIntent.Action.SEARCH, intent.getAction());
+		assertEquals("Nina Simone", intent.getStringExtra(SearchManager.QUERY));
+		Suggestion query = suggestions.suggest("nina", 1).get(0);
+		assertEquals(SDISearchSuggestions.TYPE_QUERY, query.getType());
+		assertTrue(query.score > score);
+		assertEquals(1, suggestions.size());
+	}
+
+	@Test public void aCorruptFileStartsEmpty() throws IOException {
+		for (int count : new int[] { -1, Integer.MAX_VALUE, 2 }) {
+			DataOutputStream out = new DataOutputStream(new FileOutputStream(mFile));
+			try {
+				out.writeInt(0x53444953);
+				out.writeInt(1);
+				out.writeInt(count);
+				// a single entry, of an unknown type
+				out.writeByte(7);
+				out.writeDouble(1);
+				out.writeUTF("text");
+			} finally {
+				out.close();
+			}
+			SDISearchSuggestions suggestions = new SDISearchSuggestions(mFile);
+			assertEquals(0, suggestions.size());
+			suggestions.recordQuery("text");
+			assertEquals(texts("text"), texts(suggestions.suggest("t", 5)));
+		}
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * helpers
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/* short words over a small alphabet, so that many entries share prefixes */
+	private static String word(Random random) {
+		char[] word = new char[1 + random.nextInt(6)];
+		for (int i = 0; i < word.length; i++) word[i] = (char) ('a' + random.nextInt(5));
+		return new String(word);
+	}
+
+	private static List<String> texts(String... texts) {
+		List<String> list = new ArrayList<String>();
+		for (String text : texts) list.add(text);
+		return list;
+	}
+
+	private static List<String> texts(List<Suggestion> suggestions) {
+		List<String> list = new ArrayList<String>();
+		for (Suggestion suggestion : suggestions) list.add(suggestion.getText());
+		return list;
+	}
+
+}
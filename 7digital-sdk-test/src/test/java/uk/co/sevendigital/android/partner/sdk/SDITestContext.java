@@ -0,0 +1,162 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+
+/**
+ * An application Context for tests, with a cache directory, a stand-in {@link PackageManager} and in-memory
+ * SharedPreferences. Receivers are not registered, so package changes have to be signalled by invalidating the SDK's
+ * caches. Activities are not started, but recorded.
+ */
+final class SDITestContext extends ContextWrapper {
+
+	private final File mCacheDir;
+	private final PackageManager mPackageManager = new PackageManager();
+	/* guarded by itself */
+	private final Map<String, Preferences> mPreferences = new HashMap<String, Preferences>();
+	/* guarded by itself */
+	private final List<Intent> mStarted = new ArrayList<Intent>();
+
+	SDITestContext(File cacheDir) {
+		super(null);
+		mCacheDir = cacheDir;
+	}
+
+	/** Returns a PackageManager with the 7digital app installed, its external entry point handling every action. */
+	static PackageManager installApp(PackageManager pm, int versionCode) {
+		IntentFilter filter = new IntentFilter();
+		for (int i = 0; i < SDIIntentTemplate.ACTION_COUNT; i++) filter.addAction(SDIIntentTemplate.actionAt(i));
+		filter.addCategory(Intent.CATEGORY_DEFAULT);
+		return pm.addPackage(SDIIntent.SDI_ANDROID_PACKAGE_NAME, versionCode)
+			.addActivity(SDIIntent.SDI_ANDROID_PACKAGE_NAME, SDIIntent.SDI_ANDROID_EXTERNAL_ENTRY_POINT, filter);
+	}
+
+	@Override public Context getApplicationContext() { return this; }
+
+	@Override public File getCacheDir() { return mCacheDir; }
+
+	@Override public PackageManager getPackageManager() { return mPackageManager; }
+
+	@Override public Intent registerReceiver(BroadcastReceiver receiver, IntentFilter filter) { return null; }
+
+	@Override public void startActivity(Intent intent) {
+		synchronized (mStarted) {
+			mStarted.add(intent);
+		}
+	}
+
+	/** Returns the Intents of the Activities started so far. */
+	List<Intent> getStartedActivities() {
+		synchronized (mStarted) {
+			return new ArrayList<Intent>(mStarted);
+		}
+	}
+
+	@Override public SharedPreferences getSharedPreferences(String name, int mode) {
+		synchronized (mPreferences) {
+			Preferences preferences = mPreferences.get(name);
+			if (preferences == null) mPreferences.put(name, preferences = new Preferences());
+			return preferences;
+		}
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * preferences
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/* SharedPreferences kept in memory; edits are committed at once and listeners are not supported */
+	private static final class Preferences implements SharedPreferences {
+
+		/* guarded by this */
+		private final Map<String, Object> mValues = new HashMap<String, Object>();
+
+		@Override public synchronized Map<String, ?> getAll() { return new HashMap<String, Object>(mValues); }
+
+		@Override public String getString(String key, String defValue) { return (String) get(key, defValue); }
+
+		@SuppressWarnings("unchecked")
+		@Override public Set<String> getStringSet(String key, Set<String> defValues) { return (Set<String>) get(key, defValues); }
+
+		@Override public int getInt(String key, int defValue) { return (Integer) get(key, defValue); }
+
+		@Override public long getLong(String key, long defValue) { return (Long) get(key, defValue); }
+
+		@Override public float getFloat(String key, float defValue) { return (Float) get(key, defValue); }
+
+		@Override public boolean getBoolean(String key, boolean defValue) { return (Boolean) get(key, defValue); }
+
+		@Override public synchronized boolean contains(String key) { return mValues.containsKey(key); }
+
+		@Override public Editor edit() { return new PreferencesEditor(this); }
+
+		@Override public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) { }
+
+		@Override public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) { }
+
+		private synchronized Object get(String key, Object defValue) {
+			return mValues.containsKey(key) ? mValues.get(key) : defValue;
+		}
+	}
+
+	private static final class PreferencesEditor implements SharedPreferences.Editor {
+
+		private final Preferences mPreferences;
+		private final Map<String, Object> mChanges = new HashMap<String, Object>();
+		private boolean mClear;
+
+		PreferencesEditor(Preferences preferences) {
+			mPreferences = preferences;
+		}
+
+		@Override public SharedPreferences.Editor putString(String key, String value) { return put(key, value); }
+
+		@Override public SharedPreferences.Editor putStringSet(String key, Set<String> values) { return put(key, values); }
+
+		@Override public SharedPreferences.Editor putInt(String key, int value) { return put(key, value); }
+
+		@Override public SharedPreferences.Editor putLong(String key, long value) { return put(key, value); }
+
+		@Override public SharedPreferences.Editor putFloat(String key, float value) { return put(key, value); }
+
+		@Override public SharedPreferences.Editor putBoolean(String key, boolean value) { return put(key, value); }
+
+		/* a null value removes the key, as in the framework */
+		@Override public SharedPreferences.Editor remove(String key) { return put(key, null); }
+
+		@Override public SharedPreferences.Editor clear() {
+			mClear = true;
+			return this;
+		}
+
+		@Override public boolean commit() {
+			synchronized (mPreferences) {
+				if (mClear) mPreferences.mValues.clear();
+				for (Map.Entry<String, Object> change : mChanges.entrySet()) {
+					if (change.getValue() == null) mPreferences.mValues.remove(change.getKey());
+					else mPreferences.mValues.put(change.getKey(), change.getValue());
+				}
+			}
+			return true;
+		}
+
+		@Override public void apply() { commit(); }
+
+		private SharedPreferences.Editor put(String key, Object value) {
+			mChanges.put(key, value);
+			return this;
+		}
+	}
+
+}
@@ -0,0 +1,118 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A local HTTP stand-in for the servers the SDK talks to. Paths answer with queued responses, the last of which is
+ * repeated, and every request is recorded. Responses can be held back until a latch is counted down, so that tests can
+ * make requests overlap.
+ */
+final class SDITestServer implements HttpHandler {
+
+	private final HttpServer mServer;
+	private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+	/* guarded by this */
+	private final Map<String, LinkedList<Response>> mResponses = new HashMap<String, LinkedList<Response>>();
+	private final List<String> mRequests = new ArrayList<String>();
+
+	SDITestServer() throws IOException {
+		mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		mServer.createContext("/", this);
+		mServer.setExecutor(mExecutor);
+		mServer.start();
+	}
+
+	/** Returns the URL of the given path, which should start with a slash. */
+	String url(String path) {
+		return "http://127.0.0.1:" + mServer.getAddress().getPort() + path;
+	}
+
+	/** Queues a response for the given path. */
+	SDITestServer respond(String path, int status, byte[] body) {
+		return respond(path, status, body, new CountDownLatch(0));
+	}
+
+	/** Queues a response for the given path, which is only sent once the given latch has been counted down. */
+	synchronized SDITestServer respond(String path, int status, byte[] body, CountDownLatch gate) {
+		LinkedList<Response> responses = mResponses.get(path);
+		if (responses == null) mResponses.put(path, responses = new LinkedList<Response>());
+		responses.add(new Response(status, body, gate));
+		return this;
+	}
+
+	/** Returns the number of requests for the given path, ignoring the query. */
+	synchronized int count(String path) {
+		int count = 0;
+		for (String request : mRequests) if (request.equals(path) || request.startsWith(path + "?")) count++;
+		return count;
+	}
+
+	/** Returns the paths and queries requested so far, in order. */
+	synchronized List<String> requests() {
+		return Collections.unmodifiableList(new ArrayList<String>(mRequests));
+	}
+
+	/** Waits until the given number of requests have arrived in total. */
+	void awaitRequests(int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		synchronized (this) {
+			while (mRequests.size() < count && System.currentTimeMillis() < deadline) wait(100);
+		}
+	}
+
+	void stop() {
+		mServer.stop(0);
+		mExecutor.shutdownNow();
+	}
+
+	@Override public void handle(HttpExchange exchange) throws IOException {
+		String path = exchange.getRequestURI().getPath();
+		String query = exchange.getRequestURI().getRawQuery();
+		Response response;
+		synchronized (this) {
+			mRequests.add(query != null ? path + "?" + query : path);
+			notifyAll();
+			LinkedList<Response> responses = mResponses.get(path);
+			response = responses == null || responses.isEmpty() ? new Response(404, new byte[0], new CountDownLatch(0)) : responses.size() > 1 ? responses.removeFirst() : responses.getFirst();
+		}
+		try {
+			response.gate.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		exchange.sendResponseHeaders(response.status, response.body.length > 0 ? response.body.length : -1);
+		OutputStream out = exchange.getResponseBody();
+		out.write(response.body);
+		out.close();
+	}
+
+	private static final class Response {
+		final int status;
+		final byte[] body;
+		final CountDownLatch gate;
+
+		Response(int status, byte[] body, CountDownLatch gate) {
+			this.status = status;
+			this.body = body;
+			this.gate = gate;
+		}
+	}
+
+}
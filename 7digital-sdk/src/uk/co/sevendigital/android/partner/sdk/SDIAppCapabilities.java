@@ -0,0 +1,170 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.pm.ActivityInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+
+/**
+ * A helper class that tells which of the {@link SDIIntent.Action actions} the installed version of the 7digital Android
+ * app handles, e.g. to hide buttons for actions an app version can't be started with.
+ *
+ * Every action is resolved against the intent-filters of the component the SDK sends it to (see {@link SDIIntentTemplate}):
+ * {@link SDIIntent.Action#SEARCH} against those of the app's package, and the other actions against those of the
+ * {@link SDIIntent#SDI_ANDROID_EXTERNAL_ENTRY_POINT}, as an explicit Intent would start it whatever the action. An entry
+ * point that declares none of the actions is taken to handle all of them, as versions that are only started explicitly do.
+ * The matrix of supported actions is built once and persisted in the SharedPreferences keyed by the app's versionCode,
+ * so that a new process only needs a single {@link PackageManager} lookup to check the version. It is rebuilt when the
+ * 7digital app gets installed, updated, changed or removed (see {@link SDIAppResolver}), after which
+ * {@link #isSupported(Context, String)} is a bit test.
+ */
+public class SDIAppCapabilities {
+
+	private SDIAppCapabilities() { /* prevent instantiating */ }
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * constants
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private static final String PREFERENCES_NAME = "sdi_app_capabilities";
+	private static final String KEY_VERSION_CODE = "versionCode";
+	private static final String KEY_MATRIX = "matrix";
+
+	/* set on every built matrix, so that a built matrix never equals the unbuilt state (0) */
+	private static final int BUILT = 1 << 30;
+
+	private static volatile int sMatrix;
+	/* bumped by invalidate(); a matrix built before the last invalidation is stale, even if it was stored after it */
+	private static volatile int sGeneration;
+	/* the generation sMatrix was built at, written before it */
+	private static volatile int sMatrixGeneration;
+	private static volatile int sVersionCode = -1;
+	/* set when the 7digital package changed, which makes the persisted matrix stale even if the version is the same */
+	private static volatile boolean sPackageChanged;
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * util methods
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Returns whether the installed 7digital Android app handles the given action. Returns <b>false</b> for every action
+	 * if the app is not installed.
+	 * @param context Context used to build the matrix on first use.
+	 * @param action One of the actions defined in {@link SDIIntent.Action}.
+	 */
+	public static boolean isSupported(Context context, String action) {
+		int index = SDIIntentTemplate.indexOf(action);
+		if (index == -1) throw new IllegalArgumentException("Parameter action should be one of the actions in SDIIntent.Action.");
+		return (getMatrix(context) & (1 << index)) != 0;
+	}
+
+	/**
+	 * Returns the versionCode of the installed 7digital Android app, as the matrix was built for.
+	 * @param context Context used to build the matrix on first use.
+	 * @return The versionCode, or <b>-1</b> if the app is not installed.
+	 */
+	public static int getVersionCode(Context context) {
+		getMatrix(context);
+		return sVersionCode;
+	}
+
+	/**
+	 * Drops the matrix, so that the next lookup resolves the actions again. Normally there is no need to call this
+	 * manually, as the matrix is rebuilt automatically when the 7digital app changes.
+	 */
+	public static void invalidate() {
+		sPackageChanged = true;
+		sGeneration++;
+		sMatrix = 0;
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * internal
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/* the supported actions, one bit per SDIIntentTemplate index */
+	static int getMatrix(Context context) {
+		int matrix = sMatrix;
+		if (matrix != 0 && sMatrixGeneration == sGeneration) return matrix;
+		return build(context);
+	}
+
+	private static synchronized int build(Context context) {
+		int generation = sGeneration;
+		if (sMatrix != 0 && sMatrixGeneration == generation) return sMatrix;
+		if (context == null) throw new IllegalArgumentException("Parameter context should not be null.");
+		// a persisted matrix may only be trusted while changes to the package are watched
+		SDIAppResolver.watchPackages(context);
+
+		boolean packageChanged = sPackageChanged;
+		sPackageChanged = false;
+		PackageManager pm = context.getPackageManager();
+		int versionCode = versionCode(pm);
+		int matrix = 0;
+		if (versionCode != -1) {
+			SharedPreferences preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+			if (!packageChanged && preferences.getInt(KEY_VERSION_CODE, -1) == versionCode) matrix = preferences.getInt(KEY_MATRIX, 0);
+			if ((matrix & BUILT) == 0) {
+				matrix = resolve(pm);
+				store(preferences, versionCode, matrix);
+			}
+		}
+		sVersionCode = versionCode;
+		// if invalidate() ran meanwhile, this matrix is stale before it is stored, and the next lookup builds it again
+		sMatrixGeneration = generation;
+		sMatrix = matrix | BUILT;
+		return matrix | BUILT;
+	}
+
+	private static int versionCode(PackageManager pm) {
+		try { return pm.getPackageInfo(SDIIntent.SDI_ANDROID_PACKAGE_NAME, 0).versionCode; }
+		catch (PackageManager.NameNotFoundException e) { return -1; }
+	}
+
+	private static int resolve(PackageManager pm) {
+		int matrix = BUILT, explicit = 0;
+		boolean filtered = false;
+		for (int i = 0; i < SDIIntentTemplate.ACTION_COUNT; i++) {
+			String action = SDIIntentTemplate.actionAt(i);
+			List<ResolveInfo> matches = pm.queryIntentActivities(new Intent(action).setPackage(SDIIntent.SDI_ANDROID_PACKAGE_NAME), PackageManager.MATCH_DEFAULT_ONLY);
+			if (SDIIntentTemplate.forAction(action).newIntent().getComponent() == null) {
+				// sent to whichever activity of the package handles it
+				if (matches != null && !matches.isEmpty()) matrix |= 1 << i;
+				continue;
+			}
+			explicit |= 1 << i;
+			if (isEntryPoint(matches)) {
+				matrix |= 1 << i;
+				filtered = true;
+			}
+		}
+		// no filters to go by, so the entry point handles whatever it is started with
+		if (!filtered && pm.resolveActivity(new Intent().setClassName(SDIIntent.SDI_ANDROID_PACKAGE_NAME, SDIIntent.SDI_ANDROID_EXTERNAL_ENTRY_POINT), 0) != null) matrix |= explicit;
+		return matrix;
+	}
+
+	private static boolean isEntryPoint(List<ResolveInfo> matches) {
+		if (matches == null) return false;
+		for (ResolveInfo match : matches) {
+			ActivityInfo info = match.activityInfo;
+			if (info != null && SDIIntent.SDI_ANDROID_PACKAGE_NAME.equals(info.packageName) && SDIIntent.SDI_ANDROID_EXTERNAL_ENTRY_POINT.equals(info.name)) return true;
+		}
+		return false;
+	}
+
+	/* commits on the background thread, as apply() needs API level 9 */
+	private static void store(final SharedPreferences preferences, final int versionCode, final int matrix) {
+		SDIPartnerDispatcher.submit(new Callable<Void>() {
+			@Override public Void call() {
+				preferences.edit().putInt(KEY_VERSION_CODE, versionCode).putInt(KEY_MATRIX, matrix).commit();
+				return null;
+			}
+		});
+	}
+
+}
@@ -0,0 +1,186 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import android.content.ActivityNotFoundException;
+import android.content.BroadcastReceiver;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+
+/**
+ * A helper class that caches whether the 7digital Android app, Google Play and a web browser can be resolved on the
+ * device. The {@link PackageManager} is queried once and the result is kept until a package gets added, removed,
+ * replaced or changed, which allows {@link SDIPartnerUtil} to decide between launching the app, the market or the
+ * website up front, rather than finding out by catching an {@link ActivityNotFoundException}.
+ *
+ * The cache is keyed on {@link SDIIntent#SDI_ANDROID_PACKAGE_NAME} and {@link SDIIntent#SDI_ANDROID_EXTERNAL_ENTRY_POINT}.
+ */
+public class SDIAppResolver {
+
+	private SDIAppResolver() { /* prevent instantiating */ }
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * constants
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/** Flag indicating the 7digital Android app is installed. */
+	public static final int FLAG_INSTALLED = 1;
+	/** Flag indicating the {@link SDIIntent#SDI_ANDROID_EXTERNAL_ENTRY_POINT} of the 7digital Android app resolves. */
+	public static final int FLAG_EXTERNAL_ENTRY_POINT = 1 << 1;
+	/** Flag indicating the {@link SDIIntent.Action#SEARCH} action resolves to the 7digital Android app. */
+	public static final int FLAG_SEARCH = 1 << 2;
+	/** Flag indicating a market app (normally Google Play) is available to install the 7digital Android app from. */
+	public static final int FLAG_MARKET = 1 << 3;
+	/** Flag indicating a browser is available to open the 7digital website with. */
+	public static final int FLAG_BROWSER = 1 << 4;
+	/* set on every resolved state, so that a resolved state never equals the unresolved state (0) */
+	private static final int FLAG_RESOLVED = 1 << 30;
+
+	/** Launch target: nothing could be launched. */
+	public static final int TARGET_NONE = 0;
+	/** Launch target: the 7digital Android app. */
+	public static final int TARGET_APP = 1;
+	/** Launch target: the 7digital Android app's details page in the market. */
+	public static final int TARGET_MARKET = 2;
+	/** Launch target: the 7digital website. */
+	public static final int TARGET_WEBSITE = 3;
+
+	/** The query used to display the 7digital Android app in the market. */
+	static final String MARKET_QUERY = "market://details?id=" + SDIIntent.SDI_ANDROID_PACKAGE_NAME;
+
+	private static volatile int sFlags;
+	/* bumped on every invalidation, so that caches built on top of the flags can tell they are stale */
+	private static volatile int sGeneration;
+	private static BroadcastReceiver sPackageReceiver;
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * util methods
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Returns the cached resolution flags, querying the {@link PackageManager} only if the cache is empty.
+	 * @param context Context used to query the PackageManager on a cache miss.
+	 * @return A combination of {@link #FLAG_INSTALLED}, {@link #FLAG_EXTERNAL_ENTRY_POINT}, {@link #FLAG_SEARCH},
+	 * {@link #FLAG_MARKET} and {@link #FLAG_BROWSER}.
+	 */
+	public static int getFlags(Context context) {
+		int flags = sFlags;
+		if (flags != 0) return flags;
+		return resolve(context);
+	}
+
+	/**
+	 * Returns whether the 7digital Android app is installed on the device.
+	 * @param context Context used to query the PackageManager on a cache miss.
+	 */
+	public static boolean isAppInstalled(Context context) {
+		return (getFlags(context) & FLAG_INSTALLED) != 0;
+	}
+
+	/**
+	 * Clears the cached resolution flags. The next lookup will query the {@link PackageManager} again. Normally there
+	 * is no need to call this manually, as the cache is invalidated automatically on package changes.
+	 */
+	public static synchronized void invalidate() {
+		// synchronized with resolve(), so that neither a generation bump nor an invalidation during a lookup gets lost
+		sFlags = 0;
+		sGeneration++;
+	}
+
+	/**
+	 * Determines where the given Intent should be sent to: the 7digital Android app if it can handle the Intent, or
+	 * otherwise the given fallback if that is available.
+	 * @param context Context used to query the PackageManager on a cache miss.
+	 * @param intent The Intent to start the 7digital Android app with.
+	 * @param fallbackTarget Either {@link #TARGET_MARKET}, {@link #TARGET_WEBSITE} or {@link #TARGET_NONE}.
+	 * @return One of {@link #TARGET_APP}, {@link #TARGET_MARKET}, {@link #TARGET_WEBSITE} or {@link #TARGET_NONE}.
+	 */
+	public static int resolveTarget(Context context, Intent intent, int fallbackTarget) {
+		int flags = getFlags(context);
+		if (canHandle(context, flags, intent)) return TARGET_APP;
+		return resolveFallback(flags, fallbackTarget);
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * internal
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/* the number of invalidations so far, see invalidate() */
+	static int getGeneration() {
+		return sGeneration;
+	}
+
+	/* makes sure package changes invalidate the cache, for callers that skip resolve() because they cache elsewhere */
+	static synchronized void watchPackages(Context context) {
+		registerPackageReceiver(context);
+	}
+
+	static int resolveFallback(int flags, int fallbackTarget) {
+		switch (fallbackTarget) {
+			case TARGET_MARKET: return (flags & FLAG_MARKET) != 0 ? TARGET_MARKET : TARGET_NONE;
+			case TARGET_WEBSITE: return (flags & FLAG_BROWSER) != 0 ? TARGET_WEBSITE : TARGET_NONE;
+			default: return TARGET_NONE;
+		}
+	}
+
+	/* the common intent shapes produced by SDIIntent.Builder are answered from the flags; anything else is resolved directly */
+	private static boolean canHandle(Context context, int flags, Intent intent) {
+		ComponentName component = intent.getComponent();
+		if (component != null) {
+			if (!SDIIntent.SDI_ANDROID_PACKAGE_NAME.equals(component.getPackageName())) return resolves(context.getPackageManager(), intent);
+			if (SDIIntent.SDI_ANDROID_EXTERNAL_ENTRY_POINT.equals(component.getClassName())) return (flags & FLAG_EXTERNAL_ENTRY_POINT) != 0;
+			return (flags & FLAG_INSTALLED) != 0 && resolves(context.getPackageManager(), intent);
+		}
+		if (SDIIntent.Action.SEARCH.equals(intent.getAction()) && intent.getPackage() == null) return (flags & FLAG_SEARCH) != 0;
+		return resolves(context.getPackageManager(), intent);
+	}
+
+	private static synchronized int resolve(Context context) {
+		if (sFlags != 0) return sFlags;
+		if (context == null) throw new IllegalArgumentException("Parameter context should not be null.");
+		registerPackageReceiver(context);
+
+		PackageManager pm = context.getPackageManager();
+		int flags = FLAG_RESOLVED;
+		if (pm.getLaunchIntentForPackage(SDIIntent.SDI_ANDROID_PACKAGE_NAME) != null) flags |= FLAG_INSTALLED;
+		if ((flags & FLAG_INSTALLED) != 0) {
+			Intent external = new Intent().setClassName(SDIIntent.SDI_ANDROID_PACKAGE_NAME, SDIIntent.SDI_ANDROID_EXTERNAL_ENTRY_POINT);
+			if (resolves(pm, external)) flags |= FLAG_EXTERNAL_ENTRY_POINT;
+			if (resolves(pm, new Intent(SDIIntent.Action.SEARCH))) flags |= FLAG_SEARCH;
+		}
+		if (resolves(pm, new Intent(Intent.ACTION_VIEW, Uri.parse(MARKET_QUERY)))) flags |= FLAG_MARKET;
+		if (resolves(pm, new Intent(Intent.ACTION_VIEW, Uri.parse(SDIIntent.SDI_WEBSITE_URL)))) flags |= FLAG_BROWSER;
+		sFlags = flags;
+		return flags;
+	}
+
+	private static boolean resolves(PackageManager pm, Intent intent) {
+		return pm.resolveActivity(intent, PackageManager.MATCH_DEFAULT_ONLY) != null;
+	}
+
+	/* package changes may (un)install the 7digital app, but also the market or a browser, so any change clears the cache */
+	private static void registerPackageReceiver(Context context) {
+		if (sPackageReceiver != null) return;
+		IntentFilter filter = new IntentFilter();
+		filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+		filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+		filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+		filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+		filter.addDataScheme("package");
+		sPackageReceiver = new BroadcastReceiver() {
+			@Override public void onReceive(Context context, Intent intent) {
+				invalidate();
+				Uri data = intent.getData();
+				if (data != null && SDIIntent.SDI_ANDROID_PACKAGE_NAME.equals(data.getSchemeSpecificPart())) {
+					SDIAppCapabilities.invalidate();
+					SDIRecentItems recentItems = SDIRecentItems.getInstance();
+					if (recentItems != null) recentItems.republish();
+				}
+			}
+		};
+		context.getApplicationContext().registerReceiver(sPackageReceiver, filter);
+	}
+
+}
@@ -0,0 +1,409 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Loads the cover art referred to by {@link SDIIntent.Extra#COVERURL}, e.g. to show it next to a buy button, through
+ * two cache tiers: an in-memory LRU cache of decoded bitmaps bounded by their size in bytes, and a bounded LRU cache of
+ * the downloaded files on disk. Concurrent requests for the same cover share a single download and decode, and covers
+ * are decoded at (a power of two of) the requested size rather than at full resolution.
+ *
+ * Covers may be given as http(s) URLs, which are cached on disk, or as absolute file paths, which are decoded directly.
+ * Callbacks are always delivered on the main thread. Use {@link #getInstance(Context)} for a loader shared by the
+ * whole application.
+ */
+public class SDIArtworkLoader {
+
+	/**
+	 * Callback interface for receiving a loaded cover. Always invoked on the main thread.
+	 */
+	public interface Callback {
+		/**
+		 * Called once the cover has been loaded.
+		 * @param url The location of the cover, as passed to {@link SDIArtworkLoader#load(String, int, int, Callback)}.
+		 * @param bitmap The decoded cover, or <b>null</b> if it could not be loaded.
+		 */
+		void onArtworkLoaded(String url, Bitmap bitmap);
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * constants
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private static final String TAG = "SDIArtworkLoader";
+
+	/** Name of the disk cache directory, stored in the application's cache directory. */
+	public static final String CACHE_DIR_NAME = "sdi_artwork";
+	/** Default size of the disk cache in bytes. */
+	public static final long DEFAULT_DISK_CACHE_SIZE = 10 * 1024 * 1024;
+
+	private static final int THREADS = 2;
+	private static final int TIMEOUT_MILLIS = 15000;
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+	private static SDIArtworkLoader sInstance;
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * fields
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private final ExecutorService mExecutor;
+	private final File mDirectory;
+
+	/* guarded by this */
+	private final LinkedHashMap<String, Bitmap> mMemory = new LinkedHashMap<String, Bitmap>(32, 0.75f, true);
+	private final long mMemoryLimit;
+	private long mMemorySize;
+	private final Map<String, Request> mInFlight = new HashMap<String, Request>();
+
+	/* guarded by itself; file name to size, in access order, built on first use */
+	private final LinkedHashMap<String, Long> mDisk = new LinkedHashMap<String, Long>(32, 0.75f, true);
+	private final long mDiskLimit;
+	private long mDiskSize = -1;
+	/* guarded by mDisk; urls being downloaded, so that a second size of the same cover waits rather than downloads */
+	private final Map<String, Object> mDownloads = new HashMap<String, Object>();
+
+	/**
+	 * Creates a loader with its own caches.
+	 * @param context Any Context of the application.
+	 * @param memoryCacheSize The maximum size of the decoded bitmaps kept in memory, in bytes.
+	 * @param diskCacheSize The maximum size of the downloaded covers kept on disk, in bytes.
+	 */
+	public SDIArtworkLoader(Context context, long memoryCacheSize, long diskCacheSize) {
+		if (context == null) throw new IllegalArgumentException("Parameter context should not be null.");
+		if (memoryCacheSize <= 0) throw new IllegalArgumentException("Parameter memoryCacheSize should be positive.");
+		if (diskCacheSize <= 0) throw new IllegalArgumentException("Parameter diskCacheSize should be positive.");
+		mDirectory = new File(context.getCacheDir(), CACHE_DIR_NAME);
+		mMemoryLimit = memoryCacheSize;
+		mDiskLimit = diskCacheSize;
+		mExecutor = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+			@Override public Thread newThread(final Runnable runnable) {
+				Thread thread = new Thread(new Runnable() {
+					@Override public void run() {
+						Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+						runnable.run();
+					}
+				}, TAG);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Returns the loader shared by the whole application, using an eighth of the available heap for its memory cache
+	 * and {@link #DEFAULT_DISK_CACHE_SIZE} for its disk cache.
+	 * @param context Any Context of the application.
+	 */
+	public static synchronized SDIArtworkLoader getInstance(Context context) {
+		if (context == null) throw new IllegalArgumentException("Parameter context should not be null.");
+		if (sInstance == null) sInstance = new SDIArtworkLoader(context.getApplicationContext() != null ? context.getApplicationContext() : context,
+			Runtime.getRuntime().maxMemory() / 8, DEFAULT_DISK_CACHE_SIZE);
+		return sInstance;
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * util methods
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Loads the given cover at (at least) the given size. If it is in the memory cache, it is returned right away and
+	 * the callback is not invoked. Otherwise the cover is loaded in the background and delivered to the callback.
+	 * @param url The location of the cover, see {@link SDIIntent.Extra#COVERURL}: an http(s) URL or an absolute file path.
+	 * @param width The width the cover will be displayed at in pixels, or <b>0</b> for its full size.
+	 * @param height The height the cover will be displayed at in pixels, or <b>0</b> for its full size.
+	 * @param callback The callback to deliver the cover to, or <b>null</b> to only prefetch it.
+	 * @return The cover if it was in the memory cache, <b>null</b> otherwise.
+	 */
+	public Bitmap load(String url, int width, int height, Callback callback) {
+		if (url == null || url.length() == 0) throw new IllegalArgumentException("Parameter url should not be null or empty.");
+		if (!isSupported(url)) throw new IllegalArgumentException("Parameter url should be an http(s) URL or an absolute file path.");
+		String key = key(url, width, height);
+		Request request;
+		synchronized (this) {
+			Bitmap bitmap = mMemory.get(key);
+			if (bitmap != null) return bitmap;
+			request = mInFlight.get(key);
+			if (request != null) {
+				if (callback != null) request.callbacks.add(callback);
+				return null;
+			}
+			request = new Request(key, url, width, height);
+			if (callback != null) request.callbacks.add(callback);
+			mInFlight.put(key, request);
+		}
+		mExecutor.execute(request);
+		return null;
+	}
+
+	/**
+	 * Stops delivering the given cover to the given callback, e.g. when the view it was meant for gets recycled. The
+	 * cover is still loaded into the caches.
+	 */
+	public synchronized void cancel(String url, int width, int height, Callback callback) {
+		Request request = mInFlight.get(key(url, width, height));
+		if (request != null) request.callbacks.remove(callback);
+	}
+
+	/**
+	 * Returns the given cover if it is in the memory cache, <b>null</b> otherwise.
+	 */
+	public synchronized Bitmap getCached(String url, int width, int height) {
+		return mMemory.get(key(url, width, height));
+	}
+
+	/**
+	 * Empties the memory cache, e.g. from <code>onLowMemory()</code>. The disk cache is kept.
+	 */
+	public synchronized void clearMemory() {
+		mMemory.clear();
+		mMemorySize = 0;
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * memory cache
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private static String key(String url, int width, int height) {
+		return width + "x" + height + ":" + url;
+	}
+
+	/* Bitmap.getByteCount() is API level 12 */
+	private static long sizeOf(Bitmap bitmap) {
+		return (long) bitmap.getRowBytes() * bitmap.getHeight();
+	}
+
+	private void putMemory(String key, Bitmap bitmap) {
+		long size = sizeOf(bitmap);
+		// a single bitmap larger than the whole cache would only evict everything else
+		if (size > mMemoryLimit) return;
+		Bitmap previous = mMemory.put(key, bitmap);
+		if (previous != null) mMemorySize -= sizeOf(previous);
+		mMemorySize += size;
+		for (Iterator<Bitmap> it = mMemory.values().iterator(); mMemorySize > mMemoryLimit && it.hasNext(); ) {
+			mMemorySize -= sizeOf(it.next());
+			it.remove();
+		}
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * disk cache
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/* returns the cached file for the url, downloading it first if necessary */
+	private File getFile(String url) throws IOException {
+		String name = fileName(url);
+		File file = new File(mDirectory, name);
+		Object lock;
+		synchronized (mDisk) {
+			loadDiskIndex();
+			if (mDisk.get(name) != null && file.exists()) {
+				file.setLastModified(System.currentTimeMillis());
+				return file;
+			}
+			lock = mDownloads.get(url);
+			if (lock == null) mDownloads.put(url, lock = new Object());
+		}
+		synchronized (lock) {
+			try {
+				synchronized (mDisk) {
+					if (mDisk.get(name) != null && file.exists()) return file;
+				}
+				long size = download(url, file);
+				synchronized (mDisk) {
+					Long previous = mDisk.put(name, size);
+					mDiskSize += size - (previous != null ? previous : 0);
+					trimDisk(name);
+				}
+				return file;
+			} finally {
+				synchronized (mDisk) { mDownloads.remove(url); }
+			}
+		}
+	}
+
+	/* scans the cache directory once, ordering the files by last access */
+	private void loadDiskIndex() {
+		if (mDiskSize != -1) return;
+		mDiskSize = 0;
+		File[] files = mDirectory.listFiles();
+		if (files == null) return;
+		Arrays.sort(files, new Comparator<File>() {
+			@Override public int compare(File a, File b) {
+				long x = a.lastModified(), y = b.lastModified();
+				return x < y ? -1 : x > y ? 1 : 0;
+			}
+		});
+		for (File file : files) {
+			// leftovers of interrupted downloads
+			if (file.getName().endsWith(TEMP_SUFFIX)) { file.delete(); continue; }
+			mDisk.put(file.getName(), file.length());
+			mDiskSize += file.length();
+		}
+	}
+
+	private void trimDisk(String keep) {
+		for (Iterator<Map.Entry<String, Long>> it = mDisk.entrySet().iterator(); mDiskSize > mDiskLimit && it.hasNext(); ) {
+			Map.Entry<String, Long> entry = it.next();
+			if (entry.getKey().equals(keep)) continue;
+			new File(mDirectory, entry.getKey()).delete();
+			mDiskSize -= entry.getValue();
+			it.remove();
+		}
+	}
+
+	private long download(String url, File file) throws IOException {
+		if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) throw new IOException("Unable to create " + mDirectory);
+		// unique per download, as a download retried after a failure may overlap with one started afresh
+		File temp = File.createTempFile(file.getName(), TEMP_SUFFIX, mDirectory);
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		try {
+			connection.setConnectTimeout(TIMEOUT_MILLIS);
+			connection.setReadTimeout(TIMEOUT_MILLIS);
+			if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) throw new IOException("Unexpected response " + connection.getResponseCode() + " for " + url);
+			InputStream in = connection.getInputStream();
+			OutputStream out = new FileOutputStream(temp);
+			long size = 0;
+			try {
+				byte[] buffer = new byte[8192];
+				for (int read; (read = in.read(buffer)) != -1; size += read) out.write(buffer, 0, read);
+			} finally {
+				out.close();
+				in.close();
+			}
+			// publish the file only once complete, so a crash never leaves a truncated cover behind
+			if (!temp.renameTo(file)) throw new IOException("Unable to rename " + temp + " to " + file);
+			return size;
+		} finally {
+			connection.disconnect();
+			temp.delete();
+		}
+	}
+
+	private static String fileName(String url) {
+		try {
+			byte[] digest = MessageDigest.getInstance("MD5").digest(url.getBytes("UTF-8"));
+			StringBuilder name = new StringBuilder(digest.length * 2);
+			for (byte b : digest) name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			return name.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * decoding
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private static Bitmap decode(String path, int width, int height) {
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inJustDecodeBounds = true;
+		BitmapFactory.decodeFile(path, options);
+		if (options.outWidth <= 0 || options.outHeight <= 0) return null;
+		options.inJustDecodeBounds = false;
+		options.inSampleSize = sampleSize(options.outWidth, options.outHeight, width, height);
+		return BitmapFactory.decodeFile(path, options);
+	}
+
+	/* anything else would not be downloaded with an HttpURLConnection */
+	private static boolean isSupported(String url) {
+		return url.startsWith("/") || url.startsWith("file://") || url.regionMatches(true, 0, "http://", 0, 7) || url.regionMatches(true, 0, "https://", 0, 8);
+	}
+
+	/* the largest power of two that keeps the decoded image at least as large as requested */
+	static int sampleSize(int sourceWidth, int sourceHeight, int width, int height) {
+		int sampleSize = 1;
+		if (width <= 0 || height <= 0) return sampleSize;
+		while (sourceWidth / (sampleSize * 2) >= width && sourceHeight / (sampleSize * 2) >= height) sampleSize *= 2;
+		return sampleSize;
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * request
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private final class Request implements Runnable {
+
+		final String key;
+		final String url;
+		final int width;
+		final int height;
+		/* guarded by the loader */
+		final List<Callback> callbacks = new ArrayList<Callback>(1);
+
+		Request(String key, String url, int width, int height) {
+			this.key = key;
+			this.url = url;
+			this.width = width;
+			this.height = height;
+		}
+
+		@Override public void run() {
+			Bitmap bitmap = null;
+			try {
+				String path = url.startsWith("/") ? url : url.startsWith("file://") ? url.substring("file://".length()) : getFile(url).getPath();
+				bitmap = decode(path, width, height);
+			} catch (IOException e) {
+				Log.w(TAG, "Unable to load " + url + ": " + e);
+			} catch (RuntimeException e) {
+				// e.g. an invalid port, which only fails on connecting
+				Log.w(TAG, "Unable to load " + url + ": " + e);
+			} catch (OutOfMemoryError e) {
+				Log.w(TAG, "Out of memory decoding " + url);
+				clearMemory();
+			} finally {
+				// whatever went wrong, the waiting callbacks get their answer and a later load tries again
+				deliver(bitmap);
+			}
+		}
+
+		private void deliver(Bitmap bitmap) {
+			final Bitmap result = bitmap;
+			final List<Callback> callbacks;
+			synchronized (SDIArtworkLoader.this) {
+				if (result != null) putMemory(key, result);
+				mInFlight.remove(key);
+				callbacks = new ArrayList<Callback>(this.callbacks);
+			}
+			if (callbacks.isEmpty()) return;
+			MAIN_HANDLER.post(new Runnable() {
+				@Override public void run() {
+					for (Callback callback : callbacks) callback.onArtworkLoaded(url, result);
+				}
+			});
+		}
+	}
+
+}
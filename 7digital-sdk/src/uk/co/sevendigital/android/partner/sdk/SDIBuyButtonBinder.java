@@ -0,0 +1,148 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import android.view.View;
+
+/**
+ * Binds 'buy' or 'open in 7digital' buttons in recycled lists, e.g. in the <code>getView()</code> of an Adapter. Rather
+ * than capturing the IDs in a new click listener per row, the binder keeps them in primitive fields of a small holder
+ * stored as a keyed tag of the button, and a single binder, which is also the click listener, serves all rows. The
+ * holder is created the first time a button is bound and reused on every later bind, so rebinding a recycled button
+ * allocates nothing. The Intent is only built when the button is clicked.
+ *
+ * The holder is kept under the SDK's own <code>R.id.sdi_buy_button_item</code> key, which leaves the plain tag of the
+ * button free, e.g. for a ViewHolder; the binder does own the click listener of the buttons it binds. Clicks view the
+ * release (and highlight the track) in the 7digital Android app, or view the artist if no release is bound. They are
+ * launched through an {@link SDIPartnerSession} if the binder has one, or through {@link SDIPartnerUtil} from the
+ * button's Context otherwise. All methods must be called on the main thread.
+ */
+public class SDIBuyButtonBinder implements View.OnClickListener {
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * fields
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private final SDIPartnerSession mSession;
+	private final String mAffiliateId;
+
+	/**
+	 * Creates a binder that launches through the given session.
+	 * @param session The session to launch with.
+	 */
+	public SDIBuyButtonBinder(SDIPartnerSession session) {
+		if (session == null) throw new IllegalArgumentException("Parameter session should not be null.");
+		mSession = session;
+		mAffiliateId = session.getAffiliateId();
+	}
+
+	/**
+	 * Creates a binder that launches from the Context of the clicked button.
+	 * @param affiliateId Identifier for the affiliate/partner using this binder, or <b>null</b>.
+	 */
+	public SDIBuyButtonBinder(String affiliateId) {
+		mSession = null;
+		mAffiliateId = affiliateId;
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * methods
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Binds the button to a release, optionally highlighting a track.
+	 * @param button The button to bind.
+	 * @param releaseId The 7digital identifier for the release.
+	 * @param trackId The 7digital identifier for the track to highlight, or <b>-1</b>.
+	 */
+	public void bind(View button, long releaseId, long trackId) {
+		bind(button, releaseId, null, trackId, null, null, null, -1, null);
+	}
+
+	/**
+	 * Binds the button to a release with the details to show while the 7digital app loads the rest, see
+	 * {@link SDIPartnerUtil#view7digitalItem(android.content.Context, long, String, long, String, String, String, long, String, String)}.
+	 * @param button The button to bind.
+	 * @param releaseId The 7digital identifier for the release, or <b>-1</b> to bind to the artist.
+	 */
+	public void bind(View button, long releaseId, String releaseTitle, long trackId, String trackTitle, String trackVersion, String coverUrl, long artistId, String artistName) {
+		if (button == null) throw new IllegalArgumentException("Parameter button should not be null.");
+		if (releaseId == -1 && artistId == -1) throw new IllegalArgumentException("Parameters releaseId and artistId should not both be -1.");
+		Item item = itemOf(button);
+		if (item == null) {
+			item = new Item();
+			button.setTag(R.id.sdi_buy_button_item, item);
+		}
+		if (item.binder != this) {
+			item.binder = this;
+			button.setOnClickListener(this);
+		}
+		item.releaseId = releaseId;
+		item.releaseTitle = releaseTitle;
+		item.trackId = trackId;
+		item.trackTitle = trackTitle;
+		item.trackVersion = trackVersion;
+		item.coverUrl = coverUrl;
+		item.artistId = artistId;
+		item.artistName = artistName;
+	}
+
+	/**
+	 * Binds the button to an artist.
+	 * @param button The button to bind.
+	 * @param artistId The 7digital identifier for the artist.
+	 * @param artistName The name of the artist, or <b>null</b>.
+	 */
+	public void bindArtist(View button, long artistId, String artistName) {
+		if (artistId == -1) throw new IllegalArgumentException("Parameter artistId should not be -1.");
+		bind(button, -1, null, -1, null, null, null, artistId, artistName);
+	}
+
+	/**
+	 * Unbinds the button, so that clicking it does nothing until it is bound again.
+	 * @param button The button to unbind.
+	 */
+	public void unbind(View button) {
+		Item item = itemOf(button);
+		if (item != null) item.clear();
+	}
+
+	@Override public void onClick(View button) {
+		Item item = itemOf(button);
+		if (item == null || (item.releaseId == -1 && item.artistId == -1)) return;
+		if (mSession != null) {
+			if (item.releaseId != -1) mSession.view7digitalItem(item.releaseId, item.releaseTitle, item.trackId, item.trackTitle, item.trackVersion, item.coverUrl, item.artistId, item.artistName);
+			else mSession.view7digitalArtist(item.artistId, item.artistName);
+		} else {
+			if (item.releaseId != -1) SDIPartnerUtil.view7digitalItem(button.getContext(), item.releaseId, item.releaseTitle, item.trackId, item.trackTitle, item.trackVersion, item.coverUrl, item.artistId, item.artistName, mAffiliateId);
+			else SDIPartnerUtil.view7digitalArtist(button.getContext(), item.artistId, item.artistName, mAffiliateId);
+		}
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * internal
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private static Item itemOf(View button) {
+		Object tag = button.getTag(R.id.sdi_buy_button_item);
+		return tag instanceof Item ? (Item) tag : null;
+	}
+
+	/* what a button is bound to; -1 and null mean absent, as in SDIIntent.Builder */
+	private static final class Item {
+
+		SDIBuyButtonBinder binder;
+		long releaseId = -1;
+		String releaseTitle;
+		long trackId = -1;
+		String trackTitle;
+		String trackVersion;
+		String coverUrl;
+		long artistId = -1;
+		String artistName;
+
+		void clear() {
+			releaseId = trackId = artistId = -1;
+			releaseTitle = trackTitle = trackVersion = coverUrl = artistName = null;
+		}
+	}
+
+}
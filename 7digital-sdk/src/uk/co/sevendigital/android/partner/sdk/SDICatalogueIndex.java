@@ -0,0 +1,544 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+import android.content.Context;
+
+/**
+ * A local index that maps partner catalogue identifiers to 7digital identifiers, so that Intents can be built with
+ * {@link SDIIntent.Builder#buildView7digitalTrack(long, long)} and friends without a network lookup per item. ISRCs
+ * map to a release and track ID, UPCs (and EANs) map to a release ID.
+ *
+ * The index is a file of sorted primitive arrays that is memory-mapped on first use and searched with a binary
+ * search, so lookups neither parse the file nor allocate. Codes are packed into a <code>long</code>: an ISRC is 12
+ * characters of base 36, which fits in 62 bits, and a UPC or EAN is at most 14 digits. The index is filled and kept up
+ * to date through {@link Delta}s, e.g. read from a feed with {@link Delta#read(Reader)}; applying a delta merges it
+ * into a new file in a single streaming pass and swaps it in atomically, while lookups continue on the old one.
+ */
+public class SDICatalogueIndex {
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * constants
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/** Name of the index file, stored in the application's files directory. */
+	public static final String FILE_NAME = "sdi_catalogue.idx";
+
+	private static final int MAGIC = 0x53444958; // "SDIX"
+	private static final int VERSION = 1;
+	/* header: magic, version, isrc count, upc count */
+	private static final int HEADER_SIZE = 16;
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * fields
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private final File mFile;
+	/* replaced as a whole when a delta is applied, so lookups never see a half-updated index */
+	private volatile Sections mSections;
+
+	/**
+	 * Creates an index backed by the given file. The file is only read on first use and need not exist yet.
+	 * @param file The index file.
+	 */
+	public SDICatalogueIndex(File file) {
+		if (file == null) throw new IllegalArgumentException("Parameter file should not be null.");
+		mFile = file;
+	}
+
+	/**
+	 * Creates an index backed by {@link #FILE_NAME} in the application's files directory.
+	 * @param context Any Context of the application.
+	 */
+	public SDICatalogueIndex(Context context) {
+		this(new File(context.getFilesDir(), FILE_NAME));
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * lookups
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Returns the 7digital track ID for the given ISRC, or <b>-1</b> if it is not in the index.
+	 * @param isrc The ISRC, with or without dashes.
+	 * @throws IOException If the index could not be read.
+	 */
+	public long findTrackId(CharSequence isrc) throws IOException {
+		Sections sections = sections();
+		int index = search(sections.isrcKeys, encodeIsrc(isrc));
+		return index >= 0 ? sections.isrcTrackIds.get(index) : -1;
+	}
+
+	/**
+	 * Returns the 7digital release ID for the given ISRC, or <b>-1</b> if it is not in the index.
+	 * @param isrc The ISRC, with or without dashes.
+	 * @throws IOException If the index could not be read.
+	 */
+	public long findReleaseIdForIsrc(CharSequence isrc) throws IOException {
+		Sections sections = sections();
+		int index = search(sections.isrcKeys, encodeIsrc(isrc));
+		return index >= 0 ? sections.isrcReleaseIds.get(index) : -1;
+	}
+
+	/**
+	 * Returns the 7digital release ID for the given UPC or EAN, or <b>-1</b> if it is not in the index.
+	 * @param upc The UPC or EAN.
+	 * @throws IOException If the index could not be read.
+	 */
+	public long findReleaseId(CharSequence upc) throws IOException {
+		Sections sections = sections();
+		int index = search(sections.upcKeys, encodeUpc(upc));
+		return index >= 0 ? sections.upcReleaseIds.get(index) : -1;
+	}
+
+	/**
+	 * Resolves a batch of ISRCs. Codes that are malformed or not in the index get <b>-1</b> for both IDs.
+	 * @param isrcs The ISRCs to resolve.
+	 * @param releaseIds Receives the release ID for every ISRC; at least as long as <code>isrcs</code>.
+	 * @param trackIds Receives the track ID for every ISRC; at least as long as <code>isrcs</code>.
+	 * @return The number of ISRCs that were resolved.
+	 * @throws IOException If the index could not be read.
+	 */
+	public int resolveIsrcs(CharSequence[] isrcs, long[] releaseIds, long[] trackIds) throws IOException {
+		if (isrcs == null || releaseIds == null || trackIds == null) throw new IllegalArgumentException("Parameters should not be null.");
+		if (releaseIds.length < isrcs.length || trackIds.length < isrcs.length) throw new IllegalArgumentException("Parameters releaseIds and trackIds should be at least as long as isrcs.");
+		Sections sections = sections();
+		int resolved = 0;
+		for (int i = 0; i < isrcs.length; i++) {
+			int index = search(sections.isrcKeys, encodeIsrc(isrcs[i]));
+			releaseIds[i] = index >= 0 ? sections.isrcReleaseIds.get(index) : -1;
+			trackIds[i] = index >= 0 ? sections.isrcTrackIds.get(index) : -1;
+			if (index >= 0) resolved++;
+		}
+		return resolved;
+	}
+
+	/**
+	 * Resolves a batch of UPCs or EANs. Codes that are malformed or not in the index get <b>-1</b>.
+	 * @param upcs The UPCs or EANs to resolve.
+	 * @param releaseIds Receives the release ID for every code; at least as long as <code>upcs</code>.
+	 * @return The number of codes that were resolved.
+	 * @throws IOException If the index could not be read.
+	 */
+	public int resolveUpcs(CharSequence[] upcs, long[] releaseIds) throws IOException {
+		if (upcs == null || releaseIds == null) throw new IllegalArgumentException("Parameters should not be null.");
+		if (releaseIds.length < upcs.length) throw new IllegalArgumentException("Parameter releaseIds should be at least as long as upcs.");
+		Sections sections = sections();
+		int resolved = 0;
+		for (int i = 0; i < upcs.length; i++) {
+			int index = search(sections.upcKeys, encodeUpc(upcs[i]));
+			releaseIds[i] = index >= 0 ? sections.upcReleaseIds.get(index) : -1;
+			if (index >= 0) resolved++;
+		}
+		return resolved;
+	}
+
+	/**
+	 * Returns the number of ISRCs in the index.
+	 * @throws IOException If the index could not be read.
+	 */
+	public int getIsrcCount() throws IOException {
+		return sections().isrcKeys.limit();
+	}
+
+	/**
+	 * Returns the number of UPCs and EANs in the index.
+	 * @throws IOException If the index could not be read.
+	 */
+	public int getUpcCount() throws IOException {
+		return sections().upcKeys.limit();
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * updates
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Merges the given delta into the index. The merged index is written to a new file which then replaces the current
+	 * one, so a failure leaves the index unchanged. Lookups may continue while the delta is applied.
+	 * @param delta The additions, changes and removals to apply.
+	 * @throws IOException If the index could not be read or written.
+	 */
+	public synchronized void applyDelta(Delta delta) throws IOException {
+		if (delta == null) throw new IllegalArgumentException("Parameter delta should not be null.");
+		Sections current = sections();
+		Delta.Sorted isrcs = delta.mIsrcs.sorted();
+		Delta.Sorted upcs = delta.mUpcs.sorted();
+
+		File temp = new File(mFile.getPath() + ".tmp");
+		File parent = mFile.getAbsoluteFile().getParentFile();
+		if (parent != null && !parent.isDirectory() && !parent.mkdirs()) throw new IOException("Unable to create " + parent);
+		// counting first keeps the writes sequential: the header needs the counts and the sections are column-wise
+		int isrcCount = merge(current.isrcKeys, null, isrcs, null, null);
+		int upcCount = merge(current.upcKeys, null, upcs, null, null);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(isrcCount);
+			out.writeInt(upcCount);
+			merge(current.isrcKeys, current.isrcKeys, isrcs, isrcs.keys, out);
+			merge(current.isrcKeys, current.isrcReleaseIds, isrcs, isrcs.releaseIds, out);
+			merge(current.isrcKeys, current.isrcTrackIds, isrcs, isrcs.trackIds, out);
+			merge(current.upcKeys, current.upcKeys, upcs, upcs.keys, out);
+			merge(current.upcKeys, current.upcReleaseIds, upcs, upcs.releaseIds, out);
+		} finally {
+			out.close();
+		}
+		Sections merged = map(temp);
+		// the old mapping stays valid for lookups in progress, even after the file it maps got replaced
+		if (!temp.renameTo(mFile)) {
+			temp.delete();
+			throw new IOException("Unable to rename " + temp + " to " + mFile);
+		}
+		mSections = merged;
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * encoding
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Packs an ISRC into a <code>long</code>: its 12 characters are read as a base 36 number. Dashes and spaces are
+	 * ignored and letters are case-insensitive.
+	 * @return The packed ISRC, or <b>-1</b> if it is malformed.
+	 */
+	public static long encodeIsrc(CharSequence isrc) {
+		if (isrc == null) return -1;
+		long value = 0;
+		int count = 0;
+		for (int i = 0, length = isrc.length(); i < length; i++) {
+			char c = isrc.charAt(i);
+			if (c == '-' || c == ' ') continue;
+			int digit = Character.digit(c, 36);
+			if (digit < 0 || ++count > 12) return -1;
+			value = value * 36 + digit;
+		}
+		return count == 12 ? value : -1;
+	}
+
+	/**
+	 * Packs a UPC or EAN into a <code>long</code>, i.e. parses its digits. Leading zeros are insignificant, so a UPC-A
+	 * and the EAN-13 with the same digits map to the same value.
+	 * @return The packed code, or <b>-1</b> if it is malformed.
+	 */
+	public static long encodeUpc(CharSequence upc) {
+		if (upc == null) return -1;
+		long value = 0;
+		int count = 0;
+		for (int i = 0, length = upc.length(); i < length; i++) {
+			char c = upc.charAt(i);
+			if (c == '-' || c == ' ') continue;
+			if (c < '0' || c > '9' || ++count > 14) return -1;
+			value = value * 10 + (c - '0');
+		}
+		return count >= 8 ? value : -1;
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * internal
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private Sections sections() throws IOException {
+		Sections sections = mSections;
+		if (sections != null) return sections;
+		synchronized (this) {
+			if (mSections == null) mSections = mFile.exists() ? map(mFile) : Sections.EMPTY;
+			return mSections;
+		}
+	}
+
+	private static Sections map(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			// the mapping stays valid after the channel is closed
+			ByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+			if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) throw new IOException("Not a catalogue index: " + file);
+			if (buffer.getInt(4) != VERSION) throw new IOException("Unsupported catalogue index version " + buffer.getInt(4) + ": " + file);
+			int isrcCount = buffer.getInt(8), upcCount = buffer.getInt(12);
+			if (isrcCount < 0 || upcCount < 0 || buffer.capacity() != HEADER_SIZE + 8L * (3L * isrcCount + 2L * upcCount)) throw new IOException("Truncated catalogue index: " + file);
+			int offset = HEADER_SIZE;
+			LongBuffer isrcKeys = slice(buffer, offset, isrcCount);
+			LongBuffer isrcReleaseIds = slice(buffer, offset += 8 * isrcCount, isrcCount);
+			LongBuffer isrcTrackIds = slice(buffer, offset += 8 * isrcCount, isrcCount);
+			LongBuffer upcKeys = slice(buffer, offset += 8 * isrcCount, upcCount);
+			LongBuffer upcReleaseIds = slice(buffer, offset + 8 * upcCount, upcCount);
+			return new Sections(isrcKeys, isrcReleaseIds, isrcTrackIds, upcKeys, upcReleaseIds);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static LongBuffer slice(ByteBuffer buffer, int offset, int count) {
+		ByteBuffer duplicate = buffer.duplicate();
+		duplicate.position(offset);
+		duplicate.limit(offset + 8 * count);
+		return duplicate.slice().asLongBuffer();
+	}
+
+	/* binary search over a sorted key column, using absolute gets only so it is safe for concurrent use */
+	private static int search(LongBuffer keys, long key) {
+		if (key < 0) return -1;
+		int low = 0, high = keys.limit() - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			long value = keys.get(mid);
+			if (value < key) low = mid + 1;
+			else if (value > key) high = mid - 1;
+			else return mid;
+		}
+		return -1;
+	}
+
+	/*
+	 * Merges a sorted base index with a sorted delta, in which a release ID of -1 marks a removal, and writes one column
+	 * of the result: the base and delta values of that column are given, or null to write nothing and only count.
+	 * Returns the number of merged entries.
+	 */
+	private static int merge(LongBuffer baseKeys, LongBuffer baseColumn, Delta.Sorted delta, long[] deltaColumn, DataOutputStream out) throws IOException {
+		int count = 0;
+		int i = 0, j = 0, baseCount = baseKeys.limit();
+		while (i < baseCount || j < delta.count) {
+			long baseKey = i < baseCount ? baseKeys.get(i) : Long.MAX_VALUE;
+			long deltaKey = j < delta.count ? delta.keys[j] : Long.MAX_VALUE;
+			if (baseKey < deltaKey) {
+				if (baseColumn != null) out.writeLong(baseColumn.get(i));
+				i++;
+				count++;
+			} else {
+				if (baseKey == deltaKey) i++;
+				if (delta.releaseIds[j] != -1) {
+					if (baseColumn != null) out.writeLong(deltaColumn[j]);
+					count++;
+				}
+				j++;
+			}
+		}
+		return count;
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * delta
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * A set of additions, changes and removals for the index. When the same code occurs more than once, the last
+	 * occurrence wins. Not thread-safe.
+	 */
+	public static final class Delta {
+
+		private final Column mIsrcs = new Column();
+		private final Column mUpcs = new Column();
+
+		/**
+		 * Adds or changes the mapping of an ISRC.
+		 * @throws IllegalArgumentException If the ISRC is malformed or the IDs are -1.
+		 */
+		public Delta putIsrc(CharSequence isrc, long releaseId, long trackId) {
+			long key = encodeIsrc(isrc);
+			if (key < 0) throw new IllegalArgumentException("Parameter isrc is not a valid ISRC: " + isrc);
+			if (releaseId == -1) throw new IllegalArgumentException("Parameter releaseId should not be -1.");
+			if (trackId == -1) throw new IllegalArgumentException("Parameter trackId should not be -1.");
+			mIsrcs.add(key, releaseId, trackId);
+			return this;
+		}
+
+		/**
+		 * Adds or changes the mapping of a UPC or EAN.
+		 * @throws IllegalArgumentException If the code is malformed or the ID is -1.
+		 */
+		public Delta putUpc(CharSequence upc, long releaseId) {
+			long key = encodeUpc(upc);
+			if (key < 0) throw new IllegalArgumentException("Parameter upc is not a valid UPC or EAN: " + upc);
+			if (releaseId == -1) throw new IllegalArgumentException("Parameter releaseId should not be -1.");
+			mUpcs.add(key, releaseId, -1);
+			return this;
+		}
+
+		/**
+		 * Removes the mapping of an ISRC, if present.
+		 * @throws IllegalArgumentException If the ISRC is malformed.
+		 */
+		public Delta removeIsrc(CharSequence isrc) {
+			long key = encodeIsrc(isrc);
+			if (key < 0) throw new IllegalArgumentException("Parameter isrc is not a valid ISRC: " + isrc);
+			mIsrcs.add(key, -1, -1);
+			return this;
+		}
+
+		/**
+		 * Removes the mapping of a UPC or EAN, if present.
+		 * @throws IllegalArgumentException If the code is malformed.
+		 */
+		public Delta removeUpc(CharSequence upc) {
+			long key = encodeUpc(upc);
+			if (key < 0) throw new IllegalArgumentException("Parameter upc is not a valid UPC or EAN: " + upc);
+			mUpcs.add(key, -1, -1);
+			return this;
+		}
+
+		/** Returns the number of changes in this delta. */
+		public int size() {
+			return mIsrcs.count + mUpcs.count;
+		}
+
+		/**
+		 * Reads a delta from a feed with one change per line, in one of these forms (blank lines and lines starting
+		 * with <code>#</code> are ignored):
+		 * <ul>
+		 * <li><code>isrc,{isrc},{releaseId},{trackId}</code></li>
+		 * <li><code>upc,{upc},{releaseId}</code></li>
+		 * <li><code>-isrc,{isrc}</code> and <code>-upc,{upc}</code> to remove a mapping</li>
+		 * </ul>
+		 * @param reader The feed, which is read to the end but not closed.
+		 * @throws IOException If the feed could not be read or contains a malformed line.
+		 */
+		public static Delta read(Reader reader) throws IOException {
+			Delta delta = new Delta();
+			BufferedReader in = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+			int number = 0;
+			for (String line; (line = in.readLine()) != null; ) {
+				number++;
+				line = line.trim();
+				if (line.length() == 0 || line.charAt(0) == '#') continue;
+				String[] fields = line.split(",");
+				try {
+					if (fields[0].equals("isrc") && fields.length == 4) delta.putIsrc(fields[1], Long.parseLong(fields[2].trim()), Long.parseLong(fields[3].trim()));
+					else if (fields[0].equals("upc") && fields.length == 3) delta.putUpc(fields[1], Long.parseLong(fields[2].trim()));
+					else if (fields[0].equals("-isrc") && fields.length == 2) delta.removeIsrc(fields[1]);
+					else if (fields[0].equals("-upc") && fields.length == 2) delta.removeUpc(fields[1]);
+					else throw new IllegalArgumentException("unknown change");
+				} catch (IllegalArgumentException e) {
+					// includes NumberFormatException
+					throw new IOException("Malformed line " + number + ": " + line);
+				}
+			}
+			return delta;
+		}
+
+		/* a growable set of parallel primitive columns */
+		private static final class Column {
+
+			long[] keys = new long[16];
+			long[] releaseIds = new long[16];
+			long[] trackIds = new long[16];
+			int count;
+
+			void add(long key, long releaseId, long trackId) {
+				if (count == keys.length) {
+					keys = grow(keys);
+					releaseIds = grow(releaseIds);
+					trackIds = grow(trackIds);
+				}
+				keys[count] = key;
+				releaseIds[count] = releaseId;
+				trackIds[count] = trackId;
+				count++;
+			}
+
+			/* sorts by key, keeping only the last change per key */
+			Sorted sorted() {
+				int[] order = new int[count];
+				for (int i = 0; i < count; i++) order[i] = i;
+				sort(order, 0, count - 1);
+				Sorted sorted = new Sorted(count);
+				for (int i = 0; i < count; i++) {
+					int index = order[i];
+					// the order is by key, then insertion, so the last of a run of equal keys is the latest change
+					if (i + 1 < count && keys[order[i + 1]] == keys[index]) continue;
+					sorted.keys[sorted.count] = keys[index];
+					sorted.releaseIds[sorted.count] = releaseIds[index];
+					sorted.trackIds[sorted.count] = trackIds[index];
+					sorted.count++;
+				}
+				return sorted;
+			}
+
+			/* quicksort of positions by key, then position */
+			private void sort(int[] order, int low, int high) {
+				while (low < high) {
+					int pivot = order[(low + high) >>> 1];
+					int i = low, j = high;
+					while (i <= j) {
+						while (compare(order[i], pivot) < 0) i++;
+						while (compare(order[j], pivot) > 0) j--;
+						if (i <= j) {
+							int swap = order[i];
+							order[i++] = order[j];
+							order[j--] = swap;
+						}
+					}
+					// recurse into the smaller half to bound the stack depth
+					if (j - low < high - i) {
+						sort(order, low, j);
+						low = i;
+					} else {
+						sort(order, i, high);
+						high = j;
+					}
+				}
+			}
+
+			private int compare(int a, int b) {
+				long x = keys[a], y = keys[b];
+				return x < y ? -1 : x > y ? 1 : a < b ? -1 : a > b ? 1 : 0;
+			}
+
+			private static long[] grow(long[] array) {
+				long[] grown = new long[array.length * 2];
+				System.arraycopy(array, 0, grown, 0, array.length);
+				return grown;
+			}
+		}
+
+		/* the sorted, deduplicated form of a column */
+		static final class Sorted {
+
+			final long[] keys;
+			final long[] releaseIds;
+			final long[] trackIds;
+			int count;
+
+			Sorted(int capacity) {
+				keys = new long[capacity];
+				releaseIds = new long[capacity];
+				trackIds = new long[capacity];
+			}
+		}
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * sections
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/* the mapped columns of one version of the index file */
+	private static final class Sections {
+
+		static final Sections EMPTY = new Sections(LongBuffer.allocate(0), LongBuffer.allocate(0), LongBuffer.allocate(0), LongBuffer.allocate(0), LongBuffer.allocate(0));
+
+		final LongBuffer isrcKeys;
+		final LongBuffer isrcReleaseIds;
+		final LongBuffer isrcTrackIds;
+		final LongBuffer upcKeys;
+		final LongBuffer upcReleaseIds;
+
+		Sections(LongBuffer isrcKeys, LongBuffer isrcReleaseIds, LongBuffer isrcTrackIds, LongBuffer upcKeys, LongBuffer upcReleaseIds) {
+			this.isrcKeys = isrcKeys;
+			this.isrcReleaseIds = isrcReleaseIds;
+			this.isrcTrackIds = isrcTrackIds;
+			this.upcKeys = upcKeys;
+			this.upcReleaseIds = upcReleaseIds;
+		}
+	}
+
+}
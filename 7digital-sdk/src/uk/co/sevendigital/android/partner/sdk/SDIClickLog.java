@@ -0,0 +1,408 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import android.content.Context;
+import android.util.Log;
+
+/**
+ * An on-device, append-only log of affiliate clicks, i.e. every handoff to the 7digital Android app (or its fallback)
+ * together with the {@link SDIIntent.Extra#PARTNER} it was made for. It allows partners to reconcile their clicks
+ * against the 7digital commission reports.
+ *
+ * Clicks are appended to a memory-mapped segment file, every record carrying its own checksum so that a record torn
+ * by a crash is detected and discarded on the next start. Records are forwarded in gzip compressed batches through a
+ * {@link Transport} once enough have accumulated or when {@link #flush()} is called, and are only marked as flushed
+ * once the transport accepted them. All file and transport work happens on a single background thread; recording a
+ * click only queues it.
+ *
+ * Delivery is at-least-once: a batch is only dropped from the segment after {@link Transport#send(byte[], int)}
+ * returned, so if the process dies in between, the same clicks are sent again after the next start. Receivers should
+ * deduplicate, e.g. on the timestamp and IDs of each click.
+ *
+ * Once installed with {@link #install(Context, Transport)}, all launches performed by the SDK are recorded
+ * automatically.
+ */
+public class SDIClickLog {
+
+	/**
+	 * Interface for delivering batches of clicks, e.g. to a partner backend. Called on a background thread.
+	 */
+	public interface Transport {
+		/**
+		 * Delivers a batch of clicks. The batch can be decoded using {@link SDIClickLog#decodeBatch(byte[])}.
+		 * @param batch The gzip compressed records.
+		 * @param count The number of clicks in the batch.
+		 * @throws IOException If the batch could not be delivered, in which case it will be retried with the next flush.
+		 * The clicks of a batch that was delivered may be sent again if the process dies before it was marked as flushed.
+		 */
+		void send(byte[] batch, int count) throws IOException;
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * constants
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private static final String TAG = "SDIClickLog";
+
+	/** Name of the segment file, stored in the application's files directory. */
+	public static final String SEGMENT_FILE_NAME = "sdi_clicks.seg";
+	/** Default size of the segment file in bytes. */
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024;
+	/** Default number of unflushed bytes that triggers a flush. */
+	public static final int DEFAULT_FLUSH_THRESHOLD = 8 * 1024;
+
+	private static final int MAGIC = 0x53444943; // "SDIC"
+	private static final int VERSION = 1;
+	/* header: magic, version, offset up to which records have been flushed */
+	private static final int HEADER_SIZE = 12;
+	private static final int OFFSET_FLUSHED = 8;
+	/* record: length, crc, payload */
+	private static final int RECORD_HEADER_SIZE = 8;
+	private static final int MAX_PARTNER_BYTES = 255;
+	private static final int MAX_ACTION_BYTES = 255;
+	/* action byte of a record: a template index, or one of these */
+	private static final int ACTION_NONE = 0xff;
+	private static final int ACTION_EXPLICIT = 0xfe;
+
+	private static volatile SDIClickLog sInstance;
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * fields
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private final File mFile;
+	private final int mSegmentSize;
+	private final int mFlushThreshold;
+	private final Transport mTransport;
+	private final ConcurrentLinkedQueue<Entry> mQueue = new ConcurrentLinkedQueue<Entry>();
+	private final AtomicBoolean mDrainScheduled = new AtomicBoolean();
+	private final ExecutorService mExecutor;
+
+	/* only accessed on the executor thread */
+	private RandomAccessFile mRandomAccessFile;
+	private MappedByteBuffer mSegment;
+	private int mWriteOffset;
+	private int mFlushedOffset;
+	private final CRC32 mCrc = new CRC32();
+	private final ByteBuffer mScratch = ByteBuffer.allocate(64 + MAX_ACTION_BYTES + MAX_PARTNER_BYTES);
+	private volatile long mDropped;
+
+	/**
+	 * Creates a click log backed by the given segment file. Most apps should use {@link #install(Context, Transport)}
+	 * instead.
+	 * @param file The segment file to use.
+	 * @param segmentSize The size of the segment file in bytes.
+	 * @param flushThreshold The number of unflushed bytes that triggers a flush.
+	 * @param transport The transport to deliver batches with.
+	 */
+	public SDIClickLog(File file, int segmentSize, int flushThreshold, Transport transport) {
+		if (file == null) throw new IllegalArgumentException("Parameter file should not be null.");
+		if (transport == null) throw new IllegalArgumentException("Parameter transport should not be null.");
+		if (segmentSize < HEADER_SIZE + 1024) throw new IllegalArgumentException("Parameter segmentSize should be at least " + (HEADER_SIZE + 1024) + ".");
+		mFile = file;
+		mSegmentSize = segmentSize;
+		mFlushThreshold = flushThreshold;
+		mTransport = transport;
+		mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, TAG);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		mExecutor.execute(new Runnable() {
+			@Override public void run() { open(); }
+		});
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * util methods
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Installs a click log in the application's files directory, after which every launch performed by the SDK is
+	 * recorded. Subsequent calls return the log installed first.
+	 * @param context Context used to find the files directory.
+	 * @param transport The transport to deliver batches with.
+	 */
+	public static synchronized SDIClickLog install(Context context, Transport transport) {
+		if (context == null) throw new IllegalArgumentException("Parameter context should not be null.");
+		if (sInstance == null) sInstance = new SDIClickLog(new File(context.getFilesDir(), SEGMENT_FILE_NAME), DEFAULT_SEGMENT_SIZE, DEFAULT_FLUSH_THRESHOLD, transport);
+		return sInstance;
+	}
+
+	/**
+	 * Returns the installed click log, or <b>null</b> if none was installed.
+	 */
+	public static SDIClickLog getInstance() {
+		return sInstance;
+	}
+
+	/**
+	 * Records a click. Only queues the click, the actual write happens on a background thread.
+	 * @param action The action performed, e.g. one of {@link SDIIntent.Action} or {@link android.content.Intent#ACTION_SEARCH}.
+	 * @param releaseId The 7digital release ID involved, or <b>-1</b>.
+	 * @param trackId The 7digital track ID involved, or <b>-1</b>.
+	 * @param artistId The 7digital artist ID involved, or <b>-1</b>.
+	 * @param partner The affiliate identifier, or <b>null</b>.
+	 * @param target The target the click ended up at, one of the {@link SDIAppResolver} targets.
+	 */
+	public void record(String action, long releaseId, long trackId, long artistId, String partner, int target) {
+		mQueue.add(new Entry(System.currentTimeMillis(), action, releaseId, trackId, artistId, partner, target));
+		if (mDrainScheduled.compareAndSet(false, true)) mExecutor.execute(new Runnable() {
+			@Override public void run() { drain(false); }
+		});
+	}
+
+	/**
+	 * Delivers all unflushed clicks through the transport, on a background thread.
+	 */
+	public void flush() {
+		mExecutor.execute(new Runnable() {
+			@Override public void run() { drain(true); }
+		});
+	}
+
+	/**
+	 * Returns the number of clicks dropped because the segment was full and could not be flushed.
+	 */
+	public long getDroppedCount() {
+		return mDropped;
+	}
+
+	/**
+	 * Decodes a batch as delivered to a {@link Transport}.
+	 * @param batch The gzip compressed records.
+	 * @return The clicks in the batch, in the order they were recorded.
+	 * @throws IOException If the batch is corrupt.
+	 */
+	public static List<Entry> decodeBatch(byte[] batch) throws IOException {
+		DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(batch)));
+		List<Entry> entries = new ArrayList<Entry>();
+		try {
+			while (true) {
+				int length;
+				try { length = in.readInt(); }
+				catch (EOFException e) { break; }
+				in.readInt(); // crc, already verified when the batch was built
+				byte[] payload = new byte[length];
+				in.readFully(payload);
+				entries.add(Entry.decode(ByteBuffer.wrap(payload)));
+			}
+		} finally { in.close(); }
+		return Collections.unmodifiableList(entries);
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * internal (executor thread only)
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private void open() {
+		try {
+			mRandomAccessFile = new RandomAccessFile(mFile, "rw");
+			boolean fresh = mRandomAccessFile.length() != mSegmentSize;
+			if (fresh) mRandomAccessFile.setLength(mSegmentSize);
+			mSegment = mRandomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, mSegmentSize);
+			if (fresh || mSegment.getInt(0) != MAGIC || mSegment.getInt(4) != VERSION) {
+				reset();
+				return;
+			}
+			mFlushedOffset = mSegment.getInt(OFFSET_FLUSHED);
+			if (mFlushedOffset < HEADER_SIZE || mFlushedOffset > mSegmentSize) mFlushedOffset = HEADER_SIZE;
+			// find the end of the log: the first record that is empty, doesn't fit or fails its checksum
+			int offset = HEADER_SIZE;
+			while (offset >= 0 && isValidRecord(offset)) offset += RECORD_HEADER_SIZE + mSegment.getInt(offset);
+			mWriteOffset = offset;
+			if (mFlushedOffset > mWriteOffset) mFlushedOffset = mWriteOffset;
+			// clear a torn record, so that later appends are not mistaken for its continuation
+			zero(mWriteOffset, Math.min(mSegmentSize, mWriteOffset + RECORD_HEADER_SIZE));
+		} catch (IOException e) {
+			Log.w(TAG, "Unable to open click log " + mFile + ", clicks will not be recorded.", e);
+			mSegment = null;
+		}
+	}
+
+	private boolean isValidRecord(int offset) {
+		if (offset + RECORD_HEADER_SIZE > mSegmentSize) return false;
+		int length = mSegment.getInt(offset);
+		if (length <= 0 || offset + RECORD_HEADER_SIZE + length > mSegmentSize) return false;
+		mCrc.reset();
+		for (int i = 0; i < length; i++) mCrc.update(mSegment.get(offset + RECORD_HEADER_SIZE + i));
+		return (int) mCrc.getValue() == mSegment.getInt(offset + 4);
+	}
+
+	private void reset() {
+		zero(0, mWriteOffset > 0 ? mWriteOffset : mSegmentSize);
+		mSegment.putInt(0, MAGIC);
+		mSegment.putInt(4, VERSION);
+		mSegment.putInt(OFFSET_FLUSHED, HEADER_SIZE);
+		mWriteOffset = HEADER_SIZE;
+		mFlushedOffset = HEADER_SIZE;
+		mSegment.force();
+	}
+
+	private void zero(int from, int to) {
+		for (int i = from; i < to; i++) mSegment.put(i, (byte) 0);
+	}
+
+	private void drain(boolean forceFlush) {
+		mDrainScheduled.set(false);
+		if (mSegment == null) { mQueue.clear(); return; }
+		Entry entry;
+		while ((entry = mQueue.poll()) != null) append(entry);
+		if (forceFlush || mWriteOffset - mFlushedOffset >= mFlushThreshold) deliver();
+	}
+
+	private void append(Entry entry) {
+		mScratch.clear();
+		entry.encode(mScratch);
+		mScratch.flip();
+		int length = mScratch.remaining();
+		if (mWriteOffset + RECORD_HEADER_SIZE + length > mSegmentSize) {
+			// make room by delivering what we have; if that fails the click is dropped
+			deliver();
+			if (mWriteOffset + RECORD_HEADER_SIZE + length > mSegmentSize) {
+				mDropped++;
+				return;
+			}
+		}
+		mCrc.reset();
+		mCrc.update(mScratch.array(), 0, length);
+		// payload and checksum before length, so that a torn write never looks like a valid record
+		for (int i = 0; i < length; i++) mSegment.put(mWriteOffset + RECORD_HEADER_SIZE + i, mScratch.get(i));
+		mSegment.putInt(mWriteOffset + 4, (int) mCrc.getValue());
+		mSegment.putInt(mWriteOffset, length);
+		mWriteOffset += RECORD_HEADER_SIZE + length;
+	}
+
+	private void deliver() {
+		int count = 0;
+		for (int offset = mFlushedOffset; offset < mWriteOffset; offset += RECORD_HEADER_SIZE + mSegment.getInt(offset)) count++;
+		if (count > 0) {
+			try {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream((mWriteOffset - mFlushedOffset) / 2);
+				GZIPOutputStream out = new GZIPOutputStream(bytes);
+				for (int offset = mFlushedOffset; offset < mWriteOffset; offset++) out.write(mSegment.get(offset));
+				out.close();
+				mTransport.send(bytes.toByteArray(), count);
+			} catch (IOException e) {
+				Log.w(TAG, "Unable to deliver " + count + " clicks, will retry with the next flush.", e);
+				mSegment.force();
+				return;
+			} catch (RuntimeException e) {
+				Log.w(TAG, "Transport failed to deliver " + count + " clicks, will retry with the next flush.", e);
+				mSegment.force();
+				return;
+			}
+		}
+		// everything has been delivered, so start over at the beginning of the segment
+		reset();
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * entry
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * A single recorded click.
+	 */
+	public static final class Entry {
+
+		/** Time of the click, in milliseconds since the epoch. */
+		public final long timestamp;
+		/** The action performed, e.g. one of {@link SDIIntent.Action} or {@link android.content.Intent#ACTION_SEARCH}, or <b>null</b>. */
+		public final String action;
+		/** The 7digital release ID involved, or <b>-1</b>. */
+		public final long releaseId;
+		/** The 7digital track ID involved, or <b>-1</b>. */
+		public final long trackId;
+		/** The 7digital artist ID involved, or <b>-1</b>. */
+		public final long artistId;
+		/** The affiliate identifier, or <b>null</b>. */
+		public final String partner;
+		/** The target the click ended up at, one of the {@link SDIAppResolver} targets. */
+		public final int target;
+
+		Entry(long timestamp, String action, long releaseId, long trackId, long artistId, String partner, int target) {
+			this.timestamp = timestamp;
+			this.action = action;
+			this.releaseId = releaseId;
+			this.trackId = trackId;
+			this.artistId = artistId;
+			this.partner = partner;
+			this.target = target;
+		}
+
+		void encode(ByteBuffer buffer) {
+			buffer.putLong(timestamp);
+			// the actions with a template take a single byte, anything else (e.g. Intent.ACTION_SEARCH) is spelled out
+			int index = SDIIntentTemplate.indexOf(action);
+			buffer.put((byte) (index != -1 ? index : action != null ? ACTION_EXPLICIT : ACTION_NONE));
+			buffer.put((byte) target);
+			buffer.putLong(releaseId);
+			buffer.putLong(trackId);
+			buffer.putLong(artistId);
+			if (index == -1 && action != null) putString(buffer, action, MAX_ACTION_BYTES);
+			if (partner == null) { buffer.put((byte) 0xff); return; }
+			putString(buffer, partner, MAX_PARTNER_BYTES);
+		}
+
+		static Entry decode(ByteBuffer buffer) {
+			long timestamp = buffer.getLong();
+			int index = buffer.get() & 0xff;
+			int target = buffer.get();
+			long releaseId = buffer.getLong();
+			long trackId = buffer.getLong();
+			long artistId = buffer.getLong();
+			String action = index == ACTION_EXPLICIT ? getString(buffer, buffer.get() & 0xff) : SDIIntentTemplate.actionAt(index);
+			int length = buffer.get() & 0xff;
+			String partner = length != 0xff ? getString(buffer, length) : null;
+			return new Entry(timestamp, action, releaseId, trackId, artistId, partner, target);
+		}
+
+		/* a length byte and up to maxBytes - 1 bytes of UTF-8, as maxBytes (0xff) is reserved for null */
+		private static void putString(ByteBuffer buffer, String value, int maxBytes) {
+			byte[] bytes = utf8(value);
+			int length = Math.min(bytes.length, maxBytes - 1);
+			// don't cut a multi-byte character in half
+			while (length < bytes.length && length > 0 && (bytes[length] & 0xc0) == 0x80) length--;
+			buffer.put((byte) length);
+			buffer.put(bytes, 0, length);
+		}
+
+		private static String getString(ByteBuffer buffer, int length) {
+			byte[] bytes = new byte[length];
+			buffer.get(bytes);
+			try { return new String(bytes, 0, length, "UTF-8"); }
+			catch (UnsupportedEncodingException e) { throw new IllegalStateException(e); }
+		}
+
+		private static byte[] utf8(String value) {
+			try { return value.getBytes("UTF-8"); }
+			catch (UnsupportedEncodingException e) { throw new IllegalStateException(e); }
+		}
+	}
+
+}
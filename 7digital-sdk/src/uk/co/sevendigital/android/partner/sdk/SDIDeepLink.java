@@ -0,0 +1,50 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import android.content.Intent;
+
+/**
+ * Generates and parses the canonical deep link URIs for the actions in {@link SDIIntent.Action}, so that web pages,
+ * push notifications and QR codes can trigger them. The forms of the URIs are listed in {@link SDIDeepLinkCodec}, which
+ * this extends with generating links straight from Intents.
+ *
+ * A partner app can route such links into the SDK by declaring an intent filter for the <code>sevendigital</code>
+ * scheme and passing the data of the incoming Intent to {@link #toIntent(CharSequence)}, which returns the same Intent
+ * the matching {@link SDIIntent.Builder} method would.
+ *
+ * An instance writes every link into the same buffer. The {@link CharSequence} returned by the build methods is only
+ * valid until the next call. Instances are not thread-safe; the static parse methods are.
+ */
+public class SDIDeepLink extends SDIDeepLinkCodec {
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * generating
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Generates the deep link for the given Intent, as built by {@link SDIIntent.Builder}.
+	 * @param intent The Intent to generate the link for.
+	 * @return The link, valid until the next call on this instance.
+	 * @throws IllegalArgumentException If the Intent does not carry a 7digital action with its required extras.
+	 */
+	public CharSequence build(Intent intent) {
+		SDIRequest request = SDIIntentParser.parse(intent);
+		if (request == null) throw new IllegalArgumentException("Parameter intent should specify a valid 7digital action.");
+		return build(request);
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * parsing
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Parses the given deep link into the Intent the matching {@link SDIIntent.Builder} method would build, with the
+	 * affiliate identifier added as {@link SDIIntent.Extra#PARTNER}.
+	 * @param uri The deep link, e.g. the <code>toString()</code> of an incoming Intent's data.
+	 * @return The Intent, or <b>null</b> if the URI is not a valid deep link.
+	 */
+	public static Intent toIntent(CharSequence uri) {
+		SDIRequest request = parse(uri);
+		return request != null ? SDIIntent.Builder.build(request) : null;
+	}
+
+}
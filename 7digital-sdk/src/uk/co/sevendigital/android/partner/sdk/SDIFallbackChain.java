@@ -0,0 +1,334 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import java.util.concurrent.Callable;
+
+import android.content.ActivityNotFoundException;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.os.Build;
+import android.widget.Toast;
+
+/**
+ * An ordered chain of places to send a launch to, e.g. the 7digital Android app, then Google Play, then an in-app
+ * browser and finally the external browser. The first step that is available on the device is taken; if starting it
+ * fails anyway, the next one is tried. The built-in steps are {@link #APP}, {@link #MARKET}, {@link #IN_APP_WEB} and
+ * {@link #BROWSER}, and custom steps can be added by implementing {@link Step}.
+ *
+ * Which steps are available is cached per device in the SharedPreferences, so that a new process only needs a single
+ * {@link PackageManager} lookup, to check whether the 7digital app got (un)installed in the meantime. The cache is also
+ * dropped when a package changes while the app runs (see {@link SDIAppResolver}), when a step turns out to be
+ * unavailable after all, on a system update and after a day.
+ *
+ * A chain is used through {@link SDIPartnerSession#SDIPartnerSession(Context, String, SDIFallbackChain)} or
+ * {@link SDIPartnerUtil#start7digital(Context, Intent, SDIFallbackChain)}. When a screen shows content that may be
+ * launched, {@link #preconnect(Context, Intent)} lets a web step fetch the target page ahead of time.
+ */
+public class SDIFallbackChain {
+
+	/**
+	 * A single step in a chain.
+	 */
+	public interface Step {
+		/**
+		 * Returns a name that identifies the step, used to key the cache.
+		 */
+		String getName();
+
+		/**
+		 * Returns the target reported for launches that took this step, one of the {@link SDIAppResolver} targets.
+		 */
+		int getTarget();
+
+		/**
+		 * Returns whether this step can be taken on this device. The result is cached, so it should not depend on the
+		 * Intent being launched. May be called on any thread.
+		 * @param context Any Context of the application.
+		 */
+		boolean isAvailable(Context context);
+
+		/**
+		 * Performs the launch. Called on the main thread.
+		 * @param context The Context to start Activities on.
+		 * @param intent The Intent that would start the 7digital Android app.
+		 * @param newTask Whether Activities started need {@link Intent#FLAG_ACTIVITY_NEW_TASK}.
+		 * @return Whether the launch succeeded; if not, the next step is tried.
+		 */
+		boolean launch(Context context, Intent intent, boolean newTask);
+
+		/**
+		 * Prepares for a launch of the given Intent that is likely to follow, e.g. by fetching the page to show.
+		 * Called on a background thread.
+		 */
+		void preconnect(Context context, Intent intent);
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * steps
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/** Starts the 7digital Android app. */
+	public static final Step APP = new BuiltInStep("app", SDIAppResolver.TARGET_APP) {
+		@Override public boolean isAvailable(Context context) {
+			return (SDIAppResolver.getFlags(context) & SDIAppResolver.FLAG_INSTALLED) != 0;
+		}
+
+		@Override public boolean launch(Context context, Intent intent, boolean newTask) {
+			return start(context, intent);
+		}
+	};
+
+	/** Shows the 7digital Android app in Google Play. */
+	public static final Step MARKET = new BuiltInStep("market", SDIAppResolver.TARGET_MARKET) {
+		@Override public boolean isAvailable(Context context) {
+			return (SDIAppResolver.getFlags(context) & SDIAppResolver.FLAG_MARKET) != 0;
+		}
+
+		@Override public boolean launch(Context context, Intent intent, boolean newTask) {
+			if (!start(context, viewIntent(SDIAppResolver.MARKET_QUERY, newTask))) return false;
+			Toast.makeText(context, "The 7digital application is not installed. Please install it from Google Play.", Toast.LENGTH_LONG).show();
+			return true;
+		}
+	};
+
+	/** Shows the matching page of the 7digital website in {@link SDIWebActivity}, which must be declared in the manifest. */
+	public static final Step IN_APP_WEB = new BuiltInStep("web", SDIAppResolver.TARGET_WEBSITE) {
+		@Override public boolean isAvailable(Context context) {
+			Intent web = new Intent().setComponent(new ComponentName(context, SDIWebActivity.class));
+			return context.getPackageManager().resolveActivity(web, 0) != null;
+		}
+
+		@Override public boolean launch(Context context, Intent intent, boolean newTask) {
+			Intent web = SDIWebActivity.newIntent(context, new SDIWebLinkBuilder().buildString(intent));
+			if (newTask) web.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+			return start(context, web);
+		}
+
+		@Override public void preconnect(Context context, Intent intent) {
+			SDIWebActivity.prefetch(new SDIWebLinkBuilder().buildString(intent));
+		}
+	};
+
+	/** Shows the matching page of the 7digital website in the external browser. */
+	public static final Step BROWSER = new BuiltInStep("browser", SDIAppResolver.TARGET_WEBSITE) {
+		@Override public boolean isAvailable(Context context) {
+			return (SDIAppResolver.getFlags(context) & SDIAppResolver.FLAG_BROWSER) != 0;
+		}
+
+		@Override public boolean launch(Context context, Intent intent, boolean newTask) {
+			if (!start(context, viewIntent(new SDIWebLinkBuilder().buildString(intent), newTask))) return false;
+			Toast.makeText(context, "The 7digital application is not installed. Redirecting to website.", Toast.LENGTH_LONG).show();
+			return true;
+		}
+	};
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * constants
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private static final String PREFERENCES_NAME = "sdi_fallback_chain";
+	private static final long CACHE_TTL_MILLIS = 24 * 60 * 60 * 1000;
+	/* values of mAvailable besides the availability bits */
+	private static final int UNKNOWN = -1;
+	private static final int STALE = -2;
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * fields
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private final Step[] mSteps;
+	private final String mKey;
+	/* bit i set if step i is available, UNKNOWN if the cache wasn't read yet, STALE if it must not be read; valid for SDIAppResolver generation mGeneration */
+	private volatile int mAvailable = UNKNOWN;
+	private volatile int mGeneration;
+
+	/**
+	 * Creates a chain that tries the given steps in order.
+	 * @param steps The steps, at most 31.
+	 */
+	public SDIFallbackChain(Step... steps) {
+		if (steps == null || steps.length == 0 || steps.length > 31) throw new IllegalArgumentException("Parameter steps should hold between 1 and 31 steps.");
+		StringBuilder key = new StringBuilder();
+		for (Step step : steps) {
+			if (step == null) throw new IllegalArgumentException("Parameter steps should not contain null.");
+			if (key.length() > 0) key.append(',');
+			key.append(step.getName());
+		}
+		mSteps = steps.clone();
+		mKey = key.toString();
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * methods
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Returns the target of the step a launch would take now, one of the {@link SDIAppResolver} targets. May be called
+	 * on any thread; only queries the device when the cache is empty or stale.
+	 * @param context Any Context of the application.
+	 */
+	public int resolveTarget(Context context) {
+		int available = getAvailable(context);
+		for (int i = 0; i < mSteps.length; i++) if ((available & (1 << i)) != 0) return mSteps[i].getTarget();
+		return SDIAppResolver.TARGET_NONE;
+	}
+
+	/**
+	 * Lets the available steps prepare for a launch of the given Intent that is likely to follow, e.g. while a screen
+	 * showing the item is visible. Steps before the one a launch would take are skipped, so nothing is fetched when the
+	 * 7digital app is installed. Does its work on a background thread.
+	 * @param context Any Context of the application.
+	 * @param intent The Intent that would start the 7digital Android app.
+	 */
+	public void preconnect(Context context, final Intent intent) {
+		if (context == null) throw new IllegalArgumentException("Parameter context should not be null.");
+		SDILaunch.validate(intent);
+		final Context applicationContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+		SDIPartnerDispatcher.submit(new Callable<Void>() {
+			@Override public Void call() {
+				int available = getAvailable(applicationContext);
+				for (int i = 0; i < mSteps.length; i++) {
+					if ((available & (1 << i)) == 0) continue;
+					mSteps[i].preconnect(applicationContext, intent);
+					return null;
+				}
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Drops the cached availability of the steps, so that the next launch queries the device again.
+	 * @param context Any Context of the application.
+	 */
+	public void invalidate(Context context) {
+		// not UNKNOWN, as the stored cache is only cleared in the background and must not be read before that
+		mAvailable = STALE;
+		store(context, -1);
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * internal
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Takes the first available step, moving on to the next if it fails. Called on the main thread by SDILaunch.
+	 * @return The target of the step taken, or {@link SDIAppResolver#TARGET_NONE}.
+	 */
+	int perform(Context context, Intent intent, boolean newTask) {
+		int available = getAvailable(context);
+		// a missing app makes every repeated tap fall through, so only let the first one through, once per launch
+		boolean fallingBack = false;
+		for (int i = 0; i < mSteps.length; i++) {
+			if ((available & (1 << i)) == 0) continue;
+			Step step = mSteps[i];
+			if (step.getTarget() != SDIAppResolver.TARGET_APP && !fallingBack) {
+				if (!SDILaunchGovernor.tryFallback()) return SDIAppResolver.TARGET_NONE;
+				fallingBack = true;
+			}
+			if (step.launch(context, intent, newTask)) return step.getTarget();
+			// the cache was stale, the remaining steps are taken from it all the same and it is rebuilt on the next launch
+			SDIAppResolver.invalidate();
+			invalidate(context);
+		}
+		if (!fallingBack && !SDILaunchGovernor.tryFallback()) return SDIAppResolver.TARGET_NONE;
+		Toast.makeText(context, "Unable to open 7digital. Please install the 7digital application manually.", Toast.LENGTH_LONG).show();
+		return SDIAppResolver.TARGET_NONE;
+	}
+
+	private int getAvailable(Context context) {
+		int generation = SDIAppResolver.getGeneration();
+		int available = mAvailable;
+		if (available >= 0 && mGeneration == generation) return available;
+		// in a new process, trust what an earlier one found, as long as package changes are watched from now on
+		if (available == UNKNOWN) {
+			available = load(context);
+			SDIAppResolver.watchPackages(context);
+		} else {
+			available = -1;
+		}
+		if (available == -1) {
+			available = 0;
+			for (int i = 0; i < mSteps.length; i++) if (mSteps[i].isAvailable(context)) available |= 1 << i;
+			store(context, available);
+		}
+		mGeneration = generation;
+		mAvailable = available;
+		return available;
+	}
+
+	private SharedPreferences preferences(Context context) {
+		return context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+	}
+
+	private int load(Context context) {
+		SharedPreferences preferences = preferences(context);
+		if (!Build.FINGERPRINT.equals(preferences.getString(mKey + ".fingerprint", null))) return -1;
+		long age = System.currentTimeMillis() - preferences.getLong(mKey + ".time", 0);
+		if (age < 0 || age > CACHE_TTL_MILLIS) return -1;
+		if (preferences.getBoolean(mKey + ".installed", false) != isAppInstalled(context)) return -1;
+		return preferences.getInt(mKey + ".available", -1);
+	}
+
+	/* a single lookup, much cheaper than resolving every step */
+	private static boolean isAppInstalled(Context context) {
+		try { return context.getPackageManager().getPackageInfo(SDIIntent.SDI_ANDROID_PACKAGE_NAME, 0) != null; }
+		catch (PackageManager.NameNotFoundException e) { return false; }
+	}
+
+	/* commits on the background thread, as apply() needs API level 9 */
+	private void store(final Context context, final int available) {
+		final SharedPreferences preferences = preferences(context);
+		SDIPartnerDispatcher.submit(new Callable<Void>() {
+			@Override public Void call() {
+				preferences.edit()
+					.putInt(mKey + ".available", available)
+					.putLong(mKey + ".time", System.currentTimeMillis())
+					.putString(mKey + ".fingerprint", Build.FINGERPRINT)
+					.putBoolean(mKey + ".installed", isAppInstalled(context))
+					.commit();
+				return null;
+			}
+		});
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * built-in steps
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private abstract static class BuiltInStep implements Step {
+
+		private final String mName;
+		private final int mTarget;
+
+		BuiltInStep(String name, int target) {
+			mName = name;
+			mTarget = target;
+		}
+
+		@Override public String getName() {
+			return mName;
+		}
+
+		@Override public int getTarget() {
+			return mTarget;
+		}
+
+		@Override public void preconnect(Context context, Intent intent) { /* nothing to prepare */ }
+
+		static boolean start(Context context, Intent intent) {
+			try { context.startActivity(intent); return true; }
+			catch (ActivityNotFoundException e) { return false; }
+		}
+
+		static Intent viewIntent(String uri, boolean newTask) {
+			Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse(uri));
+			if (newTask) intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+			return intent;
+		}
+	}
+
+}
@@ -18,6 +18,7 @@ import android.text.TextUtils;
  *
  * All valid actions can be found in {@link Action}.
  * All valid Intent extras can be found in {@link Extra}.
+ * The values are defined in the platform-free {@link SDIContract}, which code outside of Android can use instead.
  * 
  * @author mhelder
  */
@@ -29,13 +30,14 @@ public class SDIIntent {
 	 * Constant for the 7digital website URL. Used to redirect the user to if the 7digital Android app is not installed and
 	 * no prompt to download the app from Google Play should be displayed.
 	 * @see SDIPartnerUtil#start7digitalOrWebsite(Context, Intent) 
+	 * @see SDIWebLinkBuilder
 	 */
-	public static final String SDI_WEBSITE_URL = "http://www.7digital.com";
+	public static final String SDI_WEBSITE_URL = SDIContract.WEBSITE_URL;
 	
 	/**
 	 * Constant that indicates the package name of the 7digital Android app.
 	 */
-	public static final String SDI_ANDROID_PACKAGE_NAME = "uk.co.sevendigital.android";
+	public static final String SDI_ANDROID_PACKAGE_NAME = SDIContract.PACKAGE_NAME;
 	
 	/**
 	 * Constant for the normal entry point in the 7digital Android app that 3rd party apps should send their Intent to. The
@@ -44,10 +46,12 @@ public class SDIIntent {
 	 * to get an Intent appropriate for the search action, or refer to {@link Builder#buildSearchIntent(String)} and 
 	 * {@link SDIPartnerUtil#search7digital(Context, String, String)}. 
 	 */
-	public static final String SDI_ANDROID_EXTERNAL_ENTRY_POINT = "uk.co.sevendigital.android.library.shop.SDIExternalActionActivity";
+	public static final String SDI_ANDROID_EXTERNAL_ENTRY_POINT = SDIContract.EXTERNAL_ENTRY_POINT;
 	
 	/**
 	 * A static helper class for building Intents suitable for performing common action on the 7digital Android app.
+	 * Every method returns a new Intent copied from the precomputed {@link SDIIntentTemplate} for its action. When
+	 * building Intents in bulk, consider {@link SDIReusableIntent}, which avoids creating a new Intent per call.
 	 * @see {@link Action} definition for a list of available actions.
 	 * @author mhelder
 	 */
@@ -63,10 +67,7 @@ public class SDIIntent {
 		 * @see SDIPartnerUtil#search7digital(Context, String, String)
 		 */
 		public static Intent buildSearchIntent(String query) {
-			if (TextUtils.isEmpty(query)) throw new IllegalArgumentException("Parameter query should not be null or empty.");
-			Intent intent = new Intent(Action.SEARCH);
-			intent.putExtra(SearchManager.QUERY, query);
-			return intent;
+			return putSearchExtras(SDIIntentTemplate.SEARCH.newIntent(), query);
 		}
 		
 		/**
@@ -76,7 +77,7 @@ public class SDIIntent {
 		 * @see SDIPartnerUtil#launch7digitalShop(Context)
 		 */
 		public static Intent buildViewShopIntent() {
-			return new Intent().setClassName(SDIIntent.SDI_ANDROID_PACKAGE_NAME, SDIIntent.SDI_ANDROID_EXTERNAL_ENTRY_POINT).setAction(Action.VIEW_SHOP);
+			return SDIIntentTemplate.VIEW_SHOP.newIntent();
 		}
 		
 		/**
@@ -88,7 +89,7 @@ public class SDIIntent {
 		 * @see SDIPartnerUtil#launch7digitalMusic(Context)
 		 */
 		public static Intent buildViewYourMusicIntent() {
-			return new Intent().setClassName(SDIIntent.SDI_ANDROID_PACKAGE_NAME, SDIIntent.SDI_ANDROID_EXTERNAL_ENTRY_POINT).setAction(Action.VIEW_YOUR_MUSIC);
+			return SDIIntentTemplate.VIEW_YOUR_MUSIC.newIntent();
 		}
 		
 		/**
@@ -100,7 +101,7 @@ public class SDIIntent {
 		 * @see SDIPartnerUtil#launch7digitalDownloads(Context)
 		 */
 		public static Intent buildViewDownloadsIntent() {
-			return new Intent().setClassName(SDIIntent.SDI_ANDROID_PACKAGE_NAME, SDIIntent.SDI_ANDROID_EXTERNAL_ENTRY_POINT).setAction(Action.VIEW_DOWNLOADS);
+			return SDIIntentTemplate.VIEW_DOWNLOADS.newIntent();
 		}
 		
 		/**
@@ -152,17 +153,7 @@ public class SDIIntent {
 		 * @see SDIPartnerUtil#view7digitalItem(Context, long, String, long, String, String, String, long, String, String)
 		 */
 		public static Intent buildView7digitalItem(long releaseId, String releaseTitle, long trackId, String trackTitle, String trackVersion, String coverUrl, long artistId, String artistName) {
-			if (releaseId == -1) throw new IllegalArgumentException("Parameter releaseId should not be -1.");
-			Intent intent = new Intent().setClassName(SDIIntent.SDI_ANDROID_PACKAGE_NAME, SDIIntent.SDI_ANDROID_EXTERNAL_ENTRY_POINT).setAction(SDIIntent.Action.VIEW_RELEASE);
-			intent.putExtra(SDIIntent.Extra.RELEASEID, releaseId);
-			if (releaseTitle != null) intent.putExtra(SDIIntent.Extra.RELEASETITLE, releaseTitle);
-			if (trackId != -1) intent.putExtra(SDIIntent.Extra.TRACKID, trackId);
-			if (trackTitle != null) intent.putExtra(SDIIntent.Extra.TRACKTITLE, trackTitle);
-			if (trackVersion != null) intent.putExtra(SDIIntent.Extra.TRACKVERSION, trackVersion);
-			if (coverUrl != null) intent.putExtra(SDIIntent.Extra.COVERURL, coverUrl);
-			if (artistId != -1) intent.putExtra(SDIIntent.Extra.ARTISTID, artistId);
-			if (artistName != null) intent.putExtra(SDIIntent.Extra.ARTISTNAME, artistName);
-			return intent;
+			return putItemExtras(SDIIntentTemplate.VIEW_RELEASE.newIntent(), releaseId, releaseTitle, trackId, trackTitle, trackVersion, coverUrl, artistId, artistName);
 		}
 		
 		/**
@@ -175,11 +166,7 @@ public class SDIIntent {
 		 * @see SDIPartnerUtil#view7digitalArtist(Context, long, String, String)
 		 */
 		public static Intent buildView7digitalArtist(long artistId, String artistName) {
-			if (artistId == -1) throw new IllegalArgumentException("Parameter artistId should not be -1.");
-			Intent intent = new Intent().setClassName(SDIIntent.SDI_ANDROID_PACKAGE_NAME, SDIIntent.SDI_ANDROID_EXTERNAL_ENTRY_POINT).setAction(SDIIntent.Action.VIEW_ARTIST);
-			intent.putExtra(SDIIntent.Extra.ARTISTID, artistId);
-			if (TextUtils.isEmpty(artistName)) intent.putExtra(SDIIntent.Extra.ARTISTNAME, artistName);
-			return intent;
+			return putArtistExtras(SDIIntentTemplate.VIEW_ARTIST.newIntent(), artistId, artistName);
 		}
 		
 		/**
@@ -197,10 +184,7 @@ public class SDIIntent {
 		 * @see SDIPartnerUtil#play7digitalRelease(Context, long, String)
 		 */
 		public static Intent buildPlay7digitalRelease(long releaseId) {
-			if (releaseId == -1) throw new IllegalArgumentException("Parameter releaseId should not be -1.");
-			Intent intent = new Intent().setClassName(SDIIntent.SDI_ANDROID_PACKAGE_NAME, SDIIntent.SDI_ANDROID_EXTERNAL_ENTRY_POINT).setAction(SDIIntent.Action.PLAY_RELEASE);
-			intent.putExtra(SDIIntent.Extra.RELEASEID, releaseId);
-			return intent;
+			return putPlayExtras(SDIIntentTemplate.PLAY_RELEASE.newIntent(), releaseId, -1);
 		}
 		
 		/**
@@ -222,9 +206,69 @@ public class SDIIntent {
 		public static Intent buildPlay7digitalTrack(long releaseId, long trackId) {
 			if (releaseId == -1) throw new IllegalArgumentException("Parameter releaseId should not be -1.");
 			if (trackId == -1) throw new IllegalArgumentException("Parameter trackId should not be -1.");
-			Intent intent = new Intent().setClassName(SDIIntent.SDI_ANDROID_PACKAGE_NAME, SDIIntent.SDI_ANDROID_EXTERNAL_ENTRY_POINT).setAction(SDIIntent.Action.PLAY_TRACK);
+			return putPlayExtras(SDIIntentTemplate.PLAY_TRACK.newIntent(), releaseId, trackId);
+		}
+		
+		/**
+		 * Constructs the Intent described by the given request, as the matching method of this Builder would, with the
+		 * request's affiliate identifier added as {@link Extra#PARTNER}.
+		 * @param request The request to build the Intent for, e.g. as decoded by {@link SDIIntentParser}.
+		 */
+		public static Intent build(SDIRequest request) {
+			if (request == null) throw new IllegalArgumentException("Parameter request should not be null.");
+			Intent intent;
+			if (request instanceof SDIRequest.Search) {
+				intent = buildSearchIntent(((SDIRequest.Search) request).getQuery());
+			} else if (request instanceof SDIRequest.ViewRelease) {
+				SDIRequest.ViewRelease view = (SDIRequest.ViewRelease) request;
+				intent = buildView7digitalItem(view.getReleaseId(), view.getReleaseTitle(), view.getTrackId(), view.getTrackTitle(), view.getTrackVersion(), view.getCoverUrl(), view.getArtistId(), view.getArtistName());
+			} else if (request instanceof SDIRequest.ViewArtist) {
+				intent = buildView7digitalArtist(((SDIRequest.ViewArtist) request).getArtistId(), ((SDIRequest.ViewArtist) request).getArtistName());
+			} else if (request instanceof SDIRequest.PlayRelease) {
+				intent = buildPlay7digitalRelease(((SDIRequest.PlayRelease) request).getReleaseId());
+			} else if (request instanceof SDIRequest.PlayTrack) {
+				intent = buildPlay7digitalTrack(((SDIRequest.PlayTrack) request).getReleaseId(), ((SDIRequest.PlayTrack) request).getTrackId());
+			} else {
+				// the remaining requests carry no data besides their action
+				intent = SDIIntentTemplate.forAction(request.getAction()).newIntent();
+			}
+			if (request.getAffiliateId() != null) intent.putExtra(SDIIntent.Extra.PARTNER, request.getAffiliateId());
+			return intent;
+		}
+
+		/* the extras of each action, shared with SDIPartnerSession which starts from its own prototypes */
+
+		static Intent putSearchExtras(Intent intent, String query) {
+			if (TextUtils.isEmpty(query)) throw new IllegalArgumentException("Parameter query should not be null or empty.");
+			intent.putExtra(SearchManager.QUERY, query);
+			return intent;
+		}
+
+		static Intent putItemExtras(Intent intent, long releaseId, String releaseTitle, long trackId, String trackTitle, String trackVersion, String coverUrl, long artistId, String artistName) {
+			if (releaseId == -1) throw new IllegalArgumentException("Parameter releaseId should not be -1.");
 			intent.putExtra(SDIIntent.Extra.RELEASEID, releaseId);
-			intent.putExtra(SDIIntent.Extra.TRACKID, trackId);
+			if (releaseTitle != null) intent.putExtra(SDIIntent.Extra.RELEASETITLE, releaseTitle);
+			if (trackId != -1) intent.putExtra(SDIIntent.Extra.TRACKID, trackId);
+			if (trackTitle != null) intent.putExtra(SDIIntent.Extra.TRACKTITLE, trackTitle);
+			if (trackVersion != null) intent.putExtra(SDIIntent.Extra.TRACKVERSION, trackVersion);
+			if (coverUrl != null) intent.putExtra(SDIIntent.Extra.COVERURL, coverUrl);
+			if (artistId != -1) intent.putExtra(SDIIntent.Extra.ARTISTID, artistId);
+			if (artistName != null) intent.putExtra(SDIIntent.Extra.ARTISTNAME, artistName);
+			return intent;
+		}
+
+		static Intent putArtistExtras(Intent intent, long artistId, String artistName) {
+			if (artistId == -1) throw new IllegalArgumentException("Parameter artistId should not be -1.");
+			intent.putExtra(SDIIntent.Extra.ARTISTID, artistId);
+			if (!TextUtils.isEmpty(artistName)) intent.putExtra(SDIIntent.Extra.ARTISTNAME, artistName);
+			return intent;
+		}
+
+		/* a trackId of -1 plays the whole release */
+		static Intent putPlayExtras(Intent intent, long releaseId, long trackId) {
+			if (releaseId == -1) throw new IllegalArgumentException("Parameter releaseId should not be -1.");
+			intent.putExtra(SDIIntent.Extra.RELEASEID, releaseId);
+			if (trackId != -1) intent.putExtra(SDIIntent.Extra.TRACKID, trackId);
 			return intent;
 		}
 	}
@@ -246,14 +290,14 @@ public class SDIIntent {
 		 * @see Builder#buildSearchIntent(String)
 		 * @see SDIPartnerUtil#search7digital(Context, String, String) 
 		 */
-		public static final String SEARCH = "uk.co.sevendigital.android.intent.action.SEARCH";
+		public static final String SEARCH = SDIContract.ACTION_SEARCH;
 
 		/** 
 		 * Constant to indicate a view artist action in the 7digital Android app.
 		 * @see Builder#buildView7digitalArtist(long, String)
 		 * @see SDIPartnerUtil#view7digitalArtist(Context, long, String, String) 
 		 */
-		public static final String VIEW_ARTIST = "uk.co.sevendigital.android.intent.action.VIEW_ARTIST";
+		public static final String VIEW_ARTIST = SDIContract.ACTION_VIEW_ARTIST;
 		/** 
 		 * Constant to indicate a view release action in the 7digital Android app. Note that this same action is used for
 		 * viewing a specific track of a release, but with extra parameters.
@@ -264,28 +308,28 @@ public class SDIIntent {
 		 * @see SDIPartnerUtil#view7digitalTrack(Context, long, long, String)
 		 * @see SDIPartnerUtil#view7digitalItem(Context, long, String, long, String, String, String, long, String, String) 
 		 */
-		public static final String VIEW_RELEASE = "uk.co.sevendigital.android.intent.action.VIEW_RELEASE";
+		public static final String VIEW_RELEASE = SDIContract.ACTION_VIEW_RELEASE;
 
 		/** 
 		 * Constant to indicate a view shop action in the 7digital Android app.
 		 * @see Builder#buildViewShopIntent() 
 		 * @see SDIPartnerUtil#launch7digitalShop(Context)
 		 */
-		public static final String VIEW_SHOP = "uk.co.sevendigital.android.intent.action.VIEW_SHOP";
+		public static final String VIEW_SHOP = SDIContract.ACTION_VIEW_SHOP;
 		/** 
 		 * Constant to indicate a view your music action in the 7digital Android app. Requires user to be logged in order
 		 * to succeed.
 		 * @see Builder#buildViewYourMusicIntent() 
 		 * @see SDIPartnerUtil#launch7digitalMusic(Context) 
 		 */
-		public static final String VIEW_YOUR_MUSIC = "uk.co.sevendigital.android.intent.action.VIEW_YOUR_MUSIC";
+		public static final String VIEW_YOUR_MUSIC = SDIContract.ACTION_VIEW_YOUR_MUSIC;
 		/** 
 		 * Constant to indicate a view downloads action in the 7digital Android app. Requires user to be logged in order
 		 * to succeed. 
 		 * @see Builder#buildViewDownloadsIntent() 
 		 * @see SDIPartnerUtil#launch7digitalDownloads(Context)
 		 */
-		public static final String VIEW_DOWNLOADS = "uk.co.sevendigital.android.intent.action.VIEW_DOWNLOADS";
+		public static final String VIEW_DOWNLOADS = SDIContract.ACTION_VIEW_DOWNLOADS;
 
 		/** 
 		 * Constant to indicate a play track action in the 7digital Android app. The result will vary depending on whether
@@ -293,7 +337,7 @@ public class SDIIntent {
 		 * @see Builder#buildPlay7digitalTrack(long, long) 
 		 * @see SDIPartnerUtil#play7digitalTrack(Context, long, long, String)
 		 */
-		public static final String PLAY_TRACK = "uk.co.sevendigital.android.intent.action.PLAY_TRACK";
+		public static final String PLAY_TRACK = SDIContract.ACTION_PLAY_TRACK;
 		
 		/** 
 		 * Constant to indicate a play release action in the 7digital Android app. The result will vary depending on whether
@@ -301,7 +345,7 @@ public class SDIIntent {
 		 * @see Builder#buildPlay7digitalRelease(long) 
 		 * @see SDIPartnerUtil#play7digitalRelease(Context, long, String)
 		 */
-		public static final String PLAY_RELEASE = "uk.co.sevendigital.android.intent.action.PLAY_RELEASE";
+		public static final String PLAY_RELEASE = SDIContract.ACTION_PLAY_RELEASE;
 
 	}
 	
@@ -323,7 +367,7 @@ public class SDIIntent {
 		 * @see Builder#buildView7digitalArtist(long, String)
 		 * @see SDIPartnerUtil#view7digitalArtist(Context, long, String, String) 
 		 */
-		public static final String ARTISTID = "ARTISTID";
+		public static final String ARTISTID = SDIContract.EXTRA_ARTISTID;
 		/** 
 		 * Key constant for a 7digital release ID.
 		 * @see Builder#buildView7digitalRelease(long)
@@ -331,7 +375,7 @@ public class SDIIntent {
 		 * @see SDIPartnerUtil#view7digitalRelease(Context, long, String)
 		 * @see SDIPartnerUtil#view7digitalItem(Context, long, String, long, String, String, String, long, String, String) 
 		 */
-		public static final String RELEASEID = "RELEASEID";
+		public static final String RELEASEID = SDIContract.EXTRA_RELEASEID;
 		/** 
 		 * Key constant for a 7digital track ID.
 		 * @see Builder#buildView7digitalTrack(long, long)
@@ -339,7 +383,7 @@ public class SDIIntent {
 		 * @see SDIPartnerUtil#view7digitalTrack(Context, long, long, String)
 		 * @see SDIPartnerUtil#view7digitalItem(Context, long, String, long, String, String, String, long, String, String) 
 		 */
-		public static final String TRACKID = "TRACKID";
+		public static final String TRACKID = SDIContract.EXTRA_TRACKID;
 		
 		// extras: titles/names
 		/** 
@@ -347,7 +391,7 @@ public class SDIIntent {
 		 * @see Builder#buildView7digitalArtist(long, String)
 		 * @see SDIPartnerUtil#view7digitalArtist(Context, long, String, String) 
 		 */
-		public static final String ARTISTNAME = "ARTISTNAME";
+		public static final String ARTISTNAME = SDIContract.EXTRA_ARTISTNAME;
 		/** 
 		 * Key constant for a 7digital release title. Note: optional.
 		 * @see Builder#buildView7digitalRelease(long)
@@ -355,7 +399,7 @@ public class SDIIntent {
 		 * @see SDIPartnerUtil#view7digitalRelease(Context, long, String)
 		 * @see SDIPartnerUtil#view7digitalItem(Context, long, String, long, String, String, String, long, String, String) 
 		 */
-		public static final String RELEASETITLE = "RELEASETITLE";
+		public static final String RELEASETITLE = SDIContract.EXTRA_RELEASETITLE;
 		/** 
 		 * Key constant for a 7digital track title. Note: optional. 
 		 * @see Builder#buildView7digitalTrack(long, long)
@@ -363,7 +407,7 @@ public class SDIIntent {
 		 * @see SDIPartnerUtil#view7digitalTrack(Context, long, long, String)
 		 * @see SDIPartnerUtil#view7digitalItem(Context, long, String, long, String, String, String, long, String, String) 
 		 */
-		public static final String TRACKTITLE = "TRACKTITLE";
+		public static final String TRACKTITLE = SDIContract.EXTRA_TRACKTITLE;
 
 		// extras: misc
 		/**
@@ -371,21 +415,21 @@ public class SDIIntent {
 		 * @see Builder#buildView7digitalItem(long, String, long, String, String, String, long, String)
 		 * @see SDIPartnerUtil#view7digitalItem(Context, long, String, long, String, String, String, long, String, String) 
 		 */
-		public static final String TRACKVERSION = "TRACKVERSION";
+		public static final String TRACKVERSION = SDIContract.EXTRA_TRACKVERSION;
 		/**
 		 * Key constant for the location of a 7digital cover. Should be either an absolute {@link File} path or {@link Uri}
 		 * with "http" scheme. Note: optional.
 		 * @see Builder#buildView7digitalItem(long, String, long, String, String, String, long, String)
 		 * @see SDIPartnerUtil#view7digitalItem(Context, long, String, long, String, String, String, long, String, String) 
 		 */
-		public static final String COVERURL = "COVERURL";
+		public static final String COVERURL = SDIContract.EXTRA_COVERURL;
 		
 		// extras: partner
 		/**
 		 * Key constant for a 7digital partner identifier to be used to perform the action. Note: not required for the
 		 * actions to work, but should be provided to guarantee accurate tracking of requests by 7digital.
 		 */
-		public static final String PARTNER = "uk.co.sevendigital.android.intent.extra.PARTNER";
+		public static final String PARTNER = SDIContract.EXTRA_PARTNER;
 	}
 	
 }
@@ -0,0 +1,152 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import android.app.SearchManager;
+import android.content.Intent;
+import android.os.Bundle;
+
+/**
+ * Decodes Intents built by {@link SDIIntent.Builder} (or set up manually following the same contract) back into typed
+ * {@link SDIRequest} objects, e.g. for routing or for the receiving side of a handoff.
+ *
+ * The action is looked up in a precomputed table using a perfect hash over {@link String#hashCode()}, which is cached
+ * by the String, so decoding does not need a chain of string compares. The extras are checked against the same
+ * requirements as the Builder enforces: a decoded request is always valid. Identifiers may be passed as any number
+ * type or as a numeric string. Compact Intents carrying an {@link SDIPayload} are decoded from their payload.
+ */
+public class SDIIntentParser {
+
+	private SDIIntentParser() { /* prevent instantiating */ }
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * constants
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private static final int SEARCH = 0, VIEW_SHOP = 1, VIEW_YOUR_MUSIC = 2, VIEW_DOWNLOADS = 3, VIEW_RELEASE = 4, VIEW_ARTIST = 5,
+		PLAY_RELEASE = 6, PLAY_TRACK = 7;
+
+	/* the known actions and their types; Intent.ACTION_SEARCH is accepted for search, like SDIPartnerUtil does */
+	private static final String[] ACTIONS = {
+		SDIIntent.Action.SEARCH, Intent.ACTION_SEARCH, SDIIntent.Action.VIEW_SHOP, SDIIntent.Action.VIEW_YOUR_MUSIC,
+		SDIIntent.Action.VIEW_DOWNLOADS, SDIIntent.Action.VIEW_RELEASE, SDIIntent.Action.VIEW_ARTIST,
+		SDIIntent.Action.PLAY_RELEASE, SDIIntent.Action.PLAY_TRACK
+	};
+	private static final int[] TYPES = { SEARCH, SEARCH, VIEW_SHOP, VIEW_YOUR_MUSIC, VIEW_DOWNLOADS, VIEW_RELEASE, VIEW_ARTIST, PLAY_RELEASE, PLAY_TRACK };
+
+	/* perfect hash table: slot = (hashCode >>> SHIFT) & (length - 1), without collisions for the known actions */
+	private static final String[] TABLE_ACTIONS;
+	private static final int[] TABLE_TYPES;
+	private static final int SHIFT;
+
+	static {
+		String[] actions = null;
+		int shift = 0;
+		search:
+		for (int size = Integer.highestOneBit(ACTIONS.length) << 1; ; size <<= 1) {
+			for (shift = 0; shift < 32; shift++) {
+				actions = new String[size];
+				boolean collision = false;
+				for (int i = 0; i < ACTIONS.length && !collision; i++) {
+					int slot = (ACTIONS[i].hashCode() >>> shift) & (size - 1);
+					collision = actions[slot] != null;
+					actions[slot] = ACTIONS[i];
+				}
+				if (!collision) break search;
+			}
+		}
+		int[] types = new int[actions.length];
+		for (int i = 0; i < ACTIONS.length; i++) types[(ACTIONS[i].hashCode() >>> shift) & (actions.length - 1)] = TYPES[i];
+		TABLE_ACTIONS = actions;
+		TABLE_TYPES = types;
+		SHIFT = shift;
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * util methods
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Returns whether the given action can be decoded by this parser.
+	 * @param action Any Intent action, or <b>null</b>.
+	 */
+	public static boolean isSupported(String action) {
+		return typeOf(action) != -1;
+	}
+
+	/**
+	 * Decodes the given Intent into a typed request.
+	 * @param intent The Intent to decode.
+	 * @return The decoded request, or <b>null</b> if the Intent's action is not a 7digital (or Android search) action.
+	 * @throws IllegalArgumentException If the Intent is <b>null</b> or lacks the extras required for its action.
+	 */
+	public static SDIRequest parse(Intent intent) {
+		if (intent == null) throw new IllegalArgumentException("Parameter intent should not be null.");
+		return parse(intent.getAction(), intent.getExtras());
+	}
+
+	/**
+	 * Decodes the given action and extras into a typed request.
+	 * @param action The action of the request.
+	 * @param extras The extras of the request, or <b>null</b> if there are none.
+	 * @return The decoded request, or <b>null</b> if the action is not a 7digital (or Android search) action.
+	 * @throws IllegalArgumentException If the extras lack what is required for the action.
+	 */
+	public static SDIRequest parse(String action, Bundle extras) {
+		int type = typeOf(action);
+		if (type == -1) return null;
+		if (extras == null) extras = Bundle.EMPTY;
+		Object payload = extras.get(SDIPayload.EXTRA_PAYLOAD);
+		if (payload instanceof byte[]) return SDIPayload.decodeSingle((byte[]) payload);
+		String affiliateId = getString(extras, SDIIntent.Extra.PARTNER);
+		switch (type) {
+			case SEARCH: return new SDIRequest.Search(getString(extras, SearchManager.QUERY), affiliateId);
+			case VIEW_SHOP: return new SDIRequest.ViewShop(affiliateId);
+			case VIEW_YOUR_MUSIC: return new SDIRequest.ViewYourMusic(affiliateId);
+			case VIEW_DOWNLOADS: return new SDIRequest.ViewDownloads(affiliateId);
+			case VIEW_RELEASE: return new SDIRequest.ViewRelease(getRequiredId(extras, SDIIntent.Extra.RELEASEID, action), getString(extras, SDIIntent.Extra.RELEASETITLE),
+				getId(extras, SDIIntent.Extra.TRACKID), getString(extras, SDIIntent.Extra.TRACKTITLE), getString(extras, SDIIntent.Extra.TRACKVERSION),
+				getString(extras, SDIIntent.Extra.COVERURL), getId(extras, SDIIntent.Extra.ARTISTID), getString(extras, SDIIntent.Extra.ARTISTNAME), affiliateId);
+			case VIEW_ARTIST: return new SDIRequest.ViewArtist(getRequiredId(extras, SDIIntent.Extra.ARTISTID, action), emptyToNull(getString(extras, SDIIntent.Extra.ARTISTNAME)), affiliateId);
+			case PLAY_RELEASE: return new SDIRequest.PlayRelease(getRequiredId(extras, SDIIntent.Extra.RELEASEID, action), affiliateId);
+			case PLAY_TRACK: return new SDIRequest.PlayTrack(getRequiredId(extras, SDIIntent.Extra.RELEASEID, action), getRequiredId(extras, SDIIntent.Extra.TRACKID, action), affiliateId);
+			default: throw new IllegalStateException("Unhandled action type " + type);
+		}
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * internal
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private static int typeOf(String action) {
+		if (action == null) return -1;
+		int slot = (action.hashCode() >>> SHIFT) & (TABLE_ACTIONS.length - 1);
+		String candidate = TABLE_ACTIONS[slot];
+		return candidate != null && (candidate == action || candidate.equals(action)) ? TABLE_TYPES[slot] : -1;
+	}
+
+	private static long getRequiredId(Bundle extras, String key, String action) {
+		long id = getId(extras, key);
+		if (id == -1) throw new IllegalArgumentException("Extra " + key + " is required for action " + action + ".");
+		return id;
+	}
+
+	/* reads an identifier passed as any number type or numeric string, -1 if absent or malformed */
+	private static long getId(Bundle extras, String key) {
+		Object value = extras.get(key);
+		if (value instanceof Number) return ((Number) value).longValue();
+		if (value instanceof CharSequence) {
+			try { return Long.parseLong(value.toString().trim()); }
+			catch (NumberFormatException e) { return -1; }
+		}
+		return -1;
+	}
+
+	private static String getString(Bundle extras, String key) {
+		Object value = extras.get(key);
+		return value != null ? value.toString() : null;
+	}
+
+	private static String emptyToNull(String value) {
+		return value == null || value.length() == 0 ? null : value;
+	}
+
+}
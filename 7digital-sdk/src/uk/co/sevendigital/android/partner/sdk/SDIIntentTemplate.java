@@ -0,0 +1,132 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import android.content.ComponentName;
+import android.content.Intent;
+
+/**
+ * An immutable, precomputed Intent template for one of the actions in {@link SDIIntent.Action}. A template has its
+ * component, action and flags resolved once, so that creating an Intent from it comes down to a single copy rather
+ * than setting up the class name and action every time. The templates are used by the methods of
+ * {@link SDIIntent.Builder} and by {@link SDIReusableIntent}.
+ *
+ * A template for every action is available as a constant, or can be looked up using {@link #forAction(String)}.
+ */
+public final class SDIIntentTemplate {
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * constants
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private static final ComponentName EXTERNAL_ENTRY_POINT = new ComponentName(SDIIntent.SDI_ANDROID_PACKAGE_NAME, SDIIntent.SDI_ANDROID_EXTERNAL_ENTRY_POINT);
+
+	/** Template for {@link SDIIntent.Action#SEARCH}. Not bound to a component, as search is handled by the app's launch activity. */
+	public static final SDIIntentTemplate SEARCH = new SDIIntentTemplate(0, SDIIntent.Action.SEARCH, null, 0);
+	/** Template for {@link SDIIntent.Action#VIEW_SHOP}. */
+	public static final SDIIntentTemplate VIEW_SHOP = external(1, SDIIntent.Action.VIEW_SHOP);
+	/** Template for {@link SDIIntent.Action#VIEW_YOUR_MUSIC}. */
+	public static final SDIIntentTemplate VIEW_YOUR_MUSIC = external(2, SDIIntent.Action.VIEW_YOUR_MUSIC);
+	/** Template for {@link SDIIntent.Action#VIEW_DOWNLOADS}. */
+	public static final SDIIntentTemplate VIEW_DOWNLOADS = external(3, SDIIntent.Action.VIEW_DOWNLOADS);
+	/** Template for {@link SDIIntent.Action#VIEW_RELEASE}. */
+	public static final SDIIntentTemplate VIEW_RELEASE = external(4, SDIIntent.Action.VIEW_RELEASE);
+	/** Template for {@link SDIIntent.Action#VIEW_ARTIST}. */
+	public static final SDIIntentTemplate VIEW_ARTIST = external(5, SDIIntent.Action.VIEW_ARTIST);
+	/** Template for {@link SDIIntent.Action#PLAY_RELEASE}. */
+	public static final SDIIntentTemplate PLAY_RELEASE = external(6, SDIIntent.Action.PLAY_RELEASE);
+	/** Template for {@link SDIIntent.Action#PLAY_TRACK}. */
+	public static final SDIIntentTemplate PLAY_TRACK = external(7, SDIIntent.Action.PLAY_TRACK);
+
+	private static final SDIIntentTemplate[] TEMPLATES = { SEARCH, VIEW_SHOP, VIEW_YOUR_MUSIC, VIEW_DOWNLOADS, VIEW_RELEASE, VIEW_ARTIST, PLAY_RELEASE, PLAY_TRACK };
+
+	/** The number of actions that have a template, which is also the upper bound (exclusive) of {@link #indexOf(String)}. */
+	static final int ACTION_COUNT = TEMPLATES.length;
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * fields
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/* position in TEMPLATES, shared by templates derived through withFlags(int) */
+	private final int mIndex;
+	private final String mAction;
+	private final ComponentName mComponent;
+	private final int mFlags;
+	/* never handed out, only copied */
+	private final Intent mPrototype;
+
+	private SDIIntentTemplate(int index, String action, ComponentName component, int flags) {
+		mIndex = index;
+		mAction = action;
+		mComponent = component;
+		mFlags = flags;
+		mPrototype = new Intent(action).setComponent(component).setFlags(flags);
+	}
+
+	private static SDIIntentTemplate external(int index, String action) {
+		return new SDIIntentTemplate(index, action, EXTERNAL_ENTRY_POINT, 0);
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * util methods
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Returns the template for the given action.
+	 * @param action One of the actions defined in {@link SDIIntent.Action}.
+	 * @return The template for the action, or <b>null</b> if the action is unknown.
+	 */
+	public static SDIIntentTemplate forAction(String action) {
+		int index = indexOf(action);
+		return index != -1 ? TEMPLATES[index] : null;
+	}
+
+	/* maps an action to a dense index in [0, ACTION_COUNT), or -1; compares by identity first, as the constants are normally passed in */
+	static int indexOf(String action) {
+		if (action == null) return -1;
+		for (int i = 0; i < TEMPLATES.length; i++) if (TEMPLATES[i].mAction == action) return i;
+		for (int i = 0; i < TEMPLATES.length; i++) if (TEMPLATES[i].mAction.equals(action)) return i;
+		return -1;
+	}
+
+	/* the inverse of indexOf(String) */
+	static String actionAt(int index) {
+		return index >= 0 && index < TEMPLATES.length ? TEMPLATES[index].mAction : null;
+	}
+
+	/**
+	 * Returns a template that is identical to this one, but adds the given flags to every Intent created from it. Keep
+	 * a reference to the returned template, rather than calling this method for every Intent.
+	 * @param flags The flags to add, e.g. {@link Intent#FLAG_ACTIVITY_NEW_TASK}.
+	 */
+	public SDIIntentTemplate withFlags(int flags) {
+		if ((mFlags | flags) == mFlags) return this;
+		return new SDIIntentTemplate(mIndex, mAction, mComponent, mFlags | flags);
+	}
+
+	/**
+	 * Creates a new Intent from this template, with the component, action and flags already set up.
+	 */
+	public Intent newIntent() {
+		return new Intent(mPrototype);
+	}
+
+	/* the dense index of this template's action, as returned by indexOf(String) */
+	int getIndex() {
+		return mIndex;
+	}
+
+	/** Returns the action of this template. */
+	public String getAction() {
+		return mAction;
+	}
+
+	/** Returns the component of this template, or <b>null</b> if Intents created from it are not bound to a component. */
+	public ComponentName getComponent() {
+		return mComponent;
+	}
+
+	/** Returns the flags that are set on every Intent created from this template. */
+	public int getFlags() {
+		return mFlags;
+	}
+
+}
@@ -0,0 +1,203 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import android.app.Activity;
+import android.content.ActivityNotFoundException;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.text.TextUtils;
+import android.widget.Toast;
+
+/**
+ * A launch of the 7digital Android app, split into a preparation step that validates the Intent and resolves where it
+ * should go (app, market or website), and a perform step that shows the relevant Toast and starts the Activity. The
+ * preparation only talks to the {@link android.content.pm.PackageManager} and may run on any thread; performing must
+ * happen on the main thread.
+ */
+final class SDILaunch {
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * fields
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	final Intent intent;
+	final int fallbackTarget;
+	final boolean newTask;
+	/* System.nanoTime() of the SDK call, for SDIMetrics */
+	final long startNanos;
+	/** One of the SDIAppResolver targets. */
+	int target;
+	/* the market or website intent to start when the app is not available */
+	Intent fallbackIntent;
+	/* whether SDILaunchGovernor dropped this launch as a repeat */
+	boolean dropped;
+	/* takes over from target and fallbackIntent if set */
+	SDIFallbackChain chain;
+
+	private SDILaunch(Intent intent, int fallbackTarget, boolean newTask, long startNanos) {
+		this.intent = intent;
+		this.fallbackTarget = fallbackTarget;
+		this.newTask = newTask;
+		this.startNanos = startNanos;
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * methods
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Validates the given Intent and resolves where it should be sent to. Safe to call off the main thread.
+	 * @param fallbackTarget Either {@link SDIAppResolver#TARGET_MARKET} or {@link SDIAppResolver#TARGET_WEBSITE}.
+	 */
+	static SDILaunch prepare(Context context, Intent intent, int fallbackTarget) {
+		return prepare(context, intent, fallbackTarget, System.nanoTime());
+	}
+
+	/**
+	 * Same as {@link #prepare(Context, Intent, int)}, for a launch that was requested at the given time.
+	 * @param startNanos The {@link System#nanoTime()} at which the launch was requested.
+	 */
+	static SDILaunch prepare(Context context, Intent intent, int fallbackTarget, long startNanos) {
+		if (context == null) throw new IllegalArgumentException("Parameter context should not be null.");
+		long prepareStart = System.nanoTime();
+		validate(intent);
+		expandPayload(intent);
+
+		// if we weren't started on an activity, supply new task flag
+		boolean newTask = !(context instanceof Activity);
+		if (newTask) intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+		return prepareValidated(context, intent, fallbackTarget, null, newTask, startNanos, prepareStart);
+	}
+
+	/**
+	 * Same as {@link #prepare(Context, Intent, int)}, for a launch that falls back along the given chain.
+	 */
+	static SDILaunch prepare(Context context, Intent intent, SDIFallbackChain chain) {
+		if (context == null) throw new IllegalArgumentException("Parameter context should not be null.");
+		if (chain == null) throw new IllegalArgumentException("Parameter chain should not be null.");
+		long prepareStart = System.nanoTime();
+		validate(intent);
+		expandPayload(intent);
+		boolean newTask = !(context instanceof Activity);
+		if (newTask) intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+		return prepareValidated(context, intent, SDIAppResolver.TARGET_NONE, chain, newTask, prepareStart, prepareStart);
+	}
+
+	/**
+	 * Same as {@link #prepare(Context, Intent, int)}, for an Intent built by the SDK itself, which is known to be valid
+	 * and to carry {@link Intent#FLAG_ACTIVITY_NEW_TASK} if needed.
+	 * @param chain The chain to fall back along, or <b>null</b> to fall back to the fallbackTarget.
+	 * @param newTask Whether the Intent starts a new task, i.e. whether the fallback Intents should too.
+	 */
+	static SDILaunch prepareBuilt(Context context, Intent intent, int fallbackTarget, SDIFallbackChain chain, boolean newTask) {
+		long startNanos = System.nanoTime();
+		return prepareValidated(context, intent, fallbackTarget, chain, newTask, startNanos, startNanos);
+	}
+
+	private static SDILaunch prepareValidated(Context context, Intent intent, int fallbackTarget, SDIFallbackChain chain, boolean newTask, long startNanos, long prepareStart) {
+		SDILaunch launch = new SDILaunch(intent, fallbackTarget, newTask, startNanos);
+		if (!SDILaunchGovernor.tryLaunch(intent)) {
+			launch.dropped = true;
+			return launch;
+		}
+		launch.chain = chain;
+		if (chain != null) launch.target = chain.resolveTarget(context);
+		else launch.setTarget(SDIAppResolver.resolveTarget(context, intent, fallbackTarget));
+		SDIWarmUp.recordPrepare(System.nanoTime() - prepareStart);
+		return launch;
+	}
+
+	/**
+	 * Checks that the given Intent specifies a 7digital (or Android search) action.
+	 * @throws IllegalArgumentException If it doesn't.
+	 */
+	static void validate(Intent intent) {
+		if (intent == null) throw new IllegalArgumentException("Parameter intent should not be null.");
+		if (TextUtils.isEmpty(intent.getAction())) throw new IllegalArgumentException("Parameter intent should specify an action to perform.");
+		if (!SDIContract.isValidAction(intent.getAction())) throw new IllegalArgumentException("Parameter intent should specify an valid 7digital (or Android search) action to perform.");
+	}
+
+	/* the 7digital app only understands the regular extras, so unpack a compact SDIPayload Intent in place */
+	static void expandPayload(Intent intent) {
+		byte[] payload = intent.getByteArrayExtra(SDIPayload.EXTRA_PAYLOAD);
+		if (payload == null) return;
+		intent.removeExtra(SDIPayload.EXTRA_PAYLOAD);
+		intent.putExtras(SDIIntent.Builder.build(SDIPayload.decodeSingle(payload)));
+	}
+
+	/**
+	 * Starts the prepared launch. Must be called on the main thread.
+	 * @return The target that was started, one of the SDIAppResolver targets.
+	 */
+	int perform(Context context) {
+		if (dropped) return SDIAppResolver.TARGET_NONE;
+		int result = performTarget(context);
+		SDIMetrics.recordHandoff(SDIIntentTemplate.indexOf(intent.getAction()), result, startNanos);
+		SDIClickLog clickLog = SDIClickLog.getInstance();
+		if (clickLog != null) clickLog.record(intent.getAction(), intent.getLongExtra(SDIIntent.Extra.RELEASEID, -1), intent.getLongExtra(SDIIntent.Extra.TRACKID, -1), 
+				intent.getLongExtra(SDIIntent.Extra.ARTISTID, -1), intent.getStringExtra(SDIIntent.Extra.PARTNER), result);
+		SDIRecentItems recentItems = SDIRecentItems.getInstance();
+		if (recentItems != null && result == SDIAppResolver.TARGET_APP) recentItems.record(intent);
+		return result;
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * internal
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private int performTarget(Context context) {
+		if (chain != null) return chain.perform(context, intent, newTask);
+		if (target == SDIAppResolver.TARGET_APP) {
+			// the cache can only be stale in the short window between a package change and its broadcast
+			try { context.startActivity(intent); return target; }
+			catch (ActivityNotFoundException e) {
+				SDIAppResolver.invalidate();
+				setTarget(SDIAppResolver.resolveFallback(SDIAppResolver.getFlags(context), fallbackTarget));
+			}
+		}
+		// a missing app makes every repeated tap end up here, so only let the first one through, even if it only shows a Toast
+		if (!SDILaunchGovernor.tryFallback()) return SDIAppResolver.TARGET_NONE;
+		switch (target) {
+			case SDIAppResolver.TARGET_MARKET:
+				Toast.makeText(context, "The 7digital application is not installed. Please install it from Google Play.", Toast.LENGTH_LONG).show();
+				return performFallback(context);
+			case SDIAppResolver.TARGET_WEBSITE:
+				Toast.makeText(context, "The 7digital application is not installed. Redirecting to website.", Toast.LENGTH_LONG).show();
+				return performFallback(context);
+			default:
+				return showFallbackUnavailable(context);
+		}
+	}
+
+	private void setTarget(int target) {
+		this.target = target;
+		switch (target) {
+			case SDIAppResolver.TARGET_MARKET: fallbackIntent = buildViewIntent(SDIAppResolver.MARKET_QUERY); break;
+			// deep link to the matching page rather than the homepage
+			case SDIAppResolver.TARGET_WEBSITE: fallbackIntent = buildViewIntent(new SDIWebLinkBuilder().buildString(intent)); break;
+			default: fallbackIntent = null; break;
+		}
+	}
+
+	private Intent buildViewIntent(String uri) {
+		Intent viewIntent = new Intent(Intent.ACTION_VIEW, Uri.parse(uri));
+		if (newTask) viewIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+		return viewIntent;
+	}
+
+	private int performFallback(Context context) {
+		try { context.startActivity(fallbackIntent); return target; }
+		catch (ActivityNotFoundException e) {
+			SDIAppResolver.invalidate();
+			target = SDIAppResolver.TARGET_NONE;
+			return showFallbackUnavailable(context);
+		}
+	}
+
+	private int showFallbackUnavailable(Context context) {
+		if (fallbackTarget == SDIAppResolver.TARGET_WEBSITE) Toast.makeText(context, "No browser found. Please install one in order to visit the 7digital website.", Toast.LENGTH_LONG).show();
+		else Toast.makeText(context, "Google Play not found. Please install the 7digital application manually.", Toast.LENGTH_LONG).show();
+		return SDIAppResolver.TARGET_NONE;
+	}
+
+}
@@ -0,0 +1,176 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import android.app.SearchManager;
+import android.content.Intent;
+
+/**
+ * Guards the launches made through {@link SDIPartnerUtil} and {@link SDIPartnerDispatcher} against repeated taps.
+ * Double taps, widget clicks and notification actions often fire the same request two or three times within a few
+ * hundred milliseconds; a launch with the same action, IDs and query as one made within the dedupe window is dropped.
+ * Launches that end up in a fallback (the market or the website, see {@link SDIAppResolver}), or in the Toast saying
+ * that neither is available, are additionally rate limited, so that a missing app doesn't result in a stack of Toasts
+ * and market pages. Both report
+ * {@link SDIAppResolver#TARGET_NONE}; dropped repeats are not recorded by {@link SDIMetrics} or {@link SDIClickLog}.
+ *
+ * Recent launches are kept in a small lock-free table of fingerprints, so the governor is safe to use from any thread
+ * and does not allocate.
+ */
+public class SDILaunchGovernor {
+
+	private SDILaunchGovernor() { /* prevent instantiating */ }
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * constants
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/** The default dedupe window, in milliseconds. */
+	public static final long DEFAULT_DEDUPE_WINDOW_MILLIS = 500;
+	/** The default minimum interval between two fallback launches, in milliseconds. */
+	public static final long DEFAULT_FALLBACK_INTERVAL_MILLIS = 2000;
+
+	/*
+	 * Each slot holds the upper bits of a fingerprint and the lower bits of the launch time in milliseconds, so that a
+	 * slot can be claimed with a single compare-and-set. 24 bits of time cover over four hours, which is plenty to
+	 * tell recent launches from old ones.
+	 */
+	private static final int TIME_BITS = 24;
+	private static final long TIME_MASK = (1L << TIME_BITS) - 1;
+	private static final int SLOTS = 64;
+	private static final int PROBES = 4;
+
+	private static final AtomicLongArray TABLE = new AtomicLongArray(SLOTS);
+	/* nanoTime of the last fallback launch, 0 if none */
+	private static final AtomicLong LAST_FALLBACK_NANOS = new AtomicLong();
+
+	private static volatile long sDedupeWindowMillis = DEFAULT_DEDUPE_WINDOW_MILLIS;
+	private static volatile long sFallbackIntervalNanos = DEFAULT_FALLBACK_INTERVAL_MILLIS * 1000000L;
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * util methods
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Sets the window within which identical launches are dropped.
+	 * @param millis The window in milliseconds, or 0 to disable deduplication.
+	 */
+	public static void setDedupeWindow(long millis) {
+		if (millis < 0 || millis > TIME_MASK / 2) throw new IllegalArgumentException("Parameter millis should be between 0 and " + TIME_MASK / 2 + ".");
+		sDedupeWindowMillis = millis;
+	}
+
+	/**
+	 * Returns the window within which identical launches are dropped, in milliseconds, or 0 if deduplication is disabled.
+	 */
+	public static long getDedupeWindow() {
+		return sDedupeWindowMillis;
+	}
+
+	/**
+	 * Sets the minimum interval between two launches of a fallback; fallbacks within the interval are dropped.
+	 * @param millis The interval in milliseconds, or 0 to disable rate limiting.
+	 */
+	public static void setFallbackInterval(long millis) {
+		if (millis < 0) throw new IllegalArgumentException("Parameter millis should not be negative.");
+		sFallbackIntervalNanos = millis * 1000000L;
+	}
+
+	/**
+	 * Forgets all recent launches, e.g. after the user explicitly asked to retry.
+	 */
+	public static void reset() {
+		for (int i = 0; i < SLOTS; i++) TABLE.set(i, 0);
+		LAST_FALLBACK_NANOS.set(0);
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * internal
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Registers a launch of the given Intent, unless an identical one was registered within the dedupe window.
+	 * @return Whether the launch should go ahead.
+	 */
+	static boolean tryLaunch(Intent intent) {
+		return tryLaunch(intent, System.nanoTime() / 1000000L);
+	}
+
+	/**
+	 * Same as {@link #tryLaunch(Intent)}, for a launch at the given time.
+	 * @param nowMillis A monotonic time in milliseconds, such as {@link System#nanoTime()} in milliseconds.
+	 */
+	static boolean tryLaunch(Intent intent, long nowMillis) {
+		long window = sDedupeWindowMillis;
+		if (window == 0) return true;
+		long fingerprint = fingerprint(intent) & ~TIME_MASK;
+		long now = nowMillis & TIME_MASK;
+		int start = (int) (fingerprint >>> TIME_BITS) & (SLOTS - 1);
+		while (true) {
+			// find the slot to claim: the one holding this fingerprint, or else an expired one, or else the oldest
+			int claim = -1;
+			long claimed = 0, claimedAge = -1;
+			for (int i = 0; i < PROBES; i++) {
+				int index = (start + i) & (SLOTS - 1);
+				long entry = TABLE.get(index);
+				long age = entry == 0 ? Long.MAX_VALUE : (now - entry) & TIME_MASK;
+				if (entry != 0 && (entry & ~TIME_MASK) == fingerprint) {
+					if (age < window) return false;
+					claim = index;
+					claimed = entry;
+					break;
+				}
+				if (age >= window ? claimedAge < window : age > claimedAge) {
+					claim = index;
+					claimed = entry;
+					claimedAge = age;
+				}
+			}
+			// a racing launch of the same request claims the same slot, so one of both fails here and is then dropped
+			if (TABLE.compareAndSet(claim, claimed, fingerprint | now)) return true;
+		}
+	}
+
+	/**
+	 * Registers a launch of a fallback, unless one was registered within the fallback interval.
+	 * @return Whether the fallback should be launched.
+	 */
+	static boolean tryFallback() {
+		return tryFallback(System.nanoTime());
+	}
+
+	/**
+	 * Same as {@link #tryFallback()}, for a fallback at the given time.
+	 * @param now The {@link System#nanoTime()} of the fallback.
+	 */
+	static boolean tryFallback(long now) {
+		long interval = sFallbackIntervalNanos;
+		if (interval == 0) return true;
+		while (true) {
+			long last = LAST_FALLBACK_NANOS.get();
+			if (last != 0 && now - last < interval) return false;
+			if (LAST_FALLBACK_NANOS.compareAndSet(last, now)) return true;
+		}
+	}
+
+	/* a 64 bit hash of the action and the extras that identify what gets launched, also used by SDIPendingIntentPool */
+	static long fingerprint(Intent intent) {
+		long hash = mix(intent.getAction().hashCode());
+		hash = mix(hash ^ intent.getLongExtra(SDIIntent.Extra.RELEASEID, -1));
+		hash = mix(hash ^ intent.getLongExtra(SDIIntent.Extra.TRACKID, -1));
+		hash = mix(hash ^ intent.getLongExtra(SDIIntent.Extra.ARTISTID, -1));
+		String query = intent.getStringExtra(SearchManager.QUERY);
+		return mix(hash ^ (query != null ? query.hashCode() : 0));
+	}
+
+	/* the finalizer of MurmurHash3, spreads every input bit over the whole hash */
+	private static long mix(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		return hash ^ (hash >>> 33);
+	}
+
+}
@@ -0,0 +1,256 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.os.Build;
+import android.os.Bundle;
+
+/**
+ * A registry of handoff metrics for the 7digital Android app. For every action in {@link SDIIntent.Action} it counts
+ * how often it was dispatched and where it ended up (the app, the market, the website or nowhere), and it keeps a
+ * latency histogram measuring the time from the SDK call until the calling Activity gets paused, which is a good
+ * indication of how long it took for the 7digital app (or fallback) to show up.
+ *
+ * Recording is lock-free and does not allocate. Counts are always kept; latencies require the pause of the calling
+ * Activity to be known, either through {@link #install(Context)} (API level 14 and up) or by calling
+ * {@link #onActivityPaused()} from the Activity's {@link Activity#onPause()}. A {@link Sink} can be registered to
+ * receive periodic snapshots of the metrics gathered since the previous snapshot.
+ */
+public class SDIMetrics {
+
+	private SDIMetrics() { /* prevent instantiating */ }
+
+	/**
+	 * Interface for receiving periodic metric snapshots, e.g. to forward them to an analytics backend. Called on a
+	 * background thread.
+	 */
+	public interface Sink {
+		/**
+		 * Called with the metrics gathered since the previous call.
+		 * @param snapshot The metrics for the last period.
+		 */
+		void onSnapshot(Snapshot snapshot);
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * constants
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/* the actions with a template get their own index, everything else (e.g. Intent.ACTION_SEARCH) is counted as 'other' */
+	private static final int ACTION_SLOTS = SDIIntentTemplate.ACTION_COUNT + 1;
+	private static final int TARGET_SLOTS = 4;
+	/* latency buckets by power of two microseconds; the last bucket holds anything over ~17 minutes */
+	private static final int LATENCY_BUCKETS = 31;
+
+	private static final AtomicLongArray COUNTS = new AtomicLongArray(ACTION_SLOTS * TARGET_SLOTS);
+	private static final AtomicLongArray LATENCIES = new AtomicLongArray(LATENCY_BUCKETS);
+	private static final AtomicLong LATENCY_SUM_NANOS = new AtomicLong();
+	/* start of the last handoff that has not seen its Activity pause yet, 0 if none */
+	private static final AtomicLong PENDING_START_NANOS = new AtomicLong();
+
+	private static ScheduledExecutorService sScheduler;
+	private static ScheduledFuture<?> sSinkTask;
+	private static Object sLifecycleCallbacks;
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * util methods
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Hooks into the Activity lifecycle of the application so that handoff latencies are measured automatically. Only
+	 * effective on API level 14 and up; on older versions call {@link #onActivityPaused()} manually.
+	 * @param context Any Context of the application.
+	 */
+	public static synchronized void install(Context context) {
+		if (context == null) throw new IllegalArgumentException("Parameter context should not be null.");
+		if (sLifecycleCallbacks != null || Build.VERSION.SDK_INT < 14) return;
+		if (!(context.getApplicationContext() instanceof Application)) return;
+		sLifecycleCallbacks = LifecycleCallbacks.register((Application) context.getApplicationContext());
+	}
+
+	/**
+	 * Notifies the registry that an Activity got paused, completing the latency measurement of the last handoff. Only
+	 * required when {@link #install(Context)} is not effective, i.e. below API level 14.
+	 */
+	public static void onActivityPaused() {
+		long start = PENDING_START_NANOS.getAndSet(0);
+		if (start != 0) recordLatency(System.nanoTime() - start);
+	}
+
+	/**
+	 * Registers a sink that receives a snapshot of the metrics gathered in every period, replacing any previously
+	 * registered sink.
+	 * @param sink The sink to register, or <b>null</b> to unregister.
+	 * @param periodMillis The period between snapshots, in milliseconds.
+	 */
+	public static synchronized void setSink(final Sink sink, long periodMillis) {
+		if (sSinkTask != null) sSinkTask.cancel(false);
+		sSinkTask = null;
+		if (sink == null) return;
+		if (periodMillis <= 0) throw new IllegalArgumentException("Parameter periodMillis should be positive.");
+		if (sScheduler == null) sScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "SDIMetrics");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		sSinkTask = sScheduler.scheduleAtFixedRate(new Runnable() {
+			private Snapshot mPrevious = snapshot();
+			@Override public void run() {
+				Snapshot current = snapshot();
+				sink.onSnapshot(current.since(mPrevious));
+				mPrevious = current;
+			}
+		}, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Returns a snapshot of all metrics gathered since the process started.
+	 */
+	public static Snapshot snapshot() {
+		long[] counts = new long[COUNTS.length()];
+		for (int i = 0; i < counts.length; i++) counts[i] = COUNTS.get(i);
+		long[] latencies = new long[LATENCY_BUCKETS];
+		for (int i = 0; i < latencies.length; i++) latencies[i] = LATENCIES.get(i);
+		return new Snapshot(counts, latencies, LATENCY_SUM_NANOS.get());
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * recording (internal)
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Records a handoff. Lock-free and allocation-free.
+	 * @param actionIndex The index as returned by {@link SDIIntentTemplate#indexOf(String)}.
+	 * @param target The SDIAppResolver target the handoff ended up at.
+	 * @param startNanos The {@link System#nanoTime()} of the SDK call.
+	 */
+	static void recordHandoff(int actionIndex, int target, long startNanos) {
+		COUNTS.incrementAndGet(slot(actionIndex, target));
+		if (target != SDIAppResolver.TARGET_NONE) PENDING_START_NANOS.set(startNanos != 0 ? startNanos : 1);
+	}
+
+	private static void recordLatency(long nanos) {
+		long micros = Math.max(1, nanos / 1000);
+		int bucket = Math.min(LATENCY_BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros));
+		LATENCIES.incrementAndGet(bucket);
+		LATENCY_SUM_NANOS.addAndGet(nanos);
+	}
+
+	private static int slot(int actionIndex, int target) {
+		if (actionIndex < 0 || actionIndex >= SDIIntentTemplate.ACTION_COUNT) actionIndex = SDIIntentTemplate.ACTION_COUNT;
+		return actionIndex * TARGET_SLOTS + target;
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * snapshot
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * An immutable copy of the metrics at a point in time, or for a period when delivered to a {@link Sink}.
+	 */
+	public static final class Snapshot {
+
+		private final long[] mCounts;
+		private final long[] mLatencies;
+		private final long mLatencySumNanos;
+
+		private Snapshot(long[] counts, long[] latencies, long latencySumNanos) {
+			mCounts = counts;
+			mLatencies = latencies;
+			mLatencySumNanos = latencySumNanos;
+		}
+
+		/**
+		 * Returns how often the given action ended up at the given target.
+		 * @param action One of the actions in {@link SDIIntent.Action}; any other action is reported under <b>null</b>.
+		 * @param target One of the targets defined in {@link SDIAppResolver}.
+		 */
+		public long getCount(String action, int target) {
+			if (target < 0 || target >= TARGET_SLOTS) throw new IllegalArgumentException("Parameter target should be one of the SDIAppResolver targets.");
+			return mCounts[slot(SDIIntentTemplate.indexOf(action), target)];
+		}
+
+		/**
+		 * Returns how often the given action was dispatched, regardless of its outcome.
+		 * @param action One of the actions in {@link SDIIntent.Action}; any other action is reported under <b>null</b>.
+		 */
+		public long getCount(String action) {
+			long count = 0;
+			for (int target = 0; target < TARGET_SLOTS; target++) count += getCount(action, target);
+			return count;
+		}
+
+		/**
+		 * Returns the number of handoffs for which a latency has been recorded.
+		 */
+		public long getLatencyCount() {
+			long count = 0;
+			for (long bucket : mLatencies) count += bucket;
+			return count;
+		}
+
+		/**
+		 * Returns the average handoff latency in milliseconds, or 0 if none was recorded.
+		 */
+		public double getAverageLatencyMillis() {
+			long count = getLatencyCount();
+			return count == 0 ? 0 : mLatencySumNanos / 1e6 / count;
+		}
+
+		/**
+		 * Returns an upper bound for the given percentile of the handoff latency in milliseconds, or 0 if none was
+		 * recorded. The histogram uses power of two buckets, so the value is accurate within a factor of two.
+		 * @param percentile The percentile, between 0 and 100.
+		 */
+		public double getLatencyPercentileMillis(double percentile) {
+			long count = getLatencyCount();
+			if (count == 0) return 0;
+			long rank = (long) Math.ceil(count * Math.max(0, Math.min(100, percentile)) / 100);
+			long seen = 0;
+			for (int i = 0; i < mLatencies.length; i++) {
+				seen += mLatencies[i];
+				if (seen >= rank && seen > 0) return (2L << i) / 1000.0;
+			}
+			return (2L << (mLatencies.length - 1)) / 1000.0;
+		}
+
+		/* the metrics gathered between the given earlier snapshot and this one */
+		Snapshot since(Snapshot previous) {
+			long[] counts = new long[mCounts.length];
+			for (int i = 0; i < counts.length; i++) counts[i] = mCounts[i] - previous.mCounts[i];
+			long[] latencies = new long[mLatencies.length];
+			for (int i = 0; i < latencies.length; i++) latencies[i] = mLatencies[i] - previous.mLatencies[i];
+			return new Snapshot(counts, latencies, mLatencySumNanos - previous.mLatencySumNanos);
+		}
+	}
+
+	/* kept in a separate class so the lifecycle interface is only loaded on API level 14 and up */
+	private static final class LifecycleCallbacks implements Application.ActivityLifecycleCallbacks {
+
+		static Object register(Application application) {
+			LifecycleCallbacks callbacks = new LifecycleCallbacks();
+			application.registerActivityLifecycleCallbacks(callbacks);
+			return callbacks;
+		}
+
+		@Override public void onActivityPaused(Activity activity) { SDIMetrics.onActivityPaused(); }
+		@Override public void onActivityCreated(Activity activity, Bundle savedInstanceState) { /* not used */ }
+		@Override public void onActivityStarted(Activity activity) { /* not used */ }
+		@Override public void onActivityResumed(Activity activity) { /* not used */ }
+		@Override public void onActivityStopped(Activity activity) { /* not used */ }
+		@Override public void onActivitySaveInstanceState(Activity activity, Bundle outState) { /* not used */ }
+		@Override public void onActivityDestroyed(Activity activity) { /* not used */ }
+	}
+
+}
@@ -0,0 +1,316 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+/**
+ * An asynchronous counterpart of {@link SDIPartnerUtil}. The Intent is built and resolved (see {@link SDIAppResolver})
+ * on a background thread and only the final {@link Context#startActivity(Intent)}, together with any Toast, is posted
+ * to the main thread. This makes all methods safe to call from any thread, including worker threads without a
+ * {@link Looper}, and keeps the PackageManager lookups out of frame time.
+ *
+ * Every method returns a {@link Future} that completes with the target that was started: one of
+ * {@link SDIAppResolver#TARGET_APP}, {@link SDIAppResolver#TARGET_MARKET}, {@link SDIAppResolver#TARGET_WEBSITE} or
+ * {@link SDIAppResolver#TARGET_NONE} if nothing could be started. Invalid parameters, which make the synchronous methods
+ * throw an {@link IllegalArgumentException}, complete the Future exceptionally and report {@link SDIAppResolver#TARGET_NONE}
+ * to the {@link Callback}. Cancelling the Future before the Activity gets started prevents the launch and reports
+ * {@link SDIAppResolver#TARGET_NONE} to the Callback; once the Activity is being started, cancelling has no effect.
+ */
+public class SDIPartnerDispatcher {
+
+	private SDIPartnerDispatcher() { /* prevent instantiating */ }
+
+	/**
+	 * Callback interface for receiving the outcome of an asynchronous dispatch. Always invoked on the main thread.
+	 */
+	public interface Callback {
+		/**
+		 * Called once the dispatch has completed.
+		 * @param target One of {@link SDIAppResolver#TARGET_APP}, {@link SDIAppResolver#TARGET_MARKET},
+		 * {@link SDIAppResolver#TARGET_WEBSITE} or {@link SDIAppResolver#TARGET_NONE} if the dispatch failed.
+		 */
+		void onDispatched(int target);
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * constants
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+	private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override public Thread newThread(final Runnable runnable) {
+			Thread thread = new Thread(new Runnable() {
+				@Override public void run() {
+					Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+					runnable.run();
+				}
+			}, "SDIPartnerDispatcher");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * util methods
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Asynchronous version of {@link SDIPartnerUtil#search7digital(Context, String, String)}.
+	 * @param callback Callback to receive the outcome on the main thread, or <b>null</b>.
+	 */
+	public static Future<Integer> search7digital(Context context, final String query, String affiliateId, Callback callback) {
+		return dispatch(context, affiliateId, SDIAppResolver.TARGET_MARKET, callback, new Callable<Intent>() {
+			@Override public Intent call() { return SDIIntent.Builder.buildSearchIntent(query); }
+		});
+	}
+
+	/**
+	 * Asynchronous version of {@link SDIPartnerUtil#launch7digitalShop(Context)}.
+	 * @param callback Callback to receive the outcome on the main thread, or <b>null</b>.
+	 */
+	public static Future<Integer> launch7digitalShop(Context context, Callback callback) {
+		return dispatch(context, null, SDIAppResolver.TARGET_MARKET, callback, new Callable<Intent>() {
+			@Override public Intent call() { return SDIIntent.Builder.buildViewShopIntent(); }
+		});
+	}
+
+	/**
+	 * Asynchronous version of {@link SDIPartnerUtil#launch7digitalMusic(Context)}.
+	 * @param callback Callback to receive the outcome on the main thread, or <b>null</b>.
+	 */
+	public static Future<Integer> launch7digitalMusic(Context context, Callback callback) {
+		return dispatch(context, null, SDIAppResolver.TARGET_MARKET, callback, new Callable<Intent>() {
+			@Override public Intent call() { return SDIIntent.Builder.buildViewYourMusicIntent(); }
+		});
+	}
+
+	/**
+	 * Asynchronous version of {@link SDIPartnerUtil#launch7digitalDownloads(Context)}.
+	 * @param callback Callback to receive the outcome on the main thread, or <b>null</b>.
+	 */
+	public static Future<Integer> launch7digitalDownloads(Context context, Callback callback) {
+		return dispatch(context, null, SDIAppResolver.TARGET_MARKET, callback, new Callable<Intent>() {
+			@Override public Intent call() { return SDIIntent.Builder.buildViewDownloadsIntent(); }
+		});
+	}
+
+	/**
+	 * Asynchronous version of {@link SDIPartnerUtil#view7digitalRelease(Context, long, String)}.
+	 * @param callback Callback to receive the outcome on the main thread, or <b>null</b>.
+	 */
+	public static Future<Integer> view7digitalRelease(Context context, final long releaseId, String affiliateId, Callback callback) {
+		return dispatch(context, affiliateId, SDIAppResolver.TARGET_MARKET, callback, new Callable<Intent>() {
+			@Override public Intent call() { return SDIIntent.Builder.buildView7digitalRelease(releaseId); }
+		});
+	}
+
+	/**
+	 * Asynchronous version of {@link SDIPartnerUtil#view7digitalTrack(Context, long, long, String)}.
+	 * @param callback Callback to receive the outcome on the main thread, or <b>null</b>.
+	 */
+	public static Future<Integer> view7digitalTrack(Context context, final long releaseId, final long trackId, String affiliateId, Callback callback) {
+		return dispatch(context, affiliateId, SDIAppResolver.TARGET_MARKET, callback, new Callable<Intent>() {
+			@Override public Intent call() { return SDIIntent.Builder.buildView7digitalTrack(releaseId, trackId); }
+		});
+	}
+
+	/**
+	 * Asynchronous version of {@link SDIPartnerUtil#view7digitalItem(Context, long, String, long, String, String, String, long, String, String)}.
+	 * @param callback Callback to receive the outcome on the main thread, or <b>null</b>.
+	 */
+	public static Future<Integer> view7digitalItem(Context context, final long releaseId, final String releaseTitle, final long trackId, final String trackTitle, final String trackVersion, final String coverUrl, final long artistId, final String artistName, String affiliateId, Callback callback) {
+		return dispatch(context, affiliateId, SDIAppResolver.TARGET_MARKET, callback, new Callable<Intent>() {
+			@Override public Intent call() { return SDIIntent.Builder.buildView7digitalItem(releaseId, releaseTitle, trackId, trackTitle, trackVersion, coverUrl, artistId, artistName); }
+		});
+	}
+
+	/**
+	 * Asynchronous version of {@link SDIPartnerUtil#view7digitalArtist(Context, long, String, String)}.
+	 * @param callback Callback to receive the outcome on the main thread, or <b>null</b>.
+	 */
+	public static Future<Integer> view7digitalArtist(Context context, final long artistId, final String artistName, String affiliateId, Callback callback) {
+		return dispatch(context, affiliateId, SDIAppResolver.TARGET_MARKET, callback, new Callable<Intent>() {
+			@Override public Intent call() { return SDIIntent.Builder.buildView7digitalArtist(artistId, artistName); }
+		});
+	}
+
+	/**
+	 * Asynchronous version of {@link SDIPartnerUtil#play7digitalRelease(Context, long, String)}.
+	 * @param callback Callback to receive the outcome on the main thread, or <b>null</b>.
+	 */
+	public static Future<Integer> play7digitalRelease(Context context, final long releaseId, String affiliateId, Callback callback) {
+		return dispatch(context, affiliateId, SDIAppResolver.TARGET_MARKET, callback, new Callable<Intent>() {
+			@Override public Intent call() { return SDIIntent.Builder.buildPlay7digitalRelease(releaseId); }
+		});
+	}
+
+	/**
+	 * Asynchronous version of {@link SDIPartnerUtil#play7digitalTrack(Context, long, long, String)}.
+	 * @param callback Callback to receive the outcome on the main thread, or <b>null</b>.
+	 */
+	public static Future<Integer> play7digitalTrack(Context context, final long releaseId, final long trackId, String affiliateId, Callback callback) {
+		return dispatch(context, affiliateId, SDIAppResolver.TARGET_MARKET, callback, new Callable<Intent>() {
+			@Override public Intent call() { return SDIIntent.Builder.buildPlay7digitalTrack(releaseId, trackId); }
+		});
+	}
+
+	/**
+	 * Asynchronous version of {@link SDIPartnerUtil#start7digitalOrMarket(Context, Intent)}.
+	 * @param callback Callback to receive the outcome on the main thread, or <b>null</b>.
+	 */
+	public static Future<Integer> start7digitalOrMarket(Context context, Intent intent, Callback callback) {
+		return dispatch(context, null, SDIAppResolver.TARGET_MARKET, callback, constant(intent));
+	}
+
+	/**
+	 * Asynchronous version of {@link SDIPartnerUtil#start7digitalOrWebsite(Context, Intent)}.
+	 * @param callback Callback to receive the outcome on the main thread, or <b>null</b>.
+	 */
+	public static Future<Integer> start7digitalOrWebsite(Context context, Intent intent, Callback callback) {
+		return dispatch(context, null, SDIAppResolver.TARGET_WEBSITE, callback, constant(intent));
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * internal
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/* runs other SDK background work, e.g. SDIWarmUp, in order with the dispatches */
+	static <T> Future<T> submit(Callable<T> task) {
+		return EXECUTOR.submit(task);
+	}
+
+	private static Callable<Intent> constant(final Intent intent) {
+		return new Callable<Intent>() {
+			@Override public Intent call() { return intent; }
+		};
+	}
+
+	private static Future<Integer> dispatch(final Context context, final String affiliateId, final int fallbackTarget, Callback callback, final Callable<Intent> builder) {
+		if (context == null) throw new IllegalArgumentException("Parameter context should not be null.");
+		final long startNanos = System.nanoTime();
+		final Result result = new Result(callback);
+		EXECUTOR.execute(new Runnable() {
+			@Override public void run() {
+				if (result.isCancelled()) return;
+				final SDILaunch launch;
+				try {
+					Intent intent = builder.call();
+					if (affiliateId != null && intent != null) intent.putExtra(SDIIntent.Extra.PARTNER, affiliateId);
+					launch = SDILaunch.prepare(context, intent, fallbackTarget, startNanos);
+				} catch (Exception e) {
+					result.fail(e);
+					return;
+				} catch (Error e) {
+					result.fail(e);
+					throw e;
+				}
+				MAIN_HANDLER.post(new Runnable() {
+					@Override public void run() {
+						if (!result.start()) return;
+						try { result.complete(launch.perform(context)); }
+						catch (RuntimeException e) { result.fail(e); }
+						catch (Error e) { result.fail(e); throw e; }
+					}
+				});
+			}
+		});
+		return result;
+	}
+
+	/*
+	 * The Future of a dispatch, completed from the outside as the work spans the executor and the main thread. Whichever
+	 * of complete(), fail() and cancel() comes first wins, releases the waiting callers and reports to the callback on the
+	 * main thread; cancel() only wins as long as the launch has not been started.
+	 */
+	private static final class Result implements Future<Integer> {
+
+		private static final int PENDING = 0, STARTED = 1, COMPLETED = 2, FAILED = 3, CANCELLED = 4;
+
+		private final Callback mCallback;
+		private final CountDownLatch mDone = new CountDownLatch(1);
+		/* guarded by this */
+		private int mState = PENDING;
+		private int mTarget;
+		private Throwable mThrowable;
+
+		Result(Callback callback) {
+			mCallback = callback;
+		}
+
+		/* claims the launch for the main thread, after which it can no longer be cancelled; false if it was */
+		synchronized boolean start() {
+			if (mState != PENDING) return false;
+			mState = STARTED;
+			return true;
+		}
+
+		void complete(int target) {
+			finish(COMPLETED, target, null);
+		}
+
+		void fail(Throwable throwable) {
+			finish(FAILED, SDIAppResolver.TARGET_NONE, throwable);
+		}
+
+		@Override public boolean cancel(boolean mayInterruptIfRunning) {
+			return finish(CANCELLED, SDIAppResolver.TARGET_NONE, null);
+		}
+
+		@Override public synchronized boolean isCancelled() {
+			return mState == CANCELLED;
+		}
+
+		@Override public synchronized boolean isDone() {
+			return mState >= COMPLETED;
+		}
+
+		@Override public Integer get() throws InterruptedException, ExecutionException {
+			mDone.await();
+			return report();
+		}
+
+		@Override public Integer get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+			if (!mDone.await(timeout, unit)) throw new TimeoutException();
+			return report();
+		}
+
+		private synchronized Integer report() throws ExecutionException {
+			if (mState == CANCELLED) throw new CancellationException();
+			if (mState == FAILED) throw new ExecutionException(mThrowable);
+			return mTarget;
+		}
+
+		/* moves to a final state unless already in one, returns whether it did */
+		private boolean finish(int state, final int target, Throwable throwable) {
+			synchronized (this) {
+				if (mState >= COMPLETED || (state == CANCELLED && mState != PENDING)) return false;
+				mState = state;
+				mTarget = target;
+				mThrowable = throwable;
+			}
+			mDone.countDown();
+			if (mCallback == null) return true;
+			if (Looper.myLooper() == Looper.getMainLooper()) mCallback.onDispatched(target);
+			else MAIN_HANDLER.post(new Runnable() {
+				@Override public void run() { mCallback.onDispatched(target); }
+			});
+			return true;
+		}
+	}
+
+}
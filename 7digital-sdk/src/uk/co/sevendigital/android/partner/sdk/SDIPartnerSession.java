@@ -0,0 +1,240 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * An instance-based counterpart of {@link SDIPartnerUtil} for apps that talk to the 7digital Android app from many
+ * places. A session is created once per app, normally in <code>Application.onCreate()</code>, and holds everything that
+ * is the same for every call: the application context, the affiliate identifier, the fallback to use when the app is not
+ * installed (a target or an {@link SDIFallbackChain}), and a prototype Intent per action that already carries its component, action,
+ * {@link Intent#FLAG_ACTIVITY_NEW_TASK} and {@link SDIIntent.Extra#PARTNER}. Every operation copies the prototype, adds
+ * its own extras and launches, skipping the validation that Intents handed in from the outside need. Creating a session
+ * also warms up the SDK through {@link SDIWarmUp}, so that the app and its fallbacks are resolved ahead of the first call.
+ *
+ * The static methods of {@link SDIPartnerUtil} are thin wrappers around a short-lived session for the Context passed in.
+ * All methods must be called on the main thread and return the target that was started, one of the
+ * {@link SDIAppResolver} targets.
+ */
+public class SDIPartnerSession {
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * fields
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private final Context mContext;
+	private final String mAffiliateId;
+	private final int mFallbackTarget;
+	private final SDIFallbackChain mFallbackChain;
+	private final boolean mNewTask;
+	/* per SDIIntentTemplate index, only copied; null for the short-lived sessions of SDIPartnerUtil */
+	private final Intent[] mPrototypes;
+
+	/**
+	 * Creates a session that falls back to Google Play when the 7digital app is not installed.
+	 * @param context Any Context of the application; the session only keeps the application context.
+	 * @param affiliateId Identifier for the affiliate/partner using this session, or <b>null</b>.
+	 */
+	public SDIPartnerSession(Context context, String affiliateId) {
+		this(context, affiliateId, SDIAppResolver.TARGET_MARKET);
+	}
+
+	/**
+	 * Creates a session.
+	 * @param context Any Context of the application; the session only keeps the application context.
+	 * @param affiliateId Identifier for the affiliate/partner using this session, or <b>null</b>.
+	 * @param fallbackTarget What to start when the 7digital app is not installed: either {@link SDIAppResolver#TARGET_MARKET}
+	 * or {@link SDIAppResolver#TARGET_WEBSITE}.
+	 */
+	public SDIPartnerSession(Context context, String affiliateId, int fallbackTarget) {
+		this(applicationContext(context), affiliateId, checkFallbackTarget(fallbackTarget), null, true);
+		SDIWarmUp.warmUp(mContext);
+	}
+
+	/**
+	 * Creates a session that falls back along the given chain when the 7digital app is not installed.
+	 * @param context Any Context of the application; the session only keeps the application context.
+	 * @param affiliateId Identifier for the affiliate/partner using this session, or <b>null</b>.
+	 * @param fallbackChain The chain to fall back along.
+	 */
+	public SDIPartnerSession(Context context, String affiliateId, SDIFallbackChain fallbackChain) {
+		this(applicationContext(context), affiliateId, SDIAppResolver.TARGET_NONE, checkFallbackChain(fallbackChain), true);
+		SDIWarmUp.warmUp(mContext);
+	}
+
+	private SDIPartnerSession(Context context, String affiliateId, int fallbackTarget, SDIFallbackChain fallbackChain, boolean prototypes) {
+		mContext = context;
+		mAffiliateId = affiliateId;
+		mFallbackTarget = fallbackTarget;
+		mFallbackChain = fallbackChain;
+		mNewTask = !(context instanceof Activity);
+		mPrototypes = prototypes ? new Intent[SDIIntentTemplate.ACTION_COUNT] : null;
+		if (prototypes) for (int i = 0; i < mPrototypes.length; i++) mPrototypes[i] = prototype(SDIIntentTemplate.forAction(SDIIntentTemplate.actionAt(i)));
+	}
+
+	/* a session for a single call, which launches from the given Context as is and builds no prototypes, see SDIPartnerUtil */
+	static SDIPartnerSession oneOff(Context context, String affiliateId) {
+		if (context == null) throw new IllegalArgumentException("Parameter context should not be null.");
+		return new SDIPartnerSession(context, affiliateId, SDIAppResolver.TARGET_MARKET, null, false);
+	}
+
+	private static int checkFallbackTarget(int fallbackTarget) {
+		if (fallbackTarget != SDIAppResolver.TARGET_MARKET && fallbackTarget != SDIAppResolver.TARGET_WEBSITE) throw new IllegalArgumentException("Parameter fallbackTarget should be TARGET_MARKET or TARGET_WEBSITE.");
+		return fallbackTarget;
+	}
+
+	private static SDIFallbackChain checkFallbackChain(SDIFallbackChain fallbackChain) {
+		if (fallbackChain == null) throw new IllegalArgumentException("Parameter fallbackChain should not be null.");
+		return fallbackChain;
+	}
+
+	private static Context applicationContext(Context context) {
+		if (context == null) throw new IllegalArgumentException("Parameter context should not be null.");
+		return context.getApplicationContext() != null ? context.getApplicationContext() : context;
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * methods
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Starts the 7digital Android app and performs a search on the given query.
+	 * @param query Query text.
+	 * @see SDIPartnerUtil#search7digital(Context, String, String)
+	 */
+	public int search7digital(String query) {
+		return launch(SDIIntent.Builder.putSearchExtras(newIntent(SDIIntentTemplate.SEARCH), query));
+	}
+
+	/**
+	 * Starts the 7digital Android app in the 'shop' section.
+	 * @see SDIPartnerUtil#launch7digitalShop(Context)
+	 */
+	public int launch7digitalShop() {
+		return launch(newIntent(SDIIntentTemplate.VIEW_SHOP));
+	}
+
+	/**
+	 * Starts the 7digital Android app in the 'your music' section.
+	 * @see SDIPartnerUtil#launch7digitalMusic(Context)
+	 */
+	public int launch7digitalMusic() {
+		return launch(newIntent(SDIIntentTemplate.VIEW_YOUR_MUSIC));
+	}
+
+	/**
+	 * Starts the 7digital Android app in the 'downloads' section.
+	 * @see SDIPartnerUtil#launch7digitalDownloads(Context)
+	 */
+	public int launch7digitalDownloads() {
+		return launch(newIntent(SDIIntentTemplate.VIEW_DOWNLOADS));
+	}
+
+	/**
+	 * Starts the 7digital Android app and displays the release details of the given release.
+	 * @param releaseId The 7digital identifier for the release to display.
+	 * @see SDIPartnerUtil#view7digitalRelease(Context, long, String)
+	 */
+	public int view7digitalRelease(long releaseId) {
+		return view7digitalItem(releaseId, null, -1, null, null, null, -1, null);
+	}
+
+	/**
+	 * Starts the 7digital Android app and displays the release details of the given release, highlighting the given track.
+	 * @param releaseId The 7digital identifier for the release to display.
+	 * @param trackId The 7digital identifier for the track to highlight for this release.
+	 * @see SDIPartnerUtil#view7digitalTrack(Context, long, long, String)
+	 */
+	public int view7digitalTrack(long releaseId, long trackId) {
+		return view7digitalItem(releaseId, null, trackId, null, null, null, -1, null);
+	}
+
+	/**
+	 * Starts the 7digital Android app and displays the release details of the given release, using the details passed
+	 * in until the full details are loaded.
+	 * @see SDIPartnerUtil#view7digitalItem(Context, long, String, long, String, String, String, long, String, String)
+	 */
+	public int view7digitalItem(long releaseId, String releaseTitle, long trackId, String trackTitle, String trackVersion, String coverUrl, long artistId, String artistName) {
+		return launch(SDIIntent.Builder.putItemExtras(newIntent(SDIIntentTemplate.VIEW_RELEASE), releaseId, releaseTitle, trackId, trackTitle, trackVersion, coverUrl, artistId, artistName));
+	}
+
+	/**
+	 * Starts the 7digital Android app and displays the artist details of the given artist.
+	 * @param artistId The 7digital identifier for the artist to display.
+	 * @param artistName The name of the artist, or <b>null</b>.
+	 * @see SDIPartnerUtil#view7digitalArtist(Context, long, String, String)
+	 */
+	public int view7digitalArtist(long artistId, String artistName) {
+		return launch(SDIIntent.Builder.putArtistExtras(newIntent(SDIIntentTemplate.VIEW_ARTIST), artistId, artistName));
+	}
+
+	/**
+	 * Starts the 7digital Android app and attempts to play the given release.
+	 * @param releaseId The 7digital identifier for the release to play.
+	 * @see SDIPartnerUtil#play7digitalRelease(Context, long, String)
+	 */
+	public int play7digitalRelease(long releaseId) {
+		return launch(SDIIntent.Builder.putPlayExtras(newIntent(SDIIntentTemplate.PLAY_RELEASE), releaseId, -1));
+	}
+
+	/**
+	 * Starts the 7digital Android app and attempts to play the given track of the given release.
+	 * @param releaseId The 7digital identifier for the release to play.
+	 * @param trackId The 7digital identifier for the track to play for this release.
+	 * @see SDIPartnerUtil#play7digitalTrack(Context, long, long, String)
+	 */
+	public int play7digitalTrack(long releaseId, long trackId) {
+		if (trackId == -1) throw new IllegalArgumentException("Parameter trackId should not be -1.");
+		return launch(SDIIntent.Builder.putPlayExtras(newIntent(SDIIntentTemplate.PLAY_TRACK), releaseId, trackId));
+	}
+
+	/**
+	 * Starts the 7digital Android app with an Intent built elsewhere, e.g. by {@link SDIIntent.Builder}. The Intent is
+	 * validated and gets this session's affiliate identifier if it has none.
+	 * @param intent The Intent used to start the Activity.
+	 */
+	public int start7digital(Intent intent) {
+		if (intent != null && mAffiliateId != null && !intent.hasExtra(SDIIntent.Extra.PARTNER)) intent.putExtra(SDIIntent.Extra.PARTNER, mAffiliateId);
+		SDILaunch launch = mFallbackChain != null ? SDILaunch.prepare(mContext, intent, mFallbackChain) : SDILaunch.prepare(mContext, intent, mFallbackTarget);
+		return launch.perform(mContext);
+	}
+
+	/** Returns the affiliate identifier of this session, or <b>null</b>. */
+	public String getAffiliateId() {
+		return mAffiliateId;
+	}
+
+	/**
+	 * Returns what this session starts when the 7digital app is not installed, or {@link SDIAppResolver#TARGET_NONE} if
+	 * it falls back along a chain.
+	 */
+	public int getFallbackTarget() {
+		return mFallbackTarget;
+	}
+
+	/** Returns the chain this session falls back along, or <b>null</b> if it falls back to a single target. */
+	public SDIFallbackChain getFallbackChain() {
+		return mFallbackChain;
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * internal
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private Intent newIntent(SDIIntentTemplate template) {
+		return mPrototypes != null ? new Intent(mPrototypes[template.getIndex()]) : prototype(template);
+	}
+
+	private Intent prototype(SDIIntentTemplate template) {
+		Intent intent = template.newIntent();
+		if (mNewTask) intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+		if (mAffiliateId != null) intent.putExtra(SDIIntent.Extra.PARTNER, mAffiliateId);
+		return intent;
+	}
+
+	private int launch(Intent intent) {
+		return SDILaunch.prepareBuilt(mContext, intent, mFallbackTarget, mFallbackChain, mNewTask).perform(mContext);
+	}
+
+}
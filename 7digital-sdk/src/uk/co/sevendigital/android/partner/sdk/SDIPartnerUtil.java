@@ -1,17 +1,13 @@
 package uk.co.sevendigital.android.partner.sdk;
 
-import android.app.Activity;
-import android.content.ActivityNotFoundException;
 import android.content.Context;
 import android.content.Intent;
-import android.net.Uri;
-import android.text.TextUtils;
-import android.widget.Toast;
 
 /**
  * A utility class that provides 'shortcuts' to perform common actions on the 7digital Android app. These
  * methods wrap the different builders defined in {@link SDIIntent.Builder} and simply use the passed in
- * Context to execute the action.
+ * Context to execute the action. Apps that make many calls should consider {@link SDIPartnerSession}, which does the
+ * work that is the same for every call only once.
  * 
  * @author mhelder
  */
@@ -32,8 +28,7 @@ public class SDIPartnerUtil {
 	 * @param affiliateId Identifier for the affiliate/partner using this method.
 	 */
 	public static void search7digital(Context context, String query, String affiliateId) {
-		Intent intent = SDIIntent.Builder.buildSearchIntent(query);
-		start7digitalIntent(context, intent, affiliateId);
+		SDIPartnerSession.oneOff(context, affiliateId).search7digital(query);
 	}
 
 	/**
@@ -42,8 +37,7 @@ public class SDIPartnerUtil {
 	 * @see #start7digitalOrMarket(Context, Intent)
 	 */
 	public static void launch7digitalShop(Context context) {
-		Intent intent = SDIIntent.Builder.buildViewShopIntent();
-		start7digitalOrMarket(context, intent);
+		SDIPartnerSession.oneOff(context, null).launch7digitalShop();
 	}
 
 	/**
@@ -53,8 +47,7 @@ public class SDIPartnerUtil {
 	 * @see #start7digitalOrMarket(Context, Intent)
 	 */
 	public static void launch7digitalMusic(Context context) {
-		Intent intent = SDIIntent.Builder.buildViewYourMusicIntent();
-		start7digitalOrMarket(context, intent);
+		SDIPartnerSession.oneOff(context, null).launch7digitalMusic();
 	}
 
 	/**
@@ -64,8 +57,7 @@ public class SDIPartnerUtil {
 	 * @see #start7digitalOrMarket(Context, Intent)
 	 */
 	public static void launch7digitalDownloads(Context context) {
-		Intent intent = SDIIntent.Builder.buildViewDownloadsIntent();
-		start7digitalOrMarket(context, intent);
+		SDIPartnerSession.oneOff(context, null).launch7digitalDownloads();
 	}
 
 	/**
@@ -77,8 +69,7 @@ public class SDIPartnerUtil {
 	 * @see {@link #view7digitalItem(Context, long, String, long, String, String, String, long, String, String)}
 	 */
 	public static void view7digitalRelease(Context context, long releaseId, String affiliateId) {
-		Intent intent = SDIIntent.Builder.buildView7digitalRelease(releaseId);
-		start7digitalExternalIntent(context, intent, affiliateId);
+		SDIPartnerSession.oneOff(context, affiliateId).view7digitalRelease(releaseId);
 	}
 
 	/**
@@ -91,8 +82,7 @@ public class SDIPartnerUtil {
 	 * @see {@link #view7digitalItem(Context, long, String, long, String, String, String, long, String, String)}
 	 */
 	public static void view7digitalTrack(Context context, long releaseId, long trackId, String affiliateId) {
-		Intent intent = SDIIntent.Builder.buildView7digitalTrack(releaseId, trackId);
-		start7digitalExternalIntent(context, intent, affiliateId);
+		SDIPartnerSession.oneOff(context, affiliateId).view7digitalTrack(releaseId, trackId);
 	}
 	
 	/**
@@ -113,8 +103,7 @@ public class SDIPartnerUtil {
 	 * 
 	 */
 	public static void view7digitalItem(Context context, long releaseId, String releaseTitle, long trackId, String trackTitle, String trackVersion, String coverUrl, long artistId, String artistName, String affiliateId) {
-		Intent intent = SDIIntent.Builder.buildView7digitalItem(releaseId, releaseTitle, trackId, trackTitle, trackVersion, coverUrl, artistId, artistName);
-		start7digitalExternalIntent(context, intent, affiliateId);
+		SDIPartnerSession.oneOff(context, affiliateId).view7digitalItem(releaseId, releaseTitle, trackId, trackTitle, trackVersion, coverUrl, artistId, artistName);
 	}
 
 	/**
@@ -127,8 +116,7 @@ public class SDIPartnerUtil {
 	 * @param affiliateId Identifier for the affiliate/partner using this method.
 	 */
 	public static void view7digitalArtist(Context context, long artistId, String artistName, String affiliateId) {
-		Intent intent = SDIIntent.Builder.buildView7digitalArtist(artistId, artistName);
-		start7digitalExternalIntent(context, intent, affiliateId);
+		SDIPartnerSession.oneOff(context, affiliateId).view7digitalArtist(artistId, artistName);
 	}
 
 	/**
@@ -146,8 +134,7 @@ public class SDIPartnerUtil {
 	 * @param affiliateId Identifier for the affiliate/partner using this method.
 	 */
 	public static void play7digitalRelease(Context context, long releaseId, String affiliateId) {
-		Intent intent = SDIIntent.Builder.buildPlay7digitalRelease(releaseId);
-		start7digitalExternalIntent(context, intent, affiliateId);
+		SDIPartnerSession.oneOff(context, affiliateId).play7digitalRelease(releaseId);
 	}
 
 	/**
@@ -166,82 +153,54 @@ public class SDIPartnerUtil {
 	 * @param affiliateId Identifier for the affiliate/partner using this method.
 	 */
 	public static void play7digitalTrack(Context context, long releaseId, long trackId, String affiliateId) {
-		Intent intent = SDIIntent.Builder.buildPlay7digitalTrack(releaseId, trackId);
-		start7digitalExternalIntent(context, intent, affiliateId);
+		SDIPartnerSession.oneOff(context, affiliateId).play7digitalTrack(releaseId, trackId);
 	}
 
 	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - 
 	 * internal
 	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
 	
-	/* used for performing a search in the shop (intent passed in will point to the app's main entry point, rather than the external entry point) */ 
-	private static void start7digitalIntent(Context context, Intent intent, String affiliateId) {
-		if (affiliateId != null) intent.putExtra(SDIIntent.Extra.PARTNER, affiliateId);
-		start7digitalOrMarket(context, intent);
-	}
-
-	/* used all non-search actions (intent passed in will point to the app's external entry point, rather than the main entry point) */
-	private static void start7digitalExternalIntent(Context context, Intent intent, String affiliateId) {
-		if (affiliateId != null) intent.putExtra(SDIIntent.Extra.PARTNER, affiliateId);
-		start7digitalOrMarket(context, intent);
-	}
-
 	/**
 	 * Start the 7digital application with the given intent. On failure, this will attempt to display the 7digital 
 	 * Android app in Google Play to allow for easy installation.
 	 * @param context The Context used to launch the 7digital app. Note that if this is not an Activity then the {@link Intent#FLAG_ACTIVITY_NEW_TASK} is automatically added to start the app in a new task.
 	 * @param intent The Intent used to start the Activity
 	 * @see Context#startActivity(Intent, android.os.Bundle)
+	 * @see SDIAppResolver
 	 */
 	public static void start7digitalOrMarket(Context context, Intent intent) {
-		if (context == null) throw new IllegalArgumentException("Parameter context should not be null.");
-		if (intent == null) throw new IllegalArgumentException("Parameter intent should not be null.");
-		if (TextUtils.isEmpty(intent.getAction())) throw new IllegalArgumentException("Parameter intent should specify an action to perform.");
-		if (!intent.getAction().startsWith(SDIIntent.SDI_ANDROID_PACKAGE_NAME) && !intent.getAction().equals(Intent.ACTION_SEARCH)) throw new IllegalArgumentException("Parameter intent should specify an valid 7digital (or Android search) action to perform.");
-		
-		// if we weren't started on an activity, supply new task flag
-		if (!(context instanceof Activity)) intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-		
-		try { context.startActivity(intent); } 
-		catch (ActivityNotFoundException e) {
-			Toast.makeText(context, "The 7digital application is not installed. Please install it from Google Play.", Toast.LENGTH_LONG).show();
-			// Take user to market
-			String marketQuery = "market://details?id=" + SDIIntent.SDI_ANDROID_PACKAGE_NAME;
-			Intent marketIntent = new Intent(Intent.ACTION_VIEW, Uri.parse(marketQuery));
-			try { context.startActivity(marketIntent); } 
-			catch (ActivityNotFoundException e1) {
-				Toast.makeText(context, "Google Play not found. Please install the 7digital application manually.", Toast.LENGTH_LONG).show();
-			}
-		}		
+		start7digital(context, intent, SDIAppResolver.TARGET_MARKET);
 	}
 	
 
 	/**
 	 * Start the 7digital application with the given intent. On failure, this will load up the 7digital website in
-	 * the browser.
+	 * the browser, on the page matching the intent's action and extras.
 	 * @param context The Context used to launch the 7digital app. Note that if this is not an Activity then the {@link Intent#FLAG_ACTIVITY_NEW_TASK} is automatically added to start the app in a new task.
 	 * @param intent The Intent used to start the Activity
 	 * @see Context#startActivity(Intent, android.os.Bundle)
+	 * @see SDIAppResolver
+	 * @see SDIWebLinkBuilder
 	 */
 	public static void start7digitalOrWebsite(Context context, Intent intent) {
-		if (context == null) throw new IllegalArgumentException("Parameter context should not be null.");
-		if (intent == null) throw new IllegalArgumentException("Parameter intent should not be null.");
-		if (TextUtils.isEmpty(intent.getAction())) throw new IllegalArgumentException("Parameter intent should specify an action to perform.");
-		if (!intent.getAction().startsWith(SDIIntent.SDI_ANDROID_PACKAGE_NAME) && !intent.getAction().equals(Intent.ACTION_SEARCH)) throw new IllegalArgumentException("Parameter intent should specify an valid 7digital (or Android search) action to perform.");
-		
-		// if we weren't started on an activity, supply new task flag
-		if (!(context instanceof Activity)) intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-		
-		try { context.startActivity(intent); } 
-		catch (ActivityNotFoundException e) {
-			Toast.makeText(context, "The 7digital application is not installed. Redirecting to website.", Toast.LENGTH_LONG).show();
-			// Take user to market
-			Intent browserIntent = new Intent(Intent.ACTION_VIEW, Uri.parse(SDIIntent.SDI_WEBSITE_URL));
-			try { context.startActivity(browserIntent); } 
-			catch (ActivityNotFoundException e1) {
-				Toast.makeText(context, "No browser found. Please install one in order to visit the 7digital website.", Toast.LENGTH_LONG).show();
-			}
-		}		
+		start7digital(context, intent, SDIAppResolver.TARGET_WEBSITE);
+	}
+
+	/**
+	 * Start the 7digital application with the given intent. On failure, this will fall back along the given chain, e.g.
+	 * to Google Play, then to the 7digital website shown in the app itself.
+	 * @param context The Context used to launch the 7digital app. Note that if this is not an Activity then the {@link Intent#FLAG_ACTIVITY_NEW_TASK} is automatically added to start the app in a new task.
+	 * @param intent The Intent used to start the Activity
+	 * @param fallbackChain The chain to fall back along.
+	 * @see SDIFallbackChain
+	 */
+	public static void start7digital(Context context, Intent intent, SDIFallbackChain fallbackChain) {
+		SDILaunch.prepare(context, intent, fallbackChain).perform(context);
+	}
+
+	/* picks the app or the fallback from the cached resolution state, so that the common path never throws */
+	private static int start7digital(Context context, Intent intent, int fallbackTarget) {
+		return SDILaunch.prepare(context, intent, fallbackTarget).perform(context);
 	}
 
 }
@@ -0,0 +1,335 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * An opt-in, compact binary encoding of one or more {@link SDIRequest}s. Instead of up to nine separate string-keyed
+ * extras, each of which is marshalled together with its key, the whole request is packed into a single versioned byte
+ * array: identifiers are written as variable length integers and all strings go into a table that is shared by every
+ * request in the payload, so repeated titles, artist names and affiliate identifiers are stored only once.
+ *
+ * Compact Intents, created with {@link #newIntent(SDIRequest)}, carry the payload as {@link #EXTRA_PAYLOAD} and are
+ * decoded transparently by {@link SDIIntentParser}. Note that the 7digital Android app itself expects the regular
+ * extras, so compact Intents are meant for Intents that are decoded by the partner app, such as those stashed in
+ * PendingIntents or saved state. {@link SDIPartnerUtil#start7digitalOrMarket(Context, Intent)} and its siblings
+ * expand a compact Intent to the regular extras before handing it off; {@link SDIIntent.Builder#build(SDIRequest)} does
+ * the same for a decoded request.
+ */
+public class SDIPayload {
+
+	private SDIPayload() { /* prevent instantiating */ }
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * constants
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/** Key constant for the extra carrying an encoded payload in a compact Intent. */
+	public static final String EXTRA_PAYLOAD = "uk.co.sevendigital.android.intent.extra.PAYLOAD";
+
+	/** The current version of the encoding, written as the first byte of every payload. */
+	public static final int VERSION = 1;
+
+	/* request types; part of the encoding, never renumber */
+	private static final int SEARCH = 0, VIEW_SHOP = 1, VIEW_YOUR_MUSIC = 2, VIEW_DOWNLOADS = 3, VIEW_RELEASE = 4, VIEW_ARTIST = 5,
+		PLAY_RELEASE = 6, PLAY_TRACK = 7;
+
+	/* field presence bits, followed by the fields in this order; part of the encoding, never renumber */
+	private static final int AFFILIATE_ID = 1, QUERY = 1 << 1, RELEASEID = 1 << 2, RELEASETITLE = 1 << 3, TRACKID = 1 << 4,
+		TRACKTITLE = 1 << 5, TRACKVERSION = 1 << 6, COVERURL = 1 << 7, ARTISTID = 1 << 8, ARTISTNAME = 1 << 9;
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * util methods
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Creates a compact Intent for the given request: the component, action and flags are those of the matching
+	 * {@link SDIIntentTemplate}, all other data is carried in a single {@link #EXTRA_PAYLOAD}.
+	 * @param request The request to create the Intent for.
+	 */
+	public static Intent newIntent(SDIRequest request) {
+		if (request == null) throw new IllegalArgumentException("Parameter request should not be null.");
+		Intent intent = SDIIntentTemplate.forAction(request.getAction()).newIntent();
+		intent.putExtra(EXTRA_PAYLOAD, encode(request));
+		return intent;
+	}
+
+	/**
+	 * Encodes the given requests into a single payload, sharing one string table between all of them.
+	 * @param requests The requests to encode.
+	 */
+	public static byte[] encode(SDIRequest... requests) {
+		if (requests == null) throw new IllegalArgumentException("Parameter requests should not be null.");
+		return encode(Arrays.asList(requests));
+	}
+
+	/**
+	 * Encodes the given requests into a single payload, sharing one string table between all of them.
+	 * @param requests The requests to encode.
+	 */
+	public static byte[] encode(List<? extends SDIRequest> requests) {
+		if (requests == null) throw new IllegalArgumentException("Parameter requests should not be null.");
+		Writer strings = new Writer();
+		Writer body = new Writer();
+		Map<String, Integer> table = new HashMap<String, Integer>();
+		for (SDIRequest request : requests) {
+			if (request == null) throw new IllegalArgumentException("Parameter requests should not contain null.");
+			writeRequest(request, body, strings, table);
+		}
+		Writer out = new Writer();
+		out.writeByte(VERSION);
+		out.writeVarint(table.size());
+		out.writeBytes(strings);
+		out.writeVarint(requests.size());
+		out.writeBytes(body);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decodes a payload created by {@link #encode(SDIRequest...)}.
+	 * @param payload The encoded payload.
+	 * @return The requests, in the order they were encoded.
+	 * @throws IllegalArgumentException If the payload is malformed or has an unsupported version.
+	 */
+	public static List<SDIRequest> decode(byte[] payload) {
+		if (payload == null) throw new IllegalArgumentException("Parameter payload should not be null.");
+		Reader in = new Reader(payload);
+		int version = in.readByte();
+		if (version != VERSION) throw new IllegalArgumentException("Unsupported payload version " + version + ".");
+		String[] table = new String[in.readCount()];
+		for (int i = 0; i < table.length; i++) table[i] = in.readString();
+		int count = in.readCount();
+		List<SDIRequest> requests = new ArrayList<SDIRequest>(count);
+		for (int i = 0; i < count; i++) requests.add(readRequest(in, table));
+		if (in.position != payload.length) throw new IllegalArgumentException("Malformed payload: trailing bytes.");
+		return requests;
+	}
+
+	/**
+	 * Decodes a payload that holds exactly one request, as put into compact Intents.
+	 * @throws IllegalArgumentException If the payload is malformed, has an unsupported version or does not hold exactly one request.
+	 */
+	public static SDIRequest decodeSingle(byte[] payload) {
+		List<SDIRequest> requests = decode(payload);
+		if (requests.size() != 1) throw new IllegalArgumentException("Payload holds " + requests.size() + " requests, expected 1.");
+		return requests.get(0);
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * internal
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private static void writeRequest(SDIRequest request, Writer out, Writer strings, Map<String, Integer> table) {
+		int type;
+		int fields = request.getAffiliateId() != null ? AFFILIATE_ID : 0;
+		long releaseId = -1, trackId = -1, artistId = -1;
+		String query = null, releaseTitle = null, trackTitle = null, trackVersion = null, coverUrl = null, artistName = null;
+		if (request instanceof SDIRequest.Search) {
+			type = SEARCH;
+			query = ((SDIRequest.Search) request).getQuery();
+		} else if (request instanceof SDIRequest.ViewShop) {
+			type = VIEW_SHOP;
+		} else if (request instanceof SDIRequest.ViewYourMusic) {
+			type = VIEW_YOUR_MUSIC;
+		} else if (request instanceof SDIRequest.ViewDownloads) {
+			type = VIEW_DOWNLOADS;
+		} else if (request instanceof SDIRequest.ViewRelease) {
+			type = VIEW_RELEASE;
+			SDIRequest.ViewRelease view = (SDIRequest.ViewRelease) request;
+			releaseId = view.getReleaseId();
+			releaseTitle = view.getReleaseTitle();
+			trackId = view.getTrackId();
+			trackTitle = view.getTrackTitle();
+			trackVersion = view.getTrackVersion();
+			coverUrl = view.getCoverUrl();
+			artistId = view.getArtistId();
+			artistName = view.getArtistName();
+		} else if (request instanceof SDIRequest.ViewArtist) {
+			type = VIEW_ARTIST;
+			artistId = ((SDIRequest.ViewArtist) request).getArtistId();
+			artistName = ((SDIRequest.ViewArtist) request).getArtistName();
+		} else if (request instanceof SDIRequest.PlayRelease) {
+			type = PLAY_RELEASE;
+			releaseId = ((SDIRequest.PlayRelease) request).getReleaseId();
+		} else if (request instanceof SDIRequest.PlayTrack) {
+			type = PLAY_TRACK;
+			releaseId = ((SDIRequest.PlayTrack) request).getReleaseId();
+			trackId = ((SDIRequest.PlayTrack) request).getTrackId();
+		} else {
+			throw new IllegalArgumentException("Unsupported request type " + request.getClass().getName() + ".");
+		}
+		if (query != null) fields |= QUERY;
+		if (releaseId != -1) fields |= RELEASEID;
+		if (releaseTitle != null) fields |= RELEASETITLE;
+		if (trackId != -1) fields |= TRACKID;
+		if (trackTitle != null) fields |= TRACKTITLE;
+		if (trackVersion != null) fields |= TRACKVERSION;
+		if (coverUrl != null) fields |= COVERURL;
+		if (artistId != -1) fields |= ARTISTID;
+		if (artistName != null) fields |= ARTISTNAME;
+
+		out.writeByte(type);
+		out.writeVarint(fields);
+		if ((fields & AFFILIATE_ID) != 0) out.writeVarint(intern(request.getAffiliateId(), strings, table));
+		if ((fields & QUERY) != 0) out.writeVarint(intern(query, strings, table));
+		if ((fields & RELEASEID) != 0) out.writeSignedVarint(releaseId);
+		if ((fields & RELEASETITLE) != 0) out.writeVarint(intern(releaseTitle, strings, table));
+		if ((fields & TRACKID) != 0) out.writeSignedVarint(trackId);
+		if ((fields & TRACKTITLE) != 0) out.writeVarint(intern(trackTitle, strings, table));
+		if ((fields & TRACKVERSION) != 0) out.writeVarint(intern(trackVersion, strings, table));
+		if ((fields & COVERURL) != 0) out.writeVarint(intern(coverUrl, strings, table));
+		if ((fields & ARTISTID) != 0) out.writeSignedVarint(artistId);
+		if ((fields & ARTISTNAME) != 0) out.writeVarint(intern(artistName, strings, table));
+	}
+
+	private static SDIRequest readRequest(Reader in, String[] table) {
+		int type = in.readByte();
+		int fields = (int) in.readVarint();
+		String affiliateId = (fields & AFFILIATE_ID) != 0 ? in.readRef(table) : null;
+		String query = (fields & QUERY) != 0 ? in.readRef(table) : null;
+		long releaseId = (fields & RELEASEID) != 0 ? in.readSignedVarint() : -1;
+		String releaseTitle = (fields & RELEASETITLE) != 0 ? in.readRef(table) : null;
+		long trackId = (fields & TRACKID) != 0 ? in.readSignedVarint() : -1;
+		String trackTitle = (fields & TRACKTITLE) != 0 ? in.readRef(table) : null;
+		String trackVersion = (fields & TRACKVERSION) != 0 ? in.readRef(table) : null;
+		String coverUrl = (fields & COVERURL) != 0 ? in.readRef(table) : null;
+		long artistId = (fields & ARTISTID) != 0 ? in.readSignedVarint() : -1;
+		String artistName = (fields & ARTISTNAME) != 0 ? in.readRef(table) : null;
+		switch (type) {
+			case SEARCH: return new SDIRequest.Search(query, affiliateId);
+			case VIEW_SHOP: return new SDIRequest.ViewShop(affiliateId);
+			case VIEW_YOUR_MUSIC: return new SDIRequest.ViewYourMusic(affiliateId);
+			case VIEW_DOWNLOADS: return new SDIRequest.ViewDownloads(affiliateId);
+			case VIEW_RELEASE: return new SDIRequest.ViewRelease(releaseId, releaseTitle, trackId, trackTitle, trackVersion, coverUrl, artistId, artistName, affiliateId);
+			case VIEW_ARTIST: return new SDIRequest.ViewArtist(artistId, artistName, affiliateId);
+			case PLAY_RELEASE: return new SDIRequest.PlayRelease(releaseId, affiliateId);
+			case PLAY_TRACK: return new SDIRequest.PlayTrack(releaseId, trackId, affiliateId);
+			default: throw new IllegalArgumentException("Malformed payload: unknown request type " + type + ".");
+		}
+	}
+
+	private static int intern(String value, Writer strings, Map<String, Integer> table) {
+		Integer index = table.get(value);
+		if (index != null) return index;
+		index = table.size();
+		table.put(value, index);
+		byte[] bytes = utf8(value);
+		strings.writeVarint(bytes.length);
+		strings.writeBytes(bytes, bytes.length);
+		return index;
+	}
+
+	private static byte[] utf8(String value) {
+		try { return value.getBytes("UTF-8"); }
+		catch (UnsupportedEncodingException e) { throw new IllegalStateException(e); }
+	}
+
+	/* a growable byte buffer with varint support; ByteArrayOutputStream is synchronized and lacks the latter */
+	private static final class Writer {
+
+		byte[] bytes = new byte[64];
+		int length;
+
+		void writeByte(int value) {
+			if (length == bytes.length) bytes = copyOf(bytes, length * 2);
+			bytes[length++] = (byte) value;
+		}
+
+		void writeBytes(byte[] source, int count) {
+			if (length + count > bytes.length) bytes = copyOf(bytes, Math.max(length + count, length * 2));
+			System.arraycopy(source, 0, bytes, length, count);
+			length += count;
+		}
+
+		void writeBytes(Writer source) {
+			writeBytes(source.bytes, source.length);
+		}
+
+		/* unsigned LEB128 */
+		void writeVarint(long value) {
+			while ((value & ~0x7FL) != 0) {
+				writeByte((int) (value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			writeByte((int) value);
+		}
+
+		/* zigzag, so that small negative values stay small */
+		void writeSignedVarint(long value) {
+			writeVarint((value << 1) ^ (value >> 63));
+		}
+
+		byte[] toByteArray() {
+			return copyOf(bytes, length);
+		}
+
+		/* Arrays.copyOf(byte[], int) is API level 9 */
+		private byte[] copyOf(byte[] source, int newLength) {
+			byte[] copy = new byte[newLength];
+			System.arraycopy(source, 0, copy, 0, Math.min(length, newLength));
+			return copy;
+		}
+	}
+
+	private static final class Reader {
+
+		final byte[] bytes;
+		int position;
+
+		Reader(byte[] bytes) {
+			this.bytes = bytes;
+		}
+
+		int readByte() {
+			if (position >= bytes.length) throw new IllegalArgumentException("Malformed payload: unexpected end.");
+			return bytes[position++] & 0xFF;
+		}
+
+		long readVarint() {
+			long value = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				int b = readByte();
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) return value;
+			}
+			throw new IllegalArgumentException("Malformed payload: varint too long.");
+		}
+
+		long readSignedVarint() {
+			long value = readVarint();
+			return (value >>> 1) ^ -(value & 1);
+		}
+
+		/* a count of items that follow, each taking at least one byte, so it can never exceed the remaining length */
+		int readCount() {
+			long count = readVarint();
+			if (count > bytes.length - position) throw new IllegalArgumentException("Malformed payload: count out of range.");
+			return (int) count;
+		}
+
+		String readString() {
+			int length = readCount();
+			try {
+				String value = new String(bytes, position, length, "UTF-8");
+				position += length;
+				return value;
+			} catch (UnsupportedEncodingException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		String readRef(String[] table) {
+			long index = readVarint();
+			if (index >= table.length) throw new IllegalArgumentException("Malformed payload: string index out of range.");
+			return table[(int) index];
+		}
+	}
+
+}
@@ -0,0 +1,241 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Bundle;
+
+/**
+ * Creates the PendingIntents that open the 7digital Android app from notifications and app widgets, on top of
+ * {@link SDIIntent.Builder}. Every PendingIntent gets a request code hashed from its action, identifiers and target,
+ * stepping past the codes of the other PendingIntents in the pool, so that two pooled launches never share one and end
+ * up with each other's extras. A launch therefore usually, but not always, gets the same request code in every
+ * process; two pools, or a pool and PendingIntents created elsewhere, may still hash two launches to one code.
+ * PendingIntents handed out recently are kept in an LRU pool: asking for the same launch again returns the pooled
+ * PendingIntent and its request code without a call into the system, and any change in its extras (e.g. a title)
+ * updates it in place through {@link PendingIntent#FLAG_UPDATE_CURRENT}.
+ *
+ * The pool holds at most the given number of PendingIntents; the least recently used one is cancelled when another one
+ * is added, which makes it do nothing when tapped. Size the pool above the number of notifications and widget views that
+ * may be showing at the same time, and share a single pool across the application, as two pools handing out the same
+ * launch get the same PendingIntent from the system, and either may cancel it. If the 7digital app is not installed, the PendingIntents open the fallback instead.
+ */
+public class SDIPendingIntentPool {
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * constants
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/** Default number of PendingIntents kept in a pool. */
+	public static final int DEFAULT_MAX_ENTRIES = 64;
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * fields
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private final Context mContext;
+	private final String mAffiliateId;
+	private final int mFallbackTarget;
+	private final int mMaxEntries;
+
+	/* guarded by this; keyed by the fingerprint of the launch and its target, in access order */
+	private final LinkedHashMap<Long, Entry> mEntries = new LinkedHashMap<Long, Entry>(32, 0.75f, true);
+	/* guarded by this; the request codes of the entries */
+	private final Set<Integer> mRequestCodes = new HashSet<Integer>();
+
+	/**
+	 * Creates a pool of {@link #DEFAULT_MAX_ENTRIES} that falls back to Google Play when the 7digital app is not installed.
+	 * @param context Any Context of the application; the pool only keeps the application context.
+	 * @param affiliateId Identifier for the affiliate/partner using this pool, or <b>null</b>.
+	 */
+	public SDIPendingIntentPool(Context context, String affiliateId) {
+		this(context, affiliateId, SDIAppResolver.TARGET_MARKET, DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * Creates a pool.
+	 * @param context Any Context of the application; the pool only keeps the application context.
+	 * @param affiliateId Identifier for the affiliate/partner using this pool, or <b>null</b>.
+	 * @param fallbackTarget What to open when the 7digital app is not installed: either {@link SDIAppResolver#TARGET_MARKET}
+	 * or {@link SDIAppResolver#TARGET_WEBSITE}.
+	 * @param maxEntries The number of PendingIntents kept.
+	 */
+	public SDIPendingIntentPool(Context context, String affiliateId, int fallbackTarget, int maxEntries) {
+		if (context == null) throw new IllegalArgumentException("Parameter context should not be null.");
+		if (fallbackTarget != SDIAppResolver.TARGET_MARKET && fallbackTarget != SDIAppResolver.TARGET_WEBSITE) throw new IllegalArgumentException("Parameter fallbackTarget should be TARGET_MARKET or TARGET_WEBSITE.");
+		if (maxEntries <= 0) throw new IllegalArgumentException("Parameter maxEntries should be positive.");
+		mContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+		mAffiliateId = affiliateId;
+		mFallbackTarget = fallbackTarget;
+		mMaxEntries = maxEntries;
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * methods
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Returns a PendingIntent that performs a search on the given query.
+	 * @see SDIIntent.Builder#buildSearchIntent(String)
+	 */
+	public PendingIntent search7digital(String query) {
+		return getActivity(SDIIntent.Builder.buildSearchIntent(query));
+	}
+
+	/**
+	 * Returns a PendingIntent that displays the release details of the given release.
+	 * @see SDIIntent.Builder#buildView7digitalRelease(long)
+	 */
+	public PendingIntent view7digitalRelease(long releaseId) {
+		return getActivity(SDIIntent.Builder.buildView7digitalRelease(releaseId));
+	}
+
+	/**
+	 * Returns a PendingIntent that displays the release details of the given release, highlighting the given track.
+	 * @see SDIIntent.Builder#buildView7digitalTrack(long, long)
+	 */
+	public PendingIntent view7digitalTrack(long releaseId, long trackId) {
+		return getActivity(SDIIntent.Builder.buildView7digitalTrack(releaseId, trackId));
+	}
+
+	/**
+	 * Returns a PendingIntent that displays the release details of the given release, using the details passed in until
+	 * the full details are loaded.
+	 * @see SDIIntent.Builder#buildView7digitalItem(long, String, long, String, String, String, long, String)
+	 */
+	public PendingIntent view7digitalItem(long releaseId, String releaseTitle, long trackId, String trackTitle, String trackVersion, String coverUrl, long artistId, String artistName) {
+		return getActivity(SDIIntent.Builder.buildView7digitalItem(releaseId, releaseTitle, trackId, trackTitle, trackVersion, coverUrl, artistId, artistName));
+	}
+
+	/**
+	 * Returns a PendingIntent that displays the artist details of the given artist.
+	 * @see SDIIntent.Builder#buildView7digitalArtist(long, String)
+	 */
+	public PendingIntent view7digitalArtist(long artistId, String artistName) {
+		return getActivity(SDIIntent.Builder.buildView7digitalArtist(artistId, artistName));
+	}
+
+	/**
+	 * Returns a PendingIntent that plays the given release.
+	 * @see SDIIntent.Builder#buildPlay7digitalRelease(long)
+	 */
+	public PendingIntent play7digitalRelease(long releaseId) {
+		return getActivity(SDIIntent.Builder.buildPlay7digitalRelease(releaseId));
+	}
+
+	/**
+	 * Returns a PendingIntent that plays the given track of the given release.
+	 * @see SDIIntent.Builder#buildPlay7digitalTrack(long, long)
+	 */
+	public PendingIntent play7digitalTrack(long releaseId, long trackId) {
+		return getActivity(SDIIntent.Builder.buildPlay7digitalTrack(releaseId, trackId));
+	}
+
+	/**
+	 * Returns a PendingIntent for an Intent built elsewhere, e.g. by {@link SDIIntent.Builder} or
+	 * {@link SDIPayload#newIntent(SDIRequest)}. The Intent is validated, compact Intents are expanded into the regular
+	 * extras, and it gets this pool's affiliate identifier if it has none; it should not be modified afterwards.
+	 * @param intent The Intent that starts the 7digital Android app.
+	 * @return The PendingIntent, or <b>null</b> if neither the app nor the fallback is available.
+	 */
+	public synchronized PendingIntent getActivity(Intent intent) {
+		SDILaunch.validate(intent);
+		// the payload is part of the launch, so it has to be in the extras the fingerprint is taken from
+		SDILaunch.expandPayload(intent);
+		if (mAffiliateId != null && !intent.hasExtra(SDIIntent.Extra.PARTNER)) intent.putExtra(SDIIntent.Extra.PARTNER, mAffiliateId);
+		intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+
+		// the target is part of the key, so that installing the app moves new PendingIntents over to it
+		int target = SDIAppResolver.resolveTarget(mContext, intent, mFallbackTarget);
+		if (target == SDIAppResolver.TARGET_NONE) return null;
+		long key = SDILaunchGovernor.fingerprint(intent) * 31 + target;
+
+		// the Intent itself is compared, so that a changed title or a colliding key never gets a stale PendingIntent
+		Entry entry = mEntries.get(key);
+		if (entry != null && entry.intent.filterEquals(intent) && equalExtras(entry.intent.getExtras(), intent.getExtras())) return entry.pendingIntent;
+		if (entry != null) {
+			entry.intent = new Intent(intent);
+			entry.pendingIntent = PendingIntent.getActivity(mContext, entry.requestCode, launchIntent(intent, target), PendingIntent.FLAG_UPDATE_CURRENT);
+			return entry.pendingIntent;
+		}
+
+		// make room first, so that the code of the evicted entry can be handed out again
+		for (Iterator<Entry> it = mEntries.values().iterator(); mEntries.size() >= mMaxEntries && it.hasNext(); ) {
+			Entry eldest = it.next();
+			it.remove();
+			mRequestCodes.remove(eldest.requestCode);
+			eldest.pendingIntent.cancel();
+		}
+		// probe past request codes in use, as a shared code would make two launches share their extras
+		int requestCode = (int) (key ^ (key >>> 32));
+		while (!mRequestCodes.add(requestCode)) requestCode++;
+		entry = new Entry(requestCode, new Intent(intent), PendingIntent.getActivity(mContext, requestCode, launchIntent(intent, target), PendingIntent.FLAG_UPDATE_CURRENT));
+		mEntries.put(key, entry);
+		return entry.pendingIntent;
+	}
+
+	/**
+	 * Cancels all PendingIntents in the pool, e.g. when the user signs out and their notifications are removed.
+	 */
+	public synchronized void cancelAll() {
+		for (Entry entry : mEntries.values()) entry.pendingIntent.cancel();
+		mEntries.clear();
+		mRequestCodes.clear();
+	}
+
+	/**
+	 * Returns the number of PendingIntents in the pool.
+	 */
+	public synchronized int size() {
+		return mEntries.size();
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * internal
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private Intent launchIntent(Intent intent, int target) {
+		switch (target) {
+			case SDIAppResolver.TARGET_MARKET: return viewIntent(SDIAppResolver.MARKET_QUERY);
+			// deep link to the matching page rather than the homepage
+			case SDIAppResolver.TARGET_WEBSITE: return viewIntent(new SDIWebLinkBuilder().buildString(intent));
+			default: return intent;
+		}
+	}
+
+	private static Intent viewIntent(String uri) {
+		return new Intent(Intent.ACTION_VIEW, Uri.parse(uri)).addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+	}
+
+	/* Bundle has no equals(); the extras put by SDIIntent.Builder are Strings and boxed primitives */
+	private static boolean equalExtras(Bundle a, Bundle b) {
+		if (a == null || b == null) return a == b;
+		if (a.size() != b.size()) return false;
+		for (String name : a.keySet()) {
+			Object value = a.get(name);
+			if (value != null ? !value.equals(b.get(name)) : b.get(name) != null || !b.containsKey(name)) return false;
+		}
+		return true;
+	}
+
+	private static final class Entry {
+
+		final int requestCode;
+		/* a copy of the Intent the PendingIntent was created for */
+		Intent intent;
+		PendingIntent pendingIntent;
+
+		Entry(int requestCode, Intent intent, PendingIntent pendingIntent) {
+			this.requestCode = requestCode;
+			this.intent = intent;
+			this.pendingIntent = pendingIntent;
+		}
+	}
+
+}
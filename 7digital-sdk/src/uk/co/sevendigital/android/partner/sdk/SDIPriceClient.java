@@ -0,0 +1,686 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Looks up the price and availability of releases and tracks, keyed by the same 7digital identifiers as
+ * {@link SDIIntent.Builder#buildView7digitalRelease(long)} and {@link SDIIntent.Builder#buildView7digitalTrack(long, long)},
+ * e.g. to show a price and a 'buy' or 'owned' state next to a buy button.
+ *
+ * Lookups made within a few milliseconds of each other, such as those for the rows of a list being bound, are batched
+ * into requests for up to {@link #MAX_BATCH_SIZE} identifiers, and concurrent lookups of the same identifier share a
+ * request. Results are cached in memory for a time to live; once that has passed, the cached value is still served for a
+ * while (see {@link #DEFAULT_MAX_STALE_MILLIS}) while it is fetched again in the background. The cache is persisted to
+ * the application's cache directory, so that a restarted process starts warm: batches wait for it to be loaded, and
+ * only fetch what it doesn't have.
+ *
+ * Prices are fetched by a {@link Fetcher}, either an {@link HttpFetcher} pointed at a price endpoint or one of the
+ * application's own. Callbacks are always delivered on the main thread.
+ */
+public class SDIPriceClient {
+
+	/**
+	 * Callback interface for receiving a looked up price. Always invoked on the main thread.
+	 */
+	public interface Callback {
+		/**
+		 * Called once the price has been fetched.
+		 * @param type Either {@link SDIPriceClient#TYPE_RELEASE} or {@link SDIPriceClient#TYPE_TRACK}.
+		 * @param id The 7digital identifier that was looked up.
+		 * @param price The price, or <b>null</b> if it could not be fetched and nothing usable was cached.
+		 */
+		void onPriceLoaded(int type, long id, Price price);
+	}
+
+	/**
+	 * Interface for fetching a batch of prices. Called on a background thread.
+	 */
+	public interface Fetcher {
+		/**
+		 * Fetches the prices of the given releases or tracks.
+		 * @param type Either {@link SDIPriceClient#TYPE_RELEASE} or {@link SDIPriceClient#TYPE_TRACK}.
+		 * @param ids The 7digital identifiers to fetch, at most {@link SDIPriceClient#MAX_BATCH_SIZE}.
+		 * @return The prices that were found; identifiers without a price are cached as {@link SDIPriceClient#STATE_UNAVAILABLE}.
+		 * @throws IOException If the prices could not be fetched, in which case nothing is cached.
+		 */
+		List<Price> fetch(int type, long[] ids) throws IOException;
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * constants
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private static final String TAG = "SDIPriceClient";
+
+	/** Item type: a release, identified by {@link SDIIntent.Extra#RELEASEID}. */
+	public static final int TYPE_RELEASE = 0;
+	/** Item type: a track, identified by {@link SDIIntent.Extra#TRACKID}. */
+	public static final int TYPE_TRACK = 1;
+
+	/** Availability: the item can be bought. */
+	public static final int STATE_AVAILABLE = 1;
+	/** Availability: the item can not be bought, e.g. in the user's territory, or is not known. */
+	public static final int STATE_UNAVAILABLE = 2;
+	/** Availability: the user already owns the item. */
+	public static final int STATE_OWNED = 3;
+
+	/** Name of the cache file, stored in the application's cache directory. */
+	public static final String CACHE_FILE_NAME = "sdi_prices.dat";
+	/** Default time a price is served without fetching it again. */
+	public static final long DEFAULT_TTL_MILLIS = 15 * 60 * 1000;
+	/** Default time a price is still served, while being fetched again, after its time to live has passed. */
+	public static final long DEFAULT_MAX_STALE_MILLIS = 24 * 60 * 60 * 1000;
+	/** Default number of prices kept in the cache. */
+	public static final int DEFAULT_MAX_ENTRIES = 1000;
+	/** The largest number of identifiers fetched in a single request. */
+	public static final int MAX_BATCH_SIZE = 50;
+
+	/* long enough to gather the lookups of a frame, short enough not to be noticed */
+	private static final long BATCH_DELAY_MILLIS = 20;
+	private static final int THREADS = 2;
+	private static final int TIMEOUT_MILLIS = 15000;
+
+	private static final int MAGIC = 0x53444950; // "SDIP"
+	private static final int VERSION = 1;
+
+	private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * fields
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private final Fetcher mFetcher;
+	private final File mFile;
+	private final long mTtlMillis;
+	private final long mMaxStaleMillis;
+	private final int mMaxEntries;
+	private final ExecutorService mExecutor;
+
+	/* guarded by this; keyed by key(type, id), in access order */
+	private final LinkedHashMap<Long, Price> mCache = new LinkedHashMap<Long, Price>(64, 0.75f, true);
+	/* guarded by this; lookups queued or being fetched, by key */
+	private final Map<Long, Request> mRequests = new HashMap<Long, Request>();
+	/* guarded by this; per type, the identifiers queued for the next batch */
+	private final long[][] mPending = { new long[MAX_BATCH_SIZE], new long[MAX_BATCH_SIZE] };
+	private final int[] mPendingCount = new int[2];
+	private boolean mFlushScheduled;
+	private boolean mSaveScheduled;
+	/* guarded by this; bumped by clear(), so that batches fetched before it don't fill the emptied cache */
+	private int mEpoch;
+	private final CountDownLatch mLoaded = new CountDownLatch(1);
+	/* held while the cache file is read or written, as loads and saves may run on either executor thread */
+	private final Object mFileLock = new Object();
+
+	private final Runnable mFlush = new Runnable() {
+		@Override public void run() { flush(); }
+	};
+
+	/**
+	 * Creates a client with the default time to live, maximum staleness and cache size.
+	 * @param context Any Context of the application.
+	 * @param fetcher The fetcher to fetch prices with.
+	 */
+	public SDIPriceClient(Context context, Fetcher fetcher) {
+		this(context, fetcher, DEFAULT_TTL_MILLIS, DEFAULT_MAX_STALE_MILLIS, DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * Creates a client.
+	 * @param context Any Context of the application.
+	 * @param fetcher The fetcher to fetch prices with.
+	 * @param ttlMillis The time a price is served without fetching it again.
+	 * @param maxStaleMillis The time a price is still served, while being fetched again, after its time to live has passed.
+	 * @param maxEntries The number of prices kept in the cache.
+	 */
+	public SDIPriceClient(Context context, Fetcher fetcher, long ttlMillis, long maxStaleMillis, int maxEntries) {
+		if (context == null) throw new IllegalArgumentException("Parameter context should not be null.");
+		if (fetcher == null) throw new IllegalArgumentException("Parameter fetcher should not be null.");
+		if (ttlMillis <= 0) throw new IllegalArgumentException("Parameter ttlMillis should be positive.");
+		if (maxStaleMillis < 0) throw new IllegalArgumentException("Parameter maxStaleMillis should not be negative.");
+		if (maxEntries <= 0) throw new IllegalArgumentException("Parameter maxEntries should be positive.");
+		mFetcher = fetcher;
+		mFile = new File(context.getCacheDir(), CACHE_FILE_NAME);
+		mTtlMillis = ttlMillis;
+		mMaxStaleMillis = maxStaleMillis;
+		mMaxEntries = maxEntries;
+		mExecutor = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+			@Override public Thread newThread(final Runnable runnable) {
+				Thread thread = new Thread(new Runnable() {
+					@Override public void run() {
+						Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+						runnable.run();
+					}
+				}, TAG);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		mExecutor.execute(new Runnable() {
+			@Override public void run() { load(); }
+		});
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * util methods
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Looks up the price of the given release or track. A cached price is returned right away; if it is older than the
+	 * time to live, it is fetched again in the background and the fresh price is delivered to the callback. Otherwise
+	 * the price is fetched with the next batch and delivered to the callback.
+	 * @param type Either {@link #TYPE_RELEASE} or {@link #TYPE_TRACK}.
+	 * @param id The 7digital identifier of the release or track.
+	 * @param callback The callback to deliver a fetched price to, or <b>null</b> to only prefetch it.
+	 * @return The cached price, possibly stale, or <b>null</b> if none is cached.
+	 */
+	public synchronized Price get(int type, long id, Callback callback) {
+		long key = key(type, id);
+		long now = System.currentTimeMillis();
+		Price price = getUsable(key, now);
+		if (price != null && !isStale(price, now)) return price;
+		Request request = mRequests.get(key);
+		if (request == null) {
+			mRequests.put(key, request = new Request());
+			enqueue(type, id);
+		}
+		if (callback != null) request.callbacks.add(callback);
+		return price;
+	}
+
+	/**
+	 * Fetches the prices of the given releases or tracks that are not cached or are stale, without delivering them.
+	 * @param type Either {@link #TYPE_RELEASE} or {@link #TYPE_TRACK}.
+	 * @param ids The 7digital identifiers of the releases or tracks.
+	 */
+	public synchronized void prefetch(int type, long[] ids) {
+		if (ids == null) throw new IllegalArgumentException("Parameter ids should not be null.");
+		for (long id : ids) get(type, id, null);
+	}
+
+	/**
+	 * Returns the cached price of the given release or track, possibly stale, without fetching it.
+	 * @return The cached price, or <b>null</b> if none is cached.
+	 */
+	public synchronized Price getCached(int type, long id) {
+		return getUsable(key(type, id), System.currentTimeMillis());
+	}
+
+	/**
+	 * Returns whether the given price is older than the time to live, in which case it is being fetched again.
+	 */
+	public boolean isStale(Price price) {
+		return isStale(price, System.currentTimeMillis());
+	}
+
+	/**
+	 * Stops delivering the given price to the given callback, e.g. when the view it was meant for gets recycled. The
+	 * price is still fetched into the cache.
+	 */
+	public synchronized void cancel(int type, long id, Callback callback) {
+		Request request = mRequests.get(key(type, id));
+		if (request != null) request.callbacks.remove(callback);
+	}
+
+	/**
+	 * Empties the cache, in memory and on disk, e.g. when the user signs in or out and the owned states change.
+	 */
+	public synchronized void clear() {
+		mEpoch++;
+		mCache.clear();
+		scheduleSave();
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * cache
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/* identifiers are positive, which leaves the low bit for the type */
+	private static long key(int type, long id) {
+		if (type != TYPE_RELEASE && type != TYPE_TRACK) throw new IllegalArgumentException("Parameter type should be TYPE_RELEASE or TYPE_TRACK.");
+		if (id < 0) throw new IllegalArgumentException("Parameter id should not be negative.");
+		return id << 1 | type;
+	}
+
+	private boolean isStale(Price price, long now) {
+		return now - price.mFetchedAt >= mTtlMillis || now < price.mFetchedAt;
+	}
+
+	private boolean isUsable(Price price, long now) {
+		return now - price.mFetchedAt < mTtlMillis + mMaxStaleMillis && now >= price.mFetchedAt;
+	}
+
+	/* guarded by this */
+	private Price getUsable(long key, long now) {
+		Price price = mCache.get(key);
+		if (price == null || isUsable(price, now)) return price;
+		mCache.remove(key);
+		return null;
+	}
+
+	/* guarded by this */
+	private void put(Price price) {
+		mCache.put(key(price.mType, price.mId), price);
+		for (Iterator<Price> it = mCache.values().iterator(); mCache.size() > mMaxEntries && it.hasNext(); ) {
+			it.next();
+			it.remove();
+		}
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * batching
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/* guarded by this */
+	private void enqueue(int type, long id) {
+		mPending[type][mPendingCount[type]++] = id;
+		if (mPendingCount[type] == MAX_BATCH_SIZE) {
+			// a full batch doesn't wait for more
+			submit(type);
+		} else if (!mFlushScheduled) {
+			mFlushScheduled = true;
+			MAIN_HANDLER.postDelayed(mFlush, BATCH_DELAY_MILLIS);
+		}
+	}
+
+	private synchronized void flush() {
+		mFlushScheduled = false;
+		if (mPendingCount[TYPE_RELEASE] > 0) submit(TYPE_RELEASE);
+		if (mPendingCount[TYPE_TRACK] > 0) submit(TYPE_TRACK);
+	}
+
+	/* guarded by this */
+	private void submit(final int type) {
+		final long[] ids = new long[mPendingCount[type]];
+		System.arraycopy(mPending[type], 0, ids, 0, ids.length);
+		mPendingCount[type] = 0;
+		final int epoch = mEpoch;
+		mExecutor.execute(new Runnable() {
+			@Override public void run() { fetch(type, ids, epoch); }
+		});
+	}
+
+	private void fetch(final int type, final long[] ids, int epoch) {
+		// on a cold start, the lookups were made before the disk cache was loaded
+		awaitLoaded();
+		long[] missing;
+		synchronized (this) {
+			long now = System.currentTimeMillis();
+			int count = 0;
+			missing = new long[ids.length];
+			for (long id : ids) {
+				Price price = getUsable(key(type, id), now);
+				if (price == null || isStale(price, now)) missing[count++] = id;
+			}
+			if (count < ids.length) {
+				long[] trimmed = new long[count];
+				System.arraycopy(missing, 0, trimmed, 0, count);
+				missing = trimmed;
+			}
+		}
+
+		List<Price> fetched = null;
+		if (missing.length > 0) {
+			try {
+				fetched = mFetcher.fetch(type, missing);
+			} catch (IOException e) {
+				Log.w(TAG, "Unable to fetch " + missing.length + " prices: " + e);
+			} catch (RuntimeException e) {
+				Log.w(TAG, "Unable to fetch " + missing.length + " prices", e);
+			}
+		}
+
+		final Price[] prices = new Price[ids.length];
+		final List<List<Callback>> callbacks = new ArrayList<List<Callback>>(ids.length);
+		synchronized (this) {
+			if (epoch != mEpoch) {
+				// cleared while fetching, e.g. as the user signed in, so the prices may be out of date: fetch them again
+				for (long id : ids) if (mRequests.containsKey(key(type, id))) enqueue(type, id);
+				return;
+			}
+			long now = System.currentTimeMillis();
+			if (fetched != null) {
+				Map<Long, Price> found = new HashMap<Long, Price>();
+				for (Price price : fetched) if (price != null && price.mType == type) found.put(price.mId, price);
+				for (long id : missing) {
+					Price price = found.get(id);
+					put(price != null ? price : new Price(type, id, STATE_UNAVAILABLE, -1, null, null, now));
+				}
+				scheduleSave();
+			}
+			for (int i = 0; i < ids.length; i++) {
+				long key = key(type, ids[i]);
+				Request request = mRequests.remove(key);
+				prices[i] = getUsable(key, now);
+				callbacks.add(request != null ? request.callbacks : null);
+			}
+		}
+		MAIN_HANDLER.post(new Runnable() {
+			@Override public void run() {
+				for (int i = 0; i < ids.length; i++) {
+					List<Callback> list = callbacks.get(i);
+					if (list != null) for (Callback callback : list) callback.onPriceLoaded(type, ids[i], prices[i]);
+				}
+			}
+		});
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * persistence
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/* guarded by this; saves are coalesced, as a burst of batches only needs the last one written */
+	private void scheduleSave() {
+		if (mSaveScheduled) return;
+		mSaveScheduled = true;
+		mExecutor.execute(new Runnable() {
+			@Override public void run() { save(); }
+		});
+	}
+
+	private void save() {
+		synchronized (mFileLock) {
+			saveFile();
+		}
+	}
+
+	/* guarded by mFileLock; the snapshot is taken under it too, so that a later save never loses to an earlier one */
+	private void saveFile() {
+		List<Price> prices;
+		synchronized (this) {
+			mSaveScheduled = false;
+			prices = new ArrayList<Price>(mCache.values());
+		}
+		File temp = new File(mFile.getPath() + ".tmp");
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(prices.size());
+				// least recently used first, so that loading restores the order
+				for (Price price : prices) {
+					out.writeByte(price.mType);
+					out.writeLong(price.mId);
+					out.writeByte(price.mState);
+					out.writeLong(price.mPriceMicros);
+					writeString(out, price.mCurrency);
+					writeString(out, price.mFormattedPrice);
+					out.writeLong(price.mFetchedAt);
+				}
+			} finally {
+				out.close();
+			}
+			if (!temp.renameTo(mFile)) throw new IOException("Unable to rename " + temp + " to " + mFile);
+		} catch (IOException e) {
+			Log.w(TAG, "Unable to save " + mFile + ": " + e);
+			temp.delete();
+		}
+	}
+
+	private void awaitLoaded() {
+		try {
+			mLoaded.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/* prices fetched while loading are newer than the ones on disk and are kept */
+	private void load() {
+		try {
+			synchronized (mFileLock) {
+				loadFile();
+			}
+		} finally {
+			mLoaded.countDown();
+		}
+	}
+
+	/* guarded by mFileLock; a file that can't be read is deleted, so that the cache starts empty and is saved afresh */
+	private void loadFile() {
+		DataInputStream in;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+		} catch (FileNotFoundException e) {
+			return;
+		}
+		int epoch;
+		synchronized (this) {
+			epoch = mEpoch;
+		}
+		boolean corrupt = true;
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) throw new IOException("Unknown format");
+			int count = in.readInt();
+			if (count < 0 || count > mMaxEntries) throw new IOException("Corrupt count " + count);
+			List<Price> prices = new ArrayList<Price>(count);
+			for (int i = 0; i < count; i++) {
+				int type = in.readByte();
+				long id = in.readLong();
+				int state = in.readByte();
+				long priceMicros = in.readLong();
+				String currency = readString(in);
+				String formattedPrice = readString(in);
+				long fetchedAt = in.readLong();
+				if (type != TYPE_RELEASE && type != TYPE_TRACK || id < 0) throw new IOException("Corrupt entry " + i);
+				prices.add(new Price(type, id, state, priceMicros, currency, formattedPrice, fetchedAt));
+			}
+			corrupt = false;
+			synchronized (this) {
+				// cleared while loading, so what is on disk is out of date
+				if (epoch != mEpoch) return;
+				long now = System.currentTimeMillis();
+				LinkedHashMap<Long, Price> newer = new LinkedHashMap<Long, Price>(mCache);
+				mCache.clear();
+				for (Price price : prices) if (isUsable(price, now)) put(price);
+				for (Price price : newer.values()) put(price);
+			}
+		} catch (IOException e) {
+			Log.w(TAG, "Unable to load " + mFile + ": " + e);
+		} catch (RuntimeException e) {
+			Log.w(TAG, "Unable to load " + mFile + ": " + e);
+		} catch (OutOfMemoryError e) {
+			Log.w(TAG, "Unable to load " + mFile + ": " + e);
+		} finally {
+			try { in.close(); } catch (IOException e) { /* ignore */ }
+			if (corrupt) mFile.delete();
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) out.writeUTF(value);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * classes
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/* the callbacks waiting for a lookup; guarded by the client */
+	private static final class Request {
+		final List<Callback> callbacks = new ArrayList<Callback>(1);
+	}
+
+	/**
+	 * The price and availability of a release or track.
+	 */
+	public static final class Price {
+
+		final int mType;
+		final long mId;
+		final int mState;
+		final long mPriceMicros;
+		final String mCurrency;
+		final String mFormattedPrice;
+		final long mFetchedAt;
+
+		/**
+		 * Creates a price fetched just now.
+		 * @param type Either {@link SDIPriceClient#TYPE_RELEASE} or {@link SDIPriceClient#TYPE_TRACK}.
+		 * @param id The 7digital identifier of the release or track.
+		 * @param state One of {@link SDIPriceClient#STATE_AVAILABLE}, {@link SDIPriceClient#STATE_UNAVAILABLE} or
+		 * {@link SDIPriceClient#STATE_OWNED}.
+		 * @param priceMicros The price in millionths of the currency unit, or <b>-1</b> if unknown.
+		 * @param currency The ISO 4217 code of the currency, or <b>null</b>.
+		 * @param formattedPrice The price formatted for display, e.g. "£7.99", or <b>null</b>.
+		 */
+		public Price(int type, long id, int state, long priceMicros, String currency, String formattedPrice) {
+			this(type, id, state, priceMicros, currency, formattedPrice, System.currentTimeMillis());
+			if (type != TYPE_RELEASE && type != TYPE_TRACK) throw new IllegalArgumentException("Parameter type should be TYPE_RELEASE or TYPE_TRACK.");
+			if (state != STATE_AVAILABLE && state != STATE_UNAVAILABLE && state != STATE_OWNED) throw new IllegalArgumentException("Parameter state should be STATE_AVAILABLE, STATE_UNAVAILABLE or STATE_OWNED.");
+		}
+
+		Price(int type, long id, int state, long priceMicros, String currency, String formattedPrice, long fetchedAt) {
+			mType = type;
+			mId = id;
+			mState = state;
+			mPriceMicros = priceMicros;
+			mCurrency = currency;
+			mFormattedPrice = formattedPrice;
+			mFetchedAt = fetchedAt;
+		}
+
+		/** Returns either {@link SDIPriceClient#TYPE_RELEASE} or {@link SDIPriceClient#TYPE_TRACK}. */
+		public int getType() {
+			return mType;
+		}
+
+		/** Returns the 7digital identifier of the release or track. */
+		public long getId() {
+			return mId;
+		}
+
+		/** Returns one of {@link SDIPriceClient#STATE_AVAILABLE}, {@link SDIPriceClient#STATE_UNAVAILABLE} or {@link SDIPriceClient#STATE_OWNED}. */
+		public int getState() {
+			return mState;
+		}
+
+		/** Returns the price in millionths of the currency unit, or <b>-1</b> if unknown. */
+		public long getPriceMicros() {
+			return mPriceMicros;
+		}
+
+		/** Returns the ISO 4217 code of the currency, or <b>null</b>. */
+		public String getCurrency() {
+			return mCurrency;
+		}
+
+		/** Returns the price formatted for display, or <b>null</b>. */
+		public String getFormattedPrice() {
+			return mFormattedPrice;
+		}
+
+		/** Returns when the price was fetched, in {@link System#currentTimeMillis()}. */
+		public long getFetchedAt() {
+			return mFetchedAt;
+		}
+
+		@Override public String toString() {
+			return "Price[" + (mType == TYPE_RELEASE ? "release " : "track ") + mId + ", state " + mState + ", " + mFormattedPrice + "]";
+		}
+	}
+
+	/**
+	 * Fetches prices from an HTTP endpoint, with a GET request for
+	 * <code>&lt;endpoint&gt;?type=release&amp;ids=1347415,1347416</code> (or <code>type=track</code>) that answers with:
+	 * <pre>
+	 * { "prices": [ { "id": 1347415, "state": "available", "priceMicros": 7990000, "currency": "GBP", "formattedPrice": "£7.99" } ] }
+	 * </pre>
+	 * where the state is one of <code>available</code>, <code>unavailable</code> or <code>owned</code>, and all fields but
+	 * <code>id</code> and <code>state</code> are optional.
+	 */
+	public static class HttpFetcher implements Fetcher {
+
+		private final String mEndpoint;
+
+		/**
+		 * Creates a fetcher for the given endpoint.
+		 * @param endpoint The URL of the endpoint, without query.
+		 */
+		public HttpFetcher(String endpoint) {
+			if (endpoint == null) throw new IllegalArgumentException("Parameter endpoint should not be null.");
+			mEndpoint = endpoint;
+		}
+
+		@Override public List<Price> fetch(int type, long[] ids) throws IOException {
+			StringBuilder url = new StringBuilder(mEndpoint).append("?type=").append(type == TYPE_RELEASE ? "release" : "track").append("&ids=");
+			for (int i = 0; i < ids.length; i++) url.append(i == 0 ? "" : ",").append(ids[i]);
+			HttpURLConnection connection = (HttpURLConnection) new URL(url.toString()).openConnection();
+			try {
+				connection.setConnectTimeout(TIMEOUT_MILLIS);
+				connection.setReadTimeout(TIMEOUT_MILLIS);
+				if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) throw new IOException("Unexpected response " + connection.getResponseCode() + " for " + url);
+				InputStream in = connection.getInputStream();
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				try {
+					byte[] buffer = new byte[8192];
+					for (int read; (read = in.read(buffer)) != -1; ) out.write(buffer, 0, read);
+				} finally {
+					in.close();
+				}
+				return parse(type, out.toString("UTF-8"));
+			} finally {
+				connection.disconnect();
+			}
+		}
+
+		static List<Price> parse(int type, String json) throws IOException {
+			try {
+				JSONArray array = new JSONObject(json).getJSONArray("prices");
+				List<Price> prices = new ArrayList<Price>(array.length());
+				for (int i = 0; i < array.length(); i++) {
+					JSONObject item = array.getJSONObject(i);
+					String state = item.getString("state");
+					prices.add(new Price(type, item.getLong("id"),
+						"owned".equals(state) ? STATE_OWNED : "available".equals(state) ? STATE_AVAILABLE : STATE_UNAVAILABLE,
+						item.optLong("priceMicros", -1), optString(item, "currency"), optString(item, "formattedPrice")));
+				}
+				return prices;
+			} catch (JSONException e) {
+				throw new IOException("Malformed prices: " + e.getMessage());
+			}
+		}
+
+		/* optString() turns a JSON null into "null" */
+		private static String optString(JSONObject item, String name) throws JSONException {
+			return item.isNull(name) ? null : item.getString(name);
+		}
+	}
+
+}
@@ -0,0 +1,616 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.zip.CRC32;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.util.Log;
+
+/**
+ * A bounded store of the releases, tracks and artists the user recently opened in the 7digital Android app, ranked by
+ * frecency: every visit counts, but its weight halves every {@link #HALF_LIFE_MILLIS}, so that an item opened often
+ * a while ago and one opened once just now both rank high. The top items are published as launcher shortcuts (API
+ * level 25 and up), which start the 7digital app on the item directly, without going through the partner app.
+ *
+ * The store keeps its items in primitive arrays with a hash index, so recording a visit takes constant time; only a
+ * new item arriving in a full store scans the fixed capacity for the lowest ranked item to replace. The arrays are
+ * mirrored in a file of fixed size, one record per slot, and only the records of changed items are rewritten. All file
+ * and shortcut work happens on a background thread; recording a visit only updates the arrays.
+ *
+ * Once installed with {@link #install(Context, String)}, every release, artist and play handoff to the 7digital app
+ * made by the SDK is recorded automatically. Items are only published as shortcuts once they have a label, i.e. once
+ * they were opened with a title or artist name, e.g. through
+ * {@link SDIPartnerUtil#view7digitalItem(Context, long, String, long, String, String, String, long, String, String)}.
+ */
+public class SDIRecentItems {
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * constants
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private static final String TAG = "SDIRecentItems";
+
+	/** Name of the file, stored in the application's files directory. */
+	public static final String FILE_NAME = "sdi_recent_items.dat";
+	/** Default number of items kept. */
+	public static final int DEFAULT_CAPACITY = 32;
+	/** Default number of items published as launcher shortcuts. */
+	public static final int DEFAULT_MAX_SHORTCUTS = 4;
+	/** The time after which a visit counts half. */
+	public static final long HALF_LIFE_MILLIS = 7L * 24 * 60 * 60 * 1000;
+
+	private static final int MAGIC = 0x53444952; // "SDIR"
+	private static final int VERSION = 1;
+	/* header: magic, version, capacity */
+	private static final int HEADER_SIZE = 12;
+	/* longer labels are cut off, launchers show far less anyway */
+	private static final int LABEL_CHARS = 40;
+	/* record: action, label length, release, track and artist ID, frecency, label, crc */
+	private static final int RECORD_SIZE = 1 + 1 + 3 * 8 + 8 + 2 * LABEL_CHARS + 4;
+	private static final byte EMPTY = -1;
+
+	private static final int VIEW_RELEASE = SDIIntentTemplate.indexOf(SDIIntent.Action.VIEW_RELEASE);
+	private static final int VIEW_ARTIST = SDIIntentTemplate.indexOf(SDIIntent.Action.VIEW_ARTIST);
+	private static final int PLAY_RELEASE = SDIIntentTemplate.indexOf(SDIIntent.Action.PLAY_RELEASE);
+	private static final int PLAY_TRACK = SDIIntentTemplate.indexOf(SDIIntent.Action.PLAY_TRACK);
+
+	private static final String SHORTCUT_ID_PREFIX = "sdi_recent_";
+	private static final int SHORTCUTS_API_LEVEL = 25;
+	private static final double LN_2 = Math.log(2);
+
+	private static volatile SDIRecentItems sInstance;
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * fields
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private final Context mContext;
+	private final File mFile;
+	private final int mCapacity;
+	private final int mMaxShortcuts;
+	private final String mAffiliateId;
+
+	/* guarded by this; one item per slot, the action index of a free slot is EMPTY */
+	private final byte[] mActions;
+	private final long[] mReleaseIds;
+	private final long[] mTrackIds;
+	private final long[] mArtistIds;
+	/* log2 of the sum of 2^(t / half-life) over the visits at times t, which ranks items the same at any later time */
+	private final double[] mFrecencies;
+	private final char[] mLabels;
+	/* unsigned, see labelLength() */
+	private final byte[] mLabelLengths;
+	private final boolean[] mDirty;
+	/* guarded by this; open addressing from an item to its slot + 1, 0 if free */
+	private final int[] mIndex;
+	private final int[] mFreeSlots;
+	private int mFreeCount;
+	private boolean mFlushScheduled;
+	private boolean mPublishScheduled;
+
+	/* only accessed on the dispatcher thread */
+	private RandomAccessFile mRandomAccessFile;
+	private final byte[] mFileBuffer;
+	private final CRC32 mCrc = new CRC32();
+	private String mPublished = "";
+
+	/**
+	 * Creates a store backed by the given file. Most apps should use {@link #install(Context, String)} instead.
+	 * @param context Any Context of the application; the store only keeps the application context.
+	 * @param file The file to keep the items in.
+	 * @param capacity The number of items kept.
+	 * @param maxShortcuts The number of items published as launcher shortcuts, at most.
+	 * @param affiliateId Identifier for the affiliate/partner added to the shortcuts, or <b>null</b>.
+	 */
+	public SDIRecentItems(Context context, File file, int capacity, int maxShortcuts, String affiliateId) {
+		if (context == null) throw new IllegalArgumentException("Parameter context should not be null.");
+		if (file == null) throw new IllegalArgumentException("Parameter file should not be null.");
+		if (capacity <= 0 || capacity > 1024) throw new IllegalArgumentException("Parameter capacity should be between 1 and 1024.");
+		if (maxShortcuts < 0) throw new IllegalArgumentException("Parameter maxShortcuts should not be negative.");
+		mContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+		mFile = file;
+		mCapacity = capacity;
+		mMaxShortcuts = maxShortcuts;
+		mAffiliateId = affiliateId;
+		mActions = new byte[capacity];
+		mReleaseIds = new long[capacity];
+		mTrackIds = new long[capacity];
+		mArtistIds = new long[capacity];
+		mFrecencies = new double[capacity];
+		mLabels = new char[capacity * LABEL_CHARS];
+		mLabelLengths = new byte[capacity];
+		mDirty = new boolean[capacity];
+		mIndex = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+		mFreeSlots = new int[capacity];
+		mFileBuffer = new byte[capacity * RECORD_SIZE];
+		clearSlots();
+		// shortcuts to the 7digital app have to go when it is removed
+		SDIAppResolver.watchPackages(mContext);
+		SDIPartnerDispatcher.submit(new Callable<Void>() {
+			@Override public Void call() { load(); return null; }
+		});
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * util methods
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Installs a store in the application's files directory, after which every release, artist and play handoff to the
+	 * 7digital app made by the SDK is recorded. Subsequent calls return the store installed first.
+	 * @param context Context used to find the files directory.
+	 * @param affiliateId Identifier for the affiliate/partner added to the shortcuts, or <b>null</b>.
+	 */
+	public static synchronized SDIRecentItems install(Context context, String affiliateId) {
+		if (context == null) throw new IllegalArgumentException("Parameter context should not be null.");
+		if (sInstance == null) sInstance = new SDIRecentItems(context, new File(context.getFilesDir(), FILE_NAME), DEFAULT_CAPACITY, DEFAULT_MAX_SHORTCUTS, affiliateId);
+		return sInstance;
+	}
+
+	/**
+	 * Returns the installed store, or <b>null</b> if none was installed.
+	 */
+	public static SDIRecentItems getInstance() {
+		return sInstance;
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * methods
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Records a visit to the item the given Intent opens, as built by {@link SDIIntent.Builder}. The label is taken from
+	 * the track title, release title or artist name extras.
+	 * @param intent The Intent that was sent to the 7digital app.
+	 * @return Whether the visit was recorded, which it is not for actions other than {@link SDIIntent.Action#VIEW_RELEASE},
+	 * {@link SDIIntent.Action#VIEW_ARTIST}, {@link SDIIntent.Action#PLAY_RELEASE} and {@link SDIIntent.Action#PLAY_TRACK},
+	 * or without the identifiers they require.
+	 */
+	public boolean record(Intent intent) {
+		if (intent == null) throw new IllegalArgumentException("Parameter intent should not be null.");
+		int action = SDIIntentTemplate.indexOf(intent.getAction());
+		long releaseId = intent.getLongExtra(SDIIntent.Extra.RELEASEID, -1);
+		long trackId = intent.getLongExtra(SDIIntent.Extra.TRACKID, -1);
+		long artistId = intent.getLongExtra(SDIIntent.Extra.ARTISTID, -1);
+		if (!isRecordable(action, releaseId, trackId, artistId)) return false;
+		String label;
+		if (action == VIEW_ARTIST) {
+			label = intent.getStringExtra(SDIIntent.Extra.ARTISTNAME);
+		} else {
+			label = trackId != -1 ? intent.getStringExtra(SDIIntent.Extra.TRACKTITLE) : null;
+			if (label == null) label = intent.getStringExtra(SDIIntent.Extra.RELEASETITLE);
+		}
+		record(action, releaseId, trackId, artistId, label, System.currentTimeMillis());
+		return true;
+	}
+
+	/**
+	 * Records a visit to the given item, e.g. one opened without the SDK.
+	 * @param action One of {@link SDIIntent.Action#VIEW_RELEASE}, {@link SDIIntent.Action#VIEW_ARTIST},
+	 * {@link SDIIntent.Action#PLAY_RELEASE} and {@link SDIIntent.Action#PLAY_TRACK}.
+	 * @param releaseId The 7digital identifier for the release, or <b>-1</b> for an artist.
+	 * @param trackId The 7digital identifier for the track, or <b>-1</b>.
+	 * @param artistId The 7digital identifier for the artist, or <b>-1</b> unless viewing an artist.
+	 * @param label The title or name to show for the item, or <b>null</b> to keep the one recorded before.
+	 */
+	public void record(String action, long releaseId, long trackId, long artistId, String label) {
+		int index = SDIIntentTemplate.indexOf(action);
+		if (index != VIEW_RELEASE && index != VIEW_ARTIST && index != PLAY_RELEASE && index != PLAY_TRACK) throw new IllegalArgumentException("Parameter action should be VIEW_RELEASE, VIEW_ARTIST, PLAY_RELEASE or PLAY_TRACK.");
+		if (!isRecordable(index, releaseId, trackId, artistId)) throw new IllegalArgumentException("Parameters releaseId, trackId and artistId should identify an item for the action.");
+		record(index, releaseId, trackId, artistId, label, System.currentTimeMillis());
+	}
+
+	/**
+	 * Returns Intents that open the most frecent items, most frecent first, with this store's affiliate identifier.
+	 * @param count The number of items to return, at most.
+	 */
+	public List<Intent> getTopIntents(int count) {
+		if (count < 0) throw new IllegalArgumentException("Parameter count should not be negative.");
+		synchronized (this) {
+			int[] slots = top(count, false);
+			List<Intent> intents = new ArrayList<Intent>(slots.length);
+			for (int slot : slots) intents.add(buildIntent(slot));
+			return intents;
+		}
+	}
+
+	/**
+	 * Returns the number of items in the store.
+	 */
+	public synchronized int size() {
+		return mCapacity - mFreeCount;
+	}
+
+	/**
+	 * Removes all items, from the file as well, and removes their launcher shortcuts, e.g. when the user signs out.
+	 */
+	public synchronized void clear() {
+		clearSlots();
+		Arrays.fill(mDirty, true);
+		scheduleFlush();
+		schedulePublish();
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * internal
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/* the 7digital app was installed, updated or removed, which may change which shortcuts can be published */
+	synchronized void republish() {
+		schedulePublish();
+	}
+
+	private static boolean isRecordable(int action, long releaseId, long trackId, long artistId) {
+		if (action == VIEW_ARTIST) return artistId != -1;
+		if (action == PLAY_TRACK) return releaseId != -1 && trackId != -1;
+		return (action == VIEW_RELEASE || action == PLAY_RELEASE) && releaseId != -1;
+	}
+
+	private synchronized void record(int action, long releaseId, long trackId, long artistId, String label, long now) {
+		// the artist of a release is not part of its identity, just remembered for the shortcut
+		if (action == VIEW_ARTIST) releaseId = trackId = -1;
+		double visit = (double) now / HALF_LIFE_MILLIS;
+		int slot = find(action, releaseId, trackId, action == VIEW_ARTIST ? artistId : -1);
+		if (slot != -1) {
+			mFrecencies[slot] = addVisits(mFrecencies[slot], visit);
+			if (artistId != -1) mArtistIds[slot] = artistId;
+		} else {
+			slot = allocate();
+			put(slot, action, releaseId, trackId, artistId, visit);
+		}
+		if (label != null && label.length() > 0) setLabel(slot, label);
+		mDirty[slot] = true;
+		scheduleFlush();
+		schedulePublish();
+	}
+
+	/* log2(2^a + 2^b), without overflowing */
+	private static double addVisits(double a, double b) {
+		double max = Math.max(a, b);
+		return max + Math.log(1 + Math.pow(2, Math.min(a, b) - max)) / LN_2;
+	}
+
+	/* guarded by this; returns a free slot, replacing the lowest ranked item if there is none */
+	private int allocate() {
+		if (mFreeCount > 0) return mFreeSlots[--mFreeCount];
+		int lowest = 0;
+		for (int i = 1; i < mCapacity; i++) if (mFrecencies[i] < mFrecencies[lowest]) lowest = i;
+		unindex(lowest);
+		return lowest;
+	}
+
+	/* guarded by this */
+	private void put(int slot, int action, long releaseId, long trackId, long artistId, double frecency) {
+		mActions[slot] = (byte) action;
+		mReleaseIds[slot] = releaseId;
+		mTrackIds[slot] = trackId;
+		mArtistIds[slot] = artistId;
+		mFrecencies[slot] = frecency;
+		mLabelLengths[slot] = 0;
+		index(slot);
+	}
+
+	/* guarded by this */
+	private void setLabel(int slot, CharSequence label) {
+		int length = Math.min(label.length(), LABEL_CHARS);
+		for (int i = 0; i < length; i++) mLabels[slot * LABEL_CHARS + i] = label.charAt(i);
+		mLabelLengths[slot] = (byte) length;
+	}
+
+	/* guarded by this */
+	private void clearSlots() {
+		Arrays.fill(mActions, EMPTY);
+		Arrays.fill(mIndex, 0);
+		// handed out from the end, so that slots fill up from the start of the file
+		for (int i = 0; i < mCapacity; i++) mFreeSlots[i] = mCapacity - 1 - i;
+		mFreeCount = mCapacity;
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * index (guarded by this)
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/* artistId is only part of the identity of artists, and -1 for everything else */
+	private int bucket(int action, long releaseId, long trackId, long artistId) {
+		long hash = ((action * 31L + releaseId) * 31 + trackId) * 31 + artistId;
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		return (int) hash & (mIndex.length - 1);
+	}
+
+	private int bucket(int slot) {
+		return bucket(mActions[slot], mReleaseIds[slot], mTrackIds[slot], mActions[slot] == VIEW_ARTIST ? mArtistIds[slot] : -1);
+	}
+
+	private int find(int action, long releaseId, long trackId, long artistId) {
+		int mask = mIndex.length - 1;
+		for (int i = bucket(action, releaseId, trackId, artistId); mIndex[i] != 0; i = (i + 1) & mask) {
+			int slot = mIndex[i] - 1;
+			if (mActions[slot] == action && mReleaseIds[slot] == releaseId && mTrackIds[slot] == trackId && (action != VIEW_ARTIST || mArtistIds[slot] == artistId)) return slot;
+		}
+		return -1;
+	}
+
+	private void index(int slot) {
+		int mask = mIndex.length - 1;
+		int i = bucket(slot);
+		while (mIndex[i] != 0) i = (i + 1) & mask;
+		mIndex[i] = slot + 1;
+	}
+
+	/* removes the slot from the index, shifting back the entries after it that would no longer be found otherwise */
+	private void unindex(int slot) {
+		int mask = mIndex.length - 1;
+		int hole = bucket(slot);
+		while (mIndex[hole] != slot + 1) hole = (hole + 1) & mask;
+		for (int i = (hole + 1) & mask; mIndex[i] != 0; i = (i + 1) & mask) {
+			int home = bucket(mIndex[i] - 1);
+			if (((i - home) & mask) >= ((i - hole) & mask)) {
+				mIndex[hole] = mIndex[i];
+				hole = i;
+			}
+		}
+		mIndex[hole] = 0;
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * ranking (guarded by this)
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/* the slots of the most frecent items, most frecent first; a selection, as count is small */
+	private int[] top(int count, boolean labelledOnly) {
+		int[] slots = new int[Math.min(count, mCapacity - mFreeCount)];
+		int found = 0;
+		for (int slot = 0; slot < mCapacity; slot++) {
+			if (mActions[slot] == EMPTY || (labelledOnly && mLabelLengths[slot] == 0)) continue;
+			int i = found < slots.length ? found++ : slots.length;
+			while (i > 0 && mFrecencies[slots[i - 1]] < mFrecencies[slot]) {
+				if (i < slots.length) slots[i] = slots[i - 1];
+				i--;
+			}
+			if (i < slots.length) slots[i] = slot;
+		}
+		if (found == slots.length) return slots;
+		int[] result = new int[found];
+		System.arraycopy(slots, 0, result, 0, found);
+		return result;
+	}
+
+	private Intent buildIntent(int slot) {
+		Intent intent;
+		int action = mActions[slot];
+		if (action == VIEW_ARTIST) intent = SDIIntent.Builder.buildView7digitalArtist(mArtistIds[slot], label(slot));
+		else if (action == PLAY_RELEASE) intent = SDIIntent.Builder.buildPlay7digitalRelease(mReleaseIds[slot]);
+		else if (action == PLAY_TRACK) intent = SDIIntent.Builder.buildPlay7digitalTrack(mReleaseIds[slot], mTrackIds[slot]);
+		else intent = SDIIntent.Builder.buildView7digitalItem(mReleaseIds[slot], null, mTrackIds[slot], null, null, null, mArtistIds[slot], null);
+		if (mAffiliateId != null) intent.putExtra(SDIIntent.Extra.PARTNER, mAffiliateId);
+		return intent;
+	}
+
+	private String label(int slot) {
+		int length = labelLength(slot);
+		return length > 0 ? new String(mLabels, slot * LABEL_CHARS, length) : null;
+	}
+
+	/* lengths are stored in a byte, and read back unsigned in memory and in the file alike */
+	private int labelLength(int slot) {
+		return mLabelLengths[slot] & 0xFF;
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * file (dispatcher thread)
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/* guarded by this */
+	private void scheduleFlush() {
+		if (mFlushScheduled) return;
+		mFlushScheduled = true;
+		SDIPartnerDispatcher.submit(new Callable<Void>() {
+			@Override public Void call() { flush(); return null; }
+		});
+	}
+
+	/* visits recorded while loading are newer than the ones in the file and are merged with them */
+	private void load() {
+		boolean loaded = false;
+		try {
+			if (open()) {
+				mRandomAccessFile.seek(HEADER_SIZE);
+				mRandomAccessFile.readFully(mFileBuffer);
+				loaded = true;
+			}
+		} catch (IOException e) {
+			Log.w(TAG, "Unable to load " + mFile + ": " + e);
+		}
+		synchronized (this) {
+			ByteBuffer buffer = ByteBuffer.wrap(mFileBuffer);
+			for (int record = 0; loaded && record < mCapacity; record++) {
+				int offset = record * RECORD_SIZE;
+				if (!isValidRecord(offset)) continue;
+				int action = buffer.get(offset);
+				long releaseId = buffer.getLong(offset + 2);
+				long trackId = buffer.getLong(offset + 10);
+				long artistId = buffer.getLong(offset + 18);
+				double frecency = buffer.getDouble(offset + 26);
+				int slot = find(action, releaseId, trackId, action == VIEW_ARTIST ? artistId : -1);
+				if (slot != -1) {
+					mFrecencies[slot] = addVisits(mFrecencies[slot], frecency);
+					if (labelLength(slot) > 0) continue;
+				} else {
+					slot = allocate();
+					put(slot, action, releaseId, trackId, artistId, frecency);
+				}
+				int labelLength = buffer.get(offset + 1) & 0xFF;
+				for (int i = 0; i < labelLength; i++) mLabels[slot * LABEL_CHARS + i] = buffer.getChar(offset + 34 + 2 * i);
+				mLabelLengths[slot] = (byte) labelLength;
+			}
+			// the slots no longer match the records in the file, so rewrite all of them once
+			Arrays.fill(mDirty, true);
+		}
+		flush();
+		publish();
+	}
+
+	private boolean isValidRecord(int offset) {
+		int action = mFileBuffer[offset];
+		int labelLength = mFileBuffer[offset + 1] & 0xFF;
+		if (action != VIEW_RELEASE && action != VIEW_ARTIST && action != PLAY_RELEASE && action != PLAY_TRACK) return false;
+		if (labelLength > LABEL_CHARS) return false;
+		mCrc.reset();
+		mCrc.update(mFileBuffer, offset, RECORD_SIZE - 4);
+		return (int) mCrc.getValue() == ByteBuffer.wrap(mFileBuffer).getInt(offset + RECORD_SIZE - 4);
+	}
+
+	/* writes the records of the changed slots, each in place */
+	private void flush() {
+		boolean[] dirty = new boolean[mCapacity];
+		ByteBuffer buffer = ByteBuffer.wrap(mFileBuffer);
+		synchronized (this) {
+			mFlushScheduled = false;
+			for (int slot = 0; slot < mCapacity; slot++) {
+				if (!mDirty[slot]) continue;
+				mDirty[slot] = false;
+				dirty[slot] = true;
+				encode(buffer, slot);
+			}
+		}
+		try {
+			if (mRandomAccessFile == null) open();
+			for (int slot = 0; slot < mCapacity; slot++) {
+				if (!dirty[slot]) continue;
+				mRandomAccessFile.seek(HEADER_SIZE + slot * RECORD_SIZE);
+				mRandomAccessFile.write(mFileBuffer, slot * RECORD_SIZE, RECORD_SIZE);
+			}
+		} catch (IOException e) {
+			Log.w(TAG, "Unable to save " + mFile + ": " + e);
+		}
+	}
+
+	/* guarded by this */
+	private void encode(ByteBuffer buffer, int slot) {
+		int offset = slot * RECORD_SIZE;
+		Arrays.fill(mFileBuffer, offset, offset + RECORD_SIZE, (byte) 0);
+		buffer.put(offset, mActions[slot]);
+		if (mActions[slot] == EMPTY) return;
+		buffer.put(offset + 1, mLabelLengths[slot]);
+		buffer.putLong(offset + 2, mReleaseIds[slot]);
+		buffer.putLong(offset + 10, mTrackIds[slot]);
+		buffer.putLong(offset + 18, mArtistIds[slot]);
+		buffer.putDouble(offset + 26, mFrecencies[slot]);
+		for (int i = 0; i < labelLength(slot); i++) buffer.putChar(offset + 34 + 2 * i, mLabels[slot * LABEL_CHARS + i]);
+		mCrc.reset();
+		mCrc.update(mFileBuffer, offset, RECORD_SIZE - 4);
+		buffer.putInt(offset + RECORD_SIZE - 4, (int) mCrc.getValue());
+	}
+
+	/* opens the file, starting it over if it doesn't hold a store of this capacity; returns whether it did */
+	private boolean open() throws IOException {
+		mRandomAccessFile = new RandomAccessFile(mFile, "rw");
+		long length = HEADER_SIZE + (long) mCapacity * RECORD_SIZE;
+		if (mRandomAccessFile.length() == length && mRandomAccessFile.readInt() == MAGIC && mRandomAccessFile.readInt() == VERSION && mRandomAccessFile.readInt() == mCapacity) return true;
+		mRandomAccessFile.setLength(0);
+		mRandomAccessFile.setLength(length);
+		mRandomAccessFile.seek(0);
+		mRandomAccessFile.writeInt(MAGIC);
+		mRandomAccessFile.writeInt(VERSION);
+		mRandomAccessFile.writeInt(mCapacity);
+		return false;
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * shortcuts (dispatcher thread)
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/* guarded by this */
+	private void schedulePublish() {
+		if (mPublishScheduled || mMaxShortcuts == 0 || Build.VERSION.SDK_INT < SHORTCUTS_API_LEVEL) return;
+		mPublishScheduled = true;
+		SDIPartnerDispatcher.submit(new Callable<Void>() {
+			@Override public Void call() { publish(); return null; }
+		});
+	}
+
+	/* only calls into the system if the shortcuts to show changed, as publishing them is rate limited */
+	private void publish() {
+		if (mMaxShortcuts == 0 || Build.VERSION.SDK_INT < SHORTCUTS_API_LEVEL) return;
+		boolean installed = SDIAppResolver.isAppInstalled(mContext);
+		String[] ids;
+		String[] labels;
+		Intent[] intents;
+		StringBuilder published = new StringBuilder();
+		synchronized (this) {
+			mPublishScheduled = false;
+			int[] slots = installed ? top(mMaxShortcuts, true) : new int[0];
+			ids = new String[slots.length];
+			labels = new String[slots.length];
+			intents = new Intent[slots.length];
+			for (int i = 0; i < slots.length; i++) {
+				int slot = slots[i];
+				ids[i] = SHORTCUT_ID_PREFIX + mActions[slot] + "_" + mReleaseIds[slot] + "_" + mTrackIds[slot] + "_" + (mActions[slot] == VIEW_ARTIST ? mArtistIds[slot] : -1);
+				labels[i] = label(slot);
+				intents[i] = buildIntent(slot);
+				published.append(ids[i]).append('\n').append(labels[i]).append('\n');
+			}
+		}
+		if (published.toString().equals(mPublished)) return;
+		if (Shortcuts.publish(mContext, ids, labels, intents)) mPublished = published.toString();
+	}
+
+	/* ShortcutManager through reflection, as it was added in API level 25 and the SDK builds against an older one */
+	private static final class Shortcuts {
+
+		static boolean publish(Context context, String[] ids, String[] labels, Intent[] intents) {
+			try {
+				Object manager = context.getSystemService("shortcut");
+				if (manager == null) return false;
+				Class<?> managerClass = Class.forName("android.content.pm.ShortcutManager");
+				Class<?> builderClass = Class.forName("android.content.pm.ShortcutInfo$Builder");
+				Method getId = Class.forName("android.content.pm.ShortcutInfo").getMethod("getId");
+
+				// the limit includes the app's own shortcuts, which are left alone
+				int limit = (Integer) managerClass.getMethod("getMaxShortcutCountPerActivity").invoke(manager);
+				List<String> stale = new ArrayList<String>();
+				List<String> keep = Arrays.asList(ids);
+				limit -= ((List<?>) managerClass.getMethod("getManifestShortcuts").invoke(manager)).size();
+				for (Object info : (List<?>) managerClass.getMethod("getDynamicShortcuts").invoke(manager)) {
+					String id = (String) getId.invoke(info);
+					if (!id.startsWith(SHORTCUT_ID_PREFIX)) limit--;
+					else if (!keep.contains(id)) stale.add(id);
+				}
+				if (!stale.isEmpty()) managerClass.getMethod("removeDynamicShortcuts", List.class).invoke(manager, stale);
+
+				Constructor<?> newBuilder = builderClass.getConstructor(Context.class, String.class);
+				Method setShortLabel = builderClass.getMethod("setShortLabel", CharSequence.class);
+				Method setIntent = builderClass.getMethod("setIntent", Intent.class);
+				Method setRank = builderClass.getMethod("setRank", int.class);
+				Method build = builderClass.getMethod("build");
+				List<Object> shortcuts = new ArrayList<Object>();
+				for (int i = 0; i < ids.length && i < limit; i++) {
+					Object builder = newBuilder.newInstance(context, ids[i]);
+					setShortLabel.invoke(builder, labels[i]);
+					setIntent.invoke(builder, intents[i]);
+					setRank.invoke(builder, i);
+					shortcuts.add(build.invoke(builder));
+				}
+				// returns false when rate limited, in which case the next visit tries again
+				return shortcuts.isEmpty() || (Boolean) managerClass.getMethod("addDynamicShortcuts", List.class).invoke(manager, shortcuts);
+			} catch (Exception e) {
+				Log.w(TAG, "Unable to publish launcher shortcuts: " + e);
+				return false;
+			}
+		}
+	}
+
+}
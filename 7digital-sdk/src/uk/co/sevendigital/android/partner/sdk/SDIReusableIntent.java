@@ -0,0 +1,233 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import android.app.SearchManager;
+import android.content.Intent;
+import android.text.TextUtils;
+
+/**
+ * A mutable counterpart of {@link SDIIntent.Builder} that keeps writing into the same Intents. It owns one Intent per
+ * action, created once from the matching {@link SDIIntentTemplate}, so that the component, action and flags never have
+ * to be set again and only the extras that change between calls are written. This makes it suitable for building
+ * Intents in tight loops, e.g. while binding list rows, without allocating a new Intent for every item.
+ *
+ * The Intent returned by the build methods is owned by this object and will be overwritten by the next call for the
+ * same action. It can be passed to {@link android.content.Context#startActivity(Intent)} directly, as the framework
+ * copies it, but should not be kept around. Use {@link #copy()} if a separate instance is required. Instances are not thread-safe.
+ */
+public class SDIReusableIntent {
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * constants
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/* extras that may have been written by a previous call; the index matches the bit in mWrittenExtras */
+	private static final String[] EXTRAS = {
+		SDIIntent.Extra.RELEASEID, SDIIntent.Extra.RELEASETITLE, SDIIntent.Extra.TRACKID, SDIIntent.Extra.TRACKTITLE,
+		SDIIntent.Extra.TRACKVERSION, SDIIntent.Extra.COVERURL, SDIIntent.Extra.ARTISTID, SDIIntent.Extra.ARTISTNAME,
+		SearchManager.QUERY
+	};
+	private static final int RELEASEID = 1, RELEASETITLE = 1 << 1, TRACKID = 1 << 2, TRACKTITLE = 1 << 3, TRACKVERSION = 1 << 4,
+		COVERURL = 1 << 5, ARTISTID = 1 << 6, ARTISTNAME = 1 << 7, QUERY = 1 << 8;
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * fields
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/* one intent per template, created on first use; the written extras are tracked per intent */
+	private final Intent[] mIntents = new Intent[SDIIntentTemplate.ACTION_COUNT];
+	private final int[] mWrittenExtras = new int[SDIIntentTemplate.ACTION_COUNT];
+	private final int mFlags;
+	private String mAffiliateId;
+	private Intent mIntent;
+	private int mIndex;
+	private int mPendingExtras;
+
+	/**
+	 * Creates a reusable Intent without an affiliate identifier or additional flags.
+	 */
+	public SDIReusableIntent() {
+		this(null, 0);
+	}
+
+	/**
+	 * Creates a reusable Intent that has the given affiliate identifier and flags applied to every Intent it builds.
+	 * @param affiliateId Identifier for the affiliate/partner, added as {@link SDIIntent.Extra#PARTNER}, or <b>null</b>.
+	 * @param flags Flags to set on every Intent, e.g. {@link Intent#FLAG_ACTIVITY_NEW_TASK} when launching from a non-Activity context.
+	 */
+	public SDIReusableIntent(String affiliateId, int flags) {
+		mFlags = flags;
+		setAffiliateId(affiliateId);
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * util methods
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Sets the affiliate identifier that is added as {@link SDIIntent.Extra#PARTNER} to every Intent built.
+	 * @param affiliateId Identifier for the affiliate/partner, or <b>null</b> to leave it out.
+	 */
+	public void setAffiliateId(String affiliateId) {
+		mAffiliateId = affiliateId;
+		for (Intent intent : mIntents) if (intent != null) applyAffiliateId(intent);
+	}
+
+	/** Returns the affiliate identifier added to every Intent built, or <b>null</b>. */
+	public String getAffiliateId() {
+		return mAffiliateId;
+	}
+
+	/**
+	 * Same as {@link SDIIntent.Builder#buildSearchIntent(String)}, but writes into the reused Intent.
+	 * @param query The query string to perform the search with
+	 */
+	public Intent search(String query) {
+		if (TextUtils.isEmpty(query)) throw new IllegalArgumentException("Parameter query should not be null or empty.");
+		begin(SDIIntentTemplate.SEARCH);
+		putString(QUERY, query);
+		return end();
+	}
+
+	/** Same as {@link SDIIntent.Builder#buildViewShopIntent()}, but writes into the reused Intent. */
+	public Intent viewShop() {
+		begin(SDIIntentTemplate.VIEW_SHOP);
+		return end();
+	}
+
+	/** Same as {@link SDIIntent.Builder#buildViewYourMusicIntent()}, but writes into the reused Intent. */
+	public Intent viewYourMusic() {
+		begin(SDIIntentTemplate.VIEW_YOUR_MUSIC);
+		return end();
+	}
+
+	/** Same as {@link SDIIntent.Builder#buildViewDownloadsIntent()}, but writes into the reused Intent. */
+	public Intent viewDownloads() {
+		begin(SDIIntentTemplate.VIEW_DOWNLOADS);
+		return end();
+	}
+
+	/**
+	 * Same as {@link SDIIntent.Builder#buildView7digitalRelease(long)}, but writes into the reused Intent.
+	 * @param releaseId The 7digital identifier for the release to display.
+	 */
+	public Intent view7digitalRelease(long releaseId) {
+		return view7digitalItem(releaseId, null, -1, null, null, null, -1, null);
+	}
+
+	/**
+	 * Same as {@link SDIIntent.Builder#buildView7digitalTrack(long, long)}, but writes into the reused Intent.
+	 * @param releaseId The 7digital identifier for the release to display.
+	 * @param trackId The 7digital identifier for the track to highlight for this release.
+	 */
+	public Intent view7digitalTrack(long releaseId, long trackId) {
+		return view7digitalItem(releaseId, null, trackId, null, null, null, -1, null);
+	}
+
+	/**
+	 * Same as {@link SDIIntent.Builder#buildView7digitalItem(long, String, long, String, String, String, long, String)},
+	 * but writes into the reused Intent.
+	 */
+	public Intent view7digitalItem(long releaseId, String releaseTitle, long trackId, String trackTitle, String trackVersion, String coverUrl, long artistId, String artistName) {
+		if (releaseId == -1) throw new IllegalArgumentException("Parameter releaseId should not be -1.");
+		begin(SDIIntentTemplate.VIEW_RELEASE);
+		putLong(RELEASEID, releaseId);
+		if (releaseTitle != null) putString(RELEASETITLE, releaseTitle);
+		if (trackId != -1) putLong(TRACKID, trackId);
+		if (trackTitle != null) putString(TRACKTITLE, trackTitle);
+		if (trackVersion != null) putString(TRACKVERSION, trackVersion);
+		if (coverUrl != null) putString(COVERURL, coverUrl);
+		if (artistId != -1) putLong(ARTISTID, artistId);
+		if (artistName != null) putString(ARTISTNAME, artistName);
+		return end();
+	}
+
+	/**
+	 * Same as {@link SDIIntent.Builder#buildView7digitalArtist(long, String)}, but writes into the reused Intent.
+	 * @param artistId The 7digital identifier for the artist to display.
+	 * @param artistName The name of the artist to display the details for (required only for displaying purposes)
+	 */
+	public Intent view7digitalArtist(long artistId, String artistName) {
+		if (artistId == -1) throw new IllegalArgumentException("Parameter artistId should not be -1.");
+		begin(SDIIntentTemplate.VIEW_ARTIST);
+		putLong(ARTISTID, artistId);
+		if (!TextUtils.isEmpty(artistName)) putString(ARTISTNAME, artistName);
+		return end();
+	}
+
+	/**
+	 * Same as {@link SDIIntent.Builder#buildPlay7digitalRelease(long)}, but writes into the reused Intent.
+	 * @param releaseId The 7digital identifier for the release to play.
+	 */
+	public Intent play7digitalRelease(long releaseId) {
+		if (releaseId == -1) throw new IllegalArgumentException("Parameter releaseId should not be -1.");
+		begin(SDIIntentTemplate.PLAY_RELEASE);
+		putLong(RELEASEID, releaseId);
+		return end();
+	}
+
+	/**
+	 * Same as {@link SDIIntent.Builder#buildPlay7digitalTrack(long, long)}, but writes into the reused Intent.
+	 * @param releaseId The 7digital identifier for the release to play.
+	 * @param trackId The 7digital identifier for the track to play for this release.
+	 */
+	public Intent play7digitalTrack(long releaseId, long trackId) {
+		if (releaseId == -1) throw new IllegalArgumentException("Parameter releaseId should not be -1.");
+		if (trackId == -1) throw new IllegalArgumentException("Parameter trackId should not be -1.");
+		begin(SDIIntentTemplate.PLAY_TRACK);
+		putLong(RELEASEID, releaseId);
+		putLong(TRACKID, trackId);
+		return end();
+	}
+
+	/**
+	 * Returns the Intent last built, or <b>null</b> if none was built yet. The returned instance is owned by this object.
+	 */
+	public Intent getIntent() {
+		return mIntent;
+	}
+
+	/**
+	 * Returns a copy of the Intent last built, which is safe to keep around.
+	 */
+	public Intent copy() {
+		return mIntent != null ? new Intent(mIntent) : null;
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * internal
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private void begin(SDIIntentTemplate template) {
+		mIndex = template.getIndex();
+		mIntent = mIntents[mIndex];
+		if (mIntent == null) {
+			mIntent = mIntents[mIndex] = template.withFlags(mFlags).newIntent();
+			applyAffiliateId(mIntent);
+		}
+		mPendingExtras = 0;
+	}
+
+	private void applyAffiliateId(Intent intent) {
+		if (mAffiliateId != null) intent.putExtra(SDIIntent.Extra.PARTNER, mAffiliateId);
+		else intent.removeExtra(SDIIntent.Extra.PARTNER);
+	}
+
+	private void putLong(int extra, long value) {
+		mIntent.putExtra(EXTRAS[Integer.numberOfTrailingZeros(extra)], value);
+		mPendingExtras |= extra;
+	}
+
+	private void putString(int extra, String value) {
+		mIntent.putExtra(EXTRAS[Integer.numberOfTrailingZeros(extra)], value);
+		mPendingExtras |= extra;
+	}
+
+	/* removes extras left over from the previous call only after the new ones are in, so the extras Bundle is never emptied and reallocated */
+	private Intent end() {
+		int stale = mWrittenExtras[mIndex] & ~mPendingExtras;
+		for (int i = 0; stale != 0; i++, stale >>>= 1) if ((stale & 1) != 0) mIntent.removeExtra(EXTRAS[i]);
+		mWrittenExtras[mIndex] = mPendingExtras;
+		return mIntent;
+	}
+
+}
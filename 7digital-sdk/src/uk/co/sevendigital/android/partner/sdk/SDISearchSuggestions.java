@@ -0,0 +1,481 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+/**
+ * An on-device suggestion engine for {@link SDIPartnerUtil#search7digital(Context, String, String)}. It completes a
+ * typed prefix from past queries and from known artist and release names, ranked by frecency: every use adds to a
+ * score that halves every week, so recent and frequent entries come first. Matching ignores case.
+ *
+ * The entries are kept in a ternary search tree stored in primitive arrays, where every node also knows the best score
+ * in its subtree. A lookup walks down the prefix and then visits subtrees best-first, skipping those that cannot beat
+ * the suggestions found so far, so it touches only a handful of nodes even for short prefixes over tens of thousands of
+ * entries. The entries are loaded lazily from a compact file and written back by {@link #save()}.
+ *
+ * Accepting a suggestion through {@link #accept(Suggestion)} records it as a query and returns the same Intent as
+ * {@link SDIIntent.Builder#buildSearchIntent(String)}. All methods are synchronized.
+ */
+public class SDISearchSuggestions {
+
+	/**
+	 * A single suggestion.
+	 */
+	public static final class Suggestion {
+
+		private final String mText;
+		private final int mType;
+		/* normalized text, the key in the tree */
+		final String key;
+		/* log2 of the frecency score as of the epoch, see bump() */
+		double score;
+
+		Suggestion(String text, int type, String key, double score) {
+			mText = text;
+			mType = type;
+			this.key = key;
+			this.score = score;
+		}
+
+		/** Returns the text to display and to search for. */
+		public String getText() {
+			return mText;
+		}
+
+		/** Returns one of {@link SDISearchSuggestions#TYPE_QUERY}, {@link SDISearchSuggestions#TYPE_ARTIST} or {@link SDISearchSuggestions#TYPE_RELEASE}. */
+		public int getType() {
+			return mType;
+		}
+
+		@Override public String toString() {
+			return mText;
+		}
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * constants
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private static final String TAG = "SDISearchSuggestions";
+
+	/** Name of the suggestions file, stored in the application's files directory. */
+	public static final String FILE_NAME = "sdi_suggestions.dat";
+
+	/** A query the user searched for. */
+	public static final int TYPE_QUERY = 0;
+	/** The name of an artist. */
+	public static final int TYPE_ARTIST = 1;
+	/** The title of a release. */
+	public static final int TYPE_RELEASE = 2;
+
+	/** The length at which longer queries and names are cut off. */
+	public static final int MAX_TEXT_LENGTH = 200;
+
+	private static final int MAGIC = 0x53444953; // "SDIS"
+	private static final int VERSION = 1;
+	/* header: magic, version, entry count; entry: type, score and a text of at least one char */
+	private static final int HEADER_SIZE = 12;
+	private static final int MIN_ENTRY_SIZE = 1 + 8 + 3;
+
+	/* the time in which a score halves */
+	private static final double HALF_LIFE_MILLIS = 7 * 24 * 60 * 60 * 1000.0;
+	/* known names start out below a single search, so that the user's own queries take precedence */
+	private static final double NAME_WEIGHT = 0.5;
+	private static final double QUERY_WEIGHT = 1;
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * fields
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private final File mFile;
+	private boolean mLoaded;
+
+	/* the tree: split character, children and entry per node, plus the best entry score in its subtree */
+	private char[] mChars = new char[64];
+	private int[] mLo = new int[64];
+	private int[] mEq = new int[64];
+	private int[] mHi = new int[64];
+	private int[] mEntry = new int[64];
+	private double[] mBest = new double[64];
+	private int mNodeCount;
+
+	private Suggestion[] mEntries = new Suggestion[16];
+	private int mEntryCount;
+
+	/* scratch space for lookups */
+	private int[] mStack = new int[64];
+	private int[] mTop = new int[8];
+
+	/**
+	 * Creates a suggestion engine backed by the given file. The file is only read on first use and need not exist yet.
+	 * @param file The suggestions file.
+	 */
+	public SDISearchSuggestions(File file) {
+		if (file == null) throw new IllegalArgumentException("Parameter file should not be null.");
+		mFile = file;
+	}
+
+	/**
+	 * Creates a suggestion engine backed by {@link #FILE_NAME} in the application's files directory.
+	 * @param context Any Context of the application.
+	 */
+	public SDISearchSuggestions(Context context) {
+		this(new File(context.getFilesDir(), FILE_NAME));
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * methods
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Records a search for the given query, making it (and keeping it) a suggestion.
+	 * @param query The query that was searched for, cut off at {@link #MAX_TEXT_LENGTH}.
+	 */
+	public synchronized void recordQuery(String query) {
+		add(query, TYPE_QUERY, QUERY_WEIGHT);
+	}
+
+	/**
+	 * Adds a known artist name or release title as a suggestion. Adding a name that is already known counts as a use.
+	 * @param type Either {@link #TYPE_ARTIST} or {@link #TYPE_RELEASE}.
+	 * @param name The name or title, cut off at {@link #MAX_TEXT_LENGTH}.
+	 */
+	public synchronized void addName(int type, String name) {
+		if (type != TYPE_ARTIST && type != TYPE_RELEASE) throw new IllegalArgumentException("Parameter type should be TYPE_ARTIST or TYPE_RELEASE.");
+		add(name, type, NAME_WEIGHT);
+	}
+
+	/**
+	 * Returns the best suggestions for the given prefix, best first.
+	 * @param prefix The text typed so far. An empty prefix returns the best suggestions overall.
+	 * @param limit The maximum number of suggestions to return.
+	 */
+	public synchronized List<Suggestion> suggest(CharSequence prefix, int limit) {
+		if (prefix == null) throw new IllegalArgumentException("Parameter prefix should not be null.");
+		if (limit < 1) throw new IllegalArgumentException("Parameter limit should be at least 1.");
+		load();
+		if (mTop.length < limit) mTop = new int[limit];
+		int found = 0;
+		int start;
+		String key = normalize(prefix);
+		if (key.length() == 0) {
+			start = mNodeCount > 0 ? 0 : -1;
+		} else {
+			int node = find(key);
+			if (node < 0) return new ArrayList<Suggestion>(0);
+			if (mEntry[node] >= 0) found = offer(mEntry[node], found, limit);
+			start = mEq[node];
+		}
+
+		// best-first walk over the subtree, pruning subtrees that cannot improve on the current top
+		int size = 0;
+		if (start >= 0) mStack[size++] = start;
+		while (size > 0) {
+			int node = mStack[--size];
+			if (found == limit && mBest[node] <= mEntries[mTop[limit - 1]].score) continue;
+			if (mEntry[node] >= 0) found = offer(mEntry[node], found, limit);
+			if (mStack.length < size + 3) {
+				int[] grown = new int[mStack.length * 2];
+				System.arraycopy(mStack, 0, grown, 0, size);
+				mStack = grown;
+			}
+			size = pushSorted(node, size);
+		}
+
+		List<Suggestion> result = new ArrayList<Suggestion>(found);
+		for (int i = 0; i < found; i++) result.add(mEntries[mTop[i]]);
+		return result;
+	}
+
+	/**
+	 * Accepts a suggestion: records it as a query and returns the Intent to search for it, as built by
+	 * {@link SDIIntent.Builder#buildSearchIntent(String)}.
+	 * @param suggestion One of the suggestions returned by {@link #suggest(CharSequence, int)}.
+	 */
+	public synchronized Intent accept(Suggestion suggestion) {
+		if (suggestion == null) throw new IllegalArgumentException("Parameter suggestion should not be null.");
+		recordQuery(suggestion.getText());
+		return SDIIntent.Builder.buildSearchIntent(suggestion.getText());
+	}
+
+	/**
+	 * Returns the number of suggestions known.
+	 */
+	public synchronized int size() {
+		load();
+		return mEntryCount;
+	}
+
+	/**
+	 * Forgets all suggestions. Call {@link #save()} to also clear the file.
+	 */
+	public synchronized void clear() {
+		mLoaded = true;
+		mNodeCount = 0;
+		Arrays.fill(mEntries, 0, mEntryCount, null);
+		mEntryCount = 0;
+	}
+
+	/**
+	 * Writes the suggestions to the file. Best called off the main thread, e.g. when the search screen is closed.
+	 * @throws IOException If the file could not be written.
+	 */
+	public synchronized void save() throws IOException {
+		if (!mLoaded) return;
+		File temp = new File(mFile.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(mEntryCount);
+			for (int i = 0; i < mEntryCount; i++) {
+				out.writeByte(mEntries[i].getType());
+				out.writeDouble(mEntries[i].score);
+				out.writeUTF(mEntries[i].getText());
+			}
+		} finally {
+			out.close();
+		}
+		if (!temp.renameTo(mFile)) {
+			temp.delete();
+			throw new IOException("Unable to rename " + temp + " to " + mFile);
+		}
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * internal
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/* keeps texts well within what writeUTF can store (65535 bytes), without splitting a surrogate pair */
+	private static String truncate(String text) {
+		if (text.length() <= MAX_TEXT_LENGTH) return text;
+		int end = Character.isHighSurrogate(text.charAt(MAX_TEXT_LENGTH - 1)) ? MAX_TEXT_LENGTH - 1 : MAX_TEXT_LENGTH;
+		return text.substring(0, end).trim();
+	}
+
+	private static String normalize(CharSequence text) {
+		return text.toString().trim().toLowerCase(Locale.ENGLISH);
+	}
+
+	private void add(String text, int type, double weight) {
+		if (text == null || text.trim().length() == 0) throw new IllegalArgumentException("Parameter text should not be null or empty.");
+		text = truncate(text.trim());
+		load();
+		String key = normalize(text);
+		int node = insert(key);
+		Suggestion entry;
+		if (mEntry[node] >= 0) {
+			entry = mEntries[mEntry[node]];
+			// a query the user typed themselves replaces the spelling of a known name
+			if (type == TYPE_QUERY && entry.getType() != TYPE_QUERY) {
+				entry = new Suggestion(text, type, key, entry.score);
+				mEntries[mEntry[node]] = entry;
+			}
+		} else {
+			entry = new Suggestion(text, type, key, Double.NEGATIVE_INFINITY);
+			mEntry[node] = addEntry(entry);
+		}
+		entry.score = bump(entry.score, weight, System.currentTimeMillis());
+		updateBest(key, entry.score);
+	}
+
+	/*
+	 * Adds a weight to a decaying score. Scores are kept as log2(score) + now / halfLife, i.e. as log2 of what the score
+	 * would be at the epoch if it had grown at the rate others decay. Comparing those compares the current scores, so
+	 * nothing needs updating as time passes.
+	 */
+	private static double bump(double score, double weight, long now) {
+		double added = Math.log(weight) / Math.log(2) + now / HALF_LIFE_MILLIS;
+		if (score == Double.NEGATIVE_INFINITY) return added;
+		double high = Math.max(score, added), low = Math.min(score, added);
+		return high + Math.log(1 + Math.pow(2, low - high)) / Math.log(2);
+	}
+
+	/* returns the node at which the key ends, or -1 */
+	private int find(String key) {
+		int node = mNodeCount > 0 ? 0 : -1, depth = 0;
+		while (node >= 0) {
+			char c = key.charAt(depth);
+			if (c < mChars[node]) node = mLo[node];
+			else if (c > mChars[node]) node = mHi[node];
+			else if (++depth == key.length()) return node;
+			else node = mEq[node];
+		}
+		return -1;
+	}
+
+	/* returns the node at which the key ends, creating the path as needed */
+	private int insert(String key) {
+		if (mNodeCount == 0) newNode(key.charAt(0));
+		int node = 0, depth = 0;
+		while (true) {
+			char c = key.charAt(depth);
+			int child;
+			// newNode() may replace the arrays, so it must be called before storing the link
+			if (c < mChars[node]) {
+				if ((child = mLo[node]) < 0) {
+					child = newNode(c);
+					mLo[node] = child;
+				}
+			} else if (c > mChars[node]) {
+				if ((child = mHi[node]) < 0) {
+					child = newNode(c);
+					mHi[node] = child;
+				}
+			} else if (++depth == key.length()) {
+				return node;
+			} else if ((child = mEq[node]) < 0) {
+				child = newNode(key.charAt(depth));
+				mEq[node] = child;
+			}
+			node = child;
+		}
+	}
+
+	/* raises the best score on the path to the given key, which must be in the tree */
+	private void updateBest(String key, double score) {
+		int node = 0, depth = 0;
+		while (true) {
+			if (mBest[node] < score) mBest[node] = score;
+			char c = key.charAt(depth);
+			if (c < mChars[node]) node = mLo[node];
+			else if (c > mChars[node]) node = mHi[node];
+			else if (++depth == key.length()) return;
+			else node = mEq[node];
+		}
+	}
+
+	private int newNode(char c) {
+		if (mNodeCount == mChars.length) {
+			int capacity = mNodeCount * 2;
+			char[] chars = new char[capacity];
+			System.arraycopy(mChars, 0, chars, 0, mNodeCount);
+			mChars = chars;
+			mLo = grow(mLo, capacity);
+			mEq = grow(mEq, capacity);
+			mHi = grow(mHi, capacity);
+			mEntry = grow(mEntry, capacity);
+			double[] best = new double[capacity];
+			System.arraycopy(mBest, 0, best, 0, mNodeCount);
+			mBest = best;
+		}
+		int node = mNodeCount++;
+		mChars[node] = c;
+		mLo[node] = mEq[node] = mHi[node] = mEntry[node] = -1;
+		mBest[node] = Double.NEGATIVE_INFINITY;
+		return node;
+	}
+
+	private static int[] grow(int[] array, int capacity) {
+		int[] grown = new int[capacity];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+
+	private int addEntry(Suggestion entry) {
+		if (mEntryCount == mEntries.length) {
+			Suggestion[] grown = new Suggestion[mEntryCount * 2];
+			System.arraycopy(mEntries, 0, grown, 0, mEntryCount);
+			mEntries = grown;
+		}
+		mEntries[mEntryCount] = entry;
+		return mEntryCount++;
+	}
+
+	/* inserts an entry into the top list, which is sorted best first; returns the new size of the list */
+	private int offer(int entry, int found, int limit) {
+		double score = mEntries[entry].score;
+		if (found == limit && score <= mEntries[mTop[limit - 1]].score) return found;
+		int i = found < limit ? found++ : limit - 1;
+		while (i > 0 && mEntries[mTop[i - 1]].score < score) {
+			mTop[i] = mTop[i - 1];
+			i--;
+		}
+		mTop[i] = entry;
+		return found;
+	}
+
+	/* pushes the children of a node so that the one with the best subtree is popped first */
+	private int pushSorted(int node, int size) {
+		int start = size;
+		size = push(mLo[node], start, size);
+		size = push(mEq[node], start, size);
+		size = push(mHi[node], start, size);
+		return size;
+	}
+
+	private int push(int child, int start, int size) {
+		if (child < 0) return size;
+		int i = size++;
+		while (i > start && mBest[mStack[i - 1]] > mBest[child]) {
+			mStack[i] = mStack[i - 1];
+			i--;
+		}
+		mStack[i] = child;
+		return size;
+	}
+
+	private void load() {
+		if (mLoaded) return;
+		mLoaded = true;
+		if (!mFile.exists()) return;
+		Suggestion[] entries;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+			try {
+				if (in.readInt() != MAGIC || in.readInt() != VERSION) throw new IOException("Not a suggestions file: " + mFile);
+				int count = in.readInt();
+				// checked against what the file can hold, so that a corrupt count can't ask for a huge array
+				if (count < 0 || count > (mFile.length() - HEADER_SIZE) / MIN_ENTRY_SIZE) throw new IOException("Corrupt entry count " + count);
+				entries = new Suggestion[count];
+				for (int i = 0; i < entries.length; i++) {
+					int type = in.readByte();
+					double score = in.readDouble();
+					String text = in.readUTF();
+					String key = normalize(text);
+					if (type != TYPE_QUERY && type != TYPE_ARTIST && type != TYPE_RELEASE || Double.isNaN(score) || key.length() == 0) throw new IOException("Corrupt entry " + i);
+					entries[i] = new Suggestion(text, type, key, score);
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			Log.w(TAG, "Unable to read suggestions from " + mFile + ", starting afresh.", e);
+			return;
+		}
+		// inserting the medians first keeps the tree balanced
+		Arrays.sort(entries, new Comparator<Suggestion>() {
+			@Override public int compare(Suggestion a, Suggestion b) { return a.key.compareTo(b.key); }
+		});
+		insertBalanced(entries, 0, entries.length - 1);
+	}
+
+	private void insertBalanced(Suggestion[] entries, int low, int high) {
+		if (low > high) return;
+		int mid = (low + high) >>> 1;
+		Suggestion entry = entries[mid];
+		int node = insert(entry.key);
+		if (mEntry[node] < 0) {
+			mEntry[node] = addEntry(entry);
+			updateBest(entry.key, entry.score);
+		}
+		insertBalanced(entries, low, mid - 1);
+		insertBalanced(entries, mid + 1, high);
+	}
+
+}
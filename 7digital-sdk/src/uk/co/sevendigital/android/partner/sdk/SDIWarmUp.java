@@ -0,0 +1,192 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Moves the one-off costs of the first handoff to the 7digital Android app out of the tap. {@link #warmUp(Context)}
+ * loads and initializes the SDK classes and the framework classes they use, builds every {@link SDIIntentTemplate},
+ * resolves the external entry point, the launch activity and the fallbacks through {@link SDIAppResolver} and the
+ * actions the app supports through {@link SDIAppCapabilities}, all on the background thread also used by
+ * {@link SDIPartnerDispatcher}. Call it early, e.g. from <code>Application.onCreate()</code> or when a screen with
+ * 7digital links is shown.
+ *
+ * The duration of every warm-up step is recorded, as is the time spent preparing the first and the most recent
+ * handoff (validation and target resolution, see {@link SDIPartnerUtil#start7digitalOrMarket(Context, Intent)}), so
+ * that the effect of warming up can be verified through {@link #getTimings()}.
+ */
+public class SDIWarmUp {
+
+	private SDIWarmUp() { /* prevent instantiating */ }
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * constants
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/* classes touched on the first handoff that are not necessarily loaded by the steps below */
+	private static final String[] CLASSES = {
+		"uk.co.sevendigital.android.partner.sdk.SDIIntent$Builder",
+		"uk.co.sevendigital.android.partner.sdk.SDILaunch",
+		"uk.co.sevendigital.android.partner.sdk.SDIMetrics",
+		"uk.co.sevendigital.android.partner.sdk.SDIClickLog",
+		"uk.co.sevendigital.android.partner.sdk.SDIWebLinkBuilder",
+		"android.content.ActivityNotFoundException",
+		"android.net.Uri",
+		"android.widget.Toast"
+	};
+
+	private static volatile long sClassLoadingNanos = -1;
+	private static volatile long sTemplatesNanos = -1;
+	private static volatile long sResolveNanos = -1;
+	private static volatile long sFirstPrepareNanos = -1;
+	private static volatile long sLastPrepareNanos = -1;
+	private static volatile boolean sFirstPrepareWarm;
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * util methods
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Warms up the SDK on a background thread. Safe to call from any thread and more than once; later calls only
+	 * refresh what has been invalidated in the meantime, e.g. after the 7digital app got installed.
+	 * @param context Any Context of the application.
+	 * @return A Future that completes with the timings once the warm-up is done.
+	 */
+	public static Future<Timings> warmUp(Context context) {
+		if (context == null) throw new IllegalArgumentException("Parameter context should not be null.");
+		final Context applicationContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+		return SDIPartnerDispatcher.submit(new Callable<Timings>() {
+			@Override public Timings call() {
+				run(applicationContext);
+				return getTimings();
+			}
+		});
+	}
+
+	/**
+	 * Returns the timings recorded so far.
+	 */
+	public static Timings getTimings() {
+		return new Timings(sClassLoadingNanos, sTemplatesNanos, sResolveNanos, sFirstPrepareNanos, sLastPrepareNanos, sFirstPrepareWarm);
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * internal
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private static void run(Context context) {
+		long start = System.nanoTime();
+		ClassLoader loader = SDIWarmUp.class.getClassLoader();
+		for (String name : CLASSES) {
+			try { Class.forName(name, true, loader); }
+			catch (ClassNotFoundException e) { /* not essential, the class gets loaded on first use instead */ }
+		}
+		long templates = System.nanoTime();
+		sClassLoadingNanos = templates - start;
+
+		// creating one Intent per template also loads and initializes the Intent and Bundle machinery
+		for (int i = 0; i < SDIIntentTemplate.ACTION_COUNT; i++) SDIIntentTemplate.forAction(SDIIntentTemplate.actionAt(i)).newIntent();
+		SDIIntent.Builder.buildView7digitalItem(1, "", 1, "", "", "", 1, "");
+		long resolve = System.nanoTime();
+		sTemplatesNanos = resolve - templates;
+
+		SDIAppResolver.getFlags(context);
+		SDIAppCapabilities.getMatrix(context);
+		sResolveNanos = System.nanoTime() - resolve;
+	}
+
+	/**
+	 * Records the time it took to prepare a handoff, see SDILaunch.
+	 * @param nanos The duration in nanoseconds.
+	 */
+	static void recordPrepare(long nanos) {
+		if (sFirstPrepareNanos == -1) {
+			synchronized (SDIWarmUp.class) {
+				if (sFirstPrepareNanos == -1) {
+					sFirstPrepareWarm = sResolveNanos != -1;
+					sFirstPrepareNanos = nanos;
+				}
+			}
+		}
+		sLastPrepareNanos = nanos;
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * timings
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * An immutable copy of the warm-up and handoff timings. Durations that have not been recorded (yet) are <b>-1</b>.
+	 */
+	public static final class Timings {
+
+		private final long mClassLoadingNanos;
+		private final long mTemplatesNanos;
+		private final long mResolveNanos;
+		private final long mFirstPrepareNanos;
+		private final long mLastPrepareNanos;
+		private final boolean mFirstPrepareWarm;
+
+		private Timings(long classLoadingNanos, long templatesNanos, long resolveNanos, long firstPrepareNanos, long lastPrepareNanos, boolean firstPrepareWarm) {
+			mClassLoadingNanos = classLoadingNanos;
+			mTemplatesNanos = templatesNanos;
+			mResolveNanos = resolveNanos;
+			mFirstPrepareNanos = firstPrepareNanos;
+			mLastPrepareNanos = lastPrepareNanos;
+			mFirstPrepareWarm = firstPrepareWarm;
+		}
+
+		/** Returns whether a warm-up has completed. */
+		public boolean isWarmedUp() {
+			return mResolveNanos != -1;
+		}
+
+		/** Returns the time the last warm-up spent loading and initializing classes, in milliseconds. */
+		public double getClassLoadingMillis() {
+			return millis(mClassLoadingNanos);
+		}
+
+		/** Returns the time the last warm-up spent building the Intent templates, in milliseconds. */
+		public double getTemplatesMillis() {
+			return millis(mTemplatesNanos);
+		}
+
+		/** Returns the time the last warm-up spent resolving the 7digital app and fallbacks, in milliseconds. */
+		public double getResolveMillis() {
+			return millis(mResolveNanos);
+		}
+
+		/** Returns the total duration of the last warm-up, in milliseconds. */
+		public double getWarmUpMillis() {
+			return isWarmedUp() ? millis(mClassLoadingNanos + mTemplatesNanos + mResolveNanos) : -1;
+		}
+
+		/** Returns the time spent preparing the first handoff of the process, in milliseconds. */
+		public double getFirstPrepareMillis() {
+			return millis(mFirstPrepareNanos);
+		}
+
+		/** Returns whether the first handoff of the process happened after a warm-up had completed. */
+		public boolean isFirstPrepareWarm() {
+			return mFirstPrepareWarm;
+		}
+
+		/** Returns the time spent preparing the most recent handoff, in milliseconds. */
+		public double getLastPrepareMillis() {
+			return millis(mLastPrepareNanos);
+		}
+
+		@Override public String toString() {
+			return "Timings[classLoading=" + getClassLoadingMillis() + "ms, templates=" + getTemplatesMillis() + "ms, resolve=" + getResolveMillis()
+				+ "ms, firstPrepare=" + getFirstPrepareMillis() + "ms (" + (mFirstPrepareWarm ? "warm" : "cold") + "), lastPrepare=" + getLastPrepareMillis() + "ms]";
+		}
+
+		private static double millis(long nanos) {
+			return nanos == -1 ? -1 : nanos / 1e6;
+		}
+	}
+
+}
@@ -0,0 +1,210 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+
+/**
+ * An in-app browser for the 7digital website, used by {@link SDIFallbackChain#IN_APP_WEB} to show the page matching a
+ * launch without taking the user out of the app. The HTML of a page can be fetched ahead of time through
+ * {@link #prefetch(String)}, in which case the WebView is handed that HTML rather than loading the page itself, which
+ * saves the round trips for the page (but not for its images, scripts and style sheets, which the WebView loads through
+ * its own network stack either way). A prefetched page is used once and only for a few minutes.
+ *
+ * To use it, declare the Activity in the application's manifest (or enable the manifest merger), which also needs the
+ * <code>android.permission.INTERNET</code> permission:
+ * <pre>
+ * &lt;activity android:name="uk.co.sevendigital.android.partner.sdk.SDIWebActivity" /&gt;
+ * </pre>
+ */
+public class SDIWebActivity extends Activity {
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * constants
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/** Intent extra holding the URL of the page to show. */
+	public static final String EXTRA_URL = "uk.co.sevendigital.android.partner.sdk.extra.URL";
+
+	private static final long PREFETCH_TTL_MILLIS = 5 * 60 * 1000;
+	private static final int PREFETCH_MAX_ENTRIES = 4;
+	private static final int PREFETCH_MAX_BYTES = 512 * 1024;
+	private static final int TIMEOUT_MILLIS = 10 * 1000;
+
+	/* url to prefetched page, oldest first */
+	private static final Map<String, Page> PREFETCHED = new LinkedHashMap<String, Page>();
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * fields
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	private WebView mWebView;
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * util methods
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Creates an Intent that shows the given page in this Activity.
+	 * @param context Any Context of the application.
+	 * @param url The page to show.
+	 */
+	public static Intent newIntent(Context context, String url) {
+		if (url == null) throw new IllegalArgumentException("Parameter url should not be null.");
+		return new Intent(context, SDIWebActivity.class).putExtra(EXTRA_URL, url);
+	}
+
+	/**
+	 * Fetches the HTML of the given page on a background thread, so that this Activity does not have to wait for it when
+	 * opened on the page shortly after.
+	 * @param url The page to prefetch.
+	 */
+	public static void prefetch(final String url) {
+		if (url == null) throw new IllegalArgumentException("Parameter url should not be null.");
+		synchronized (PREFETCHED) {
+			Page page = PREFETCHED.get(url);
+			if (page != null && page.isFresh()) return;
+		}
+		SDIPartnerDispatcher.submit(new Callable<Void>() {
+			@Override public Void call() {
+				Page page = fetch(url);
+				if (page == null) return null;
+				synchronized (PREFETCHED) {
+					PREFETCHED.remove(url);
+					PREFETCHED.put(url, page);
+					Iterator<Page> iterator = PREFETCHED.values().iterator();
+					while (PREFETCHED.size() > PREFETCH_MAX_ENTRIES) {
+						iterator.next();
+						iterator.remove();
+					}
+				}
+				return null;
+			}
+		});
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * lifecycle
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	@Override protected void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+		String url = getIntent().getStringExtra(EXTRA_URL);
+		if (url == null) {
+			finish();
+			return;
+		}
+		mWebView = new WebView(this);
+		mWebView.getSettings().setJavaScriptEnabled(true);
+		// keep following links in here rather than handing them to the browser
+		mWebView.setWebViewClient(new WebViewClient());
+		setContentView(mWebView);
+		if (savedInstanceState != null && mWebView.restoreState(savedInstanceState) != null) return;
+
+		Page page;
+		synchronized (PREFETCHED) {
+			page = PREFETCHED.remove(url);
+		}
+		if (page != null && page.isFresh()) mWebView.loadDataWithBaseURL(page.url, page.content, page.mimeType, page.encoding, page.url);
+		else mWebView.loadUrl(url);
+	}
+
+	@Override protected void onSaveInstanceState(Bundle outState) {
+		super.onSaveInstanceState(outState);
+		if (mWebView != null) mWebView.saveState(outState);
+	}
+
+	@Override public void onBackPressed() {
+		if (mWebView != null && mWebView.canGoBack()) mWebView.goBack();
+		else super.onBackPressed();
+	}
+
+	@Override protected void onDestroy() {
+		if (mWebView != null) mWebView.destroy();
+		super.onDestroy();
+	}
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * internal
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/* returns null if the page could not be fetched, as the Activity then simply loads it itself */
+	private static Page fetch(String url) {
+		HttpURLConnection connection = null;
+		try {
+			connection = (HttpURLConnection) new URL(url).openConnection();
+			connection.setConnectTimeout(TIMEOUT_MILLIS);
+			connection.setReadTimeout(TIMEOUT_MILLIS);
+			if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) return null;
+			// a redirect that was followed changes the base URL for relative links
+			String finalUrl = connection.getURL().toString();
+			String[] contentType = parseContentType(connection.getContentType());
+			if (!contentType[0].startsWith("text/html")) return null;
+			InputStream in = connection.getInputStream();
+			try {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				byte[] buffer = new byte[8192];
+				for (int read; (read = in.read(buffer)) != -1; ) {
+					out.write(buffer, 0, read);
+					if (out.size() > PREFETCH_MAX_BYTES) return null;
+				}
+				return new Page(finalUrl, out.toString(contentType[1]), contentType[0], contentType[1]);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			return null;
+		} finally {
+			if (connection != null) connection.disconnect();
+		}
+	}
+
+	/* splits a Content-Type header into mime type and charset, defaulting to text/html in UTF-8 */
+	private static String[] parseContentType(String header) {
+		String[] result = { "text/html", "UTF-8" };
+		if (header == null) return result;
+		String[] parts = header.split(";");
+		result[0] = parts[0].trim().toLowerCase(Locale.US);
+		for (int i = 1; i < parts.length; i++) {
+			String part = parts[i].trim();
+			if (part.regionMatches(true, 0, "charset=", 0, 8)) result[1] = part.substring(8).replace("\"", "").trim();
+		}
+		return result;
+	}
+
+	private static final class Page {
+
+		final String url;
+		final String content;
+		final String mimeType;
+		final String encoding;
+		final long fetchedAt = SystemClock.elapsedRealtime();
+
+		Page(String url, String content, String mimeType, String encoding) {
+			this.url = url;
+			this.content = content;
+			this.mimeType = mimeType;
+			this.encoding = encoding;
+		}
+
+		boolean isFresh() {
+			return SystemClock.elapsedRealtime() - fetchedAt < PREFETCH_TTL_MILLIS;
+		}
+	}
+
+}
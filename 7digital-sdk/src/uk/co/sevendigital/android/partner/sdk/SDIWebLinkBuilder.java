@@ -0,0 +1,53 @@
+package uk.co.sevendigital.android.partner.sdk;
+
+import android.app.SearchManager;
+import android.content.Intent;
+
+/**
+ * Generates links to the 7digital website that match the actions in {@link SDIIntent.Action}, including the
+ * {@link SDIIntent.Extra#PARTNER} affiliate identifier. This allows users that don't have the 7digital Android app
+ * installed to land on the release, track, artist or search results they were after, rather than on the homepage.
+ *
+ * This adds generating links straight from Intents to the platform-free {@link SDIWebLinkWriter}, and shares its
+ * buffer: the {@link CharSequence} returned by the build methods is only valid until the next call; use
+ * {@link #toString()} or one of the <code>String</code> returning methods to keep it. Instances are not thread-safe.
+ */
+public class SDIWebLinkBuilder extends SDIWebLinkWriter {
+
+	/* - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+	 * util methods
+	 * - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - */
+
+	/**
+	 * Generates the website link matching the action and extras of the given Intent, as built by
+	 * {@link SDIIntent.Builder}. Unknown actions link to the homepage.
+	 * @param intent The Intent to generate the link for.
+	 * @return The link, valid until the next call on this builder.
+	 */
+	public CharSequence build(Intent intent) {
+		if (intent == null) throw new IllegalArgumentException("Parameter intent should not be null.");
+		String action = intent.getAction();
+		String affiliateId = intent.getStringExtra(SDIIntent.Extra.PARTNER);
+		if (SDIIntent.Action.VIEW_RELEASE.equals(action) || SDIIntent.Action.PLAY_RELEASE.equals(action) || SDIIntent.Action.PLAY_TRACK.equals(action)) {
+			long releaseId = intent.getLongExtra(SDIIntent.Extra.RELEASEID, -1);
+			if (releaseId != -1) return release(releaseId, intent.getLongExtra(SDIIntent.Extra.TRACKID, -1), affiliateId);
+		} else if (SDIIntent.Action.VIEW_ARTIST.equals(action)) {
+			long artistId = intent.getLongExtra(SDIIntent.Extra.ARTISTID, -1);
+			if (artistId != -1) return artist(artistId, affiliateId);
+		} else if (SDIIntent.Action.SEARCH.equals(action) || Intent.ACTION_SEARCH.equals(action)) {
+			String query = intent.getStringExtra(SearchManager.QUERY);
+			if (query != null) return search(query, affiliateId);
+		} else if (SDIIntent.Action.VIEW_YOUR_MUSIC.equals(action) || SDIIntent.Action.VIEW_DOWNLOADS.equals(action)) {
+			return yourMusic(affiliateId);
+		}
+		return shop(affiliateId);
+	}
+
+	/**
+	 * Same as {@link #build(Intent)}, but returns a String that is safe to keep.
+	 */
+	public String buildString(Intent intent) {
+		return build(intent).toString();
+	}
+
+}